@@ -0,0 +1,62 @@
+package com.example.ckpoolwidget;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+
+/**
+ * Render time of the sparkline for long histories, downsampling included.
+ * Run with {@code ./gradlew connectedAndroidTest
+ * -Pandroid.testInstrumentationRunnerArguments.ckpool.benchmark=true}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SparklineRendererBenchmark {
+
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURED_ROUNDS = 100;
+
+    @Before
+    public void onlyWhenRequested() {
+        Assume.assumeTrue(Boolean.parseBoolean(InstrumentationRegistry.getArguments()
+                .getString("ckpool.benchmark", "false")));
+    }
+
+    @Test
+    public void renderLongHistories() {
+        for (int points : new int[] {1000, 10000}) {
+            long[] xs = new long[points];
+            float[] ys = new float[points];
+            for (int i = 0; i < points; i++) {
+                xs[i] = 1_700_000_000L + i * 300L;
+                ys[i] = (float) (1.5e12 + 3e11 * Math.sin(i / 50.0) + (i % 7) * 1e10);
+            }
+            for (int widthPx : new int[] {300, 600}) {
+                run(points, xs, ys, widthPx, 60);
+            }
+        }
+    }
+
+    private static void run(int points, long[] xs, float[] ys, int widthPx, int heightPx) {
+        SparklineRenderer renderer = new SparklineRenderer();
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            renderer.draw(xs, ys, points, widthPx, heightPx, 0xFF00FF00).recycle();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            Bitmap bitmap = renderer.draw(xs, ys, points, widthPx, heightPx, 0xFF00FF00);
+            bitmap.recycle();
+        }
+        long usPerOp = (System.nanoTime() - start) / MEASURED_ROUNDS / 1000;
+        Log.i("SparklineBenchmark", String.format(Locale.US, "%6d points -> %4dx%d px: %8d us/op",
+                points, widthPx, heightPx, usPerOp));
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.ckpoolwidget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class SparklineRendererTest {
+
+    @Test
+    public void unchangedHistoryReturnsTheCachedBitmap() {
+        HashrateHistory history = newHistory("cache");
+        history.append(1_700_000_000L, 1e12f, 1, 1);
+        history.append(1_700_000_300L, 2e12f, 2, 2);
+        SparklineRenderer renderer = new SparklineRenderer();
+
+        Bitmap first = renderer.render(history, 400, 40, 0xFF00FF00);
+        assertSame(first, renderer.render(history, 400, 40, 0xFF00FF00));
+
+        history.append(1_700_000_600L, 3e12f, 3, 3);
+        assertNotSame(first, renderer.render(history, 400, 40, 0xFF00FF00));
+    }
+
+    @Test
+    public void bitmapsStayUnderTheTransactionBudget() {
+        long[] xs = {0, 1, 2};
+        float[] ys = {1, 3, 2};
+
+        Bitmap bitmap = new SparklineRenderer().draw(xs, ys, 3, 2000, 400, 0xFF00FF00);
+
+        assertTrue(bitmap.getByteCount() <= SparklineRenderer.MAX_BITMAP_BYTES);
+    }
+
+    @Test
+    public void singleSampleDrawsNothing() {
+        HashrateHistory history = newHistory("single");
+        history.append(1_700_000_000L, 1e12f, 1, 1);
+
+        assertNull(new SparklineRenderer().render(history, 400, 40, 0xFF00FF00));
+    }
+
+    private static HashrateHistory newHistory(String name) {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        File file = new File(context.getCacheDir(), name + "-" + HashrateHistory.FILE_NAME);
+        file.delete();
+        return HashrateHistory.open(file, 64);
+    }
+}
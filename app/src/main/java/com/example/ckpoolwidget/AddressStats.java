@@ -0,0 +1,92 @@
+package com.example.ckpoolwidget;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import java.util.Arrays;
+
+/**
+ * Latest ckpool stats of one payout address and its workers, kept in {@link WidgetState}
+ * so address-bound widgets and the worker list have cached values after a failed fetch.
+ */
+final class AddressStats {
+
+    static final Worker[] NO_WORKERS = new Worker[0];
+
+    static final class Worker {
+        // Worker suffix after the address, e.g. "bitaxe1"
+        final String name;
+        final String hashrate;
+        final long shares;
+        final long bestEver;
+
+        Worker(String name, String hashrate, long shares, long bestEver) {
+            this.name = name;
+            this.hashrate = hashrate;
+            this.shares = shares;
+            this.bestEver = bestEver;
+        }
+    }
+
+    final String address;
+    // Null until the address has been fetched once
+    String hashrate;
+    long shares;
+    // Best share ever seen for this address, and the date it was beaten (empty if unknown)
+    long bestEver;
+    String bestDate = "";
+    // When hashrate, shares and workers were fetched
+    long updatedAt;
+    Worker[] workers = NO_WORKERS;
+
+    AddressStats(String address) {
+        this.address = address;
+    }
+
+    /**
+     * Reads a ckpool users response. {@code bestEver} is the value ckpool reports, before
+     * it is merged with the saved best.
+     */
+    static AddressStats parse(String address, JSONObject json) {
+        AddressStats stats = new AddressStats(address);
+        stats.hashrate = json.optString("hashrate5m", "0");
+        stats.shares = json.optLong("shares", 0);
+        stats.bestEver = json.optLong("bestever", 0);
+        JSONArray workers = json.optJSONArray("worker");
+        if (workers != null) {
+            Worker[] parsed = new Worker[workers.length()];
+            int n = 0;
+            for (int i = 0; i < workers.length(); i++) {
+                JSONObject worker = workers.optJSONObject(i);
+                if (worker != null) {
+                    parsed[n++] = new Worker(workerName(address, worker.optString("workername")),
+                            worker.optString("hashrate5m", "0"), worker.optLong("shares", 0),
+                            worker.optLong("bestever", 0));
+                }
+            }
+            stats.workers = n == parsed.length ? parsed : Arrays.copyOf(parsed, n);
+        }
+        return stats;
+    }
+
+    // ckpool names workers "<address>.<worker>"
+    private static String workerName(String address, String workerName) {
+        if (workerName.length() > address.length() + 1
+                && workerName.regionMatches(true, 0, address, 0, address.length())
+                && workerName.charAt(address.length()) == '.') {
+            return workerName.substring(address.length() + 1);
+        }
+        return workerName.isEmpty() ? "?" : workerName;
+    }
+
+    AddressStats copy() {
+        AddressStats copy = new AddressStats(address);
+        copy.hashrate = hashrate;
+        copy.shares = shares;
+        copy.bestEver = bestEver;
+        copy.bestDate = bestDate;
+        copy.updatedAt = updatedAt;
+        // Workers are immutable, so the array is replaced rather than changed
+        copy.workers = workers;
+        return copy;
+    }
+}
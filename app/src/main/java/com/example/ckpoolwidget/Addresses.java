@@ -0,0 +1,51 @@
+package com.example.ckpoolwidget;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The payout addresses kept in {@link CKPoolWidget#PREF_BITCOIN_ADDRESS}: one or more
+ * addresses separated by whitespace or commas, so a value saved by older versions reads
+ * as a list of one.
+ */
+final class Addresses {
+
+    private Addresses() {
+    }
+
+    // In the order entered, without duplicates; bech32 addresses compare case-insensitively
+    static String[] parse(String text) {
+        if (text == null) {
+            return new String[0];
+        }
+        Set<String> addresses = new LinkedHashSet<>();
+        for (String part : text.split("[\\s,]+")) {
+            if (part.isEmpty()) {
+                continue;
+            }
+            String lower = part.toLowerCase(Locale.US);
+            addresses.add(lower.startsWith("bc1") || lower.startsWith("tb1") ? lower : part);
+        }
+        return addresses.toArray(new String[0]);
+    }
+
+    static String join(String[] addresses) {
+        StringBuilder text = new StringBuilder();
+        for (String address : addresses) {
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            text.append(address);
+        }
+        return text.toString();
+    }
+
+    // "bc1qxy…0wlh" for lists and pickers
+    static String label(String address) {
+        if (address.length() <= 14) {
+            return address;
+        }
+        return address.substring(0, 6) + "…" + address.substring(address.length() - 4);
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.ckpoolwidget;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Turns the results of each refresh cycle into alerts: a new best share, a new SoloCK
+ * block, the hashrate dropping well below its 24-hour average, and workers going offline.
+ *
+ * It runs once per cycle on the shared snapshot, not per widget, and everything it has
+ * already announced is kept in {@link WidgetState}, so each event is reported once however
+ * many widgets there are and however often they refresh. Hashrate drops and offline workers
+ * are only suspected on the first poll that shows them and reported if the next poll still
+ * does; {@link WidgetState#alertPending} asks for that poll early. A reported anomaly isn't
+ * reported again within {@link #REPEAT_INTERVAL_MS}, so a flapping miner doesn't buzz the
+ * phone every few minutes.
+ */
+final class AlertDetector {
+
+    static final int NEW_BEST = 0;
+    static final int POOL_BLOCK = 1;
+    static final int HASHRATE_DROP = 2;
+    static final int WORKERS_OFFLINE = 3;
+
+    // Below this fraction of the 24-hour average the hashrate counts as dropped
+    static final double DROP_RATIO = 0.5;
+    // Back above this fraction of the average it was measured against, the drop is over
+    static final double RECOVERED_RATIO = 0.8;
+    static final long REPEAT_INTERVAL_MS = 60 * 60 * 1000L;
+
+    private static final String SEPARATOR = "\n";
+
+    static final class Alert {
+        final int type;
+        final String title;
+        final String text;
+
+        Alert(int type, String title, String text) {
+            this.type = type;
+            this.title = title;
+            this.text = text;
+        }
+    }
+
+    static final class Result {
+        final List<Alert> raised = new ArrayList<>();
+        // Types whose earlier alert no longer applies
+        final List<Integer> cleared = new ArrayList<>();
+    }
+
+    private AlertDetector() {
+    }
+
+    /**
+     * Checks one refresh cycle and records what was announced in {@code state}.
+     *
+     * @param averageHashrate farm hashrate averaged over the last day, 0 if unknown
+     * @param poolHeight highest SoloCK block in the local index, -1 if none
+     */
+    static Result detect(WidgetState state, WidgetSnapshot snapshot, double averageHashrate,
+                         int poolHeight, long now) {
+        Result result = new Result();
+        if (snapshot.setupRequired) {
+            state.alertPending = false;
+            return result;
+        }
+
+        // The first values seen are the baseline, not news
+        if (state.alertedBest == 0) {
+            state.alertedBest = state.bestEver;
+        } else if (state.bestEver > state.alertedBest) {
+            state.alertedBest = state.bestEver;
+            result.raised.add(new Alert(NEW_BEST, "New best share",
+                    StatsFormatter.formatNumber(state.bestEver)));
+        }
+        if (poolHeight > 0) {
+            if (state.alertedPoolHeight == 0) {
+                state.alertedPoolHeight = poolHeight;
+            } else if (poolHeight > state.alertedPoolHeight) {
+                state.alertedPoolHeight = poolHeight;
+                result.raised.add(new Alert(POOL_BLOCK, "SoloCK found a block",
+                        "Block " + poolHeight));
+            }
+        }
+
+        if (!snapshot.live) {
+            // Cached stats say nothing about the miners; wait for a poll that answers
+            state.alertPending = false;
+            return result;
+        }
+        boolean dropPending = checkHashrate(state, Hashrate.parse(snapshot.hashrate),
+                averageHashrate, now, result);
+        boolean workersPending = checkWorkers(state, now, result);
+        state.alertPending = dropPending || workersPending;
+        return result;
+    }
+
+    // True while a drop is suspected but not yet confirmed
+    private static boolean checkHashrate(WidgetState state, double hashrate, double average,
+                                         long now, Result result) {
+        if (state.dropBaseline > 0) {
+            if (hashrate >= state.dropBaseline * RECOVERED_RATIO) {
+                // Recovered, or it was only a dip
+                if (state.dropAlerted) {
+                    result.cleared.add(HASHRATE_DROP);
+                }
+                state.dropBaseline = 0;
+                state.dropAlerted = false;
+                return false;
+            }
+            if (!state.dropAlerted) {
+                // Second poll in a row below the average: confirmed
+                state.dropAlerted = true;
+                if (now - state.dropAlertedAt >= REPEAT_INTERVAL_MS) {
+                    state.dropAlertedAt = now;
+                    result.raised.add(new Alert(HASHRATE_DROP, "Hashrate dropped",
+                            StatsFormatter.formatHashrate(hashrate) + ", 24h average "
+                                    + StatsFormatter.formatHashrate(state.dropBaseline)));
+                }
+            }
+            return false;
+        }
+        if (average > 0 && hashrate < average * DROP_RATIO) {
+            state.dropBaseline = average;
+            return true;
+        }
+        return false;
+    }
+
+    // True while workers are suspected offline but not yet confirmed
+    private static boolean checkWorkers(WidgetState state, long now, Result result) {
+        Set<String> offline = offlineWorkers(state);
+        Set<String> alerted = split(state.offlineAlerted);
+        Set<String> suspected = split(state.offlineSuspected);
+
+        // Back online
+        if (alerted.retainAll(offline) && alerted.isEmpty()) {
+            result.cleared.add(WORKERS_OFFLINE);
+        }
+        List<String> confirmed = new ArrayList<>();
+        Set<String> stillSuspected = new LinkedHashSet<>();
+        for (String worker : offline) {
+            if (alerted.contains(worker)) {
+                continue;
+            }
+            if (suspected.contains(worker)) {
+                confirmed.add(worker);
+            } else {
+                stillSuspected.add(worker);
+            }
+        }
+        if (!confirmed.isEmpty()) {
+            alerted.addAll(confirmed);
+            if (now - state.offlineAlertedAt >= REPEAT_INTERVAL_MS) {
+                state.offlineAlertedAt = now;
+                result.raised.add(new Alert(WORKERS_OFFLINE,
+                        confirmed.size() == 1 ? "Worker offline"
+                                : confirmed.size() + " workers offline",
+                        join(confirmed, ", ")));
+            }
+        }
+        state.offlineAlerted = join(alerted, SEPARATOR);
+        state.offlineSuspected = join(stillSuspected, SEPARATOR);
+        return !stillSuspected.isEmpty();
+    }
+
+    // Workers ckpool still lists but that have stopped submitting shares
+    private static Set<String> offlineWorkers(WidgetState state) {
+        Set<String> offline = new LinkedHashSet<>();
+        boolean several = state.addresses.size() > 1;
+        for (AddressStats stats : state.addresses) {
+            for (AddressStats.Worker worker : stats.workers) {
+                if (Hashrate.parse(worker.hashrate) > 0) {
+                    continue;
+                }
+                String name = worker.name.equals(stats.address)
+                        ? Addresses.label(stats.address) : worker.name;
+                offline.add(several && !name.equals(Addresses.label(stats.address))
+                        ? Addresses.label(stats.address) + " " + name : name);
+            }
+        }
+        return offline;
+    }
+
+    private static Set<String> split(String joined) {
+        if (joined == null || joined.isEmpty()) {
+            return new LinkedHashSet<>();
+        }
+        return new LinkedHashSet<>(Arrays.asList(joined.split(SEPARATOR)));
+    }
+
+    private static String join(Iterable<String> values, String separator) {
+        StringBuilder joined = new StringBuilder();
+        for (String value : values) {
+            if (joined.length() > 0) {
+                joined.append(separator);
+            }
+            joined.append(value);
+        }
+        return joined.toString();
+    }
+}
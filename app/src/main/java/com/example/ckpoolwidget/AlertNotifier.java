@@ -0,0 +1,89 @@
+package com.example.ckpoolwidget;
+
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Build;
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+
+/**
+ * Posts the alerts {@link AlertDetector} finds, when they're switched on
+ * ({@link #PREF_ALERTS}).
+ *
+ * Runs at the end of every refresh cycle. Each alert type has one notification that a new
+ * alert replaces and that is removed once the anomaly behind it is over. The detector runs
+ * even with alerts off, so turning them on doesn't announce a best share from last week.
+ */
+final class AlertNotifier {
+
+    static final String PREF_ALERTS = "alerts";
+    static final String CHANNEL_ID = "alerts";
+
+    // Notification id per AlertDetector type
+    private static final int[] NOTIFICATION_IDS = {1, 2, 3, 4};
+
+    private AlertNotifier() {
+    }
+
+    static void onRefreshed(Context context, SharedPreferences prefs, WidgetStateStore stateStore,
+                            WidgetSnapshot snapshot, double averageHashrate, int poolHeight) {
+        boolean enabled = prefs.getBoolean(PREF_ALERTS, false);
+        long now = System.currentTimeMillis();
+        AlertDetector.Result[] result = new AlertDetector.Result[1];
+        stateStore.update(state -> {
+            result[0] = AlertDetector.detect(state, snapshot, averageHashrate, poolHeight, now);
+            if (!enabled) {
+                // Nobody to tell; don't poll early for it either
+                state.alertPending = false;
+            }
+        });
+        if (!enabled) {
+            return;
+        }
+        NotificationManagerCompat manager = NotificationManagerCompat.from(context);
+        for (int type : result[0].cleared) {
+            manager.cancel(NOTIFICATION_IDS[type]);
+        }
+        if (result[0].raised.isEmpty() || !manager.areNotificationsEnabled()) {
+            return;
+        }
+        createChannel(context);
+        PendingIntent openApp = PendingIntent.getActivity(context, 0,
+                new Intent(context, MainActivity.class),
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        for (AlertDetector.Alert alert : result[0].raised) {
+            try {
+                manager.notify(NOTIFICATION_IDS[alert.type],
+                        new NotificationCompat.Builder(context, CHANNEL_ID)
+                                .setSmallIcon(R.drawable.ic_notification)
+                                .setContentTitle(alert.title)
+                                .setContentText(alert.text)
+                                .setContentIntent(openApp)
+                                .setAutoCancel(true)
+                                .setWhen(now)
+                                .setShowWhen(true)
+                                .setPriority(NotificationCompat.PRIORITY_DEFAULT)
+                                .build());
+            } catch (SecurityException e) {
+                // Permission revoked since the check above
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static void createChannel(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return;
+        }
+        NotificationManager manager = context.getSystemService(NotificationManager.class);
+        if (manager != null) {
+            // No-op once it exists
+            manager.createNotificationChannel(new NotificationChannel(CHANNEL_ID,
+                    "Mining alerts", NotificationManager.IMPORTANCE_DEFAULT));
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.ckpoolwidget;
+
+import org.json.JSONObject;
+
+/**
+ * One reading of a Bitaxe or other AxeOS device, from its {@code /api/system/info}.
+ */
+final class AxeDevice {
+
+    // "192.168.1.50", or host:port
+    final String host;
+    final String hostname;
+    final String model;
+    // Stratum user the device mines to, "<address>.<worker>"
+    final String stratumUser;
+    // Hashes per second
+    final double hashrate;
+    // ASIC temperature in °C
+    final double temperature;
+    final String bestDiff;
+    final long uptimeSeconds;
+    // When the reading was taken (epoch millis)
+    final long fetchedAt;
+
+    AxeDevice(String host, String hostname, String model, String stratumUser, double hashrate,
+              double temperature, String bestDiff, long uptimeSeconds, long fetchedAt) {
+        this.host = host;
+        this.hostname = hostname;
+        this.model = model;
+        this.stratumUser = stratumUser;
+        this.hashrate = hashrate;
+        this.temperature = temperature;
+        this.bestDiff = bestDiff;
+        this.uptimeSeconds = uptimeSeconds;
+        this.fetchedAt = fetchedAt;
+    }
+
+    /**
+     * Reads an AxeOS system info response, or returns null if it doesn't look like one.
+     */
+    static AxeDevice parse(String host, JSONObject info, long now) {
+        if (!info.has("hashRate") || !(info.has("ASICModel") || info.has("hostname"))) {
+            return null;
+        }
+        // Older firmware reports the best difficulty pre-formatted ("4.29G"), newer as a number
+        Object best = info.opt("bestDiff");
+        String bestDiff = best instanceof Number
+                ? StatsFormatter.formatNumber(((Number) best).doubleValue())
+                : best != null ? best.toString() : "";
+        return new AxeDevice(host, info.optString("hostname", host),
+                info.optString("ASICModel", ""), info.optString("stratumUser", ""),
+                info.optDouble("hashRate", 0) * 1e9, info.optDouble("temp", 0), bestDiff,
+                info.optLong("uptimeSeconds", 0), now);
+    }
+
+    // True if this device mines to the given payout address
+    boolean minesTo(String address) {
+        int dot = stratumUser.indexOf('.');
+        String user = dot >= 0 ? stratumUser.substring(0, dot) : stratumUser;
+        return user.equalsIgnoreCase(address);
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.ckpoolwidget;
+
+import org.json.JSONObject;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Talks to Bitaxe and other AxeOS miners on the local network over their HTTP API.
+ *
+ * A scan probes every host of the phone's Wi-Fi subnet with a short timeout, at most
+ * {@link #MAX_PARALLEL_PROBES} at a time, so a /24 is covered in a few seconds. Devices that
+ * were found are then polled in parallel for live readings, which are seconds old instead
+ * of ckpool's 5-minute average.
+ */
+final class AxeOs {
+
+    static final String INFO_PATH = "/api/system/info";
+    static final long PROBE_TIMEOUT_MS = 500;
+    static final int MAX_PARALLEL_PROBES = 32;
+    static final int MAX_PARALLEL_POLLS = 8;
+    // Off the home network the devices don't answer; don't hold up the refresh for them
+    static final long POLL_TIMEOUT_MS = 3000;
+
+    private final HttpClient httpClient;
+    private final ExecutorService executor;
+    private final EndpointMetrics.Endpoint metrics;
+
+    AxeOs(HttpClient httpClient, ExecutorService executor, EndpointMetrics.Endpoint metrics) {
+        this.httpClient = httpClient;
+        this.executor = executor;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Probes every host and returns the AxeOS devices that answered, in host order.
+     */
+    List<AxeDevice> scan(String[] hosts) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(
+                PROBE_TIMEOUT_MS * ((hosts.length + MAX_PARALLEL_PROBES - 1) / MAX_PARALLEL_PROBES + 1));
+        // Probes to empty addresses would swamp the metrics, so they aren't recorded
+        AtomicReferenceArray<AxeDevice> found = readAll(hosts, MAX_PARALLEL_PROBES,
+                PROBE_TIMEOUT_MS, deadline, null);
+        List<AxeDevice> devices = new ArrayList<>();
+        for (int i = 0; i < hosts.length; i++) {
+            if (found.get(i) != null) {
+                devices.add(found.get(i));
+            }
+        }
+        return devices;
+    }
+
+    /**
+     * Reads every device before {@code deadline}, a {@link System#nanoTime()} value. Devices
+     * that didn't answer are null.
+     */
+    AxeDevice[] poll(String[] hosts, long deadline) {
+        AtomicReferenceArray<AxeDevice> read = readAll(hosts, MAX_PARALLEL_POLLS,
+                POLL_TIMEOUT_MS, deadline, metrics);
+        AxeDevice[] devices = new AxeDevice[hosts.length];
+        for (int i = 0; i < devices.length; i++) {
+            devices[i] = read.get(i);
+        }
+        return devices;
+    }
+
+    // Each task takes the next host until none are left; every call gets at most callTimeoutMs
+    private AtomicReferenceArray<AxeDevice> readAll(String[] hosts, int parallelism,
+                                                    long callTimeoutMs, long deadline,
+                                                    EndpointMetrics.Endpoint recordTo) {
+        AtomicReferenceArray<AxeDevice> results = new AtomicReferenceArray<>(hosts.length);
+        AtomicInteger next = new AtomicInteger();
+        Future<?>[] tasks = new Future<?>[Math.min(hosts.length, parallelism)];
+        for (int t = 0; t < tasks.length; t++) {
+            tasks[t] = executor.submit(() -> {
+                int i;
+                while (System.nanoTime() - deadline < 0
+                        && (i = next.getAndIncrement()) < hosts.length) {
+                    String host = hosts[i];
+                    long callDeadline = Math.min(deadline,
+                            System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(callTimeoutMs));
+                    try {
+                        JSONObject info = httpClient.get("http://" + host + INFO_PATH,
+                                callDeadline, body -> new JSONObject(httpClient.readText(body)),
+                                recordTo);
+                        results.set(i, AxeDevice.parse(host, info, System.currentTimeMillis()));
+                    } catch (Exception e) {
+                        // Nothing there, or not answering right now
+                    }
+                }
+            });
+        }
+        for (Future<?> task : tasks) {
+            try {
+                task.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                task.cancel(true);
+            } catch (InterruptedException e) {
+                task.cancel(true);
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        httpClient.cancelExpired();
+        return results;
+    }
+
+    // The hosts kept in CKPoolWidget.PREF_AXE_DEVICES; a pasted "http://host/" is accepted too
+    static String[] parseHosts(String text) {
+        if (text == null) {
+            return new String[0];
+        }
+        Set<String> hosts = new LinkedHashSet<>();
+        for (String part : text.split("[\\s,]+")) {
+            String host = part.toLowerCase(Locale.US);
+            if (host.startsWith("http://")) {
+                host = host.substring("http://".length());
+            }
+            int slash = host.indexOf('/');
+            if (slash >= 0) {
+                host = host.substring(0, slash);
+            }
+            if (!host.isEmpty()) {
+                hosts.add(host);
+            }
+        }
+        return hosts.toArray(new String[0]);
+    }
+
+    static String joinHosts(List<AxeDevice> devices) {
+        StringBuilder text = new StringBuilder();
+        for (AxeDevice device : devices) {
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            text.append(device.host);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Hosts of the first site-local IPv4 network this device is on, empty if there is none.
+     */
+    static String[] localSubnetHosts() throws SocketException {
+        for (NetworkInterface network : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+            if (!network.isUp() || network.isLoopback()) {
+                continue;
+            }
+            for (InterfaceAddress interfaceAddress : network.getInterfaceAddresses()) {
+                InetAddress address = interfaceAddress.getAddress();
+                if (address instanceof Inet4Address && address.isSiteLocalAddress()) {
+                    return subnetHosts(address.getAddress(),
+                            interfaceAddress.getNetworkPrefixLength());
+                }
+            }
+        }
+        return new String[0];
+    }
+
+    /**
+     * Every other host address of the subnet around {@code address}. Networks larger than
+     * a /24 are narrowed to the /24 the address is in.
+     */
+    static String[] subnetHosts(byte[] address, int prefixLength) {
+        int prefix = Math.max(24, Math.min(32, prefixLength));
+        int ip = ((address[0] & 0xff) << 24) | ((address[1] & 0xff) << 16)
+                | ((address[2] & 0xff) << 8) | (address[3] & 0xff);
+        int network = ip & (-1 << (32 - prefix));
+        int size = 1 << (32 - prefix);
+        List<String> hosts = new ArrayList<>(size);
+        // Skips the network and broadcast addresses
+        for (int i = 1; i < size - 1; i++) {
+            int host = network + i;
+            if (host != ip) {
+                hosts.add(((host >>> 24) & 0xff) + "." + ((host >>> 16) & 0xff) + "."
+                        + ((host >>> 8) & 0xff) + "." + (host & 0xff));
+            }
+        }
+        return hosts.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.ckpoolwidget;
+
+/**
+ * Solo-mining odds from a hashrate and the network difficulty.
+ *
+ * A share of difficulty 1 takes 2^32 hashes on average, so a block at difficulty D takes
+ * D * 2^32. Hashes are independent tries, which makes blocks a Poisson process: the chance
+ * of at least one block in t seconds is 1 - e^(-t * hashrate / (D * 2^32)). Nothing here
+ * touches the network; the inputs come from the last poll and the cached difficulty.
+ */
+final class BlockOdds {
+
+    static final double HASHES_PER_DIFFICULTY = 4294967296.0;
+    static final long DAY_SECONDS = 86400;
+    static final long MONTH_SECONDS = 30 * DAY_SECONDS;
+    static final long YEAR_SECONDS = 365 * DAY_SECONDS;
+
+    // Hashes per second
+    final double hashrate;
+    final double difficulty;
+    final long bestEver;
+
+    BlockOdds(double hashrate, double difficulty, long bestEver) {
+        this.hashrate = hashrate;
+        this.difficulty = difficulty;
+        this.bestEver = bestEver;
+    }
+
+    // False until there is both a hashrate and a network difficulty
+    boolean isKnown() {
+        return hashrate > 0 && difficulty > 0;
+    }
+
+    // Mean time to a block; infinite without hashrate
+    double expectedSeconds() {
+        return difficulty * HASHES_PER_DIFFICULTY / hashrate;
+    }
+
+    // Chance of at least one block within the given time
+    double chance(long seconds) {
+        // expm1 keeps the precision for the tiny odds of a single miner
+        return -Math.expm1(-seconds * hashrate / (difficulty * HASHES_PER_DIFFICULTY));
+    }
+
+    // How close the best share came to a block; 1 or more would have been one
+    double bestRatio() {
+        return difficulty > 0 ? bestEver / difficulty : 0;
+    }
+}
@@ -0,0 +1,270 @@
+package com.example.ckpoolwidget;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.PowerManager;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Live new-block notifications from the mempool.space WebSocket, for the optional live
+ * mode ({@link #PREF_LIVE_BLOCKS}).
+ *
+ * One subscription to {@code blocks} is kept per process, and only while something wants
+ * it: the app while it's in front ({@link #acquire}/{@link #release}), and the widget for
+ * {@link #WIDGET_LEASE_MS} after each refresh with the screen on ({@link #extend}). Dropped
+ * connections are retried with jittered exponential backoff, so phones that lose the
+ * network together don't all reconnect in the same second. A SoloCK block the index
+ * doesn't have yet triggers a widget refresh with the block list due, so the widget shows
+ * it seconds after it's mined; the regular poll stays in place for when the subscription
+ * isn't running.
+ */
+final class BlockStream {
+
+    interface Listener {
+        // A SoloCK block at this height was seen; called on the stream thread
+        void onPoolBlock(int height);
+    }
+
+    static final String PREF_LIVE_BLOCKS = "live_blocks";
+    static final String MEMPOOL_WS_URL = "wss://mempool.space/api/v1/ws";
+    // Matches the pool in SnapshotFetcher.POOL_BLOCKS_URL
+    static final String POOL_SLUG = "solock";
+    static final String SUBSCRIBE = "{\"action\":\"want\",\"data\":[\"blocks\"]}";
+
+    static final int CONNECT_TIMEOUT_MS = 10000;
+    // Quiet this long and the connection is checked with a ping
+    static final long PING_INTERVAL_MS = 30000;
+    static final long BASE_BACKOFF_MS = 1000;
+    static final long MAX_BACKOFF_MS = 5 * 60 * 1000;
+    static final long WIDGET_LEASE_MS = 15 * 60 * 1000;
+
+    private static BlockStream instance;
+
+    private final String url;
+    private final Listener listener;
+    private final Random random;
+    private final long pingIntervalMillis;
+
+    // Guarded by this
+    private int holders;
+    private long leaseEnd = System.nanoTime();
+    private Thread thread;
+    private WebSocketClient socket;
+
+    BlockStream(String url, Listener listener, Random random, long pingIntervalMillis) {
+        this.url = url;
+        this.listener = listener;
+        this.random = random;
+        this.pingIntervalMillis = pingIntervalMillis;
+    }
+
+    static synchronized BlockStream get(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            instance = new BlockStream(MEMPOOL_WS_URL, height -> {
+                if (height <= PoolBlockIndex.get(appContext).maxHeight()) {
+                    return;
+                }
+                // Due now instead of after POOL_BLOCKS_TTL_MS; the refresh syncs the index
+                WidgetStateStore.get(appContext).update(state -> state.poolSyncedAt = 0);
+                appContext.sendBroadcast(new Intent(appContext, CKPoolWidget.class)
+                        .setAction(CKPoolWidget.ACTION_UPDATE));
+            }, new Random(), PING_INTERVAL_MS);
+        }
+        return instance;
+    }
+
+    static boolean isEnabled(SharedPreferences prefs) {
+        return prefs.getBoolean(PREF_LIVE_BLOCKS, false);
+    }
+
+    // After a widget refresh: keep listening for a while if live mode is on and the screen is
+    static void onWidgetRefreshed(Context context, SharedPreferences prefs) {
+        if (!isEnabled(prefs)) {
+            return;
+        }
+        PowerManager power = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        if (power != null && power.isInteractive()) {
+            get(context).extend(WIDGET_LEASE_MS);
+        }
+    }
+
+    synchronized void acquire() {
+        holders++;
+        startIfNeeded();
+    }
+
+    synchronized void release() {
+        holders = Math.max(0, holders - 1);
+        stopIfUnwanted();
+    }
+
+    // Keeps the subscription for at least durationMillis from now
+    synchronized void extend(long durationMillis) {
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        if (end - leaseEnd > 0) {
+            leaseEnd = end;
+        }
+        startIfNeeded();
+    }
+
+    synchronized boolean isRunning() {
+        return thread != null;
+    }
+
+    private boolean wanted() {
+        return holders > 0 || System.nanoTime() - leaseEnd < 0;
+    }
+
+    private void startIfNeeded() {
+        if (thread == null && wanted()) {
+            thread = new Thread(this::run, "block-stream");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void stopIfUnwanted() {
+        if (thread != null && !wanted()) {
+            // Unblocks the reader; the thread sees it isn't wanted and exits
+            thread.interrupt();
+            if (socket != null) {
+                socket.close();
+            }
+        }
+    }
+
+    private void run() {
+        int failures = 0;
+        while (true) {
+            WebSocketClient connection;
+            synchronized (this) {
+                if (!wanted()) {
+                    thread = null;
+                    return;
+                }
+            }
+            try {
+                connection = WebSocketClient.connect(url, CONNECT_TIMEOUT_MS);
+                synchronized (this) {
+                    if (!wanted()) {
+                        connection.close();
+                        continue;
+                    }
+                    socket = connection;
+                }
+                if (listen(connection)) {
+                    failures = 0;
+                }
+            } catch (IOException e) {
+                // Retried below; polling covers the gap
+            } finally {
+                synchronized (this) {
+                    if (socket != null) {
+                        socket.close();
+                        socket = null;
+                    }
+                }
+            }
+            failures++;
+            if (!sleepUnlessStopped(backoffMillis(failures, random.nextDouble()))) {
+                // Stopped, or the process is going away
+                synchronized (this) {
+                    if (!wanted()) {
+                        thread = null;
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    // Reads messages until the connection ends; true if anything arrived
+    private boolean listen(WebSocketClient connection) throws IOException {
+        connection.send(SUBSCRIBE);
+        connection.setReadTimeout((int) pingIntervalMillis);
+        long pingInterval = TimeUnit.MILLISECONDS.toNanos(pingIntervalMillis);
+        boolean received = false;
+        while (true) {
+            synchronized (this) {
+                if (!wanted()) {
+                    return received;
+                }
+            }
+            String message;
+            try {
+                message = connection.receive();
+            } catch (SocketTimeoutException e) {
+                // Idle between frames; a stall inside one fails the connection instead
+                if (System.nanoTime() - connection.lastFrameNanos() > 2 * pingInterval) {
+                    throw new IOException("No answer to ping from " + url);
+                }
+                connection.ping();
+                continue;
+            }
+            if (message == null) {
+                return received;
+            }
+            received = true;
+            handle(message);
+        }
+    }
+
+    // {"block": {...}} for each new block, {"blocks": [...]} with the latest few on subscribing
+    void handle(String message) {
+        try {
+            JSONObject json = new JSONObject(message);
+            JSONObject block = json.optJSONObject("block");
+            if (block != null) {
+                report(block);
+            }
+            JSONArray blocks = json.optJSONArray("blocks");
+            if (blocks != null) {
+                for (int i = 0; i < blocks.length(); i++) {
+                    JSONObject recent = blocks.optJSONObject(i);
+                    if (recent != null) {
+                        report(recent);
+                    }
+                }
+            }
+        } catch (JSONException e) {
+            // Not a message we asked for
+        }
+    }
+
+    private void report(JSONObject block) {
+        JSONObject extras = block.optJSONObject("extras");
+        JSONObject pool = extras != null ? extras.optJSONObject("pool") : null;
+        if (pool != null && POOL_SLUG.equals(pool.optString("slug")) && block.has("height")) {
+            listener.onPoolBlock(block.optInt("height"));
+        }
+    }
+
+    // Waits out a backoff; false if interrupted by a stop
+    private boolean sleepUnlessStopped(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Delay before reconnect attempt {@code failures}: exponential from
+     * {@link #BASE_BACKOFF_MS} up to {@link #MAX_BACKOFF_MS}, of which a random half is
+     * jittered. {@code random} is in [0, 1).
+     */
+    static long backoffMillis(int failures, double random) {
+        int doublings = Math.min(Math.max(failures - 1, 0), 20);
+        long ceiling = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << doublings);
+        return ceiling / 2 + (long) (random * (ceiling / 2));
+    }
+}
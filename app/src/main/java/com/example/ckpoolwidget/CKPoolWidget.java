@@ -7,46 +7,85 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.os.Handler;
-import android.os.Looper;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Process;
+import android.os.SystemClock;
+import android.view.View;
 import android.widget.RemoteViews;
-import org.json.JSONObject;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 public class CKPoolWidget extends AppWidgetProvider {
 
-    private static final String PREF_BITCOIN_ADDRESS = "bitcoin_address";
-    private static final String PREFS_NAME = "CKPoolWidgetPrefs";
-    private static final String PREF_BEST_EVER = "best_ever";
-    private static final String PREF_BEST_DATE = "best_date";
-
-    // Cache keys for last known good data
-    private static final String PREF_LAST_HASHRATE = "last_hashrate";
-    private static final String PREF_LAST_SHARES = "last_shares";
-    private static final String PREF_LAST_BTC_PRICE = "last_btc_price";
-    private static final String PREF_LAST_POOL_INFO = "last_pool_info";
-
+    static final String PREF_BITCOIN_ADDRESS = "bitcoin_address";
+    static final String PREFS_NAME = "CKPoolWidgetPrefs";
+    // Broadcast by a widget tap and by BlockStream; refreshes every widget
+    static final String ACTION_UPDATE = "com.example.ckpoolwidget.UPDATE";
+    // Followed by the widget id; the address that widget shows, absent for the farm totals
+    static final String PREF_WIDGET_ADDRESS = "widget_address_";
+    // Base URL of a self-hosted ckpool's users directory; empty for solo.ckpool.org
+    static final String PREF_CKPOOL_URL = "ckpool_url";
+    // AxeOS miners on the LAN, one host per line
+    static final String PREF_AXE_DEVICES = "axe_devices";
+    // ISO 4217 code of the price currency; per widget when followed by the widget id
+    static final String PREF_CURRENCY = "currency";
+    static final String PREF_WIDGET_CURRENCY = "widget_currency_";
+
+    // Runs refresh cycles; the endpoint calls of a cycle run in parallel on networkExecutor
     private static ExecutorService executorService = Executors.newSingleThreadExecutor();
+    private static ExecutorService networkExecutor = Executors.newCachedThreadPool();
+    private static RefreshCoordinator coordinator;
+    private static SnapshotFetcher fetcher;
+    // Last snapshot pushed, redrawn as-is when only display settings change
+    private static volatile WidgetSnapshot lastSnapshot;
+
+    private static final SparklineRenderer sparklines = new SparklineRenderer();
+
+    // Views behind WidgetViewState's text and color slots
+    private static final int[] TEXT_VIEWS = {R.id.hashrate_text, R.id.shares_text,
+            R.id.best_text, R.id.best_date_text, R.id.top_info_text, R.id.stale_text,
+            R.id.odds_text};
+    private static final int[] COLOR_VIEWS = {R.id.hashrate_text, R.id.shares_text,
+            R.id.best_text};
+
+    // Per-instance config and RemoteViews template, guarded by pushLock. Configs are
+    // dropped when a preference or the widget's size changes; templates only when the
+    // layout or the shown metrics do.
+    private static final Map<Integer, WidgetConfig> configs = new HashMap<>();
+    private static final Map<Integer, RemoteViews> templates = new HashMap<>();
+    private static final Map<Integer, Integer> templateKeys = new HashMap<>();
+    // Held here because SharedPreferences only keeps a weak reference
+    private static SharedPreferences.OnSharedPreferenceChangeListener configListener;
+
+    // Cold-start frames and refresh results are pushed one at a time, so a cached frame
+    // can never land on top of fresh data
+    private static final Object pushLock = new Object();
+    private static final RenderTimer renderTimer =
+            new RenderTimer(Process.getStartElapsedRealtime());
 
     @Override
     public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
-        for (int appWidgetId : appWidgetIds) {
-            updateAppWidget(context, appWidgetManager, appWidgetId);
-        }
+        RefreshCoordinator coordinator = getCoordinator(context);
+        renderTimer.requested(SystemClock.elapsedRealtime());
+        applyCachedSnapshot(context, appWidgetManager, appWidgetIds);
+
+        // Keep the process alive until the refresh lands; null when not called from onReceive
+        PendingResult pendingResult = goAsync();
+
+        // One fetch per refresh, shared by every widget instance
+        coordinator.requestRefresh(appWidgetIds, pendingResult == null ? null
+                : pendingResult::finish);
     }
 
     @Override
     public void onReceive(Context context, Intent intent) {
         super.onReceive(context, intent);
-        if (intent.getAction() != null && intent.getAction().equals("com.example.ckpoolwidget.UPDATE")) {
+        if (ACTION_UPDATE.equals(intent.getAction())) {
             AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
             int[] appWidgetIds = appWidgetManager.getAppWidgetIds(
                     new ComponentName(context, CKPoolWidget.class));
@@ -54,257 +93,298 @@ public class CKPoolWidget extends AppWidgetProvider {
         }
     }
 
-    static void updateAppWidget(Context context, AppWidgetManager appWidgetManager, int appWidgetId) {
-        RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.widget_layout);
-
-        // Load colors from settings
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        String rateColor = prefs.getString("rate_color", "#00FF00");
-        String sharesColor = prefs.getString("shares_color", "#00BFFF");
-        String bestColor = prefs.getString("best_color", "#FFD700");
-
-        // Apply colors to widget
-        try {
-            views.setTextColor(R.id.hashrate_text, android.graphics.Color.parseColor(rateColor));
-            views.setTextColor(R.id.shares_text, android.graphics.Color.parseColor(sharesColor));
-            views.setTextColor(R.id.best_text, android.graphics.Color.parseColor(bestColor));
-        } catch (Exception e) {
-            // Invalid color, use defaults
+    @Override
+    public void onDeleted(Context context, int[] appWidgetIds) {
+        SharedPreferences.Editor editor =
+                context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit();
+        for (int appWidgetId : appWidgetIds) {
+            WidgetPushTracker.shared().forget(appWidgetId);
+            editor.remove(PREF_WIDGET_ADDRESS + appWidgetId);
+            editor.remove(PREF_WIDGET_CURRENCY + appWidgetId);
+            editor.remove(WidgetConfig.PREF_WIDGET_COLORS + appWidgetId);
+            editor.remove(WidgetConfig.PREF_WIDGET_METRICS + appWidgetId);
+        }
+        editor.apply();
+        synchronized (pushLock) {
+            for (int appWidgetId : appWidgetIds) {
+                configs.remove(appWidgetId);
+                templates.remove(appWidgetId);
+                templateKeys.remove(appWidgetId);
+            }
         }
-
-        // Set up click to manually refresh
-        Intent intent = new Intent(context, CKPoolWidget.class);
-        intent.setAction("com.example.ckpoolwidget.UPDATE");
-        PendingIntent pendingIntent = PendingIntent.getBroadcast(context, 0, intent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
-        views.setOnClickPendingIntent(R.id.widget_root, pendingIntent);
-
-        appWidgetManager.updateAppWidget(appWidgetId, views);
-
-        // Fetch data in background
-        fetchDataFromCKPool(context, appWidgetManager, appWidgetId, views);
-        fetchBitcoinPriceAndPoolInfo(context, appWidgetManager, appWidgetId, views);
     }
 
-    private static void fetchDataFromCKPool(Context context, AppWidgetManager appWidgetManager,
-                                            int appWidgetId, RemoteViews views) {
-        executorService.execute(() -> {
-            SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-
+    @Override
+    public void onAppWidgetOptionsChanged(Context context, AppWidgetManager appWidgetManager,
+                                          int appWidgetId, Bundle newOptions) {
+        // Resized: redraw from the last snapshot in the layout for the new size, no fetch
+        synchronized (pushLock) {
+            configs.remove(appWidgetId);
+        }
+        Context appContext = context.getApplicationContext();
+        PendingResult pendingResult = goAsync();
+        networkExecutor.execute(() -> {
             try {
-                // Load Bitcoin address from settings
-                String bitcoinAddress = prefs.getString(PREF_BITCOIN_ADDRESS, "");
-
-                if (bitcoinAddress.isEmpty()) {
-                    new Handler(Looper.getMainLooper()).post(() -> {
-                        views.setTextViewText(R.id.hashrate_text, "Open");
-                        views.setTextViewText(R.id.shares_text, "App");
-                        views.setTextViewText(R.id.best_text, "Setup");
-                        appWidgetManager.updateAppWidget(appWidgetId, views);
-                    });
-                    return;
+                redraw(appContext, new int[] {appWidgetId});
+            } finally {
+                if (pendingResult != null) {
+                    pendingResult.finish();
                 }
+            }
+        });
+    }
 
-                String urlString = "https://solo.ckpool.org/users/" + bitcoinAddress;
-                URL url = new URL(urlString);
-                HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-                connection.setRequestMethod("GET");
-                connection.setConnectTimeout(15000);  // Increased timeout
-                connection.setReadTimeout(15000);      // Increased timeout
+    @Override
+    public void onDisabled(Context context) {
+        // Last widget removed
+        RefreshScheduler.cancel(context);
+    }
 
-                BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(connection.getInputStream()));
-                StringBuilder response = new StringBuilder();
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    response.append(line);
+    static synchronized RefreshCoordinator getCoordinator(Context context) {
+        if (coordinator == null) {
+            Context appContext = context.getApplicationContext();
+            SharedPreferences prefs = appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            configListener = (changed, key) -> {
+                synchronized (pushLock) {
+                    configs.clear();
                 }
-                reader.close();
-
-                String jsonString = response.toString();
-                JSONObject json = new JSONObject(jsonString);
+            };
+            prefs.registerOnSharedPreferenceChangeListener(configListener);
+            WidgetStateStore stateStore = WidgetStateStore.get(appContext);
+            // Each widget gets its own RemoteViews, so the result can be pushed straight
+            // from the refresh thread before the broadcast is finished
+            EndpointMetrics metrics = EndpointMetrics.get(appContext);
+            fetcher = new SnapshotFetcher(prefs, stateStore, PoolBlockIndex.get(appContext),
+                    HashrateHistory.get(appContext), metrics, RateCache.get(appContext),
+                    networkExecutor);
+            coordinator = new RefreshCoordinator(executorService, fetcher,
+                    (snapshot, appWidgetIds) -> {
+                        applySnapshot(appContext, AppWidgetManager.getInstance(appContext),
+                                appWidgetIds, snapshot);
+                        // Once per cycle, however many widgets it refreshed
+                        AlertNotifier.onRefreshed(appContext, prefs, stateStore, snapshot,
+                                fetcher.odds().hashrate,
+                                PoolBlockIndex.get(appContext).maxHeight());
+                        long delay = RefreshScheduler.onRefreshed(appContext, stateStore,
+                                snapshot);
+                        // One write for everything this cycle changed
+                        stateStore.flush();
+                        metrics.save();
+                        BlockStream.onWidgetRefreshed(appContext, prefs);
+                        // Last: it cancels the worker that may be running this cycle
+                        RefreshScheduler.reschedule(appContext, delay);
+                    });
+        }
+        return coordinator;
+    }
 
-                // Get hashrate as string (already formatted)
-                String hashrateStr = json.optString("hashrate5m", "0");
-                long shares = json.optLong("shares", 0);
-                long bestever = json.optLong("bestever", 0);
+    static synchronized SnapshotFetcher getFetcher(Context context) {
+        getCoordinator(context);
+        return fetcher;
+    }
 
-                // Load saved best ever value
-                long savedBestEver = prefs.getLong(PREF_BEST_EVER, 0);
+    /**
+     * Redraws every widget from the last snapshot after a display setting changed, with no
+     * network calls. Only the views that differ are sent to the launcher.
+     */
+    static void redraw(Context context) {
+        Context appContext = context.getApplicationContext();
+        // Called right after a setting changed; don't wait for the preference listener
+        synchronized (pushLock) {
+            configs.clear();
+        }
+        redraw(appContext, AppWidgetManager.getInstance(appContext).getAppWidgetIds(
+                new ComponentName(appContext, CKPoolWidget.class)));
+    }
 
-                // Only update best ever if new value is larger
-                long displayBestEver = Math.max(savedBestEver, bestever);
-                String bestDate = prefs.getString(PREF_BEST_DATE, "");
+    private static void redraw(Context appContext, int[] appWidgetIds) {
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(appContext);
+        if (appWidgetIds.length == 0) {
+            return;
+        }
+        WidgetSnapshot snapshot = lastSnapshot;
+        if (snapshot == null) {
+            snapshot = getFetcher(appContext).cachedSnapshot();
+        }
+        synchronized (pushLock) {
+            pushSnapshot(appContext, appWidgetManager, appWidgetIds, snapshot);
+        }
+    }
 
-                // ONLY save a date if:
-                // 1. We had a previous best saved (savedBestEver > 0)
-                // 2. AND the new value is higher than the saved value
-                if (savedBestEver > 0 && bestever > savedBestEver) {
-                    SharedPreferences.Editor editor = prefs.edit();
-                    editor.putLong(PREF_BEST_EVER, bestever);
-                    // Save current date - we KNOW this is a new record
-                    String currentDate = new SimpleDateFormat("M/d/yy", Locale.getDefault()).format(new Date());
-                    editor.putString(PREF_BEST_DATE, currentDate);
-                    editor.apply();
-                    bestDate = currentDate;
-                    displayBestEver = bestever;
-                } else if (savedBestEver == 0 && bestever > 0) {
-                    // First time seeing a best - save it but NO date
-                    SharedPreferences.Editor editor = prefs.edit();
-                    editor.putLong(PREF_BEST_EVER, bestever);
-                    editor.apply();
-                    displayBestEver = bestever;
-                    // bestDate stays empty - we don't know when this happened
+    // First frame for widgets this process hasn't drawn yet, built from the cached snapshot
+    private static void applyCachedSnapshot(Context context, AppWidgetManager appWidgetManager,
+                                            int[] appWidgetIds) {
+        synchronized (pushLock) {
+            int[] cold = new int[appWidgetIds.length];
+            int n = 0;
+            for (int appWidgetId : appWidgetIds) {
+                if (!WidgetPushTracker.shared().hasPushed(appWidgetId)) {
+                    cold[n++] = appWidgetId;
                 }
-
-                String sharesStr = formatNumber(shares);
-                String bestStr = formatNumber(displayBestEver);
-
-                // Cache the successful data
-                SharedPreferences.Editor editor = prefs.edit();
-                editor.putString(PREF_LAST_HASHRATE, hashrateStr);
-                editor.putString(PREF_LAST_SHARES, sharesStr);
-                editor.apply();
-
-                // Update UI on main thread
-                String finalHashrateStr = hashrateStr;
-                String finalBestDate = bestDate;
-                new Handler(Looper.getMainLooper()).post(() -> {
-                    views.setTextViewText(R.id.hashrate_text, finalHashrateStr);
-                    views.setTextViewText(R.id.shares_text, sharesStr);
-                    views.setTextViewText(R.id.best_text, bestStr);
-                    views.setTextViewText(R.id.best_date_text, finalBestDate);
-                    appWidgetManager.updateAppWidget(appWidgetId, views);
-                });
-
-            } catch (Exception e) {
-                e.printStackTrace();
-
-                // Load cached data instead of showing error
-                String cachedHashrate = prefs.getString(PREF_LAST_HASHRATE, "Error");
-                String cachedShares = prefs.getString(PREF_LAST_SHARES, "Error");
-                long savedBestEver = prefs.getLong(PREF_BEST_EVER, 0);
-                String bestStr = savedBestEver > 0 ? formatNumber(savedBestEver) : "Error";
-                String bestDate = prefs.getString(PREF_BEST_DATE, "");
-
-                new Handler(Looper.getMainLooper()).post(() -> {
-                    views.setTextViewText(R.id.hashrate_text, cachedHashrate);
-                    views.setTextViewText(R.id.shares_text, cachedShares);
-                    views.setTextViewText(R.id.best_text, bestStr);
-                    views.setTextViewText(R.id.best_date_text, bestDate);
-                    appWidgetManager.updateAppWidget(appWidgetId, views);
-                });
             }
-        });
+            if (n > 0) {
+                applySnapshot(context, appWidgetManager, Arrays.copyOf(cold, n),
+                        fetcher.cachedSnapshot());
+            }
+        }
     }
 
-    private static void fetchBitcoinPriceAndPoolInfo(Context context, AppWidgetManager appWidgetManager,
-                                                     int appWidgetId, RemoteViews views) {
-        executorService.execute(() -> {
-            SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-            String bitcoinPrice = "?";
-            String poolBlockInfo = "?";
-
-            // Fetch Bitcoin price
-            try {
-                URL url = new URL("https://api.coinbase.com/v2/prices/BTC-USD/spot");
-                HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-                connection.setRequestMethod("GET");
-                connection.setConnectTimeout(15000);  // Increased timeout
-                connection.setReadTimeout(15000);      // Increased timeout
-
-                BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(connection.getInputStream()));
-                StringBuilder response = new StringBuilder();
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    response.append(line);
+    private static void applySnapshot(Context context, AppWidgetManager appWidgetManager,
+                                      int[] appWidgetIds, WidgetSnapshot snapshot) {
+        synchronized (pushLock) {
+            pushSnapshot(context, appWidgetManager, appWidgetIds, snapshot);
+            lastSnapshot = snapshot;
+        }
+        long[] measured = renderTimer.framePushed(snapshot.live, SystemClock.elapsedRealtime());
+        if (measured[0] >= 0 || measured[1] >= 0) {
+            WidgetStateStore.get(context).update(state -> {
+                if (measured[0] >= 0) {
+                    state.firstRenderMs = measured[0];
                 }
-                reader.close();
-
-                JSONObject json = new JSONObject(response.toString());
-                String price = json.getJSONObject("data").getString("amount");
-                double priceValue = Double.parseDouble(price);
-                bitcoinPrice = String.format(Locale.US, "$%.0fk", priceValue / 1000);
+                if (measured[1] >= 0) {
+                    state.freshRenderMs = measured[1];
+                }
+            });
+        }
+    }
 
-                // Cache successful price
-                prefs.edit().putString(PREF_LAST_BTC_PRICE, bitcoinPrice).apply();
-            } catch (Exception e) {
-                e.printStackTrace();
-                // Use cached price
-                bitcoinPrice = prefs.getString(PREF_LAST_BTC_PRICE, "?");
+    private static void pushSnapshot(Context context, AppWidgetManager appWidgetManager,
+                                     int[] appWidgetIds, WidgetSnapshot snapshot) {
+        HashrateHistory history = HashrateHistory.get(context);
+        RateCache rates = RateCache.get(context);
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        long now = System.currentTimeMillis();
+        float density = context.getResources().getDisplayMetrics().density;
+        for (int appWidgetId : appWidgetIds) {
+            WidgetConfig config = configFor(prefs, appWidgetManager, appWidgetId);
+            WidgetSnapshot shown = snapshot.forAddress(config.address);
+            // Snapshots carry dollars; the other currencies come from the shared rates
+            String price = rates.formatPrice(config.currency);
+            if (price != null) {
+                shown = shown.withBitcoinPrice(price);
             }
-
-            // Fetch pool last block from mempool.space API
-            try {
-                URL url = new URL("https://mempool.space/api/v1/mining/pool/solock/blocks");
-                HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-                connection.setRequestMethod("GET");
-                connection.setConnectTimeout(15000);  // Increased timeout
-                connection.setReadTimeout(15000);      // Increased timeout
-
-                BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(connection.getInputStream()));
-                StringBuilder response = new StringBuilder();
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    response.append(line);
+            // Dim cached values until fresh data arrives
+            int[] textColors = !shown.live && !shown.setupRequired ? config.dimmedColors
+                    : config.colors;
+            // The history holds the farm total, so every widget draws the same trend
+            Bitmap sparkline = config.sparklineHeightDp() == 0 ? null
+                    : sparklines.render(history, Math.round(config.widthDp * density),
+                            Math.round(config.sparklineHeightDp() * density),
+                            config.colors[WidgetViewState.COLOR_RATE]);
+            WidgetViewState state = WidgetViewState.of(shown, shown.staleLabel(now), textColors,
+                    sparkline);
+            for (int i = 0; i < WidgetViewState.TEXT_COUNT; i++) {
+                if (!config.showsText(i)) {
+                    // Not in this layout, or hidden; never sent, so never a change
+                    state.texts[i] = null;
                 }
-                reader.close();
-
-                // Response is an array of blocks
-                org.json.JSONArray blocks = new org.json.JSONArray(response.toString());
-
-                if (blocks.length() > 0) {
-                    // Get the most recent block (first in array)
-                    JSONObject latestBlock = blocks.getJSONObject(0);
-                    long blockTimestamp = latestBlock.getLong("timestamp");
-
-                    long currentTime = System.currentTimeMillis() / 1000;
-                    long timeDiff = currentTime - blockTimestamp;
-
-                    long days = timeDiff / 86400;
-                    long hours = (timeDiff % 86400) / 3600;
+            }
 
-                    if (days > 0) {
-                        poolBlockInfo = days + "d ago";
-                    } else if (hours > 0) {
-                        poolBlockInfo = hours + "h ago";
-                    } else {
-                        poolBlockInfo = "< 1h ago";
+            int changes = WidgetPushTracker.shared().changes(appWidgetId, state);
+            if (changes == WidgetPushTracker.NONE) {
+                // Launcher already shows exactly this
+                continue;
+            }
+            boolean full = changes == WidgetPushTracker.FULL;
+            RemoteViews views = full ? copyOf(template(context, appWidgetId, config))
+                    : new RemoteViews(context.getPackageName(), config.layout());
+            for (int i = 0; i < WidgetViewState.TEXT_COUNT; i++) {
+                if (state.texts[i] != null
+                        && (full || (changes & WidgetPushTracker.textBit(i)) != 0)) {
+                    views.setTextViewText(TEXT_VIEWS[i], state.texts[i]);
+                }
+            }
+            if (full || (changes & WidgetPushTracker.COLORS) != 0) {
+                for (int i = 0; i < WidgetViewState.COLOR_COUNT; i++) {
+                    if (i == WidgetViewState.COLOR_RATE || config.size != WidgetConfig.SIZE_SMALL) {
+                        views.setTextColor(COLOR_VIEWS[i], textColors[i]);
                     }
+                }
+            }
+            if (sparkline != null && (full || (changes & WidgetPushTracker.SPARKLINE) != 0)) {
+                views.setImageViewBitmap(R.id.sparkline_image, sparkline);
+            }
 
-                    // Cache successful pool info
-                    prefs.edit().putString(PREF_LAST_POOL_INFO, poolBlockInfo).apply();
+            try {
+                if (full) {
+                    appWidgetManager.updateAppWidget(appWidgetId, views);
+                } else {
+                    // Only the changed views; the launcher keeps the rest of its current copy
+                    appWidgetManager.partiallyUpdateAppWidget(appWidgetId, views);
                 }
-            } catch (Exception e) {
+            } catch (RuntimeException e) {
+                // Launcher unreachable or the update too large; what it shows is unknown now,
+                // so the next push to this widget is a full one
                 e.printStackTrace();
-                // Use cached pool info
-                poolBlockInfo = prefs.getString(PREF_LAST_POOL_INFO, "N/A");
+                WidgetPushTracker.shared().forget(appWidgetId);
+                continue;
             }
+            WidgetPushTracker.shared().pushed(appWidgetId, state, changes);
+        }
+    }
 
-            String finalBitcoinPrice = bitcoinPrice;
-            String finalPoolBlockInfo = poolBlockInfo;
-
-            new Handler(Looper.getMainLooper()).post(() -> {
-                String topInfo = "        ₿ " + finalBitcoinPrice + " | Last pool block: " + finalPoolBlockInfo;
-                views.setTextViewText(R.id.top_info_text, topInfo);
-                appWidgetManager.updateAppWidget(appWidgetId, views);
-            });
-        });
+    // Cached config for the widget; caller holds pushLock
+    private static WidgetConfig configFor(SharedPreferences prefs,
+                                          AppWidgetManager appWidgetManager, int appWidgetId) {
+        WidgetConfig config = configs.get(appWidgetId);
+        if (config != null) {
+            return config;
+        }
+        Bundle options = appWidgetManager.getAppWidgetOptions(appWidgetId);
+        // Portrait size: the launcher's minimum width and maximum height
+        config = WidgetConfig.read(prefs, appWidgetId, options != null
+                        ? options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH, 0) : 0,
+                options != null
+                        ? options.getInt(AppWidgetManager.OPTION_APPWIDGET_MAX_HEIGHT, 0) : 0);
+        configs.put(appWidgetId, config);
+        Integer key = templateKeys.put(appWidgetId, config.templateKey());
+        if (key != null && key != config.templateKey()) {
+            // Different layout or views: the launcher's copy can't be patched
+            templates.remove(appWidgetId);
+            WidgetPushTracker.shared().forget(appWidgetId);
+        }
+        return config;
     }
 
-    private static String formatNumber(double number) {
-        if (number >= 1_000_000_000_000.0) {
-            return String.format(Locale.US, "%.2f T", number / 1_000_000_000_000.0);
-        } else if (number >= 1_000_000_000.0) {
-            return String.format(Locale.US, "%.2f G", number / 1_000_000_000.0);
-        } else if (number >= 1_000_000.0) {
-            return String.format(Locale.US, "%.2f M", number / 1_000_000.0);
-        } else if (number >= 1_000.0) {
-            return String.format(Locale.US, "%.2f k", number / 1_000.0);
-        } else {
-            return String.format(Locale.US, "%.2f", number);
+    // Layout, click handler and hidden metrics, built once per instance; caller holds pushLock
+    private static RemoteViews template(Context context, int appWidgetId, WidgetConfig config) {
+        RemoteViews template = templates.get(appWidgetId);
+        if (template != null) {
+            return template;
+        }
+        template = new RemoteViews(context.getPackageName(), config.layout());
+
+        // Set up click to manually refresh
+        Intent intent = new Intent(context, CKPoolWidget.class);
+        intent.setAction(ACTION_UPDATE);
+        PendingIntent pendingIntent = PendingIntent.getBroadcast(context, 0, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        template.setOnClickPendingIntent(R.id.widget_root, pendingIntent);
+
+        if (config.size != WidgetConfig.SIZE_SMALL) {
+            int shares = visibility(config, WidgetConfig.METRIC_SHARES);
+            int best = visibility(config, WidgetConfig.METRIC_BEST);
+            template.setViewVisibility(R.id.shares_column, shares);
+            template.setViewVisibility(R.id.shares_separator, shares);
+            template.setViewVisibility(R.id.best_column, best);
+            template.setViewVisibility(R.id.best_separator, best);
+            template.setViewVisibility(R.id.top_info_text,
+                    visibility(config, WidgetConfig.METRIC_INFO));
+            template.setViewVisibility(R.id.sparkline_image,
+                    visibility(config, WidgetConfig.METRIC_SPARKLINE));
         }
+        templates.put(appWidgetId, template);
+        return template;
+    }
+
+    private static int visibility(WidgetConfig config, int metric) {
+        return config.shows(metric) ? View.VISIBLE : View.GONE;
+    }
+
+    // A copy to add this push's values to; the cached template stays as built
+    @SuppressWarnings("deprecation")
+    private static RemoteViews copyOf(RemoteViews template) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.P ? new RemoteViews(template)
+                : template.clone();
     }
-}
\ No newline at end of file
+}
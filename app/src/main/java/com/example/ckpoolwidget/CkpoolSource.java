@@ -0,0 +1,46 @@
+package com.example.ckpoolwidget;
+
+import org.json.JSONObject;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A ckpool web frontend serving {@code <usersUrl><address>} as ckpool's user JSON: the
+ * public solo pool, its regional nodes, or a self-hosted ckpool whose {@code users}
+ * directory is served over HTTP.
+ */
+final class CkpoolSource implements PoolDataSource {
+
+    static final String SOLO_USERS_URL = "https://solo.ckpool.org/users/";
+
+    private final String name;
+    private final String usersUrl;
+
+    CkpoolSource(String name, String usersUrl) {
+        this.name = name;
+        this.usersUrl = usersUrl.endsWith("/") ? usersUrl : usersUrl + "/";
+    }
+
+    // solo.ckpool.org first, then its regional nodes
+    static List<PoolDataSource> soloMirrors() {
+        return Arrays.<PoolDataSource>asList(
+                new CkpoolSource("solo.ckpool.org", SOLO_USERS_URL),
+                new CkpoolSource("eusolo.ckpool.org", "https://eusolo.ckpool.org/users/"),
+                new CkpoolSource("ausolo.ckpool.org", "https://ausolo.ckpool.org/users/"));
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public String userUrl(String address) {
+        return usersUrl + address;
+    }
+
+    @Override
+    public AddressStats parseUser(String address, JSONObject json) {
+        return AddressStats.parse(address, json);
+    }
+}
@@ -0,0 +1,358 @@
+package com.example.ckpoolwidget;
+
+import android.content.Context;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.UnknownHostException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-endpoint call metrics: a fixed-bucket latency histogram, successes, failures by cause,
+ * bytes received and cache hits.
+ *
+ * Every counter is a slot in one {@link AtomicLongArray}, so recording from the network
+ * threads is a couple of atomic adds with no locks and no allocation. {@link #save} writes
+ * the counters to a small file when anything changed; it isn't synced, since losing the
+ * last cycle's counts to a crash doesn't matter.
+ */
+final class EndpointMetrics {
+
+    static final String FILE_NAME = "endpoint_metrics.bin";
+
+    static final int USERS = 0;
+    static final int PRICE = 1;
+    static final int POOL_BLOCKS = 2;
+    static final int AXEOS = 3;
+    static final int DIFFICULTY = 4;
+    static final int ENDPOINT_COUNT = 5;
+    // PRICE counts whichever price feed served the request; SnapshotFetcher.sourceSummary
+    // has them one by one
+    static final String[] ENDPOINT_NAMES = {"ckpool", "price", "mempool.space", "AxeOS",
+            "mempool.space difficulty"};
+
+    // Failure causes
+    static final int TIMEOUT = 0;
+    static final int DNS = 1;
+    static final int HTTP_STATUS = 2;
+    static final int PARSE = 3;
+    static final int NETWORK = 4;
+    static final int CAUSE_COUNT = 5;
+    static final String[] CAUSE_NAMES = {"timeout", "dns", "http_status", "parse", "network"};
+
+    // Upper bounds of the latency buckets; the last bucket holds everything slower
+    static final int[] BUCKET_BOUNDS_MS = {50, 100, 250, 500, 1000, 2500, 5000};
+    static final int BUCKET_COUNT = BUCKET_BOUNDS_MS.length + 1;
+
+    // Slots of one endpoint's counters
+    private static final int SUCCESSES = 0;
+    private static final int NOT_MODIFIED = 1;
+    private static final int TTL_HITS = 2;
+    private static final int BYTES = 3;
+    private static final int FAILURES = 4;
+    private static final int BUCKETS = FAILURES + CAUSE_COUNT;
+    private static final int SLOTS = BUCKETS + BUCKET_COUNT;
+
+    private static final int MAGIC = 0x454D5452;  // "EMTR"
+    private static final int VERSION = 1;
+
+    private static EndpointMetrics instance;
+
+    private final File file;
+    private final File tempFile;
+    private final AtomicLongArray counters = new AtomicLongArray(ENDPOINT_COUNT * SLOTS);
+    private final Endpoint[] endpoints = new Endpoint[ENDPOINT_COUNT];
+    // Bumped by every record; save() skips the write when nothing happened since the last one
+    private final AtomicLong events = new AtomicLong();
+    private long savedEvents;
+
+    private EndpointMetrics(File file) {
+        this.file = file;
+        this.tempFile = new File(file.getPath() + ".tmp");
+        for (int i = 0; i < ENDPOINT_COUNT; i++) {
+            endpoints[i] = new Endpoint(i * SLOTS);
+        }
+    }
+
+    static synchronized EndpointMetrics get(Context context) {
+        if (instance == null) {
+            instance = open(new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+        }
+        return instance;
+    }
+
+    static EndpointMetrics open(File file) {
+        EndpointMetrics metrics = new EndpointMetrics(file);
+        try {
+            metrics.load();
+        } catch (IOException e) {
+            e.printStackTrace();
+            // Start counting from zero
+            file.delete();
+        }
+        return metrics;
+    }
+
+    Endpoint endpoint(int endpoint) {
+        return endpoints[endpoint];
+    }
+
+    /**
+     * Where one endpoint's calls are recorded. Safe to use from any thread.
+     */
+    final class Endpoint {
+        private final int base;
+
+        private Endpoint(int base) {
+            this.base = base;
+        }
+
+        void recordSuccess(long latencyNanos, long bytes, boolean notModified) {
+            counters.incrementAndGet(base + SUCCESSES);
+            if (notModified) {
+                counters.incrementAndGet(base + NOT_MODIFIED);
+            }
+            recordCall(latencyNanos, bytes);
+        }
+
+        void recordFailure(int cause, long latencyNanos, long bytes) {
+            counters.incrementAndGet(base + FAILURES + cause);
+            recordCall(latencyNanos, bytes);
+        }
+
+        // The call was skipped because the cached value is still within its TTL
+        void recordCacheHit() {
+            counters.incrementAndGet(base + TTL_HITS);
+            events.incrementAndGet();
+        }
+
+        private void recordCall(long latencyNanos, long bytes) {
+            counters.incrementAndGet(base + BUCKETS + bucketOf(latencyNanos));
+            if (bytes > 0) {
+                counters.addAndGet(base + BYTES, bytes);
+            }
+            events.incrementAndGet();
+        }
+    }
+
+    static int bucketOf(long latencyNanos) {
+        long ms = TimeUnit.NANOSECONDS.toMillis(latencyNanos);
+        for (int i = 0; i < BUCKET_BOUNDS_MS.length; i++) {
+            if (ms < BUCKET_BOUNDS_MS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_BOUNDS_MS.length;
+    }
+
+    /**
+     * Classifies a failed call. {@code parsing} is true when the parser threw something that
+     * didn't come from the socket.
+     */
+    static int causeOf(Exception e, boolean parsing, boolean pastDeadline) {
+        if (e instanceof HttpClient.HttpStatusException) {
+            return HTTP_STATUS;
+        }
+        if (e instanceof UnknownHostException) {
+            return DNS;
+        }
+        // SocketTimeoutException, or torn down by HttpClient.cancelExpired()
+        if (e instanceof InterruptedIOException || pastDeadline) {
+            return TIMEOUT;
+        }
+        return parsing ? PARSE : NETWORK;
+    }
+
+    long successes(int endpoint) {
+        return counters.get(endpoint * SLOTS + SUCCESSES);
+    }
+
+    long notModified(int endpoint) {
+        return counters.get(endpoint * SLOTS + NOT_MODIFIED);
+    }
+
+    long ttlHits(int endpoint) {
+        return counters.get(endpoint * SLOTS + TTL_HITS);
+    }
+
+    long bytes(int endpoint) {
+        return counters.get(endpoint * SLOTS + BYTES);
+    }
+
+    long failures(int endpoint, int cause) {
+        return counters.get(endpoint * SLOTS + FAILURES + cause);
+    }
+
+    long failures(int endpoint) {
+        long total = 0;
+        for (int cause = 0; cause < CAUSE_COUNT; cause++) {
+            total += failures(endpoint, cause);
+        }
+        return total;
+    }
+
+    long bucket(int endpoint, int bucket) {
+        return counters.get(endpoint * SLOTS + BUCKETS + bucket);
+    }
+
+    /**
+     * Upper bound in ms of the bucket holding the given percentile of calls, -1 with no
+     * calls, or {@link Long#MAX_VALUE} when it falls in the open-ended last bucket.
+     */
+    long percentileMs(int endpoint, double percentile) {
+        long total = 0;
+        for (int b = 0; b < BUCKET_COUNT; b++) {
+            total += bucket(endpoint, b);
+        }
+        if (total == 0) {
+            return -1;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int b = 0; b < BUCKET_BOUNDS_MS.length; b++) {
+            seen += bucket(endpoint, b);
+            if (seen >= rank) {
+                return BUCKET_BOUNDS_MS[b];
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    // Share of lookups answered without a body: TTL skips plus 304 responses
+    double cacheHitRatio(int endpoint) {
+        long hits = ttlHits(endpoint) + notModified(endpoint);
+        long lookups = ttlHits(endpoint) + successes(endpoint) + failures(endpoint);
+        return lookups > 0 ? (double) hits / lookups : 0;
+    }
+
+    /**
+     * Short per-endpoint summary for the diagnostics screen.
+     */
+    String summary() {
+        StringBuilder text = new StringBuilder();
+        for (int e = 0; e < ENDPOINT_COUNT; e++) {
+            if (e > 0) {
+                text.append('\n');
+            }
+            text.append(String.format(Locale.US, "%s: %d ok, %d failed",
+                    ENDPOINT_NAMES[e], successes(e), failures(e)));
+            String separator = " (";
+            for (int cause = 0; cause < CAUSE_COUNT; cause++) {
+                if (failures(e, cause) > 0) {
+                    text.append(separator).append(CAUSE_NAMES[cause]).append(' ')
+                            .append(failures(e, cause));
+                    separator = ", ";
+                }
+            }
+            if (!separator.equals(" (")) {
+                text.append(')');
+            }
+            long p50 = percentileMs(e, 50);
+            if (p50 >= 0) {
+                text.append(String.format(Locale.US, "\n  latency p50 %s, p99 %s",
+                        bound(p50), bound(percentileMs(e, 99))));
+            }
+            text.append(String.format(Locale.US, "\n  %.1f kB received, %.0f%% cache hits",
+                    bytes(e) / 1024.0, cacheHitRatio(e) * 100));
+        }
+        return text.toString();
+    }
+
+    private static String bound(long ms) {
+        return ms == Long.MAX_VALUE
+                ? "> " + BUCKET_BOUNDS_MS[BUCKET_BOUNDS_MS.length - 1] + " ms"
+                : "< " + ms + " ms";
+    }
+
+    /**
+     * Every counter as CSV, one row per endpoint, for sharing from the diagnostics screen.
+     */
+    String toCsv() {
+        StringBuilder csv = new StringBuilder("endpoint,successes,not_modified,ttl_hits,bytes");
+        for (String cause : CAUSE_NAMES) {
+            csv.append(",failed_").append(cause);
+        }
+        for (int bound : BUCKET_BOUNDS_MS) {
+            csv.append(",lt_").append(bound).append("ms");
+        }
+        csv.append(",ge_").append(BUCKET_BOUNDS_MS[BUCKET_BOUNDS_MS.length - 1]).append("ms\n");
+        for (int e = 0; e < ENDPOINT_COUNT; e++) {
+            csv.append(ENDPOINT_NAMES[e]).append(',').append(successes(e))
+                    .append(',').append(notModified(e))
+                    .append(',').append(ttlHits(e))
+                    .append(',').append(bytes(e));
+            for (int cause = 0; cause < CAUSE_COUNT; cause++) {
+                csv.append(',').append(failures(e, cause));
+            }
+            for (int b = 0; b < BUCKET_COUNT; b++) {
+                csv.append(',').append(bucket(e, b));
+            }
+            csv.append('\n');
+        }
+        return csv.toString();
+    }
+
+    /**
+     * Writes the counters if anything was recorded since the last save. Returns false if
+     * the write failed.
+     */
+    synchronized boolean save() {
+        long recorded = events.get();
+        if (recorded == savedEvents) {
+            return true;
+        }
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(counters.length());
+                for (int i = 0; i < counters.length(); i++) {
+                    out.writeLong(counters.get(i));
+                }
+            }
+            if (!tempFile.renameTo(file)) {
+                tempFile.delete();
+                throw new IOException("Could not replace " + file);
+            }
+            savedEvents = recorded;
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private void load() throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unknown endpoint metrics format");
+            }
+            // Endpoints are only ever added at the end, so older files are a prefix
+            int stored = in.readInt();
+            if (stored < 0 || stored > counters.length()) {
+                throw new IOException("Unknown endpoint metrics format");
+            }
+            long[] loaded = new long[stored];
+            for (int i = 0; i < loaded.length; i++) {
+                loaded[i] = in.readLong();
+            }
+            for (int i = 0; i < loaded.length; i++) {
+                counters.set(i, loaded[i]);
+            }
+        }
+    }
+}
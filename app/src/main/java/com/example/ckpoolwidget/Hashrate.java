@@ -0,0 +1,41 @@
+package com.example.ckpoolwidget;
+
+/**
+ * Converts ckpool's formatted hashrates ("1.53T", "850G", "0") to hashes per second.
+ */
+final class Hashrate {
+
+    private Hashrate() {
+    }
+
+    // Returns 0 for anything that isn't a number with an optional SI suffix
+    static double parse(String value) {
+        if (value == null) {
+            return 0;
+        }
+        String trimmed = value.trim();
+        if (trimmed.isEmpty()) {
+            return 0;
+        }
+        int end = trimmed.length();
+        double multiplier = 1;
+        char suffix = Character.toUpperCase(trimmed.charAt(end - 1));
+        switch (suffix) {
+            case 'K': multiplier = 1e3; break;
+            case 'M': multiplier = 1e6; break;
+            case 'G': multiplier = 1e9; break;
+            case 'T': multiplier = 1e12; break;
+            case 'P': multiplier = 1e15; break;
+            case 'E': multiplier = 1e18; break;
+            default: break;
+        }
+        if (multiplier != 1) {
+            end--;
+        }
+        try {
+            return Double.parseDouble(trimmed.substring(0, end).trim()) * multiplier;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
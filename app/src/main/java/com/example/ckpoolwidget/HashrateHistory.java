@@ -0,0 +1,270 @@
+package com.example.ckpoolwidget;
+
+import android.content.Context;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Fixed-size ring buffer of hashrate samples, memory-mapped from a single file.
+ *
+ * Each successful poll appends one 24-byte record (timestamp, hashrate in H/s, shares,
+ * best ever) in place and bumps the header, so appends are O(1) and never rewrite the
+ * file. {@link #readWindow} copies samples into caller-owned primitive arrays instead of
+ * allocating an object per sample. {@link #merge}, used by restores, builds the new ring in
+ * a temp file and renames it over the old one.
+ */
+final class HashrateHistory {
+
+    static final String FILE_NAME = "hashrate_history.bin";
+    static final int DEFAULT_CAPACITY = 2048;
+
+    private static final int MAGIC = 0x484E5248;  // "HNRH"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    static final int RECORD_SIZE = 4 + 4 + 8 + 8;
+
+    // Header layout
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_CAPACITY = 8;
+    private static final int OFFSET_HEAD = 12;
+    private static final int OFFSET_COUNT = 16;
+    private static final int OFFSET_DATA_VERSION = 20;
+
+    private static HashrateHistory instance;
+
+    private final File file;
+    private final int capacity;
+    // Replaced by merge(); guarded by this
+    private MappedByteBuffer buffer;
+
+    private HashrateHistory(File file, MappedByteBuffer buffer, int capacity) {
+        this.file = file;
+        this.buffer = buffer;
+        this.capacity = capacity;
+    }
+
+    static synchronized HashrateHistory get(Context context) {
+        if (instance == null) {
+            File file = new File(context.getApplicationContext().getFilesDir(), FILE_NAME);
+            try {
+                instance = open(file, DEFAULT_CAPACITY);
+            } catch (IOException e) {
+                e.printStackTrace();
+                // Unreadable history isn't worth losing polls over
+                file.delete();
+                try {
+                    instance = open(file, DEFAULT_CAPACITY);
+                } catch (IOException retry) {
+                    throw new IllegalStateException("Can't create hashrate history", retry);
+                }
+            }
+        }
+        return instance;
+    }
+
+    static HashrateHistory open(File file, int capacity) throws IOException {
+        long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            boolean fresh = raf.length() == 0;
+            if (!fresh && raf.length() != size) {
+                throw new IOException("Hashrate history has unexpected size " + raf.length());
+            }
+            raf.setLength(size);
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (fresh) {
+                buffer.putInt(OFFSET_MAGIC, MAGIC);
+                buffer.putInt(OFFSET_VERSION, VERSION);
+                buffer.putInt(OFFSET_CAPACITY, capacity);
+            } else if (buffer.getInt(OFFSET_MAGIC) != MAGIC
+                    || buffer.getInt(OFFSET_VERSION) != VERSION
+                    || buffer.getInt(OFFSET_CAPACITY) != capacity) {
+                throw new IOException("Unknown hashrate history format");
+            }
+            return new HashrateHistory(file, buffer, capacity);
+        }
+    }
+
+    synchronized void append(long timestampSeconds, double hashrate, long shares, long bestever) {
+        int head = buffer.getInt(OFFSET_HEAD);
+        int count = buffer.getInt(OFFSET_COUNT);
+
+        int offset = HEADER_SIZE + head * RECORD_SIZE;
+        buffer.putInt(offset, (int) timestampSeconds);
+        buffer.putFloat(offset + 4, (float) hashrate);
+        buffer.putLong(offset + 8, shares);
+        buffer.putLong(offset + 16, bestever);
+
+        // Header last, so a torn append just loses the new sample
+        buffer.putInt(OFFSET_HEAD, (head + 1) % capacity);
+        buffer.putInt(OFFSET_COUNT, Math.min(count + 1, capacity));
+        buffer.putLong(OFFSET_DATA_VERSION, buffer.getLong(OFFSET_DATA_VERSION) + 1);
+    }
+
+    synchronized int size() {
+        return buffer.getInt(OFFSET_COUNT);
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    // Bumped on every append, and by more than the capacity on a merge; lets renderers skip
+    // work when nothing changed and incremental readers tell appends from rewrites
+    synchronized long dataVersion() {
+        return buffer.getLong(OFFSET_DATA_VERSION);
+    }
+
+    /**
+     * Copies up to {@code timestamps.length} of the newest samples, oldest first, into the
+     * given arrays and returns how many were copied.
+     */
+    synchronized int readWindow(long[] timestamps, float[] hashrates) {
+        int count = buffer.getInt(OFFSET_COUNT);
+        int head = buffer.getInt(OFFSET_HEAD);
+        int n = Math.min(count, Math.min(timestamps.length, hashrates.length));
+        int start = head - n;
+        if (start < 0) {
+            start += capacity;
+        }
+        for (int i = 0; i < n; i++) {
+            int offset = HEADER_SIZE + ((start + i) % capacity) * RECORD_SIZE;
+            // Stored as unsigned 32-bit seconds
+            timestamps[i] = buffer.getInt(offset) & 0xffffffffL;
+            hashrates[i] = buffer.getFloat(offset + 4);
+        }
+        return n;
+    }
+
+    /**
+     * Copies up to {@code timestamps.length} samples starting {@code from} samples after
+     * the oldest, oldest first, and returns how many were copied. Lets exports walk the
+     * whole history in fixed-size chunks.
+     */
+    synchronized int readSamples(int from, long[] timestamps, float[] hashrates, long[] shares,
+                                 long[] bests) {
+        int count = buffer.getInt(OFFSET_COUNT);
+        int head = buffer.getInt(OFFSET_HEAD);
+        int n = Math.max(0, Math.min(count - from, timestamps.length));
+        int start = head - count + from;
+        if (start < 0) {
+            start += capacity;
+        }
+        for (int i = 0; i < n; i++) {
+            int offset = HEADER_SIZE + ((start + i) % capacity) * RECORD_SIZE;
+            timestamps[i] = buffer.getInt(offset) & 0xffffffffL;
+            hashrates[i] = buffer.getFloat(offset + 4);
+            shares[i] = buffer.getLong(offset + 8);
+            bests[i] = buffer.getLong(offset + 16);
+        }
+        return n;
+    }
+
+    /**
+     * Merges {@code n} samples, sorted by timestamp, into the history and rewrites the ring
+     * in timestamp order. Samples whose timestamp is already there are skipped, and only
+     * the newest {@link #capacity} survive. Returns how many of the given samples were kept.
+     * A crash leaves either the old history or the merged one.
+     */
+    synchronized int merge(long[] timestamps, float[] hashrates, long[] shares, long[] bests,
+                           int n) throws IOException {
+        int count = buffer.getInt(OFFSET_COUNT);
+        long[] oldTimestamps = new long[count];
+        float[] oldHashrates = new float[count];
+        long[] oldShares = new long[count];
+        long[] oldBests = new long[count];
+        readSamples(0, oldTimestamps, oldHashrates, oldShares, oldBests);
+
+        int total = count + n;
+        long[] mergedTimestamps = new long[total];
+        float[] mergedHashrates = new float[total];
+        long[] mergedShares = new long[total];
+        long[] mergedBests = new long[total];
+        // Whether each merged sample came from the caller
+        boolean[] added = new boolean[total];
+        int m = 0;
+        int i = 0;
+        int j = 0;
+        while (i < count || j < n) {
+            boolean takeOld = j == n || (i < count && oldTimestamps[i] <= timestamps[j]);
+            long timestamp = takeOld ? oldTimestamps[i] : timestamps[j];
+            if (m > 0 && mergedTimestamps[m - 1] == timestamp) {
+                // Already there; what the history had wins
+                if (takeOld) {
+                    i++;
+                } else {
+                    j++;
+                }
+                continue;
+            }
+            mergedTimestamps[m] = timestamp;
+            if (takeOld) {
+                mergedHashrates[m] = oldHashrates[i];
+                mergedShares[m] = oldShares[i];
+                mergedBests[m] = oldBests[i];
+                i++;
+            } else {
+                mergedHashrates[m] = hashrates[j];
+                mergedShares[m] = shares[j];
+                mergedBests[m] = bests[j];
+                added[m] = true;
+                j++;
+            }
+            m++;
+        }
+
+        if (m == count) {
+            return 0;  // Nothing new
+        }
+        int from = Math.max(0, m - capacity);
+        int kept = 0;
+        long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+        File tempFile = new File(file.getPath() + ".tmp");
+        MappedByteBuffer merged;
+        try (RandomAccessFile raf = new RandomAccessFile(tempFile, "rw")) {
+            raf.setLength(0);
+            raf.setLength(size);
+            merged = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            merged.putInt(OFFSET_MAGIC, MAGIC);
+            merged.putInt(OFFSET_VERSION, VERSION);
+            merged.putInt(OFFSET_CAPACITY, capacity);
+            for (int k = from; k < m; k++) {
+                int offset = HEADER_SIZE + (k - from) * RECORD_SIZE;
+                merged.putInt(offset, (int) mergedTimestamps[k]);
+                merged.putFloat(offset + 4, mergedHashrates[k]);
+                merged.putLong(offset + 8, mergedShares[k]);
+                merged.putLong(offset + 16, mergedBests[k]);
+                if (added[k]) {
+                    kept++;
+                }
+            }
+            merged.putInt(OFFSET_HEAD, (m - from) % capacity);
+            merged.putInt(OFFSET_COUNT, m - from);
+            // Further than any run of appends, so incremental readers start over
+            merged.putLong(OFFSET_DATA_VERSION,
+                    buffer.getLong(OFFSET_DATA_VERSION) + capacity + 1);
+            merged.force();
+        }
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Could not replace " + file);
+        }
+        // The mapping follows the renamed file
+        buffer = merged;
+        return kept;
+    }
+
+    // Seconds since the epoch of the newest sample, or -1 if there are none
+    synchronized long newestTimestamp() {
+        int count = buffer.getInt(OFFSET_COUNT);
+        if (count == 0) {
+            return -1;
+        }
+        int newest = (buffer.getInt(OFFSET_HEAD) + capacity - 1) % capacity;
+        return buffer.getInt(HEADER_SIZE + newest * RECORD_SIZE) & 0xffffffffL;
+    }
+}
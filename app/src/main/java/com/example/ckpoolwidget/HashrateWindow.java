@@ -0,0 +1,108 @@
+package com.example.ckpoolwidget;
+
+/**
+ * Time-weighted mean hashrate over the last {@link #SPAN_SECONDS} of a
+ * {@link HashrateHistory}, kept up to date incrementally.
+ *
+ * Each sample is weighted by the time since the one before it, capped at
+ * {@link #MAX_GAP_SECONDS} so a phone that slept through the night doesn't let one reading
+ * stand for hours. {@link #mean} only reads the samples appended since its last call, using
+ * the history's data version, and drops the ones that slid out of the window, so it costs
+ * a few array reads per refresh instead of a pass over the whole history.
+ */
+final class HashrateWindow {
+
+    static final long SPAN_SECONDS = 86400;
+    static final long MAX_GAP_SECONDS = 3600;
+
+    // Samples in the window as a ring, oldest first; guarded by this
+    private long[] times = new long[0];
+    private float[] rates = new float[0];
+    private long[] weights = new long[0];
+    private int head;
+    private int count;
+    private double weightedSum;
+    private long totalWeight;
+    private long seenVersion = -1;
+    private long lastTimestamp = -1;
+
+    synchronized double mean(HashrateHistory history) {
+        long[] newTimes;
+        float[] newRates;
+        int n;
+        // Version and samples read together, so an append in between can't be missed
+        synchronized (history) {
+            long version = history.dataVersion();
+            long added = version - seenVersion;
+            if (seenVersion < 0 || added < 0 || added > history.capacity()
+                    || times.length != history.capacity()) {
+                reset(history.capacity());
+                added = history.size();
+            }
+            seenVersion = version;
+            newTimes = new long[(int) added];
+            newRates = new float[(int) added];
+            n = history.readWindow(newTimes, newRates);
+        }
+        for (int i = 0; i < n; i++) {
+            add(newTimes[i], newRates[i]);
+        }
+        evictBefore(lastTimestamp - SPAN_SECONDS);
+        if (totalWeight > 0) {
+            return weightedSum / totalWeight;
+        }
+        return count > 0 ? rates[(head + count - 1) % rates.length] : 0;
+    }
+
+    private void reset(int capacity) {
+        times = new long[capacity];
+        rates = new float[capacity];
+        weights = new long[capacity];
+        head = 0;
+        count = 0;
+        weightedSum = 0;
+        totalWeight = 0;
+        lastTimestamp = -1;
+    }
+
+    private void add(long timestamp, float rate) {
+        if (timestamp <= lastTimestamp) {
+            return;
+        }
+        // The first sample has nothing before it to stand for
+        long weight = lastTimestamp < 0 ? 0 : Math.min(timestamp - lastTimestamp, MAX_GAP_SECONDS);
+        if (count == times.length) {
+            removeOldest();
+        }
+        int tail = (head + count) % times.length;
+        times[tail] = timestamp;
+        rates[tail] = rate;
+        weights[tail] = weight;
+        count++;
+        weightedSum += (double) rate * weight;
+        totalWeight += weight;
+        lastTimestamp = timestamp;
+    }
+
+    private void evictBefore(long cutoff) {
+        // Keep the newest sample even if the history has gone quiet
+        while (count > 1 && times[head] < cutoff) {
+            removeOldest();
+        }
+        if (count <= 1) {
+            // Nothing left to drift; restart the sums from zero
+            weightedSum = 0;
+            totalWeight = 0;
+            if (count == 1) {
+                weights[head] = 0;
+            }
+        }
+    }
+
+    private void removeOldest() {
+        weightedSum -= (double) rates[head] * weights[head];
+        totalWeight -= weights[head];
+        head = (head + 1) % times.length;
+        count--;
+    }
+}
@@ -0,0 +1,327 @@
+package com.example.ckpoolwidget;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Exports the hashrate history and the pool block index to a file, and restores them
+ * from one, for dashboards and for getting the history back after a reinstall.
+ *
+ * Two formats: CSV, one row per record with a {@code type} column ({@code sample},
+ * {@code best} for each sample that raised the best share, {@code block}), and a compact
+ * tagged binary format with the same records minus the best rows, which are derived from
+ * the samples. Both are written and read in {@link #CHUNK}-record pieces, so memory stays
+ * the same however long the history is. {@link #restore} reads either format, merges it
+ * with what the app already has, and can be run more than once.
+ */
+final class HistoryArchive {
+
+    static final String CSV_HEADER = "type,time,hashrate,shares,best,height,hash";
+    static final String CSV_MIME_TYPE = "text/csv";
+    static final String BINARY_MIME_TYPE = "application/octet-stream";
+    static final int CHUNK = 256;
+
+    private static final int MAGIC = 0x41584841;  // "AXHA"
+    private static final int VERSION = 1;
+    private static final int TAG_END = 0;
+    private static final int TAG_SAMPLE = 1;
+    private static final int TAG_BLOCK = 2;
+
+    // What an export wrote or a restore added
+    static final class Counts {
+        int samples;
+        int bests;
+        int blocks;
+    }
+
+    private final HashrateHistory history;
+    private final PoolBlockIndex index;
+
+    // Chunk buffers, reused for the whole export
+    private final long[] timestamps = new long[CHUNK];
+    private final float[] hashrates = new float[CHUNK];
+    private final long[] shares = new long[CHUNK];
+    private final long[] bests = new long[CHUNK];
+
+    HistoryArchive(HashrateHistory history, PoolBlockIndex index) {
+        this.history = history;
+        this.index = index;
+    }
+
+    // Leaves the stream open; the caller owns it
+    Counts exportCsv(OutputStream stream) throws IOException {
+        Counts counts = new Counts();
+        Writer out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+        StringBuilder row = new StringBuilder(128);
+        out.write(CSV_HEADER);
+        out.write('\n');
+        long best = 0;
+        int from = 0;
+        int n;
+        while ((n = history.readSamples(from, timestamps, hashrates, shares, bests)) > 0) {
+            for (int i = 0; i < n; i++) {
+                row.setLength(0);
+                row.append("sample,").append(timestamps[i]).append(',')
+                        .append((long) hashrates[i]).append(',').append(shares[i]).append(',')
+                        .append(bests[i]).append(",,\n");
+                if (bests[i] > best) {
+                    if (from + i > 0) {
+                        // The first sample only says where the history starts
+                        row.append("best,").append(timestamps[i]).append(",,,")
+                                .append(bests[i]).append(",,\n");
+                        counts.bests++;
+                    }
+                    best = bests[i];
+                }
+                out.append(row);
+            }
+            from += n;
+            counts.samples += n;
+        }
+        int blocks = index.size();
+        for (int i = 0; i < blocks; i++) {
+            PoolBlock block = index.blockAt(i);
+            row.setLength(0);
+            row.append("block,").append(block.timestamp).append(",,,,").append(block.height)
+                    .append(',').append(block.hash).append('\n');
+            out.append(row);
+        }
+        counts.blocks = blocks;
+        out.flush();
+        return counts;
+    }
+
+    // Leaves the stream open; the caller owns it
+    Counts exportBinary(OutputStream stream) throws IOException {
+        Counts counts = new Counts();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        int from = 0;
+        int n;
+        while ((n = history.readSamples(from, timestamps, hashrates, shares, bests)) > 0) {
+            for (int i = 0; i < n; i++) {
+                out.writeByte(TAG_SAMPLE);
+                out.writeInt((int) timestamps[i]);
+                out.writeFloat(hashrates[i]);
+                out.writeLong(shares[i]);
+                out.writeLong(bests[i]);
+            }
+            from += n;
+            counts.samples += n;
+        }
+        byte[] hash = new byte[PoolBlockIndex.HASH_SIZE];
+        int blocks = index.size();
+        for (int i = 0; i < blocks; i++) {
+            PoolBlock block = index.blockAt(i);
+            out.writeByte(TAG_BLOCK);
+            out.writeInt(block.height);
+            out.writeLong(block.timestamp);
+            out.write(fromHex(block.hash, hash));
+        }
+        counts.blocks = blocks;
+        out.writeByte(TAG_END);
+        out.flush();
+        return counts;
+    }
+
+    /**
+     * Merges the file's samples into the history by timestamp and its blocks into the index
+     * by height, and raises the saved best share if the file has a higher one. Reads
+     * either format; throws IOException for anything else.
+     */
+    Counts restore(InputStream stream, WidgetStateStore stateStore) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(stream);
+        in.mark(4);
+        DataInputStream data = new DataInputStream(in);
+        boolean binary;
+        try {
+            binary = data.readInt() == MAGIC;
+        } catch (EOFException e) {
+            throw new IOException("Not a history export");
+        }
+        in.reset();
+        Restore restore = new Restore();
+        if (binary) {
+            restoreBinary(data, restore);
+        } else {
+            restoreCsv(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)),
+                    restore);
+        }
+        restore.flushBlocks();
+        restore.flushSamples();
+        if (restore.best > 0) {
+            long best = restore.best;
+            long bestAt = restore.bestAt;
+            stateStore.update(state -> {
+                if (best > state.bestEver) {
+                    state.bestEver = best;
+                    state.bestDate = StatsFormatter.formatDate(bestAt * 1000);
+                }
+            });
+            stateStore.flush();
+        }
+        return restore.counts;
+    }
+
+    private void restoreBinary(DataInputStream in, Restore restore) throws IOException {
+        in.readInt();
+        int version = in.readInt();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unknown history export version " + version);
+        }
+        byte[] hash = new byte[PoolBlockIndex.HASH_SIZE];
+        while (true) {
+            int tag = in.readByte();
+            if (tag == TAG_END) {
+                return;
+            } else if (tag == TAG_SAMPLE) {
+                restore.sample(in.readInt() & 0xffffffffL, in.readFloat(), in.readLong(),
+                        in.readLong());
+            } else if (tag == TAG_BLOCK) {
+                int height = in.readInt();
+                long timestamp = in.readLong();
+                in.readFully(hash);
+                restore.block(height, timestamp, toHex(hash));
+            } else {
+                throw new IOException("Unknown history record " + tag);
+            }
+        }
+    }
+
+    private void restoreCsv(BufferedReader in, Restore restore) throws IOException {
+        String header = in.readLine();
+        if (header == null || !header.startsWith(CSV_HEADER)) {
+            throw new IOException("Not a history export");
+        }
+        String line;
+        while ((line = in.readLine()) != null) {
+            String[] cells = line.split(",", -1);
+            try {
+                if (cells[0].equals("sample") && cells.length >= 5) {
+                    restore.sample(Long.parseLong(cells[1]), Float.parseFloat(cells[2]),
+                            Long.parseLong(cells[3]), Long.parseLong(cells[4]));
+                } else if (cells[0].equals("block") && cells.length >= 7) {
+                    restore.block(Integer.parseInt(cells[5]), Long.parseLong(cells[1]),
+                            cells[6]);
+                }
+                // best rows follow from the samples; other types are from newer versions
+            } catch (NumberFormatException e) {
+                throw new IOException("Bad history row: " + line);
+            }
+        }
+    }
+
+    // Restore progress; blocks are handed to the index a chunk at a time, samples are
+    // merged into the history at the end
+    private final class Restore {
+        final Counts counts = new Counts();
+        final List<PoolBlock> pending = new ArrayList<>(CHUNK);
+        // Room for two histories; when full, only the newest history's worth is kept
+        final int capacity = history.capacity();
+        long[] sampleTimestamps = new long[2 * capacity];
+        float[] sampleHashrates = new float[2 * capacity];
+        long[] sampleShares = new long[2 * capacity];
+        long[] sampleBests = new long[2 * capacity];
+        int samples;
+        long best;
+        long bestAt;
+
+        void sample(long timestamp, float hashrate, long shares, long bestEver) {
+            if (bestEver > best) {
+                best = bestEver;
+                bestAt = timestamp;
+            }
+            if (samples == sampleTimestamps.length) {
+                sortSamples();
+            }
+            sampleTimestamps[samples] = timestamp;
+            sampleHashrates[samples] = hashrate;
+            sampleShares[samples] = shares;
+            sampleBests[samples] = bestEver;
+            samples++;
+        }
+
+        void flushSamples() throws IOException {
+            sortSamples();
+            counts.samples += history.merge(sampleTimestamps, sampleHashrates, sampleShares,
+                    sampleBests, samples);
+            samples = 0;
+        }
+
+        // Sorts by timestamp and keeps the newest capacity samples; the history can't
+        // hold older ones anyway
+        private void sortSamples() {
+            Integer[] order = new Integer[samples];
+            for (int i = 0; i < samples; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(sampleTimestamps[a],
+                    sampleTimestamps[b]));
+            int from = Math.max(0, samples - capacity);
+            long[] timestamps = new long[sampleTimestamps.length];
+            float[] hashrates = new float[sampleTimestamps.length];
+            long[] shares = new long[sampleTimestamps.length];
+            long[] bests = new long[sampleTimestamps.length];
+            for (int i = from; i < samples; i++) {
+                int k = order[i];
+                timestamps[i - from] = sampleTimestamps[k];
+                hashrates[i - from] = sampleHashrates[k];
+                shares[i - from] = sampleShares[k];
+                bests[i - from] = sampleBests[k];
+            }
+            sampleTimestamps = timestamps;
+            sampleHashrates = hashrates;
+            sampleShares = shares;
+            sampleBests = bests;
+            samples -= from;
+        }
+
+        void block(int height, long timestamp, String hash) throws IOException {
+            pending.add(new PoolBlock(height, hash, timestamp));
+            if (pending.size() == CHUNK) {
+                flushBlocks();
+            }
+        }
+
+        void flushBlocks() throws IOException {
+            if (!pending.isEmpty()) {
+                counts.blocks += index.merge(pending);
+                pending.clear();
+            }
+        }
+    }
+
+    private static byte[] fromHex(String hex, byte[] out) {
+        for (int i = 0; i < out.length; i++) {
+            int hi = i * 2 + 1 < hex.length() ? Character.digit(hex.charAt(i * 2), 16) : -1;
+            int lo = hi >= 0 ? Character.digit(hex.charAt(i * 2 + 1), 16) : -1;
+            out[i] = lo >= 0 ? (byte) ((hi << 4) | lo) : 0;
+        }
+        return out;
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = Character.forDigit((bytes[i] >> 4) & 0xf, 16);
+            hex[i * 2 + 1] = Character.forDigit(bytes[i] & 0xf, 16);
+        }
+        return new String(hex);
+    }
+}
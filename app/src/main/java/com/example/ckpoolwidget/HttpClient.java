@@ -0,0 +1,328 @@
+package com.example.ckpoolwidget;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Shared HTTP GET client for all endpoint calls.
+ *
+ * Bodies are read to the end and closed without disconnecting, so the platform keeps the
+ * connection alive and the next poll skips the TCP and TLS handshakes. A parser that stops
+ * early leaves a short tail to drain; a long one drops the connection instead. Responses
+ * are requested gzip-compressed, and URLs that send an ETag or Last-Modified header are
+ * revalidated with conditional requests: a 304 returns the previously parsed result
+ * without reading or parsing a body. Calls made for an {@link EndpointMetrics.Endpoint}
+ * record their latency, bytes and outcome there.
+ */
+final class HttpClient {
+
+    interface BodyParser<T> {
+        T parse(InputStream body) throws Exception;
+    }
+
+    static final class HttpStatusException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        HttpStatusException(String url, int status) {
+            super("HTTP " + status + " from " + url);
+            this.status = status;
+        }
+    }
+
+    private static final int MAX_TIMEOUT_MS = 15000;
+    private static final int MAX_CACHED_URLS = 32;
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+    // Past this, dropping the connection is cheaper than reading a body nobody parses
+    private static final long MAX_DRAIN_BYTES = 64 * 1024;
+
+    private static final HttpClient shared = new HttpClient();
+
+    // Validators and parsed results of the last 200 response per URL
+    private final Map<String, CacheEntry> cache =
+            new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                    return size() > MAX_CACHED_URLS;
+                }
+            };
+
+    // Connections currently open, so calls that outlive their deadline can be torn down
+    private final Set<OpenCall> openCalls = ConcurrentHashMap.newKeySet();
+
+    // Body buffer reused by every request made on the same thread
+    private final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[INITIAL_BUFFER_SIZE];
+        }
+    };
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    static HttpClient shared() {
+        return shared;
+    }
+
+    /**
+     * Fetches {@code url} and hands the (decompressed) body to {@code parser}. Socket
+     * timeouts never reach past {@code deadline}, a {@link System#nanoTime()} value.
+     */
+    <T> T get(String url, long deadline, BodyParser<T> parser) throws Exception {
+        return get(url, deadline, parser, null);
+    }
+
+    /**
+     * Like {@link #get(String, long, BodyParser)}, recording the call in {@code metrics}
+     * when it isn't null.
+     */
+    <T> T get(String url, long deadline, BodyParser<T> parser,
+              EndpointMetrics.Endpoint metrics) throws Exception {
+        long start = System.nanoTime();
+        CacheEntry cached;
+        synchronized (cache) {
+            cached = cache.get(url);
+        }
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        OpenCall call = new OpenCall(connection, deadline);
+        openCalls.add(call);
+        requests.incrementAndGet();
+        boolean parsing = false;
+        try {
+            int timeout = (int) Math.min(MAX_TIMEOUT_MS,
+                    Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            connection.setRequestMethod("GET");
+            connection.setConnectTimeout(timeout);
+            connection.setReadTimeout(timeout);
+            // Setting this ourselves turns off transparent decoding, so gzip is handled below
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            if (cached != null) {
+                if (cached.etag != null) {
+                    connection.setRequestProperty("If-None-Match", cached.etag);
+                }
+                if (cached.lastModified != null) {
+                    connection.setRequestProperty("If-Modified-Since", cached.lastModified);
+                }
+            }
+
+            int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                notModified.incrementAndGet();
+                drainAndClose(connection.getErrorStream(), call);
+                if (metrics != null) {
+                    metrics.recordSuccess(System.nanoTime() - start, call.bytes, true);
+                }
+                @SuppressWarnings("unchecked")
+                T result = (T) cached.result;
+                return result;
+            }
+            if (status < 200 || status >= 300) {
+                // Drain so the connection can still be reused
+                drainAndClose(connection.getErrorStream(), call);
+                throw new HttpStatusException(url, status);
+            }
+
+            T result;
+            try (InputStream body = openBody(connection, call)) {
+                parsing = true;
+                result = parser.parse(body);
+                parsing = false;
+                // Read to the end so the connection goes back to the pool
+                if (!drain(body, MAX_DRAIN_BYTES)) {
+                    connection.disconnect();
+                }
+            }
+
+            String etag = connection.getHeaderField("ETag");
+            String lastModified = connection.getHeaderField("Last-Modified");
+            synchronized (cache) {
+                if (etag != null || lastModified != null) {
+                    cache.put(url, new CacheEntry(etag, lastModified, result));
+                } else {
+                    cache.remove(url);
+                }
+            }
+            if (metrics != null) {
+                metrics.recordSuccess(System.nanoTime() - start, call.bytes, false);
+            }
+            return result;
+        } catch (Exception e) {
+            if (metrics != null) {
+                long now = System.nanoTime();
+                // A socket error mid-parse is still a network failure, not a bad body
+                metrics.recordFailure(EndpointMetrics.causeOf(e, parsing && !call.streamFailed,
+                        now - deadline >= 0), now - start, call.bytes);
+            }
+            throw e;
+        } finally {
+            openCalls.remove(call);
+        }
+    }
+
+    /**
+     * Disconnects calls whose deadline has passed. Safe to call from any thread; calls
+     * that are still within their deadline are left alone.
+     */
+    void cancelExpired() {
+        long now = System.nanoTime();
+        for (OpenCall call : openCalls) {
+            if (now - call.deadline >= 0) {
+                call.connection.disconnect();
+                openCalls.remove(call);
+            }
+        }
+    }
+
+    long requestCount() {
+        return requests.get();
+    }
+
+    long notModifiedCount() {
+        return notModified.get();
+    }
+
+    long bytesReceived() {
+        return bytesReceived.get();
+    }
+
+    void clearCache() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Reads a whole UTF-8 body through this thread's reusable buffer.
+     */
+    String readText(InputStream body) throws IOException {
+        byte[] buffer = buffers.get();
+        int length = 0;
+        int read;
+        while ((read = body.read(buffer, length, buffer.length - length)) != -1) {
+            length += read;
+            if (length == buffer.length) {
+                byte[] grown = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, grown, 0, length);
+                buffer = grown;
+                buffers.set(buffer);
+            }
+        }
+        return new String(buffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private InputStream openBody(HttpURLConnection connection, OpenCall call)
+            throws IOException {
+        InputStream body = new CountingInputStream(connection.getInputStream(), call);
+        if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+            body = new GZIPInputStream(body);
+        }
+        return body;
+    }
+
+    // Returns false if more than maxBytes were left unread
+    private boolean drain(InputStream in, long maxBytes) throws IOException {
+        byte[] buffer = buffers.get();
+        long drained = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            drained += read;
+            if (drained > maxBytes) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void drainAndClose(InputStream in, OpenCall call) {
+        if (in == null) {
+            return;
+        }
+        try (InputStream stream = new CountingInputStream(in, call)) {
+            drain(stream, MAX_DRAIN_BYTES);
+        } catch (IOException e) {
+            // Connection just won't be reused
+        }
+    }
+
+    private static final class CacheEntry {
+        final String etag;
+        final String lastModified;
+        final Object result;
+
+        CacheEntry(String etag, String lastModified, Object result) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.result = result;
+        }
+    }
+
+    private static final class OpenCall {
+        final HttpURLConnection connection;
+        final long deadline;
+        // Only touched by the thread making the call
+        long bytes;
+        boolean streamFailed;
+
+        OpenCall(HttpURLConnection connection, long deadline) {
+            this.connection = connection;
+            this.deadline = deadline;
+        }
+    }
+
+    // Counts compressed bytes as they come off the socket, and notes socket errors
+    private final class CountingInputStream extends FilterInputStream {
+        private final OpenCall call;
+
+        CountingInputStream(InputStream in, OpenCall call) {
+            super(in);
+            this.call = call;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b;
+            try {
+                b = super.read();
+            } catch (IOException e) {
+                call.streamFailed = true;
+                throw e;
+            }
+            if (b != -1) {
+                bytesReceived.incrementAndGet();
+                call.bytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read;
+            try {
+                read = super.read(b, off, len);
+            } catch (IOException e) {
+                call.streamFailed = true;
+                throw e;
+            }
+            if (read > 0) {
+                bytesReceived.addAndGet(read);
+                call.bytes += read;
+            }
+            return read;
+        }
+    }
+}
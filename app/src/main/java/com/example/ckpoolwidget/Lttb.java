@@ -0,0 +1,70 @@
+package com.example.ckpoolwidget;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling: picks the points that best preserve the
+ * visual shape of a series, so a long history can be drawn at the widget's pixel width.
+ */
+final class Lttb {
+
+    private Lttb() {
+    }
+
+    /**
+     * Writes the indices of at most {@code threshold} points of the first {@code length}
+     * samples into {@code out} and returns how many were written. The first and last point
+     * are always kept.
+     */
+    static int downsample(long[] xs, float[] ys, int length, int threshold, int[] out) {
+        if (threshold >= length || threshold < 3) {
+            int n = Math.min(length, out.length);
+            for (int i = 0; i < n; i++) {
+                out[i] = i;
+            }
+            return n;
+        }
+
+        int written = 0;
+        out[written++] = 0;
+        double bucketSize = (double) (length - 2) / (threshold - 2);
+        int a = 0;
+
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            // Average of the next bucket is the third point of the triangle
+            int nextStart = (int) Math.floor((bucket + 1) * bucketSize) + 1;
+            int nextEnd = Math.min((int) Math.floor((bucket + 2) * bucketSize) + 1, length);
+            double avgX = 0;
+            double avgY = 0;
+            int nextCount = nextEnd - nextStart;
+            for (int i = nextStart; i < nextEnd; i++) {
+                avgX += xs[i];
+                avgY += ys[i];
+            }
+            if (nextCount > 0) {
+                avgX /= nextCount;
+                avgY /= nextCount;
+            } else {
+                avgX = xs[length - 1];
+                avgY = ys[length - 1];
+            }
+
+            int start = (int) Math.floor(bucket * bucketSize) + 1;
+            int end = (int) Math.floor((bucket + 1) * bucketSize) + 1;
+            double ax = xs[a];
+            double ay = ys[a];
+            double maxArea = -1;
+            int chosen = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((ax - avgX) * (ys[i] - ay) - (ax - xs[i]) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    chosen = i;
+                }
+            }
+            out[written++] = chosen;
+            a = chosen;
+        }
+
+        out[written++] = length - 1;
+        return written;
+    }
+}
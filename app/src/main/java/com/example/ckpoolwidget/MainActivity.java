@@ -1,36 +1,79 @@
 package com.example.ckpoolwidget;
 
+import android.Manifest;
 import android.app.AlertDialog;
 import android.appwidget.AppWidgetManager;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
 import android.graphics.Color;
+import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.EditText;
+import android.widget.LinearLayout;
 import android.widget.TextView;
 import androidx.appcompat.app.AppCompatActivity;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class MainActivity extends AppCompatActivity {
 
-    private static final String PREFS_NAME = "CKPoolWidgetPrefs";
-    private static final String PREF_BITCOIN_ADDRESS = "bitcoin_address";
+    private static final String PREFS_NAME = CKPoolWidget.PREFS_NAME;
+    private static final String PREF_BITCOIN_ADDRESS = CKPoolWidget.PREF_BITCOIN_ADDRESS;
     private static final String PREF_RATE_COLOR = "rate_color";
     private static final String PREF_SHARES_COLOR = "shares_color";
     private static final String PREF_BEST_COLOR = "best_color";
     private static final String PREF_MANUAL_BEST = "manual_best";
+    // Storage Access Framework requests for the history export and import
+    private static final int REQUEST_EXPORT_CSV = 1;
+    private static final int REQUEST_EXPORT_BINARY = 2;
+    private static final int REQUEST_IMPORT = 3;
+    // Live miner readings while the app is in front
+    private static final long DEVICE_POLL_INTERVAL_MS = 5000;
 
     private EditText bitcoinAddressInput;
     private EditText manualBestInput;
+    private EditText ckpoolUrlInput;
     private Button saveButton;
     private Button rateColorButton, sharesColorButton, bestColorButton;
+    private Button currencyButton;
     private TextView statusText;
+    private TextView poolStatsText;
+    private TextView blockOddsText;
+    private LinearLayout workersList;
+    private TextView diagnosticsText;
+    private Button exportDiagnosticsButton;
+    private TextView devicesText;
+    private Button scanDevicesButton;
+    private CheckBox liveBlocksCheckbox;
+    private CheckBox alertsCheckbox;
+    private TextView historyText;
+
+    // Scans and polls run here; AxeOs fans its calls out on the same pool
+    private final ExecutorService deviceExecutor = Executors.newCachedThreadPool();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private AxeOs axeOs;
+    private boolean resumed;
+    private boolean scanning;
+    // Whether this activity holds the BlockStream subscription
+    private boolean holdingBlockStream;
 
     private String rateColor = "#00FF00";
     private String sharesColor = "#00BFFF";
@@ -43,17 +86,68 @@ public class MainActivity extends AppCompatActivity {
 
         bitcoinAddressInput = findViewById(R.id.bitcoin_address_input);
         manualBestInput = findViewById(R.id.manual_best_input);
+        ckpoolUrlInput = findViewById(R.id.ckpool_url_input);
         saveButton = findViewById(R.id.save_button);
         statusText = findViewById(R.id.status_text);
+        poolStatsText = findViewById(R.id.pool_stats_text);
+        blockOddsText = findViewById(R.id.block_odds_text);
+        workersList = findViewById(R.id.workers_list);
+        diagnosticsText = findViewById(R.id.diagnostics_text);
+        exportDiagnosticsButton = findViewById(R.id.export_diagnostics_button);
+        devicesText = findViewById(R.id.devices_text);
+        scanDevicesButton = findViewById(R.id.scan_devices_button);
+        liveBlocksCheckbox = findViewById(R.id.live_blocks_checkbox);
+        alertsCheckbox = findViewById(R.id.alerts_checkbox);
+        historyText = findViewById(R.id.history_text);
         rateColorButton = findViewById(R.id.rate_color_button);
         sharesColorButton = findViewById(R.id.shares_color_button);
         bestColorButton = findViewById(R.id.best_color_button);
+        currencyButton = findViewById(R.id.currency_button);
 
         // Load saved settings
         loadSettings();
+        showWorkers();
+        showPoolStats();
+        showBlockOdds();
+        showDiagnostics();
 
         // Save button click
         saveButton.setOnClickListener(v -> saveSettings());
+        exportDiagnosticsButton.setOnClickListener(v -> exportDiagnostics());
+        findViewById(R.id.export_history_csv_button).setOnClickListener(v ->
+                createHistoryDocument(REQUEST_EXPORT_CSV, HistoryArchive.CSV_MIME_TYPE,
+                        "axe_watch_history.csv"));
+        findViewById(R.id.export_history_binary_button).setOnClickListener(v ->
+                createHistoryDocument(REQUEST_EXPORT_BINARY, HistoryArchive.BINARY_MIME_TYPE,
+                        "axe_watch_history.bin"));
+        findViewById(R.id.import_history_button).setOnClickListener(v -> {
+            Intent open = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+            open.addCategory(Intent.CATEGORY_OPENABLE);
+            open.setType("*/*");
+            startActivityForResult(open, REQUEST_IMPORT);
+        });
+        scanDevicesButton.setOnClickListener(v -> scanDevices());
+        liveBlocksCheckbox.setChecked(BlockStream.isEnabled(
+                getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)));
+        liveBlocksCheckbox.setOnCheckedChangeListener((button, checked) -> {
+            getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                    .putBoolean(BlockStream.PREF_LIVE_BLOCKS, checked).apply();
+            holdBlockStream(checked);
+        });
+        alertsCheckbox.setChecked(getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .getBoolean(AlertNotifier.PREF_ALERTS, false));
+        alertsCheckbox.setOnCheckedChangeListener((button, checked) -> {
+            getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                    .putBoolean(AlertNotifier.PREF_ALERTS, checked).apply();
+            // Android 13 and later ask before an app may post notifications
+            if (checked && Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                    && checkSelfPermission(Manifest.permission.POST_NOTIFICATIONS)
+                    != PackageManager.PERMISSION_GRANTED) {
+                requestPermissions(new String[]{Manifest.permission.POST_NOTIFICATIONS}, 0);
+            }
+        });
+        axeOs = new AxeOs(HttpClient.shared(), deviceExecutor,
+                EndpointMetrics.get(this).endpoint(EndpointMetrics.AXEOS));
 
         // Color button clicks
         rateColorButton.setOnClickListener(v -> showColorPicker("Rate", rateColor, color -> {
@@ -70,12 +164,49 @@ public class MainActivity extends AppCompatActivity {
             bestColor = color;
             updateButtonColor(bestColorButton, color);
         }));
+
+        currencyButton.setOnClickListener(v -> showCurrencyPicker());
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        resumed = true;
+        pollDevices();
+        holdBlockStream(liveBlocksCheckbox.isChecked());
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        resumed = false;
+        handler.removeCallbacksAndMessages(null);
+        holdBlockStream(false);
+    }
+
+    private void holdBlockStream(boolean hold) {
+        if (hold == holdingBlockStream) {
+            return;
+        }
+        holdingBlockStream = hold;
+        if (hold) {
+            BlockStream.get(this).acquire();
+        } else {
+            BlockStream.get(this).release();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        deviceExecutor.shutdownNow();
     }
 
     private void loadSettings() {
         SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
         String savedAddress = prefs.getString(PREF_BITCOIN_ADDRESS, "");
         bitcoinAddressInput.setText(savedAddress);
+        ckpoolUrlInput.setText(prefs.getString(CKPoolWidget.PREF_CKPOOL_URL, ""));
 
         // Load manual best share value
         long manualBest = prefs.getLong(PREF_MANUAL_BEST, 0);
@@ -90,12 +221,302 @@ public class MainActivity extends AppCompatActivity {
         updateButtonColor(rateColorButton, rateColor);
         updateButtonColor(sharesColorButton, sharesColor);
         updateButtonColor(bestColorButton, bestColor);
+        currencyButton.setText(prefs.getString(CKPoolWidget.PREF_CURRENCY,
+                RateCache.DEFAULT_CURRENCY));
+    }
+
+    private void showWorkers() {
+        // Cached by the last widget refresh
+        WidgetState state = WidgetStateStore.get(this).current();
+        for (AddressStats stats : state.addresses) {
+            if (stats.hashrate == null) {
+                continue;
+            }
+            if (workersList.getChildCount() == 1) {
+                findViewById(R.id.workers_empty_text).setVisibility(View.GONE);
+            }
+            TextView row = new TextView(this);
+            row.setText(String.format(Locale.US, "%s   %s   %d worker%s  ›",
+                    Addresses.label(stats.address), stats.hashrate, stats.workers.length,
+                    stats.workers.length == 1 ? "" : "s"));
+            row.setTextColor(Color.parseColor("#CCCCCC"));
+            row.setTextSize(14);
+            row.setPadding(0, 12, 0, 12);
+            row.setOnClickListener(v -> showWorkerDetails(stats));
+            workersList.addView(row);
+        }
+    }
+
+    private void showWorkerDetails(AddressStats stats) {
+        StringBuilder details = new StringBuilder();
+        for (AddressStats.Worker worker : stats.workers) {
+            if (details.length() > 0) {
+                details.append("\n\n");
+            }
+            details.append(worker.name)
+                    .append("\nRate: ").append(worker.hashrate)
+                    .append("   Shares: ").append(StatsFormatter.formatNumber(worker.shares))
+                    .append("   Best: ").append(StatsFormatter.formatNumber(worker.bestEver));
+        }
+        new AlertDialog.Builder(this)
+                .setTitle(Addresses.label(stats.address))
+                .setMessage(details.length() > 0 ? details : "No workers reported")
+                .setPositiveButton("OK", null)
+                .show();
+    }
+
+    // Probes the Wi-Fi subnet and saves the miners found in place of the previous list
+    private void scanDevices() {
+        if (scanning) {
+            return;
+        }
+        scanning = true;
+        scanDevicesButton.setEnabled(false);
+        devicesText.setText("Scanning...");
+        deviceExecutor.execute(() -> {
+            List<AxeDevice> found;
+            try {
+                found = axeOs.scan(AxeOs.localSubnetHosts());
+            } catch (Exception e) {
+                e.printStackTrace();
+                found = null;
+            }
+            List<AxeDevice> devices = found;
+            runOnUiThread(() -> {
+                scanning = false;
+                scanDevicesButton.setEnabled(true);
+                if (devices == null || devices.isEmpty()) {
+                    devicesText.setText(devices == null ? "Not connected to a local network"
+                            : "No miners found");
+                    return;
+                }
+                getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                        .putString(CKPoolWidget.PREF_AXE_DEVICES, AxeOs.joinHosts(devices))
+                        .apply();
+                String[] hosts = new String[devices.size()];
+                for (int i = 0; i < hosts.length; i++) {
+                    hosts[i] = devices.get(i).host;
+                }
+                showDevices(hosts, devices.toArray(new AxeDevice[0]));
+            });
+        });
+    }
+
+    // Polls the saved miners, then again every DEVICE_POLL_INTERVAL_MS while resumed
+    private void pollDevices() {
+        String[] hosts = AxeOs.parseHosts(getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .getString(CKPoolWidget.PREF_AXE_DEVICES, ""));
+        if (hosts.length == 0 || deviceExecutor.isShutdown()) {
+            return;
+        }
+        deviceExecutor.execute(() -> {
+            AxeDevice[] readings = axeOs.poll(hosts, System.nanoTime()
+                    + TimeUnit.MILLISECONDS.toNanos(AxeOs.POLL_TIMEOUT_MS));
+            runOnUiThread(() -> {
+                if (!resumed) {
+                    return;
+                }
+                if (!scanning) {
+                    showDevices(hosts, readings);
+                }
+                handler.postDelayed(this::pollDevices, DEVICE_POLL_INTERVAL_MS);
+            });
+        });
+    }
+
+    private void showDevices(String[] hosts, AxeDevice[] readings) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < hosts.length; i++) {
+            if (i > 0) {
+                text.append("\n\n");
+            }
+            AxeDevice device = readings[i];
+            if (device == null) {
+                text.append(hosts[i]).append("\nNot responding");
+                continue;
+            }
+            long uptimeHours = device.uptimeSeconds / 3600;
+            text.append(device.hostname).append(" (").append(device.host).append(')')
+                    .append(String.format(Locale.US,
+                            "\nRate: %s   Temp: %.0f°C   Best: %s   Up: %dd %dh",
+                            StatsFormatter.formatHashrate(device.hashrate), device.temperature,
+                            device.bestDiff, uptimeHours / 24, uptimeHours % 24));
+        }
+        devicesText.setText(text);
+    }
+
+    // From the cached difficulty and the local hashrate history - no network needed
+    private void showBlockOdds() {
+        BlockOdds odds = CKPoolWidget.getFetcher(this).odds();
+        if (!odds.isKnown()) {
+            return;
+        }
+        StringBuilder text = new StringBuilder();
+        text.append("Average hashrate (24h): ")
+                .append(StatsFormatter.formatHashrate(odds.hashrate))
+                .append("\nNetwork difficulty: ")
+                .append(StatsFormatter.formatNumber(odds.difficulty))
+                .append("\nExpected time to a block: ")
+                .append(StatsFormatter.formatExpected(odds.expectedSeconds()))
+                .append("\nChance today: ")
+                .append(formatChance(odds.chance(BlockOdds.DAY_SECONDS)))
+                .append("\nChance this month: ")
+                .append(formatChance(odds.chance(BlockOdds.MONTH_SECONDS)))
+                .append("\nChance this year: ")
+                .append(formatChance(odds.chance(BlockOdds.YEAR_SECONDS)));
+        if (odds.bestEver > 0) {
+            text.append(String.format(Locale.US, "\nBest share: %.4f%% of a block",
+                    odds.bestRatio() * 100));
+        }
+        blockOddsText.setText(text);
+    }
+
+    // "1 in 4.97 M" for long odds, a percentage otherwise
+    private static String formatChance(double chance) {
+        if (chance <= 0) {
+            return "none";
+        } else if (chance < 0.01) {
+            return "1 in " + StatsFormatter.formatNumber(1 / chance);
+        }
+        return String.format(Locale.US, "%.1f%%", chance * 100);
+    }
+
+    private void showPoolStats() {
+        // Computed from the local block index - no network needed
+        PoolBlockIndex index = PoolBlockIndex.get(this);
+        if (index.size() == 0) {
+            return;
+        }
+        long now = System.currentTimeMillis() / 1000;
+        int recent = index.countSince(now - SnapshotFetcher.STATS_WINDOW_SECONDS);
+        StringBuilder stats = new StringBuilder();
+        stats.append("Blocks in last 30 days: ").append(recent);
+        long interval = index.averageIntervalSeconds();
+        if (interval > 0) {
+            stats.append(String.format(Locale.US, "\nAverage time between blocks: %.1f days",
+                    interval / 86400.0));
+        }
+        stats.append("\nLatest block: ").append(index.latest().height);
+        poolStatsText.setText(stats);
+    }
+
+    private void showDiagnostics() {
+        // Counted since the app process started
+        WidgetPushTracker pushes = WidgetPushTracker.shared();
+        StringBuilder diagnostics = new StringBuilder(String.format(Locale.US,
+                "Widget updates sent: %d full, %d partial\nWidget updates skipped (unchanged): %d",
+                pushes.fullPushes(), pushes.partialPushes(), pushes.skippedPushes()));
+
+        // Saved with the widget state, so these survive process restarts
+        WidgetState state = WidgetStateStore.get(this).current();
+        if (state.firstRenderMs >= 0) {
+            diagnostics.append(String.format(Locale.US,
+                    "\nFirst widget frame after start: %d ms", state.firstRenderMs));
+        }
+        if (state.freshRenderMs >= 0) {
+            diagnostics.append(String.format(Locale.US,
+                    "\nFresh data on screen after refresh: %d ms", state.freshRenderMs));
+        }
+
+        // Kept across restarts in their own file
+        diagnostics.append("\n\n").append(EndpointMetrics.get(this).summary());
+        // In memory only, so these start over with the process
+        diagnostics.append("\n\nSources, best first:\n")
+                .append(CKPoolWidget.getFetcher(this).sourceSummary());
+        diagnosticsText.setText(diagnostics);
+    }
+
+    // Shares the diagnostics plus every endpoint counter as CSV
+    private void exportDiagnostics() {
+        showDiagnostics();
+        String report = diagnosticsText.getText() + "\n\n" + EndpointMetrics.get(this).toCsv();
+        Intent send = new Intent(Intent.ACTION_SEND);
+        send.setType("text/plain");
+        send.putExtra(Intent.EXTRA_SUBJECT, "Axe Watch diagnostics");
+        send.putExtra(Intent.EXTRA_TEXT, report);
+        startActivity(Intent.createChooser(send, "Export diagnostics"));
+    }
+
+    // Lets the user pick where the export goes: local storage, Drive, or any other provider
+    private void createHistoryDocument(int requestCode, String mimeType, String name) {
+        Intent create = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+        create.addCategory(Intent.CATEGORY_OPENABLE);
+        create.setType(mimeType);
+        create.putExtra(Intent.EXTRA_TITLE, name);
+        startActivityForResult(create, requestCode);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (resultCode != RESULT_OK || data == null || data.getData() == null) {
+            return;
+        }
+        Uri uri = data.getData();
+        if (requestCode == REQUEST_EXPORT_CSV || requestCode == REQUEST_EXPORT_BINARY) {
+            historyText.setText("Exporting…");
+            deviceExecutor.execute(() -> exportHistory(uri, requestCode == REQUEST_EXPORT_CSV));
+        } else if (requestCode == REQUEST_IMPORT) {
+            historyText.setText("Importing…");
+            deviceExecutor.execute(() -> importHistory(uri));
+        }
+    }
+
+    // Runs on deviceExecutor
+    private void exportHistory(Uri uri, boolean csv) {
+        String result;
+        try (OutputStream out = getContentResolver().openOutputStream(uri)) {
+            if (out == null) {
+                throw new IOException("Can't open " + uri);
+            }
+            HistoryArchive archive = new HistoryArchive(HashrateHistory.get(this),
+                    PoolBlockIndex.get(this));
+            HistoryArchive.Counts counts = csv ? archive.exportCsv(out)
+                    : archive.exportBinary(out);
+            result = String.format(Locale.US, "Exported %d samples and %d pool blocks",
+                    counts.samples, counts.blocks);
+        } catch (IOException | SecurityException e) {
+            e.printStackTrace();
+            result = "Export failed: " + e.getMessage();
+        }
+        String text = result;
+        runOnUiThread(() -> historyText.setText(text));
+    }
+
+    // Runs on deviceExecutor
+    private void importHistory(Uri uri) {
+        String result;
+        boolean added = false;
+        try (InputStream in = getContentResolver().openInputStream(uri)) {
+            if (in == null) {
+                throw new IOException("Can't open " + uri);
+            }
+            HistoryArchive.Counts counts = new HistoryArchive(HashrateHistory.get(this),
+                    PoolBlockIndex.get(this)).restore(in, WidgetStateStore.get(this));
+            added = counts.samples > 0 || counts.blocks > 0;
+            result = String.format(Locale.US, "Imported %d new samples and %d new pool blocks",
+                    counts.samples, counts.blocks);
+        } catch (IOException | SecurityException e) {
+            e.printStackTrace();
+            result = "Import failed: " + e.getMessage();
+        }
+        if (added) {
+            // Best share, sparkline and block stats may all have changed
+            sendBroadcast(new Intent(this, CKPoolWidget.class)
+                    .setAction(CKPoolWidget.ACTION_UPDATE));
+        }
+        String text = result;
+        runOnUiThread(() -> {
+            historyText.setText(text);
+            showPoolStats();
+            showBlockOdds();
+        });
     }
 
     private void saveSettings() {
-        String address = bitcoinAddressInput.getText().toString().trim();
+        String[] addresses = Addresses.parse(bitcoinAddressInput.getText().toString());
 
-        if (address.isEmpty()) {
+        if (addresses.length == 0) {
             statusText.setText("Please enter a Bitcoin address");
             statusText.setTextColor(Color.parseColor("#FF0000"));
             return;
@@ -103,7 +524,15 @@ public class MainActivity extends AppCompatActivity {
 
         SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
         SharedPreferences.Editor editor = prefs.edit();
-        editor.putString(PREF_BITCOIN_ADDRESS, address);
+        editor.putString(PREF_BITCOIN_ADDRESS, Addresses.join(addresses));
+        String ckpoolUrl = ckpoolUrlInput.getText().toString().trim();
+        if (!ckpoolUrl.isEmpty() && !ckpoolUrl.startsWith("http://")
+                && !ckpoolUrl.startsWith("https://")) {
+            statusText.setText("The ckpool URL must start with http:// or https://");
+            statusText.setTextColor(Color.parseColor("#FF0000"));
+            return;
+        }
+        editor.putString(CKPoolWidget.PREF_CKPOOL_URL, ckpoolUrl);
         editor.putString(PREF_RATE_COLOR, rateColor);
         editor.putString(PREF_SHARES_COLOR, sharesColor);
         editor.putString(PREF_BEST_COLOR, bestColor);
@@ -115,10 +544,14 @@ public class MainActivity extends AppCompatActivity {
                 long manualBest = Long.parseLong(manualBestStr);
                 editor.putLong(PREF_MANUAL_BEST, manualBest);
 
-                // ALWAYS override best_ever with manual input (allows correction of accidental high values)
-                editor.putLong("best_ever", manualBest);
-                // Clear date for manual entries since we don't know when it occurred
-                editor.putString("best_date", "");
+                // ALWAYS override best ever with manual input (allows correction of accidental high values)
+                WidgetStateStore stateStore = WidgetStateStore.get(this);
+                stateStore.update(state -> {
+                    state.bestEver = manualBest;
+                    // Clear date for manual entries since we don't know when it occurred
+                    state.bestDate = "";
+                });
+                stateStore.flush();
             } catch (NumberFormatException e) {
                 statusText.setText("Invalid best share value");
                 statusText.setTextColor(Color.parseColor("#FF0000"));
@@ -143,6 +576,30 @@ public class MainActivity extends AppCompatActivity {
         sendBroadcast(intent);
     }
 
+    // Applied right away: the widgets redraw from the cached rates without a refresh
+    private void showCurrencyPicker() {
+        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        List<String> currencies = RateCache.get(this).currencies();
+        if (currencies.isEmpty()) {
+            // Nothing fetched yet; the next refresh fills the list
+            currencies.add(RateCache.DEFAULT_CURRENCY);
+        }
+        String[] codes = currencies.toArray(new String[0]);
+        int checked = currencies.indexOf(prefs.getString(CKPoolWidget.PREF_CURRENCY,
+                RateCache.DEFAULT_CURRENCY));
+        new AlertDialog.Builder(this)
+                .setTitle("Price Currency")
+                .setSingleChoiceItems(codes, checked, (dialog, which) -> {
+                    prefs.edit().putString(CKPoolWidget.PREF_CURRENCY, codes[which]).apply();
+                    currencyButton.setText(codes[which]);
+                    dialog.dismiss();
+                    Context appContext = getApplicationContext();
+                    deviceExecutor.execute(() -> CKPoolWidget.redraw(appContext));
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
     private void showColorPicker(String title, String currentColor, ColorPickerCallback callback) {
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
         View dialogView = LayoutInflater.from(this).inflate(R.layout.color_picker_dialog, null);
@@ -0,0 +1,17 @@
+package com.example.ckpoolwidget;
+
+/**
+ * A block found by the pool, as reported by mempool.space.
+ */
+final class PoolBlock {
+
+    final int height;
+    final String hash;
+    final long timestamp;   // Seconds since the epoch
+
+    PoolBlock(int height, String hash, long timestamp) {
+        this.height = height;
+        this.hash = hash;
+        this.timestamp = timestamp;
+    }
+}
@@ -0,0 +1,319 @@
+package com.example.ckpoolwidget;
+
+import android.content.Context;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Local index of pool blocks, kept in an append-only file of fixed-size records
+ * (height, timestamp, 32-byte hash) in ascending height order.
+ *
+ * The whole index is loaded into primitive arrays on open, which is a single small read
+ * even after years of blocks. New blocks are appended with one write; a record torn by a
+ * crash is dropped and truncated on the next open. Blocks below the newest one, as from a
+ * restore, go through {@link #merge}, which rewrites the file.
+ */
+final class PoolBlockIndex {
+
+    static final String FILE_NAME = "pool_blocks.idx";
+
+    private static final int MAGIC = 0x504B4249;  // "PKBI"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    static final int HASH_SIZE = 32;
+    static final int RECORD_SIZE = 4 + 8 + HASH_SIZE;
+
+    private static PoolBlockIndex instance;
+
+    private final File file;
+    private final File tempFile;
+    private int count;
+    private int[] heights = new int[16];
+    private long[] timestamps = new long[16];
+    private byte[] hashes = new byte[16 * HASH_SIZE];
+
+    private PoolBlockIndex(File file) {
+        this.file = file;
+        this.tempFile = new File(file.getPath() + ".tmp");
+    }
+
+    static synchronized PoolBlockIndex get(Context context) {
+        if (instance == null) {
+            instance = open(new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+        }
+        return instance;
+    }
+
+    static PoolBlockIndex open(File file) {
+        PoolBlockIndex index = new PoolBlockIndex(file);
+        try {
+            index.load();
+        } catch (IOException e) {
+            e.printStackTrace();
+            // Start over rather than keep appending to a file we can't read
+            index.count = 0;
+            file.delete();
+        }
+        return index;
+    }
+
+    synchronized int size() {
+        return count;
+    }
+
+    synchronized int maxHeight() {
+        return count > 0 ? heights[count - 1] : -1;
+    }
+
+    // Seconds since the epoch, or -1 if no blocks are known
+    synchronized long latestTimestamp() {
+        return count > 0 ? timestamps[count - 1] : -1;
+    }
+
+    synchronized PoolBlock latest() {
+        return count > 0 ? blockAt(count - 1) : null;
+    }
+
+    synchronized PoolBlock blockAt(int i) {
+        return new PoolBlock(heights[i], toHex(hashes, i * HASH_SIZE), timestamps[i]);
+    }
+
+    synchronized int countSince(long epochSeconds) {
+        int n = 0;
+        for (int i = count - 1; i >= 0 && timestamps[i] >= epochSeconds; i--) {
+            n++;
+        }
+        return n;
+    }
+
+    // Mean time between consecutive indexed blocks, or -1 with fewer than two blocks
+    synchronized long averageIntervalSeconds() {
+        if (count < 2) {
+            return -1;
+        }
+        return (timestamps[count - 1] - timestamps[0]) / (count - 1);
+    }
+
+    /**
+     * Appends the blocks above {@link #maxHeight()}, in any order. Returns how many were added.
+     */
+    synchronized int append(List<PoolBlock> blocks) throws IOException {
+        PoolBlock[] newer = new PoolBlock[blocks.size()];
+        int n = 0;
+        int maxHeight = maxHeight();
+        for (PoolBlock block : blocks) {
+            if (block.height > maxHeight) {
+                newer[n++] = block;
+            }
+        }
+        if (n == 0) {
+            return 0;
+        }
+        Arrays.sort(newer, 0, n, (a, b) -> Integer.compare(a.height, b.height));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_SIZE + n * RECORD_SIZE);
+        DataOutputStream out = new DataOutputStream(bytes);
+        boolean newFile = !file.exists() || file.length() == 0;
+        if (newFile) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        }
+        // Added to memory only once they're on disk, so a failed write is retried next sync
+        int[] addedHeights = new int[n];
+        long[] addedTimestamps = new long[n];
+        byte[] addedHashes = new byte[n * HASH_SIZE];
+        byte[] hash = new byte[HASH_SIZE];
+        int added = 0;
+        int lastHeight = maxHeight;
+        for (int i = 0; i < n; i++) {
+            PoolBlock block = newer[i];
+            if (block.height == lastHeight) {
+                continue;  // Duplicate within this batch
+            }
+            fromHex(block.hash, hash);
+            out.writeInt(block.height);
+            out.writeLong(block.timestamp);
+            out.write(hash);
+            addedHeights[added] = block.height;
+            addedTimestamps[added] = block.timestamp;
+            System.arraycopy(hash, 0, addedHashes, added * HASH_SIZE, HASH_SIZE);
+            lastHeight = block.height;
+            added++;
+        }
+        out.flush();
+
+        // One write per sync
+        long length = newFile ? 0 : file.length();
+        try (FileOutputStream stream = new FileOutputStream(file, true)) {
+            bytes.writeTo(stream);
+            stream.getFD().sync();
+        } catch (IOException e) {
+            // Drop whatever part made it, or the retry would store those blocks twice
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(length);
+            } catch (IOException truncating) {
+                truncating.printStackTrace();
+            }
+            throw e;
+        }
+        for (int i = 0; i < added; i++) {
+            add(addedHeights[i], addedTimestamps[i], addedHashes, i * HASH_SIZE);
+        }
+        return added;
+    }
+
+    /**
+     * Adds the blocks whose height isn't in the index yet, in any order, and keeps the ones
+     * already there. Returns how many were added. Blocks above {@link #maxHeight()} only
+     * are appended; anything else rewrites the file to a temp file and swaps it in, so a
+     * crash leaves either the old index or the new one.
+     */
+    synchronized int merge(List<PoolBlock> blocks) throws IOException {
+        PoolBlock[] missing = new PoolBlock[blocks.size()];
+        int n = 0;
+        boolean older = false;
+        int maxHeight = maxHeight();
+        for (PoolBlock block : blocks) {
+            if (Arrays.binarySearch(heights, 0, count, block.height) < 0) {
+                missing[n++] = block;
+                older |= block.height < maxHeight;
+            }
+        }
+        if (!older) {
+            return n > 0 ? append(Arrays.asList(missing).subList(0, n)) : 0;
+        }
+        Arrays.sort(missing, 0, n, (a, b) -> Integer.compare(a.height, b.height));
+
+        int total = count + n;
+        int[] mergedHeights = new int[Math.max(16, total)];
+        long[] mergedTimestamps = new long[mergedHeights.length];
+        byte[] mergedHashes = new byte[mergedHeights.length * HASH_SIZE];
+        byte[] hash = new byte[HASH_SIZE];
+        int m = 0;
+        int added = 0;
+        int i = 0;
+        int j = 0;
+        while (i < count || j < n) {
+            if (j == n || (i < count && heights[i] < missing[j].height)) {
+                mergedHeights[m] = heights[i];
+                mergedTimestamps[m] = timestamps[i];
+                System.arraycopy(hashes, i * HASH_SIZE, mergedHashes, m * HASH_SIZE, HASH_SIZE);
+                i++;
+            } else {
+                PoolBlock block = missing[j++];
+                if (m > 0 && mergedHeights[m - 1] == block.height) {
+                    continue;  // Duplicate within this batch
+                }
+                fromHex(block.hash, hash);
+                mergedHeights[m] = block.height;
+                mergedTimestamps[m] = block.timestamp;
+                System.arraycopy(hash, 0, mergedHashes, m * HASH_SIZE, HASH_SIZE);
+                added++;
+            }
+            m++;
+        }
+
+        try (FileOutputStream stream = new FileOutputStream(tempFile)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (int k = 0; k < m; k++) {
+                out.writeInt(mergedHeights[k]);
+                out.writeLong(mergedTimestamps[k]);
+                out.write(mergedHashes, k * HASH_SIZE, HASH_SIZE);
+            }
+            out.flush();
+            stream.getFD().sync();
+        }
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Could not replace " + file);
+        }
+        // The file is the new index now; memory follows
+        heights = mergedHeights;
+        timestamps = mergedTimestamps;
+        hashes = mergedHashes;
+        count = m;
+        return added;
+    }
+
+    private void load() throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        long length = file.length();
+        if (length < HEADER_SIZE) {
+            file.delete();
+            return;
+        }
+        int records = (int) ((length - HEADER_SIZE) / RECORD_SIZE);
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unknown pool block index format");
+            }
+            byte[] hash = new byte[HASH_SIZE];
+            for (int i = 0; i < records; i++) {
+                int height = in.readInt();
+                long timestamp = in.readLong();
+                in.readFully(hash);
+                add(height, timestamp, hash, 0);
+            }
+        }
+        long validLength = HEADER_SIZE + (long) records * RECORD_SIZE;
+        if (validLength != length) {
+            // Torn record from an interrupted append
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(validLength);
+            }
+        }
+    }
+
+    private void add(int height, long timestamp, byte[] hash, int offset) {
+        if (count == heights.length) {
+            heights = Arrays.copyOf(heights, count * 2);
+            timestamps = Arrays.copyOf(timestamps, count * 2);
+            hashes = Arrays.copyOf(hashes, count * 2 * HASH_SIZE);
+        }
+        heights[count] = height;
+        timestamps[count] = timestamp;
+        System.arraycopy(hash, offset, hashes, count * HASH_SIZE, HASH_SIZE);
+        count++;
+    }
+
+    private static void fromHex(String hex, byte[] out) {
+        Arrays.fill(out, (byte) 0);
+        if (hex == null || hex.length() != HASH_SIZE * 2) {
+            return;
+        }
+        for (int i = 0; i < HASH_SIZE; i++) {
+            int hi = Character.digit(hex.charAt(i * 2), 16);
+            int lo = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (hi < 0 || lo < 0) {
+                Arrays.fill(out, (byte) 0);
+                return;
+            }
+            out[i] = (byte) ((hi << 4) | lo);
+        }
+    }
+
+    private static String toHex(byte[] bytes, int offset) {
+        char[] hex = new char[HASH_SIZE * 2];
+        for (int i = 0; i < HASH_SIZE; i++) {
+            int b = bytes[offset + i] & 0xff;
+            hex[i * 2] = Character.forDigit(b >> 4, 16);
+            hex[i * 2 + 1] = Character.forDigit(b & 0xf, 16);
+        }
+        return new String(hex);
+    }
+}
@@ -0,0 +1,255 @@
+package com.example.ckpoolwidget;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Pull parser for the mempool.space pool-blocks response, a JSON array of block objects.
+ *
+ * Only the top-level {@code height}, {@code id} and {@code timestamp} of each block are
+ * decoded; every other value (including the large nested {@code extras} object) is skipped
+ * byte by byte without building strings or objects. The visitor can stop the parse after
+ * any block, so reading the newest block costs the same regardless of how many blocks the
+ * response holds.
+ */
+final class PoolBlocksReader {
+
+    interface Visitor {
+        // Return false to stop reading
+        boolean onBlock(int height, String hash, long timestamp);
+    }
+
+    private static final int BUFFER_SIZE = 4096;
+    private static final int MAX_KEY_LENGTH = 16;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final char[] key = new char[MAX_KEY_LENGTH];
+    private final StringBuilder text = new StringBuilder(64);
+    private int position;
+    private int limit;
+
+    private PoolBlocksReader(InputStream in) {
+        this.in = in;
+    }
+
+    static void read(InputStream in, Visitor visitor) throws IOException {
+        new PoolBlocksReader(in).readBlocks(visitor);
+    }
+
+    private void readBlocks(Visitor visitor) throws IOException {
+        expect('[');
+        int c = nextNonWhitespace();
+        if (c == ']') {
+            return;
+        }
+        while (true) {
+            if (c != '{') {
+                throw syntaxError("expected block object");
+            }
+            if (!readBlock(visitor)) {
+                return;
+            }
+            c = nextNonWhitespace();
+            if (c == ']') {
+                return;
+            }
+            if (c != ',') {
+                throw syntaxError("expected ',' or ']'");
+            }
+            c = nextNonWhitespace();
+        }
+    }
+
+    // Called just after the opening brace; returns the visitor's verdict
+    private boolean readBlock(Visitor visitor) throws IOException {
+        int height = -1;
+        long timestamp = -1;
+        String hash = null;
+
+        int c = nextNonWhitespace();
+        while (c != '}') {
+            if (c != '"') {
+                throw syntaxError("expected key");
+            }
+            int keyLength = readKey();
+            expect(':');
+            if (keyEquals(keyLength, "height")) {
+                height = (int) readLong();
+            } else if (keyEquals(keyLength, "timestamp")) {
+                timestamp = readLong();
+            } else if (keyEquals(keyLength, "id")) {
+                expect('"');
+                hash = readString();
+            } else {
+                skipValue(nextNonWhitespace());
+            }
+            c = nextNonWhitespace();
+            if (c == ',') {
+                c = nextNonWhitespace();
+            } else if (c != '}') {
+                throw syntaxError("expected ',' or '}'");
+            }
+        }
+        return visitor.onBlock(height, hash, timestamp);
+    }
+
+    // Reads a key into the key buffer; longer keys are truncated and never match
+    private int readKey() throws IOException {
+        int length = 0;
+        int c;
+        while ((c = next()) != '"') {
+            if (c == '\\') {
+                next();
+                c = '?';
+            }
+            if (length < MAX_KEY_LENGTH) {
+                key[length] = (char) c;
+            }
+            length++;
+        }
+        return length;
+    }
+
+    private boolean keyEquals(int length, String name) {
+        if (length != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (key[i] != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long readLong() throws IOException {
+        int c = nextNonWhitespace();
+        if (c == 'n') {
+            skipLiteral();
+            return -1;
+        }
+        boolean negative = c == '-';
+        if (negative) {
+            c = next();
+        }
+        long value = 0;
+        while (c >= '0' && c <= '9') {
+            value = value * 10 + (c - '0');
+            c = peek();
+            if (c >= '0' && c <= '9') {
+                position++;
+            } else if (c == '.' || c == 'e' || c == 'E') {
+                // Fractional part is dropped
+                position++;
+                skipNumberTail();
+                break;
+            }
+        }
+        return negative ? -value : value;
+    }
+
+    // Called after the opening quote. Block hashes are plain ASCII hex.
+    private String readString() throws IOException {
+        text.setLength(0);
+        int c;
+        while ((c = next()) != '"') {
+            if (c == '\\') {
+                c = next();
+            }
+            text.append((char) c);
+        }
+        return text.toString();
+    }
+
+    private void skipValue(int c) throws IOException {
+        if (c == '"') {
+            skipString();
+        } else if (c == '{' || c == '[') {
+            skipContainer();
+        } else if (c == '-' || (c >= '0' && c <= '9')) {
+            skipNumberTail();
+        } else {
+            skipLiteral();
+        }
+    }
+
+    private void skipString() throws IOException {
+        int c;
+        while ((c = next()) != '"') {
+            if (c == '\\') {
+                next();
+            }
+        }
+    }
+
+    // Called after the opening bracket or brace
+    private void skipContainer() throws IOException {
+        int depth = 1;
+        while (depth > 0) {
+            int c = next();
+            if (c == '"') {
+                skipString();
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+            }
+        }
+    }
+
+    private void skipNumberTail() throws IOException {
+        int c;
+        while ((c = peek()) != -1 && (c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E'
+                || (c >= '0' && c <= '9'))) {
+            position++;
+        }
+    }
+
+    // true, false and null
+    private void skipLiteral() throws IOException {
+        int c;
+        while ((c = peek()) >= 'a' && c <= 'z') {
+            position++;
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        if (nextNonWhitespace() != expected) {
+            throw syntaxError("expected '" + expected + "'");
+        }
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int c;
+        do {
+            c = next();
+        } while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+        return c;
+    }
+
+    private int next() throws IOException {
+        int c = peek();
+        if (c == -1) {
+            throw syntaxError("unexpected end of input");
+        }
+        position++;
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (position == limit) {
+            limit = in.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position] & 0xff;
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException("Malformed pool blocks response: " + message);
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.ckpoolwidget;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Where per-address pool stats come from.
+ */
+interface PoolDataSource extends SourceSelector.Source {
+
+    String userUrl(String address);
+
+    AddressStats parseUser(String address, JSONObject json) throws JSONException;
+}
@@ -0,0 +1,16 @@
+package com.example.ckpoolwidget;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.util.Map;
+
+/**
+ * Where the Bitcoin price comes from.
+ */
+interface PriceSource extends SourceSelector.Source {
+
+    String url();
+
+    // Price of one bitcoin per currency code; always has USD, and all the others the feed reports
+    Map<String, Double> parsePrices(JSONObject json) throws JSONException;
+}
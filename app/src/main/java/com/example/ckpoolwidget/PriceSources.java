@@ -0,0 +1,117 @@
+package com.example.ckpoolwidget;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The price feeds the widget can read, tried in the order of {@link #defaults()}. Coinbase
+ * and mempool.space return every currency in one response; Kraken only has US dollars.
+ */
+final class PriceSources {
+
+    static final String COINBASE_URL = "https://api.coinbase.com/v2/exchange-rates?currency=BTC";
+    static final String KRAKEN_URL = "https://api.kraken.com/0/public/Ticker?pair=XBTUSD";
+    static final String MEMPOOL_URL = "https://mempool.space/api/v1/prices";
+
+    private PriceSources() {
+    }
+
+    static List<PriceSource> defaults() {
+        return Arrays.asList(coinbase(COINBASE_URL), kraken(KRAKEN_URL), mempool(MEMPOOL_URL));
+    }
+
+    // {"data":{"currency":"BTC","rates":{"USD":"97123.45","EUR":"89877.1",...}}}, or the
+    // single-currency spot form {"data":{"amount":"97123.45","base":"BTC","currency":"USD"}}
+    static PriceSource coinbase(String url) {
+        return new Feed("Coinbase", url) {
+            @Override
+            public Map<String, Double> parsePrices(JSONObject json) throws JSONException {
+                JSONObject data = json.getJSONObject("data");
+                JSONObject rates = data.optJSONObject("rates");
+                if (rates == null) {
+                    return single(data.optString("currency", "USD"),
+                            Double.parseDouble(data.getString("amount")));
+                }
+                Map<String, Double> prices = new HashMap<>();
+                Iterator<String> codes = rates.keys();
+                while (codes.hasNext()) {
+                    String code = codes.next();
+                    prices.put(code, Double.parseDouble(rates.getString(code)));
+                }
+                return withUsd(prices);
+            }
+        };
+    }
+
+    // {"error":[],"result":{"XXBTZUSD":{"c":["97123.4","0.0012"],...}}}, c being the last trade
+    static PriceSource kraken(String url) {
+        return new Feed("Kraken", url) {
+            @Override
+            public Map<String, Double> parsePrices(JSONObject json) throws JSONException {
+                JSONObject result = json.getJSONObject("result");
+                JSONObject pair = result.getJSONObject(result.keys().next());
+                return single("USD", Double.parseDouble(pair.getJSONArray("c").getString(0)));
+            }
+        };
+    }
+
+    // {"time":1750000000,"USD":97123,"EUR":89000,...}
+    static PriceSource mempool(String url) {
+        return new Feed("mempool.space", url) {
+            @Override
+            public Map<String, Double> parsePrices(JSONObject json) throws JSONException {
+                Map<String, Double> prices = new HashMap<>();
+                Iterator<String> codes = json.keys();
+                while (codes.hasNext()) {
+                    String code = codes.next();
+                    if (!code.equals("time")) {
+                        prices.put(code, json.getDouble(code));
+                    }
+                }
+                return withUsd(prices);
+            }
+        };
+    }
+
+    private static Map<String, Double> single(String currency, double price)
+            throws JSONException {
+        Map<String, Double> prices = new HashMap<>();
+        prices.put(currency, price);
+        return withUsd(prices);
+    }
+
+    // The widget's fallback price is in dollars, so a response without them is unusable
+    private static Map<String, Double> withUsd(Map<String, Double> prices)
+            throws JSONException {
+        Double usd = prices.get("USD");
+        if (usd == null || !(usd > 0)) {
+            throw new JSONException("No USD price");
+        }
+        return prices;
+    }
+
+    private abstract static class Feed implements PriceSource {
+        private final String name;
+        private final String url;
+
+        Feed(String name, String url) {
+            this.name = name;
+            this.url = url;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public String url() {
+            return url;
+        }
+    }
+}
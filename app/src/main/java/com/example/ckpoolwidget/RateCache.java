@@ -0,0 +1,186 @@
+package com.example.ckpoolwidget;
+
+import android.content.Context;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Bitcoin prices in every fiat currency, from one batched exchange-rates request per
+ * price TTL, shared by every widget and the app.
+ *
+ * Widgets format the price in their own currency from here at draw time, so a currency
+ * change is a redraw, not a fetch. The rates are kept in memory and written to a small
+ * file whenever a fetch changes them. A currency that no feed has reported for
+ * {@link #MAX_AGE_MS} is evicted, and at most {@link #MAX_RATES} are kept.
+ */
+final class RateCache {
+
+    static final String FILE_NAME = "rates.bin";
+    static final String DEFAULT_CURRENCY = "USD";
+    static final long MAX_AGE_MS = 7L * 24 * 60 * 60 * 1000;
+    static final int MAX_RATES = 200;
+
+    private static final int MAGIC = 0x52415445;  // "RATE"
+    private static final int VERSION = 1;
+
+    private static RateCache instance;
+
+    private final File file;
+    private final File tempFile;
+    // Guarded by this
+    private final Map<String, Rate> rates = new HashMap<>();
+
+    private static final class Rate {
+        final double price;
+        final long fetchedAt;
+
+        Rate(double price, long fetchedAt) {
+            this.price = price;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+
+    private RateCache(File file) {
+        this.file = file;
+        this.tempFile = new File(file.getPath() + ".tmp");
+    }
+
+    static synchronized RateCache get(Context context) {
+        if (instance == null) {
+            instance = open(new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+        }
+        return instance;
+    }
+
+    static RateCache open(File file) {
+        RateCache cache = new RateCache(file);
+        try {
+            cache.load();
+        } catch (IOException e) {
+            e.printStackTrace();
+            // The next price fetch fills it again
+            cache.rates.clear();
+            file.delete();
+        }
+        return cache;
+    }
+
+    /**
+     * Stores one fetch's prices, keyed by currency code, drops what has aged out and
+     * writes the cache. Codes that aren't ISO 4217 currencies (crypto assets in the
+     * exchange-rate feeds) are skipped.
+     */
+    synchronized void put(Map<String, Double> prices, long fetchedAt) {
+        for (Map.Entry<String, Double> entry : prices.entrySet()) {
+            String code = entry.getKey().toUpperCase(Locale.US);
+            double price = entry.getValue();
+            if (price > 0 && !Double.isInfinite(price) && isCurrency(code)) {
+                rates.put(code, new Rate(price, fetchedAt));
+            }
+        }
+        evict(fetchedAt);
+        save();
+    }
+
+    private static boolean isCurrency(String code) {
+        try {
+            Currency.getInstance(code);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private void evict(long now) {
+        Iterator<Rate> it = rates.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().fetchedAt > MAX_AGE_MS) {
+                it.remove();
+            }
+        }
+        if (rates.size() > MAX_RATES) {
+            List<Map.Entry<String, Rate>> oldest = new ArrayList<>(rates.entrySet());
+            Collections.sort(oldest, (a, b) -> Long.compare(a.getValue().fetchedAt,
+                    b.getValue().fetchedAt));
+            for (int i = 0; i < oldest.size() - MAX_RATES; i++) {
+                rates.remove(oldest.get(i).getKey());
+            }
+        }
+    }
+
+    // Price of one bitcoin in the currency, NaN if it isn't cached
+    synchronized double price(String currency) {
+        Rate rate = rates.get(currency);
+        return rate != null ? rate.price : Double.NaN;
+    }
+
+    // The price formatted for the widget, or null if the currency isn't cached
+    String formatPrice(String currency) {
+        double price = price(currency);
+        return Double.isNaN(price) ? null : StatsFormatter.formatPrice(price, currency);
+    }
+
+    // Cached currency codes, sorted
+    synchronized List<String> currencies() {
+        List<String> codes = new ArrayList<>(rates.keySet());
+        Collections.sort(codes);
+        return codes;
+    }
+
+    private void save() {
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(rates.size());
+                for (Map.Entry<String, Rate> entry : rates.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeDouble(entry.getValue().price);
+                    out.writeLong(entry.getValue().fetchedAt);
+                }
+            }
+            if (!tempFile.renameTo(file)) {
+                tempFile.delete();
+                throw new IOException("Could not replace " + file);
+            }
+        } catch (IOException e) {
+            // Kept in memory; written again with the next fetch
+            e.printStackTrace();
+        }
+    }
+
+    private void load() throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unknown rate cache format");
+            }
+            int count = in.readInt();
+            if (count < 0 || count > MAX_RATES) {
+                throw new IOException("Bad rate count " + count);
+            }
+            for (int i = 0; i < count; i++) {
+                String code = in.readUTF();
+                rates.put(code, new Rate(in.readDouble(), in.readLong()));
+            }
+        }
+    }
+}
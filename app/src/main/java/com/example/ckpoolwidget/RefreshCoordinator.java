@@ -0,0 +1,105 @@
+package com.example.ckpoolwidget;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs at most one refresh at a time and shares its result with every widget.
+ *
+ * Widget IDs that ask for a refresh while one is already in flight are added to the
+ * running cycle instead of starting another fetch, so a burst of taps or several widgets
+ * on the home screen still costs one request per endpoint. Completion callbacks of every
+ * joined request run once the shared result has been applied.
+ */
+final class RefreshCoordinator {
+
+    interface Fetcher {
+        WidgetSnapshot fetch();
+    }
+
+    interface Sink {
+        void apply(WidgetSnapshot snapshot, int[] appWidgetIds);
+    }
+
+    private final Executor executor;
+    private final Fetcher fetcher;
+    private final Sink sink;
+
+    // Guarded by this
+    private final Set<Integer> targets = new LinkedHashSet<>();
+    private final List<Runnable> completions = new ArrayList<>();
+    private boolean inFlight;
+
+    RefreshCoordinator(Executor executor, Fetcher fetcher, Sink sink) {
+        this.executor = executor;
+        this.fetcher = fetcher;
+        this.sink = sink;
+    }
+
+    void requestRefresh(int[] appWidgetIds) {
+        requestRefresh(appWidgetIds, null);
+    }
+
+    void requestRefresh(int[] appWidgetIds, Runnable onComplete) {
+        boolean start;
+        synchronized (this) {
+            for (int appWidgetId : appWidgetIds) {
+                targets.add(appWidgetId);
+            }
+            if (targets.isEmpty()) {
+                // No widgets to refresh
+                start = false;
+            } else {
+                if (onComplete != null) {
+                    completions.add(onComplete);
+                    onComplete = null;
+                }
+                start = !inFlight;
+                inFlight = true;
+            }
+        }
+        if (onComplete != null) {
+            onComplete.run();
+        }
+        if (start) {
+            executor.execute(this::runCycle);
+        }
+    }
+
+    synchronized boolean isRefreshing() {
+        return inFlight;
+    }
+
+    private void runCycle() {
+        WidgetSnapshot snapshot = null;
+        try {
+            snapshot = fetcher.fetch();
+        } finally {
+            int[] appWidgetIds;
+            List<Runnable> done;
+            synchronized (this) {
+                appWidgetIds = new int[targets.size()];
+                int i = 0;
+                for (int appWidgetId : targets) {
+                    appWidgetIds[i++] = appWidgetId;
+                }
+                targets.clear();
+                done = new ArrayList<>(completions);
+                completions.clear();
+                inFlight = false;
+            }
+            try {
+                if (snapshot != null) {
+                    sink.apply(snapshot, appWidgetIds);
+                }
+            } finally {
+                for (Runnable onComplete : done) {
+                    onComplete.run();
+                }
+            }
+        }
+    }
+}
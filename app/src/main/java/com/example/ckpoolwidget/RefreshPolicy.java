@@ -0,0 +1,65 @@
+package com.example.ckpoolwidget;
+
+/**
+ * Picks the delay until the next background refresh.
+ *
+ * Polls every {@link #FAST_INTERVAL_MS} while the hashrate or best share is moving, slows
+ * down step by step while they stay put, and backs off exponentially on consecutive failed
+ * refreshes and while the device is dozing, when nobody is looking at the widget. A suspected
+ * hashrate drop or offline worker is re-checked after {@link #CONFIRM_INTERVAL_MS}, dozing
+ * or not, so its alert doesn't wait for the slow schedule.
+ */
+final class RefreshPolicy {
+
+    static final long FAST_INTERVAL_MS = 5 * 60 * 1000L;
+    static final long NORMAL_INTERVAL_MS = 15 * 60 * 1000L;
+    static final long IDLE_INTERVAL_MS = 60 * 60 * 1000L;
+    static final long MAX_INTERVAL_MS = 4 * 60 * 60 * 1000L;
+    static final long CONFIRM_INTERVAL_MS = 2 * 60 * 1000L;
+
+    // Unchanged refreshes before the normal interval doubles
+    static final int UNCHANGED_STEP = 4;
+    // Relative hashrate change that counts as moving; the 5m average always jitters a little
+    static final double HASHRATE_CHANGE_THRESHOLD = 0.10;
+
+    private RefreshPolicy() {
+    }
+
+    /**
+     * @param failures consecutive refreshes whose ckpool call failed
+     * @param unchanged consecutive successful refreshes with no significant change
+     * @param idleRefreshes consecutive refreshes that ran while the device was idle
+     */
+    static long nextDelayMillis(int failures, int unchanged, int idleRefreshes) {
+        return nextDelayMillis(failures, unchanged, idleRefreshes, false);
+    }
+
+    /**
+     * @param confirming the last refresh saw an anomaly that the next one should confirm
+     */
+    static long nextDelayMillis(int failures, int unchanged, int idleRefreshes,
+                                boolean confirming) {
+        long delay;
+        if (failures > 0) {
+            delay = FAST_INTERVAL_MS << Math.min(failures, 6);
+        } else if (unchanged == 0) {
+            delay = FAST_INTERVAL_MS;
+        } else {
+            delay = NORMAL_INTERVAL_MS << Math.min((unchanged - 1) / UNCHANGED_STEP, 2);
+        }
+        if (idleRefreshes > 0) {
+            delay = Math.max(delay, IDLE_INTERVAL_MS << Math.min(idleRefreshes - 1, 2));
+        }
+        if (confirming && failures == 0) {
+            delay = Math.min(delay, CONFIRM_INTERVAL_MS);
+        }
+        return Math.min(delay, MAX_INTERVAL_MS);
+    }
+
+    static boolean hashrateChanged(double previous, double current) {
+        if (previous <= 0 || current <= 0) {
+            return previous != current;
+        }
+        return Math.abs(current - previous) / previous > HASHRATE_CHANGE_THRESHOLD;
+    }
+}
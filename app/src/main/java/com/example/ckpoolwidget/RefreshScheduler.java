@@ -0,0 +1,94 @@
+package com.example.ckpoolwidget;
+
+import android.content.Context;
+import android.os.PowerManager;
+import androidx.work.Constraints;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules the next background refresh after every refresh cycle, whatever triggered it.
+ *
+ * Each run is a one-off WorkManager job that only starts with a network connection, and
+ * its delay comes from {@link RefreshPolicy}. Enqueueing replaces the pending job, so a
+ * manual tap pushes the next background refresh back instead of adding another one.
+ */
+final class RefreshScheduler {
+
+    static final String WORK_NAME = "widget_refresh";
+    // From onRefreshed: nothing to poll, cancel instead of scheduling
+    static final long NO_REFRESH = -1;
+
+    private RefreshScheduler() {
+    }
+
+    /**
+     * Updates the policy counters for a finished cycle and returns the delay for
+     * {@link #reschedule}. That is a separate step because replacing the work cancels the
+     * RefreshWorker running this cycle, so it must come after the state is saved.
+     */
+    static long onRefreshed(Context context, WidgetStateStore stateStore, WidgetSnapshot snapshot) {
+        if (snapshot.setupRequired) {
+            // Nothing to poll until an address is saved; saving it triggers a refresh
+            return NO_REFRESH;
+        }
+        boolean deviceIdle = isDeviceIdle(context);
+        long[] delay = new long[1];
+        stateStore.update(state -> delay[0] = update(state, snapshot, deviceIdle));
+        return delay[0];
+    }
+
+    static void reschedule(Context context, long delayMillis) {
+        if (delayMillis == NO_REFRESH) {
+            cancel(context);
+        } else {
+            schedule(context, delayMillis);
+        }
+    }
+
+    // Updates the policy counters for one refresh and returns the delay until the next
+    static long update(WidgetState state, WidgetSnapshot snapshot, boolean deviceIdle) {
+        state.refreshIdle = deviceIdle ? state.refreshIdle + 1 : 0;
+        if (!snapshot.live) {
+            state.refreshFailures++;
+        } else {
+            state.refreshFailures = 0;
+            double hashrate = Hashrate.parse(snapshot.hashrate);
+            boolean changed = RefreshPolicy.hashrateChanged(state.seenHashrate, hashrate)
+                    || !snapshot.best.equals(state.seenBest);
+            state.refreshUnchanged = changed ? 0 : state.refreshUnchanged + 1;
+            if (changed) {
+                state.seenHashrate = hashrate;
+                state.seenBest = snapshot.best;
+            }
+        }
+        return RefreshPolicy.nextDelayMillis(state.refreshFailures, state.refreshUnchanged,
+                state.refreshIdle, state.alertPending);
+    }
+
+    static void schedule(Context context, long delayMillis) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(RefreshWorker.class)
+                .setConstraints(constraints)
+                .setInitialDelay(delayMillis, TimeUnit.MILLISECONDS)
+                .build();
+        WorkManager.getInstance(context)
+                .enqueueUniqueWork(WORK_NAME, ExistingWorkPolicy.REPLACE, request);
+    }
+
+    static void cancel(Context context) {
+        WorkManager.getInstance(context).cancelUniqueWork(WORK_NAME);
+    }
+
+    // Doze only: a screen that was just switched off doesn't mean nobody will look again soon,
+    // and nothing would pull the next poll back in when it comes on
+    private static boolean isDeviceIdle(Context context) {
+        PowerManager power = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        return power != null && power.isDeviceIdleMode();
+    }
+}
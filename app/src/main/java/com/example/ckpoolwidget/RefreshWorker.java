@@ -0,0 +1,40 @@
+package com.example.ckpoolwidget;
+
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
+import android.content.Context;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background refresh started by {@link RefreshScheduler}. Joins the shared refresh cycle
+ * and waits for it, so the widgets are updated before WorkManager lets the process go.
+ */
+public class RefreshWorker extends Worker {
+
+    public RefreshWorker(Context context, WorkerParameters params) {
+        super(context, params);
+    }
+
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+        int[] appWidgetIds = AppWidgetManager.getInstance(context).getAppWidgetIds(
+                new ComponentName(context, CKPoolWidget.class));
+        if (appWidgetIds.length == 0) {
+            return Result.success();
+        }
+
+        // The cycle schedules the next run itself, which replaces (and stops) this one
+        CountDownLatch done = new CountDownLatch(1);
+        CKPoolWidget.getCoordinator(context).requestRefresh(appWidgetIds, done::countDown);
+        try {
+            done.await(SnapshotFetcher.DEFAULT_DEADLINE_MS + 10000, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return Result.success();
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.ckpoolwidget;
+
+/**
+ * Measures time to first meaningful render: from process start to the first frame with
+ * real values (cached or fresh), and from a refresh request to fresh data on screen.
+ * Times are {@code SystemClock.elapsedRealtime()} milliseconds supplied by the caller.
+ */
+final class RenderTimer {
+
+    private final long processStartMs;
+    private boolean firstFrameSeen;
+    private long requestedAtMs = -1;
+
+    RenderTimer(long processStartMs) {
+        this.processStartMs = processStartMs;
+    }
+
+    // Only the oldest request still waiting for fresh data counts
+    synchronized void requested(long nowMs) {
+        if (requestedAtMs < 0) {
+            requestedAtMs = nowMs;
+        }
+    }
+
+    /**
+     * Records a pushed frame. Returns {first frame ms, fresh frame ms}, each -1 if this
+     * frame didn't complete that measurement.
+     */
+    synchronized long[] framePushed(boolean live, long nowMs) {
+        long[] measured = {-1, -1};
+        if (!firstFrameSeen) {
+            firstFrameSeen = true;
+            measured[0] = nowMs - processStartMs;
+        }
+        if (live && requestedAtMs >= 0) {
+            measured[1] = nowMs - requestedAtMs;
+            requestedAtMs = -1;
+        }
+        return measured;
+    }
+}
@@ -0,0 +1,596 @@
+package com.example.ckpoolwidget;
+
+import android.content.SharedPreferences;
+import org.json.JSONObject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fetches ckpool stats for every configured address, the Bitcoin price and the last pool
+ * block once and turns them into a {@link WidgetSnapshot} of farm totals plus one per
+ * address. Failed calls fall back to the last cached values, which
+ * live in the {@link WidgetStateStore} and are saved once per refresh by the caller.
+ *
+ * The three endpoints are fetched concurrently under one deadline per refresh, so the
+ * slowest endpoint that answers in time sets the refresh latency. Addresses are fetched
+ * by at most {@link #MAX_PARALLEL_ADDRESSES} calls at a time, so a large farm doesn't
+ * open dozens of connections to ckpool at once. Calls still running
+ * when the deadline passes are disconnected and their cached values are used instead.
+ * Requests go through the shared {@link HttpClient}, so a {@code 304} reuses the result
+ * parsed from the previous response.
+ *
+ * Pool blocks are synced into the local {@link PoolBlockIndex}: parsing of the newest-first
+ * blocks list stops at the first block already indexed, and older pages are only requested
+ * when more than one page of blocks is new.
+ *
+ * The price request returns every currency the feed has at once; the rates go to the shared
+ * {@link RateCache}, and the snapshot carries the dollar price, which each widget swaps for
+ * its own currency when drawn.
+ *
+ * The price and pool blocks change far more slowly than the user's stats, so each has a
+ * TTL: while the last successful fetch is younger than it, the refresh reuses the cached
+ * price and the local block index without touching the network.
+ *
+ * AxeOS miners saved in the settings are polled directly over the LAN alongside, under a
+ * shorter deadline. When every miner mining to the configured addresses answers, their
+ * summed live hashrate is shown instead of ckpool's 5-minute average; the hashrate history
+ * keeps ckpool's values so it stays comparable across networks.
+ *
+ * Stats and the price each have several interchangeable sources: solo.ckpool.org and its
+ * regional nodes (or the self-hosted ckpool in {@link CKPoolWidget#PREF_CKPOOL_URL}
+ * instead), and
+ * several price feeds. A {@link SourceSelector} per kind routes calls to the fastest
+ * healthy source and fails over to the next within the refresh deadline.
+ *
+ * The network difficulty is cached for {@link #DIFFICULTY_TTL_MS}. With it, the block odds
+ * ({@link BlockOdds}) come from the local hashrate history via {@link HashrateWindow}, so
+ * they cost no requests of their own.
+ *
+ * Every call, and every call skipped within its TTL, is recorded in {@link EndpointMetrics}.
+ */
+final class SnapshotFetcher implements RefreshCoordinator.Fetcher {
+
+    static final String POOL_BLOCKS_URL = "https://mempool.space/api/v1/mining/pool/solock/blocks";
+    static final String DIFFICULTY_URL = "https://mempool.space/api/v1/mining/hashrate/3d";
+
+    // Whole refresh must fit well inside the broadcast receiver's goAsync() window
+    static final long DEFAULT_DEADLINE_MS = 20000;
+    static final int MAX_SYNC_PAGES = 10;
+    static final long STATS_WINDOW_SECONDS = 30L * 86400;
+    static final long PRICE_TTL_MS = 15 * 60 * 1000;
+    static final long POOL_BLOCKS_TTL_MS = 30 * 60 * 1000;
+    // Difficulty only changes every 2016 blocks, about two weeks
+    static final long DIFFICULTY_TTL_MS = 12 * 60 * 60 * 1000;
+    static final int MAX_PARALLEL_ADDRESSES = 4;
+
+    private final SharedPreferences prefs;
+    private final WidgetStateStore stateStore;
+    private final PoolBlockIndex blockIndex;
+    private final HashrateHistory history;
+    private final EndpointMetrics metrics;
+    private final RateCache rates;
+    private final HttpClient httpClient;
+    private final AxeOs axeOs;
+    private final ExecutorService networkExecutor;
+    private final long deadlineMillis;
+    private final SourceSelector<PoolDataSource> poolSources;
+    private final SourceSelector<PriceSource> priceSources;
+    private final String poolBlocksUrl;
+    private final String difficultyUrl;
+    private final HashrateWindow hashrateWindow = new HashrateWindow();
+    // Rebuilt when the self-hosted URL changes; guarded by this
+    private String selfHostedUrl;
+    private SourceSelector<PoolDataSource> selfHostedSources;
+
+    SnapshotFetcher(SharedPreferences prefs, WidgetStateStore stateStore,
+                    PoolBlockIndex blockIndex, HashrateHistory history, EndpointMetrics metrics,
+                    RateCache rates, ExecutorService networkExecutor) {
+        this(prefs, stateStore, blockIndex, history, metrics, rates, HttpClient.shared(),
+                networkExecutor, DEFAULT_DEADLINE_MS,
+                new SourceSelector<>(CkpoolSource.soloMirrors()),
+                new SourceSelector<>(PriceSources.defaults()), POOL_BLOCKS_URL, DIFFICULTY_URL);
+    }
+
+    // A single ckpool and Coinbase-style price URL, for tests and benchmarks
+    SnapshotFetcher(SharedPreferences prefs, WidgetStateStore stateStore,
+                    PoolBlockIndex blockIndex, HashrateHistory history, EndpointMetrics metrics,
+                    RateCache rates, HttpClient httpClient,
+                    ExecutorService networkExecutor, long deadlineMillis,
+                    String ckpoolUsersUrl, String btcPriceUrl, String poolBlocksUrl,
+                    String difficultyUrl) {
+        this(prefs, stateStore, blockIndex, history, metrics, rates, httpClient, networkExecutor,
+                deadlineMillis,
+                new SourceSelector<>(Collections.<PoolDataSource>singletonList(
+                        new CkpoolSource("ckpool", ckpoolUsersUrl))),
+                new SourceSelector<>(Collections.singletonList(
+                        PriceSources.coinbase(btcPriceUrl))), poolBlocksUrl, difficultyUrl);
+    }
+
+    SnapshotFetcher(SharedPreferences prefs, WidgetStateStore stateStore,
+                    PoolBlockIndex blockIndex, HashrateHistory history, EndpointMetrics metrics,
+                    RateCache rates, HttpClient httpClient,
+                    ExecutorService networkExecutor, long deadlineMillis,
+                    SourceSelector<PoolDataSource> poolSources,
+                    SourceSelector<PriceSource> priceSources, String poolBlocksUrl,
+                    String difficultyUrl) {
+        this.prefs = prefs;
+        this.stateStore = stateStore;
+        this.blockIndex = blockIndex;
+        this.history = history;
+        this.metrics = metrics;
+        this.rates = rates;
+        this.httpClient = httpClient;
+        this.axeOs = new AxeOs(httpClient, networkExecutor,
+                metrics.endpoint(EndpointMetrics.AXEOS));
+        this.networkExecutor = networkExecutor;
+        this.deadlineMillis = deadlineMillis;
+        this.poolSources = poolSources;
+        this.priceSources = priceSources;
+        this.poolBlocksUrl = poolBlocksUrl;
+        this.difficultyUrl = difficultyUrl;
+    }
+
+    @Override
+    public WidgetSnapshot fetch() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        String[] addresses = Addresses.parse(
+                prefs.getString(CKPoolWidget.PREF_BITCOIN_ADDRESS, ""));
+        String[] devices = AxeOs.parseHosts(prefs.getString(CKPoolWidget.PREF_AXE_DEVICES, ""));
+
+        long now = System.currentTimeMillis();
+        WidgetState state = stateStore.current();
+        boolean priceFresh = isFresh(state.priceFetchedAt, PRICE_TTL_MS, now)
+                && state.lastBtcPrice != null;
+        boolean poolFresh = isFresh(state.poolSyncedAt, POOL_BLOCKS_TTL_MS, now);
+        boolean difficultyFresh = isFresh(state.difficultyFetchedAt, DIFFICULTY_TTL_MS, now)
+                && state.networkDifficulty > 0;
+        if (priceFresh) {
+            metrics.endpoint(EndpointMetrics.PRICE).recordCacheHit();
+        }
+        if (poolFresh) {
+            metrics.endpoint(EndpointMetrics.POOL_BLOCKS).recordCacheHit();
+        }
+        if (difficultyFresh) {
+            metrics.endpoint(EndpointMetrics.DIFFICULTY).recordCacheHit();
+        }
+
+        Future<String> priceCall = priceFresh ? null
+                : networkExecutor.submit(() -> fetchBitcoinPrice(deadline));
+        Future<String> poolCall = poolFresh ? null
+                : networkExecutor.submit(() -> fetchPoolBlockInfo(deadline));
+        Future<Double> difficultyCall = difficultyFresh || addresses.length == 0 ? null
+                : networkExecutor.submit(() -> fetchDifficulty(deadline));
+        AtomicReferenceArray<AddressStats> fetched = new AtomicReferenceArray<>(addresses.length);
+        Future<?>[] userCalls = fetchAddresses(poolSources(), addresses, deadline, fetched);
+        long lanDeadline = Math.min(deadline,
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(AxeOs.POLL_TIMEOUT_MS));
+        Future<AxeDevice[]> deviceCall = devices.length == 0 || addresses.length == 0 ? null
+                : networkExecutor.submit(() -> axeOs.poll(devices, lanDeadline));
+
+        try {
+            String bitcoinPrice = priceCall == null ? null : await(priceCall, deadline);
+            if (bitcoinPrice == null) {
+                // Use cached price
+                bitcoinPrice = orDefault(stateStore.current().lastBtcPrice, "?");
+            }
+            // Within the TTL the label is still recomputed from the local index
+            String poolBlockInfo = poolCall == null ? describeLatestPoolBlock()
+                    : await(poolCall, deadline);
+            if (poolBlockInfo == null) {
+                // Use cached pool info
+                poolBlockInfo = orDefault(stateStore.current().lastPoolInfo, "N/A");
+            }
+
+            if (addresses.length == 0) {
+                return WidgetSnapshot.setup(bitcoinPrice, poolBlockInfo);
+            }
+            for (Future<?> userCall : userCalls) {
+                await(userCall, deadline);
+            }
+            WidgetSnapshot snapshot = buildUserStats(addresses, fetched, bitcoinPrice,
+                    poolBlockInfo);
+            AxeDevice[] readings = deviceCall == null ? null : await(deviceCall, deadline);
+            if (readings != null) {
+                snapshot = withLanHashrates(snapshot, addresses, readings);
+            }
+            if (difficultyCall != null) {
+                // Falls back to the cached difficulty
+                await(difficultyCall, deadline);
+            }
+            return withOdds(snapshot, addresses);
+        } finally {
+            // Anything still connected missed the deadline
+            httpClient.cancelExpired();
+        }
+    }
+
+    // The self-hosted ckpool when one is set, else solo.ckpool.org and its mirrors
+    private SourceSelector<PoolDataSource> poolSources() {
+        String url = prefs.getString(CKPoolWidget.PREF_CKPOOL_URL, "").trim();
+        if (url.isEmpty()) {
+            return poolSources;
+        }
+        synchronized (this) {
+            if (!url.equals(selfHostedUrl)) {
+                selfHostedUrl = url;
+                selfHostedSources = new SourceSelector<>(Collections.<PoolDataSource>singletonList(
+                        new CkpoolSource("Self-hosted ckpool", url)));
+            }
+            return selfHostedSources;
+        }
+    }
+
+    /**
+     * Recent latency and error rate of every stats and price source, for diagnostics.
+     */
+    String sourceSummary() {
+        return poolSources().summary() + "\n" + priceSources.summary();
+    }
+
+    private static boolean isFresh(long fetchedAt, long ttlMillis, long now) {
+        long age = now - fetchedAt;
+        return age >= 0 && age < ttlMillis;
+    }
+
+    private static String orDefault(String value, String fallback) {
+        return value != null ? value : fallback;
+    }
+
+    // Waits for a call until the shared deadline; null means it failed or timed out
+    private static <T> T await(Future<T> call, long deadline) {
+        try {
+            return call.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            call.cancel(true);
+            return null;
+        } catch (InterruptedException e) {
+            call.cancel(true);
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // Each task takes the next unfetched address until none are left or the deadline passes
+    private Future<?>[] fetchAddresses(SourceSelector<PoolDataSource> sources,
+                                       String[] addresses, long deadline,
+                                       AtomicReferenceArray<AddressStats> fetched) {
+        AtomicInteger next = new AtomicInteger();
+        Future<?>[] calls = new Future<?>[Math.min(addresses.length, MAX_PARALLEL_ADDRESSES)];
+        for (int t = 0; t < calls.length; t++) {
+            calls[t] = networkExecutor.submit(() -> {
+                int i;
+                while (System.nanoTime() - deadline < 0
+                        && (i = next.getAndIncrement()) < addresses.length) {
+                    String address = addresses[i];
+                    try {
+                        fetched.set(i, sources.fetch(deadline, (source, attemptDeadline) ->
+                                httpClient.get(source.userUrl(address), attemptDeadline,
+                                        body -> source.parseUser(address,
+                                                new JSONObject(httpClient.readText(body))),
+                                        metrics.endpoint(EndpointMetrics.USERS))));
+                    } catch (Exception e) {
+                        // This address falls back to its cached stats
+                        e.printStackTrace();
+                    }
+                }
+            });
+        }
+        return calls;
+    }
+
+    private WidgetSnapshot buildUserStats(String[] addresses,
+                                          AtomicReferenceArray<AddressStats> fetched,
+                                          String bitcoinPrice, String poolBlockInfo) {
+        long now = System.currentTimeMillis();
+        int answered = 0;
+        double totalHashrate = 0;
+        long totalShares = 0;
+        long bestever = 0;
+        for (int i = 0; i < addresses.length; i++) {
+            AddressStats stats = fetched.get(i);
+            if (stats != null) {
+                answered++;
+                totalHashrate += Hashrate.parse(stats.hashrate);
+                totalShares += stats.shares;
+                bestever = Math.max(bestever, stats.bestEver);
+            }
+        }
+        boolean complete = answered == addresses.length;
+        if (complete) {
+            // Keep every complete poll in the on-device time series
+            history.append(now / 1000, totalHashrate, totalShares, bestever);
+        }
+
+        // ckpool's own string for a single address, so its display is unchanged
+        String hashrateStr = addresses.length == 1 && complete ? fetched.get(0).hashrate
+                : StatsFormatter.formatHashrate(totalHashrate);
+        String sharesStr = StatsFormatter.formatNumber(totalShares);
+        long seenBest = bestever;
+        WidgetState[] updated = new WidgetState[1];
+        stateStore.update(state -> {
+            List<AddressStats> kept = new ArrayList<>(addresses.length);
+            for (int i = 0; i < addresses.length; i++) {
+                AddressStats saved = state.address(addresses[i]);
+                AddressStats fetchedStats = fetched.get(i);
+                if (fetchedStats == null) {
+                    kept.add(saved != null ? saved : new AddressStats(addresses[i]));
+                    continue;
+                }
+                // A 304 hands back the HTTP cache's object; the state gets its own
+                AddressStats fresh = fetchedStats.copy();
+                long reported = fresh.bestEver;
+                fresh.bestEver = saved != null ? saved.bestEver : 0;
+                fresh.bestDate = saved != null ? saved.bestDate : "";
+                if (reported > fresh.bestEver) {
+                    // Only dated when a known best was beaten
+                    if (fresh.bestEver > 0) {
+                        fresh.bestDate = StatsFormatter.formatDate(now);
+                    }
+                    fresh.bestEver = reported;
+                }
+                fresh.updatedAt = now;
+                kept.add(fresh);
+            }
+            // Addresses removed from the settings are dropped
+            state.addresses = kept;
+
+            // Saved best ever value
+            long savedBestEver = state.bestEver;
+
+            // ONLY save a date if:
+            // 1. We had a previous best saved (savedBestEver > 0)
+            // 2. AND the new value is higher than the saved value
+            if (savedBestEver > 0 && seenBest > savedBestEver) {
+                state.bestEver = seenBest;
+                // Save current date - we KNOW this is a new record
+                state.bestDate = StatsFormatter.formatDate(now);
+            } else if (savedBestEver == 0 && seenBest > 0) {
+                // First time seeing a best - save it but NO date
+                state.bestEver = seenBest;
+                // bestDate stays empty - we don't know when this happened
+            }
+
+            // Totals are only cached when every address answered
+            if (complete) {
+                state.lastHashrate = hashrateStr;
+                state.lastShares = sharesStr;
+                state.statsUpdatedAt = now;
+            }
+            // Published as it is here and never changed after, so no copy is needed
+            updated[0] = state;
+        });
+        WidgetState state = updated[0];
+        Map<String, WidgetSnapshot> byAddress = addressSnapshots(state, addresses, fetched,
+                bitcoinPrice, poolBlockInfo);
+
+        if (!complete) {
+            return cachedUserStats(state, bitcoinPrice, poolBlockInfo, byAddress);
+        }
+        return new WidgetSnapshot(false, true, now, hashrateStr, sharesStr,
+                StatsFormatter.formatNumber(state.bestEver), state.bestDate, bitcoinPrice,
+                poolBlockInfo, byAddress);
+    }
+
+    // Live miner hashrates for each address with miners, and for the totals when every
+    // address has them; only if every miner answered
+    private static WidgetSnapshot withLanHashrates(WidgetSnapshot snapshot, String[] addresses,
+                                                   AxeDevice[] readings) {
+        for (AxeDevice device : readings) {
+            if (device == null) {
+                // A silent miner could be mining to any of the addresses
+                return snapshot;
+            }
+        }
+        Map<String, String> byAddress = new HashMap<>();
+        double total = 0;
+        for (String address : addresses) {
+            double sum = 0;
+            boolean seen = false;
+            for (AxeDevice device : readings) {
+                if (device.minesTo(address)) {
+                    sum += device.hashrate;
+                    seen = true;
+                }
+            }
+            if (seen) {
+                byAddress.put(address, StatsFormatter.formatHashrate(sum));
+                total += sum;
+            }
+        }
+        if (byAddress.isEmpty()) {
+            return snapshot;
+        }
+        // Miners on other pools don't count towards the totals
+        return snapshot.withHashrates(byAddress.size() == addresses.length
+                ? StatsFormatter.formatHashrate(total) : null, byAddress);
+    }
+
+    /**
+     * Builds a snapshot from cached values only, for an immediate first frame before the
+     * network calls return.
+     */
+    WidgetSnapshot cachedSnapshot() {
+        WidgetState state = stateStore.current();
+        String bitcoinPrice = orDefault(state.lastBtcPrice, "?");
+        String poolBlockInfo = orDefault(state.lastPoolInfo, "N/A");
+        String[] addresses = Addresses.parse(
+                prefs.getString(CKPoolWidget.PREF_BITCOIN_ADDRESS, ""));
+        if (addresses.length == 0) {
+            return WidgetSnapshot.setup(bitcoinPrice, poolBlockInfo);
+        }
+        return withOdds(cachedUserStats(state, bitcoinPrice, poolBlockInfo,
+                addressSnapshots(state, addresses, null, bitcoinPrice, poolBlockInfo)), addresses);
+    }
+
+    /**
+     * Block odds for the farm: the mean hashrate of the last day of history (the latest
+     * poll while there is none), the cached network difficulty and the best share.
+     */
+    BlockOdds odds() {
+        WidgetState state = stateStore.current();
+        double hashrate = hashrateWindow.mean(history);
+        if (hashrate <= 0) {
+            hashrate = Hashrate.parse(state.lastHashrate);
+        }
+        return new BlockOdds(hashrate, state.networkDifficulty, state.bestEver);
+    }
+
+    // Expected time to a block under every snapshot; addresses go by their own hashrate
+    private WidgetSnapshot withOdds(WidgetSnapshot snapshot, String[] addresses) {
+        BlockOdds total = odds();
+        if (total.difficulty <= 0) {
+            return snapshot;
+        }
+        Map<String, String> byAddress = new HashMap<>();
+        for (String address : addresses) {
+            WidgetSnapshot single = snapshot.forAddress(address);
+            if (single != snapshot) {
+                byAddress.put(address, oddsLabel(new BlockOdds(Hashrate.parse(single.hashrate),
+                        total.difficulty, 0)));
+            }
+        }
+        return snapshot.withOdds(oddsLabel(total), byAddress);
+    }
+
+    private static String oddsLabel(BlockOdds odds) {
+        return odds.isKnown() ? "ETA " + StatsFormatter.formatExpected(odds.expectedSeconds())
+                : "";
+    }
+
+    private static WidgetSnapshot cachedUserStats(WidgetState state, String bitcoinPrice,
+                                                  String poolBlockInfo,
+                                                  Map<String, WidgetSnapshot> byAddress) {
+        // Load cached data instead of showing error
+        String cachedHashrate = orDefault(state.lastHashrate, "Error");
+        String cachedShares = orDefault(state.lastShares, "Error");
+        String bestStr = state.bestEver > 0 ? StatsFormatter.formatNumber(state.bestEver) : "Error";
+        String bestDate = state.bestDate;
+
+        return new WidgetSnapshot(false, false, state.statsUpdatedAt, cachedHashrate,
+                cachedShares, bestStr, bestDate, bitcoinPrice, poolBlockInfo, byAddress);
+    }
+
+    // One snapshot per address for address-bound widgets; none needed with a single address
+    private static Map<String, WidgetSnapshot> addressSnapshots(
+            WidgetState state, String[] addresses, AtomicReferenceArray<AddressStats> fetched,
+            String bitcoinPrice, String poolBlockInfo) {
+        Map<String, WidgetSnapshot> byAddress = new HashMap<>();
+        if (addresses.length < 2) {
+            return byAddress;
+        }
+        for (int i = 0; i < addresses.length; i++) {
+            AddressStats stats = state.address(addresses[i]);
+            if (stats == null || stats.hashrate == null) {
+                continue;
+            }
+            boolean live = fetched != null && fetched.get(i) != null;
+            byAddress.put(stats.address, new WidgetSnapshot(false, live, stats.updatedAt,
+                    stats.hashrate, StatsFormatter.formatNumber(stats.shares),
+                    stats.bestEver > 0 ? StatsFormatter.formatNumber(stats.bestEver) : "Error",
+                    stats.bestDate, bitcoinPrice, poolBlockInfo));
+        }
+        return byAddress;
+    }
+
+    private String fetchBitcoinPrice(long deadline) throws Exception {
+        Map<String, Double> prices = priceSources.fetch(deadline, (source, attemptDeadline) ->
+                httpClient.get(source.url(), attemptDeadline,
+                        body -> source.parsePrices(new JSONObject(httpClient.readText(body))),
+                        metrics.endpoint(EndpointMetrics.PRICE)));
+        String bitcoinPrice = StatsFormatter.formatPrice(prices.get("USD"));
+
+        // Cache successful price; widgets pick their own currency from the rates
+        long fetchedAt = System.currentTimeMillis();
+        rates.put(prices, fetchedAt);
+        stateStore.update(state -> {
+            state.lastBtcPrice = bitcoinPrice;
+            state.priceFetchedAt = fetchedAt;
+        });
+        return bitcoinPrice;
+    }
+
+    // {"hashrates":[...],"difficulty":[...],"currentHashrate":...,"currentDifficulty":...}
+    private double fetchDifficulty(long deadline) throws Exception {
+        double difficulty = httpClient.get(difficultyUrl, deadline,
+                body -> new JSONObject(httpClient.readText(body)).getDouble("currentDifficulty"),
+                metrics.endpoint(EndpointMetrics.DIFFICULTY));
+        long fetchedAt = System.currentTimeMillis();
+        stateStore.update(state -> {
+            state.networkDifficulty = difficulty;
+            state.difficultyFetchedAt = fetchedAt;
+        });
+        return difficulty;
+    }
+
+    private String fetchPoolBlockInfo(long deadline) throws Exception {
+        syncPoolBlocks(deadline);
+        long syncedAt = System.currentTimeMillis();
+        stateStore.update(state -> state.poolSyncedAt = syncedAt);
+        return describeLatestPoolBlock();
+    }
+
+    private String describeLatestPoolBlock() {
+        String poolBlockInfo = "?";
+        long blockTimestamp = blockIndex.latestTimestamp();
+        if (blockTimestamp >= 0) {
+            long currentTime = System.currentTimeMillis() / 1000;
+            poolBlockInfo = StatsFormatter.formatAge(currentTime - blockTimestamp);
+
+            // Cache successful pool info
+            String info = poolBlockInfo;
+            stateStore.update(state -> state.lastPoolInfo = info);
+        }
+        return poolBlockInfo;
+    }
+
+    private void syncPoolBlocks(long deadline) throws Exception {
+        int knownHeight = blockIndex.maxHeight();
+        long backfillUntil = System.currentTimeMillis() / 1000 - STATS_WINDOW_SECONDS;
+        List<PoolBlock> newer = new ArrayList<>();
+
+        String url = poolBlocksUrl;
+        for (int page = 0; page < MAX_SYNC_PAGES; page++) {
+            // Newest first; stop parsing at the first block we already have
+            List<PoolBlock> blocks = httpClient.get(url, deadline, body -> {
+                List<PoolBlock> read = new ArrayList<>();
+                PoolBlocksReader.read(body, (height, hash, timestamp) -> {
+                    read.add(new PoolBlock(height, hash, timestamp));
+                    return height > knownHeight;
+                });
+                return read;
+            }, metrics.endpoint(EndpointMetrics.POOL_BLOCKS));
+            if (blocks.isEmpty()) {
+                break;
+            }
+
+            boolean reachedKnown = false;
+            for (PoolBlock block : blocks) {
+                if (block.height > knownHeight) {
+                    newer.add(block);
+                } else {
+                    reachedKnown = true;
+                }
+            }
+            PoolBlock oldest = blocks.get(blocks.size() - 1);
+            if (reachedKnown || (knownHeight < 0 && oldest.timestamp < backfillUntil)) {
+                // Caught up, or a fresh index already covers the stats window
+                break;
+            }
+            // Next page holds the blocks below the oldest one seen so far
+            url = poolBlocksUrl + "/" + oldest.height;
+        }
+        blockIndex.append(newer);
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.ckpoolwidget;
+
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks which of several interchangeable sources to call, and fails over to the next one
+ * within the caller's deadline.
+ *
+ * Each source keeps a moving average of its latency and error rate. Calls go to healthy
+ * sources first, fastest first, then to sources that haven't been tried yet in the order
+ * given, and to unhealthy ones last. An unhealthy source is tried again in the normal
+ * order once {@link #RETRY_AFTER_MS} has passed since its last failure. Each attempt gets
+ * an equal share of the time left (at least {@link #MIN_ATTEMPT_MS}), so a hung source
+ * costs part of the refresh instead of all of it.
+ *
+ * State is kept in memory only; a new process starts from the configured order.
+ */
+final class SourceSelector<S extends SourceSelector.Source> {
+
+    interface Source {
+        // Shown in diagnostics
+        String name();
+    }
+
+    interface Call<S, T> {
+        T fetch(S source, long deadline) throws Exception;
+    }
+
+    // Weight of the newest sample in the moving averages
+    static final double ALPHA = 0.3;
+    static final double UNHEALTHY_ERROR_RATE = 0.5;
+    static final long RETRY_AFTER_MS = 10 * 60 * 1000;
+    static final long MIN_ATTEMPT_MS = 3000;
+
+    private static final int HEALTHY = 0;
+    private static final int UNTRIED = 1;
+    private static final int UNHEALTHY = 2;
+
+    private final List<S> sources;
+    // Guarded by this; latency is NaN until the first success
+    private final double[] latencyMs;
+    private final double[] errorRate;
+    private final long[] lastFailureNanos;
+    private final boolean[] failed;
+
+    SourceSelector(List<S> sources) {
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException("No sources");
+        }
+        this.sources = new ArrayList<>(sources);
+        latencyMs = new double[sources.size()];
+        errorRate = new double[sources.size()];
+        lastFailureNanos = new long[sources.size()];
+        failed = new boolean[sources.size()];
+        Arrays.fill(latencyMs, Double.NaN);
+    }
+
+    /**
+     * Calls the best source, then the next ones in turn while calls fail, until one
+     * succeeds or {@code deadline} (a {@link System#nanoTime()} value) passes. Client
+     * errors (HTTP 4xx) are the same on every source and are thrown straight away.
+     */
+    <T> T fetch(long deadline, Call<? super S, T> call) throws Exception {
+        int[] order = ranked();
+        Exception last = null;
+        for (int n = 0; n < order.length; n++) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            long share = Math.max(TimeUnit.MILLISECONDS.toNanos(MIN_ATTEMPT_MS),
+                    remaining / (order.length - n));
+            int i = order[n];
+            long start = System.nanoTime();
+            try {
+                T result = call.fetch(sources.get(i), start + Math.min(remaining, share));
+                recordSuccess(i, System.nanoTime() - start);
+                return result;
+            } catch (HttpClient.HttpStatusException e) {
+                if (e.status >= 400 && e.status < 500) {
+                    // The source answered; the request itself is wrong
+                    recordSuccess(i, System.nanoTime() - start);
+                    throw e;
+                }
+                recordFailure(i);
+                last = e;
+            } catch (Exception e) {
+                recordFailure(i);
+                last = e;
+            }
+        }
+        if (last == null) {
+            last = new SocketTimeoutException("Deadline passed before calling "
+                    + sources.get(order[0]).name());
+        }
+        throw last;
+    }
+
+    // Indices of the sources in the order they'd be tried now
+    synchronized int[] ranked() {
+        long now = System.nanoTime();
+        List<Integer> order = new ArrayList<>(sources.size());
+        for (int i = 0; i < sources.size(); i++) {
+            order.add(i);
+        }
+        int[] tiers = new int[sources.size()];
+        for (int i = 0; i < tiers.length; i++) {
+            tiers[i] = tier(i, now);
+        }
+        Collections.sort(order, (a, b) -> {
+            if (tiers[a] != tiers[b]) {
+                return Integer.compare(tiers[a], tiers[b]);
+            }
+            if (tiers[a] == HEALTHY && latencyMs[a] != latencyMs[b]) {
+                return Double.compare(latencyMs[a], latencyMs[b]);
+            }
+            if (tiers[a] == UNHEALTHY && errorRate[a] != errorRate[b]) {
+                return Double.compare(errorRate[a], errorRate[b]);
+            }
+            return Integer.compare(a, b);
+        });
+        int[] ranked = new int[order.size()];
+        for (int i = 0; i < ranked.length; i++) {
+            ranked[i] = order.get(i);
+        }
+        return ranked;
+    }
+
+    private int tier(int i, long now) {
+        boolean retryDue = failed[i]
+                && now - lastFailureNanos[i] > TimeUnit.MILLISECONDS.toNanos(RETRY_AFTER_MS);
+        if (errorRate[i] >= UNHEALTHY_ERROR_RATE && !retryDue) {
+            return UNHEALTHY;
+        }
+        return Double.isNaN(latencyMs[i]) || errorRate[i] >= UNHEALTHY_ERROR_RATE
+                ? UNTRIED : HEALTHY;
+    }
+
+    synchronized void recordSuccess(int i, long latencyNanos) {
+        double ms = latencyNanos / 1e6;
+        latencyMs[i] = Double.isNaN(latencyMs[i]) ? ms : latencyMs[i] + ALPHA * (ms - latencyMs[i]);
+        errorRate[i] -= ALPHA * errorRate[i];
+    }
+
+    synchronized void recordFailure(int i) {
+        errorRate[i] += ALPHA * (1 - errorRate[i]);
+        lastFailureNanos[i] = System.nanoTime();
+        failed[i] = true;
+    }
+
+    synchronized double latencyMs(int i) {
+        return latencyMs[i];
+    }
+
+    synchronized double errorRate(int i) {
+        return errorRate[i];
+    }
+
+    /**
+     * One line per source in the current order, for the diagnostics screen.
+     */
+    synchronized String summary() {
+        StringBuilder text = new StringBuilder();
+        for (int i : ranked()) {
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            text.append(sources.get(i).name()).append(": ");
+            if (Double.isNaN(latencyMs[i]) && !failed[i]) {
+                text.append("not used yet");
+            } else {
+                text.append(Double.isNaN(latencyMs[i]) ? "no answer"
+                        : String.format(Locale.US, "%.0f ms", latencyMs[i]))
+                        .append(String.format(Locale.US, ", %.0f%% errors", errorRate[i] * 100));
+            }
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.ckpoolwidget;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Draws the hashrate history as a small line chart for the widget.
+ *
+ * Histories longer than the bitmap is wide are downsampled with {@link Lttb}, so drawing
+ * cost depends on the pixel width rather than the number of samples. Bitmaps are cached by
+ * (history version, size, color): an unchanged history returns the same Bitmap instance,
+ * which callers use to skip sending it to the launcher again.
+ */
+final class SparklineRenderer {
+
+    // Keeps every bitmap well below the ~1 MB binder transaction limit of a widget update
+    static final int MAX_BITMAP_BYTES = 128 * 1024;
+    private static final int MAX_CACHED_BITMAPS = 4;
+    private static final int MAX_SAMPLES = HashrateHistory.DEFAULT_CAPACITY;
+
+    private final Map<String, CachedBitmap> cache =
+            new LinkedHashMap<String, CachedBitmap>(8, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedBitmap> eldest) {
+                    return size() > MAX_CACHED_BITMAPS;
+                }
+            };
+
+    // Reused across renders
+    private final long[] timestamps = new long[MAX_SAMPLES];
+    private final float[] hashrates = new float[MAX_SAMPLES];
+    private int[] selected = new int[256];
+    private final Paint linePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint fillPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Path line = new Path();
+    private final Path fill = new Path();
+
+    SparklineRenderer() {
+        linePaint.setStyle(Paint.Style.STROKE);
+        linePaint.setStrokeJoin(Paint.Join.ROUND);
+        linePaint.setStrokeCap(Paint.Cap.ROUND);
+        fillPaint.setStyle(Paint.Style.FILL);
+    }
+
+    /**
+     * Returns the sparkline for the current history, or null with fewer than two samples.
+     */
+    synchronized Bitmap render(HashrateHistory history, int widthPx, int heightPx, int color) {
+        String key = widthPx + "x" + heightPx + "#" + color;
+        long version = history.dataVersion();
+        CachedBitmap cached = cache.get(key);
+        if (cached != null && cached.version == version) {
+            return cached.bitmap;
+        }
+
+        int n = history.readWindow(timestamps, hashrates);
+        Bitmap bitmap = draw(timestamps, hashrates, n, widthPx, heightPx, color);
+        if (bitmap != null) {
+            cache.put(key, new CachedBitmap(version, bitmap));
+        }
+        return bitmap;
+    }
+
+    synchronized Bitmap draw(long[] xs, float[] ys, int length, int widthPx, int heightPx,
+                             int color) {
+        if (length < 2 || widthPx <= 0 || heightPx <= 0) {
+            return null;
+        }
+        // Scale down rather than risk an oversized RemoteViews transaction
+        while ((long) widthPx * heightPx * 4 > MAX_BITMAP_BYTES) {
+            widthPx = widthPx * 3 / 4;
+            heightPx = heightPx * 3 / 4;
+        }
+
+        // One point per pixel column is all the bitmap can show
+        if (selected.length < widthPx) {
+            selected = new int[widthPx];
+        }
+        int points = Lttb.downsample(xs, ys, length, widthPx, selected);
+
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+        for (int i = 0; i < points; i++) {
+            float y = ys[selected[i]];
+            min = Math.min(min, y);
+            max = Math.max(max, y);
+        }
+        float range = max - min;
+        if (range <= 0) {
+            range = max > 0 ? max : 1;
+            min = max - range / 2;
+        }
+        float stroke = Math.max(1f, heightPx / 12f);
+        float top = stroke;
+        float usable = heightPx - 2 * stroke;
+        double firstX = xs[selected[0]];
+        double spanX = Math.max(1, xs[selected[points - 1]] - firstX);
+
+        line.rewind();
+        fill.rewind();
+        for (int i = 0; i < points; i++) {
+            int index = selected[i];
+            float x = (float) ((xs[index] - firstX) / spanX * (widthPx - 1));
+            float y = top + usable - (ys[index] - min) / range * usable;
+            if (i == 0) {
+                line.moveTo(x, y);
+                fill.moveTo(x, heightPx);
+            } else {
+                line.lineTo(x, y);
+            }
+            fill.lineTo(x, y);
+        }
+        fill.lineTo(widthPx - 1, heightPx);
+        fill.close();
+
+        Bitmap bitmap = Bitmap.createBitmap(widthPx, heightPx, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        fillPaint.setColor(Color.argb(48, Color.red(color), Color.green(color), Color.blue(color)));
+        canvas.drawPath(fill, fillPaint);
+        linePaint.setColor(color);
+        linePaint.setStrokeWidth(stroke);
+        canvas.drawPath(line, linePaint);
+        return bitmap;
+    }
+
+    private static final class CachedBitmap {
+        final long version;
+        final Bitmap bitmap;
+
+        CachedBitmap(long version, Bitmap bitmap) {
+            this.version = version;
+            this.bitmap = bitmap;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.ckpoolwidget;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Formatting for the values on the refresh path: SI-suffixed shares and difficulty
+ * ("120.31 M"), summed hashrates in ckpool's style ("2.55T"), the compact price ("$97k",
+ * "€90k"), relative time ("3d ago"), the expected time to a block ("13.6k y"), the
+ * best-share date and the top info line.
+ *
+ * Output matches the {@code String.format(Locale.US, ...)} calls it replaces character for
+ * character. Digits are written into a per-thread buffer, so the only allocation is the
+ * returned String and no locking is needed; the date format is likewise kept per thread
+ * instead of being built for every call. Values whose rounding lands within a hair of
+ * a tie, and values too large for exact long arithmetic, are left to
+ * {@link String#format} so the result stays identical.
+ */
+final class StatsFormatter {
+
+    private static final double[] UNITS = {1_000_000_000_000.0, 1_000_000_000.0,
+            1_000_000.0, 1_000.0};
+    private static final String[] SUFFIXES = {" T", " G", " M", " k"};
+    private static final double[] HASHRATE_UNITS = {1e18, 1e15, 1e12, 1e9, 1e6, 1e3};
+    private static final String[] HASHRATE_SUFFIXES = {"E", "P", "T", "G", "M", "K"};
+
+    // Past this the scaled value no longer has enough fraction bits to round reliably
+    private static final double MAX_FAST_SCALED = 1e9;
+    private static final double TIE_WINDOW = 1e-6;
+
+    private static final ThreadLocal<Buffers> buffers = new ThreadLocal<Buffers>() {
+        @Override
+        protected Buffers initialValue() {
+            return new Buffers();
+        }
+    };
+
+    private StatsFormatter() {
+    }
+
+    // Same as String.format(Locale.US, "%.2f T", ...) and friends
+    static String formatNumber(double number) {
+        for (int i = 0; i < UNITS.length; i++) {
+            if (number >= UNITS[i]) {
+                return formatFixed(number / UNITS[i], 2, "", SUFFIXES[i]);
+            }
+        }
+        return formatFixed(number, 2, "", "");
+    }
+
+    // Hashes per second with ckpool's unspaced suffixes, e.g. "2.55T"
+    static String formatHashrate(double hashesPerSecond) {
+        for (int i = 0; i < HASHRATE_UNITS.length; i++) {
+            if (hashesPerSecond >= HASHRATE_UNITS[i]) {
+                return formatFixed(hashesPerSecond / HASHRATE_UNITS[i], 2, "",
+                        HASHRATE_SUFFIXES[i]);
+            }
+        }
+        return formatFixed(hashesPerSecond, 2, "", "");
+    }
+
+    // Same as String.format(Locale.US, "$%.0fk", price / 1000)
+    static String formatPrice(double price) {
+        return formatFixed(price / 1000, 0, "$", "k");
+    }
+
+    // "$97k", "€90k", "¥15.23M", "CHF 86k"; USD matches formatPrice(double)
+    static String formatPrice(double price, String currency) {
+        if (currency.equals("USD")) {
+            return formatPrice(price);
+        }
+        String prefix = currencyPrefix(currency);
+        if (price >= 1e9) {
+            return formatFixed(price / 1e9, 2, prefix, "B");
+        } else if (price >= 1e6) {
+            return formatFixed(price / 1e6, 2, prefix, "M");
+        }
+        return formatFixed(price / 1000, 0, prefix, "k");
+    }
+
+    // Symbols only where they're unambiguous; "$" stays US dollars, so CAD shows as "CAD 133k"
+    private static String currencyPrefix(String currency) {
+        switch (currency) {
+            case "EUR":
+                return "€";
+            case "GBP":
+                return "£";
+            case "JPY":
+                return "¥";
+            case "INR":
+                return "₹";
+            case "KRW":
+                return "₩";
+            case "ILS":
+                return "₪";
+            case "NGN":
+                return "₦";
+            case "PHP":
+                return "₱";
+            case "UAH":
+                return "₴";
+            case "VND":
+                return "₫";
+            default:
+                return currency + " ";
+        }
+    }
+
+    // "3d ago", "5h ago" or "< 1h ago"
+    static String formatAge(long seconds) {
+        long days = seconds / 86400;
+        long hours = (seconds % 86400) / 3600;
+
+        // Plain concatenation already allocates only the result; a shared buffer measured slower
+        if (days > 0) {
+            return days + "d ago";
+        } else if (hours > 0) {
+            return hours + "h ago";
+        } else {
+            return "< 1h ago";
+        }
+    }
+
+    // Expected time to a block: "36h", "45d", "12.3y", "13.6k y"; "?" if never
+    static String formatExpected(double seconds) {
+        if (!(seconds < Double.POSITIVE_INFINITY)) {
+            return "?";
+        }
+        double years = seconds / BlockOdds.YEAR_SECONDS;
+        if (seconds < 48 * 3600) {
+            return formatFixed(seconds / 3600, 0, "", "h");
+        } else if (years < 2) {
+            return formatFixed(seconds / BlockOdds.DAY_SECONDS, 0, "", "d");
+        } else if (years < 1000) {
+            return formatFixed(years, 1, "", "y");
+        } else if (years < 1e6) {
+            return formatFixed(years / 1e3, 1, "", "k y");
+        }
+        return formatFixed(years / 1e6, 1, "", "M y");
+    }
+
+    // Best-share date, "M/d/yy" in the default locale
+    static String formatDate(long epochMillis) {
+        return buffers.get().dateFormat().format(new Date(epochMillis));
+    }
+
+    static String topInfo(String bitcoinPrice, String poolBlockInfo) {
+        return "        ₿ " + bitcoinPrice + " | Last pool block: " + poolBlockInfo;
+    }
+
+    private static String formatFixed(double value, int decimals, String prefix, String suffix) {
+        long scale = decimals == 2 ? 100 : decimals == 1 ? 10 : 1;
+        double scaled = value * scale;
+        // Also rejects negatives and NaN
+        if (!(scaled >= 0 && scaled < MAX_FAST_SCALED)) {
+            return slowFormat(value, decimals, prefix, suffix);
+        }
+        long whole = (long) scaled;
+        double fraction = scaled - whole;
+        if (Math.abs(fraction - 0.5) < TIE_WINDOW) {
+            return slowFormat(value, decimals, prefix, suffix);
+        }
+        long rounded = fraction > 0.5 ? whole + 1 : whole;
+
+        Buffers b = buffers.get();
+        char[] chars = b.chars;
+        int end = chars.length;
+        int pos = end;
+        for (int i = 0; i < decimals; i++) {
+            chars[--pos] = (char) ('0' + rounded % 10);
+            rounded /= 10;
+        }
+        if (decimals > 0) {
+            chars[--pos] = '.';
+        }
+        do {
+            chars[--pos] = (char) ('0' + rounded % 10);
+            rounded /= 10;
+        } while (rounded > 0);
+
+        return b.text().append(prefix).append(chars, pos, end - pos).append(suffix).toString();
+    }
+
+    private static String slowFormat(double value, int decimals, String prefix, String suffix) {
+        return prefix + String.format(Locale.US, "%." + decimals + "f", value) + suffix;
+    }
+
+    private static final class Buffers {
+        final char[] chars = new char[32];
+        final StringBuilder text = new StringBuilder(64);
+        private SimpleDateFormat dateFormat;
+        private Locale dateLocale;
+
+        StringBuilder text() {
+            text.setLength(0);
+            return text;
+        }
+
+        // Rebuilt only if the default locale changes
+        SimpleDateFormat dateFormat() {
+            Locale locale = Locale.getDefault();
+            if (dateFormat == null || !locale.equals(dateLocale)) {
+                dateFormat = new SimpleDateFormat("M/d/yy", locale);
+                dateLocale = locale;
+            }
+            return dateFormat;
+        }
+    }
+}
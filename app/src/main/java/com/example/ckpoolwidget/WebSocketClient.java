@@ -0,0 +1,327 @@
+package com.example.ckpoolwidget;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Locale;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Minimal RFC 6455 client for text subscriptions: one connection, text messages in both
+ * directions, pings answered automatically. No extensions, so messages arrive uncompressed.
+ *
+ * {@link #receive} may be called with a read timeout; a {@link SocketTimeoutException}
+ * means nothing of the next frame had arrived and leaves the connection usable. A timeout
+ * partway through a frame closes the connection and is thrown as a plain IOException.
+ */
+final class WebSocketClient implements Closeable {
+
+    static final int MAX_MESSAGE_BYTES = 1024 * 1024;
+
+    private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final int MAX_HEADER_BYTES = 8 * 1024;
+
+    private static final int OP_CONTINUATION = 0x0;
+    private static final int OP_TEXT = 0x1;
+    private static final int OP_BINARY = 0x2;
+    private static final int OP_CLOSE = 0x8;
+    private static final int OP_PING = 0x9;
+    private static final int OP_PONG = 0xA;
+
+    // Handshake keys and frame masks; RFC 6455 asks for a strong source of entropy
+    private static final SecureRandom random = new SecureRandom();
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final OutputStream out;
+    // Fragments of a message whose final frame hasn't arrived yet
+    private ByteArrayOutputStream fragments;
+    private volatile long lastFrameNanos = System.nanoTime();
+
+    private WebSocketClient(Socket socket) throws IOException {
+        this.socket = socket;
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = socket.getOutputStream();
+    }
+
+    /**
+     * Opens a {@code ws://} or {@code wss://} connection and completes the handshake.
+     */
+    static WebSocketClient connect(String url, int timeoutMillis) throws IOException {
+        URI uri = URI.create(url);
+        boolean secure = "wss".equalsIgnoreCase(uri.getScheme());
+        String host = uri.getHost();
+        int port = uri.getPort() != -1 ? uri.getPort() : secure ? 443 : 80;
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+            socket.setSoTimeout(timeoutMillis);
+            socket.setTcpNoDelay(true);
+            if (secure) {
+                SSLSocket ssl = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory.getDefault())
+                        .createSocket(socket, host, port, true);
+                ssl.startHandshake();
+                // Unlike HttpsURLConnection, a bare SSLSocket doesn't check the host name
+                if (!HttpsURLConnection.getDefaultHostnameVerifier()
+                        .verify(host, ssl.getSession())) {
+                    throw new SSLPeerUnverifiedException("Certificate doesn't match " + host);
+                }
+                socket = ssl;
+            }
+            WebSocketClient client = new WebSocketClient(socket);
+            client.handshake(uri, host, uri.getPort() != -1 ? host + ":" + port : host);
+            return client;
+        } catch (IOException | RuntimeException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private void handshake(URI uri, String host, String hostHeader) throws IOException {
+        byte[] nonce = new byte[16];
+        random.nextBytes(nonce);
+        String key = base64(nonce);
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/"
+                : uri.getRawPath();
+        if (uri.getRawQuery() != null) {
+            path += "?" + uri.getRawQuery();
+        }
+        String request = "GET " + path + " HTTP/1.1\r\n"
+                + "Host: " + hostHeader + "\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Key: " + key + "\r\n"
+                + "Sec-WebSocket-Version: 13\r\n"
+                + "\r\n";
+        out.write(request.getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+
+        String[] lines = readHeader().split("\r\n");
+        if (!lines[0].startsWith("HTTP/1.1 101")) {
+            throw new ProtocolException("WebSocket upgrade refused by " + host + ": " + lines[0]);
+        }
+        String accept = null;
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon > 0 && lines[i].substring(0, colon).trim().toLowerCase(Locale.US)
+                    .equals("sec-websocket-accept")) {
+                accept = lines[i].substring(colon + 1).trim();
+            }
+        }
+        if (!acceptKey(key).equals(accept)) {
+            throw new ProtocolException("Bad Sec-WebSocket-Accept from " + host);
+        }
+    }
+
+    // Response status line and headers, up to the blank line
+    private String readHeader() throws IOException {
+        StringBuilder header = new StringBuilder();
+        while (header.length() < MAX_HEADER_BYTES) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Connection closed during WebSocket handshake");
+            }
+            header.append((char) b);
+            int n = header.length();
+            if (n >= 4 && header.charAt(n - 4) == '\r' && header.charAt(n - 3) == '\n'
+                    && header.charAt(n - 2) == '\r' && header.charAt(n - 1) == '\n') {
+                return header.substring(0, n - 4);
+            }
+        }
+        throw new ProtocolException("WebSocket handshake response too large");
+    }
+
+    static String acceptKey(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            return base64(sha1.digest((key + ACCEPT_GUID).getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    void setReadTimeout(int millis) throws IOException {
+        socket.setSoTimeout(millis);
+    }
+
+    // When the server last sent anything, pongs included
+    long lastFrameNanos() {
+        return lastFrameNanos;
+    }
+
+    void send(String text) throws IOException {
+        writeFrame(OP_TEXT, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    void ping() throws IOException {
+        writeFrame(OP_PING, new byte[0]);
+    }
+
+    /**
+     * Next text message, or null once the server has closed the connection.
+     */
+    String receive() throws IOException {
+        while (true) {
+            // Only this read may time out without losing the frame
+            int b0 = in.read();
+            if (b0 < 0) {
+                throw new EOFException("WebSocket closed without a close frame");
+            }
+            try {
+                String message = receiveFrame(b0);
+                if (message != null || socket.isClosed()) {
+                    return message;
+                }
+            } catch (SocketTimeoutException e) {
+                // The rest of the frame is still on its way; the stream can't be resynced
+                try {
+                    socket.close();
+                } catch (IOException closing) {
+                    // Closed anyway
+                }
+                throw new IOException("Timed out in the middle of a WebSocket frame", e);
+            }
+        }
+    }
+
+    // Rest of the frame after its first byte: the finished message, or null if there is none
+    // yet (control frame, fragment) or the server closed the connection
+    private String receiveFrame(int b0) throws IOException {
+        int b1 = in.readUnsignedByte();
+        boolean fin = (b0 & 0x80) != 0;
+        int opcode = b0 & 0x0F;
+        if ((b1 & 0x80) != 0) {
+            throw new ProtocolException("Masked frame from server");
+        }
+        long length = b1 & 0x7F;
+        if (length == 126) {
+            length = in.readUnsignedShort();
+        } else if (length == 127) {
+            length = in.readLong();
+        }
+        if (length < 0 || length > MAX_MESSAGE_BYTES) {
+            throw new ProtocolException("WebSocket frame too large: " + length);
+        }
+        byte[] payload = new byte[(int) length];
+        in.readFully(payload);
+        lastFrameNanos = System.nanoTime();
+
+        switch (opcode) {
+            case OP_PING:
+                writeFrame(OP_PONG, payload);
+                return null;
+            case OP_PONG:
+                return null;
+            case OP_CLOSE:
+                close();
+                return null;
+            case OP_TEXT:
+            case OP_BINARY:
+                if (fragments != null) {
+                    throw new ProtocolException("New message inside a fragmented one");
+                }
+                fragments = new ByteArrayOutputStream(payload.length);
+                break;
+            case OP_CONTINUATION:
+                if (fragments == null) {
+                    throw new ProtocolException("Continuation without a message");
+                }
+                break;
+            default:
+                throw new ProtocolException("Unknown WebSocket opcode " + opcode);
+        }
+        fragments.write(payload);
+        if (fragments.size() > MAX_MESSAGE_BYTES) {
+            throw new ProtocolException("WebSocket message too large");
+        }
+        if (fin) {
+            String message = new String(fragments.toByteArray(), StandardCharsets.UTF_8);
+            fragments = null;
+            return message;
+        }
+        return null;
+    }
+
+    // Client frames are always masked; header and payload go out in one write
+    private synchronized void writeFrame(int opcode, byte[] payload) throws IOException {
+        int lengthBytes = payload.length < 126 ? 0 : payload.length <= 0xFFFF ? 2 : 8;
+        byte[] frame = new byte[2 + lengthBytes + 4 + payload.length];
+        frame[0] = (byte) (0x80 | opcode);
+        int pos = 2;
+        if (lengthBytes == 0) {
+            frame[1] = (byte) (0x80 | payload.length);
+        } else if (lengthBytes == 2) {
+            frame[1] = (byte) (0x80 | 126);
+            frame[pos++] = (byte) (payload.length >>> 8);
+            frame[pos++] = (byte) payload.length;
+        } else {
+            frame[1] = (byte) (0x80 | 127);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                frame[pos++] = (byte) ((long) payload.length >>> shift);
+            }
+        }
+        byte[] mask = new byte[4];
+        random.nextBytes(mask);
+        System.arraycopy(mask, 0, frame, pos, 4);
+        pos += 4;
+        for (int i = 0; i < payload.length; i++) {
+            frame[pos + i] = (byte) (payload[i] ^ mask[i & 3]);
+        }
+        out.write(frame);
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (!socket.isClosed()) {
+                // Normal closure
+                writeFrame(OP_CLOSE, new byte[] {0x03, (byte) 0xE8});
+            }
+        } catch (IOException e) {
+            // Closing anyway
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing left to release
+        }
+    }
+
+    // java.util.Base64 needs API 26, android.util.Base64 isn't there in unit tests
+    private static String base64(byte[] bytes) {
+        final String alphabet =
+                "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        StringBuilder text = new StringBuilder((bytes.length + 2) / 3 * 4);
+        for (int i = 0; i < bytes.length; i += 3) {
+            int n = (bytes[i] & 0xff) << 16;
+            if (i + 1 < bytes.length) {
+                n |= (bytes[i + 1] & 0xff) << 8;
+            }
+            if (i + 2 < bytes.length) {
+                n |= bytes[i + 2] & 0xff;
+            }
+            text.append(alphabet.charAt((n >>> 18) & 63))
+                    .append(alphabet.charAt((n >>> 12) & 63))
+                    .append(i + 1 < bytes.length ? alphabet.charAt((n >>> 6) & 63) : '=')
+                    .append(i + 2 < bytes.length ? alphabet.charAt(n & 63) : '=');
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.ckpoolwidget;
+
+import android.content.SharedPreferences;
+import android.graphics.Color;
+
+/**
+ * How one widget instance is drawn: the address and currency it shows, its parsed stat
+ * colors, which metrics it shows and the layout for its current size.
+ *
+ * Built once per instance and cached by {@link CKPoolWidget} until a preference or the
+ * widget's size changes, so a refresh doesn't re-read preferences or re-parse colors.
+ * Instances default to the app's settings; each can override them from
+ * {@link WidgetConfigureActivity}.
+ */
+final class WidgetConfig {
+
+    // Followed by the widget id; comma-separated rate, shares and best colors
+    static final String PREF_WIDGET_COLORS = "widget_colors_";
+    // Followed by the widget id; a METRIC_* bit set
+    static final String PREF_WIDGET_METRICS = "widget_metrics_";
+
+    static final String[] COLOR_PREFS = {"rate_color", "shares_color", "best_color"};
+    static final String[] DEFAULT_COLORS = {"#00FF00", "#00BFFF", "#FFD700"};
+    // Alpha applied to the stat colors while they show cached values
+    static final int STALE_ALPHA = 0x80;
+
+    // The hashrate is always shown
+    static final int METRIC_SHARES = 1;
+    static final int METRIC_BEST = 1 << 1;
+    static final int METRIC_INFO = 1 << 2;
+    static final int METRIC_SPARKLINE = 1 << 3;
+    static final int ALL_METRICS = METRIC_SHARES | METRIC_BEST | METRIC_INFO | METRIC_SPARKLINE;
+
+    static final int SIZE_SMALL = 0;
+    static final int SIZE_NORMAL = 1;
+    static final int SIZE_LARGE = 2;
+    // Narrower than this, only the hashrate fits
+    static final int SMALL_MAX_WIDTH_DP = 150;
+    // At least this tall and wide, the large layout has room for a taller sparkline
+    static final int LARGE_MIN_HEIGHT_DP = 110;
+    static final int LARGE_MIN_WIDTH_DP = 250;
+    static final int DEFAULT_WIDTH_DP = 200;
+    static final int DEFAULT_HEIGHT_DP = 40;
+
+    // Match the sparkline_image heights and the widget_root padding in the layouts
+    private static final int[] SPARKLINE_HEIGHT_DP = {0, 20, 48};
+    private static final int WIDGET_PADDING_DP = 8;
+
+    final String address;
+    final String currency;
+    final int[] colors;
+    final int[] dimmedColors;
+    final int metrics;
+    final int size;
+    // Inside the padding
+    final int widthDp;
+
+    WidgetConfig(String address, String currency, int[] colors, int metrics, int widthDp,
+                 int heightDp) {
+        this.address = address;
+        this.currency = currency;
+        this.colors = colors;
+        this.dimmedColors = new int[colors.length];
+        for (int i = 0; i < colors.length; i++) {
+            dimmedColors[i] = (colors[i] & 0x00FFFFFF) | (STALE_ALPHA << 24);
+        }
+        this.metrics = metrics;
+        this.size = sizeFor(widthDp, heightDp);
+        this.widthDp = Math.max(1, widthDp - 2 * WIDGET_PADDING_DP);
+    }
+
+    /**
+     * @param widthDp current width from the widget's options, 0 if the launcher hasn't said
+     * @param heightDp current height, 0 if unknown
+     */
+    static WidgetConfig read(SharedPreferences prefs, int appWidgetId, int widthDp,
+                             int heightDp) {
+        String colors = prefs.getString(PREF_WIDGET_COLORS + appWidgetId, null);
+        String[] perWidget = colors != null ? colors.split(",") : null;
+        int[] parsed = new int[COLOR_PREFS.length];
+        for (int i = 0; i < parsed.length; i++) {
+            String color = perWidget != null && i < perWidget.length ? perWidget[i]
+                    : prefs.getString(COLOR_PREFS[i], DEFAULT_COLORS[i]);
+            parsed[i] = parseColor(color, DEFAULT_COLORS[i]);
+        }
+        // The app's currency unless the widget has its own
+        String currency = prefs.getString(CKPoolWidget.PREF_WIDGET_CURRENCY + appWidgetId,
+                prefs.getString(CKPoolWidget.PREF_CURRENCY, RateCache.DEFAULT_CURRENCY));
+        return new WidgetConfig(prefs.getString(CKPoolWidget.PREF_WIDGET_ADDRESS + appWidgetId,
+                null), currency, parsed,
+                prefs.getInt(PREF_WIDGET_METRICS + appWidgetId, ALL_METRICS),
+                widthDp > 0 ? widthDp : DEFAULT_WIDTH_DP,
+                heightDp > 0 ? heightDp : DEFAULT_HEIGHT_DP);
+    }
+
+    static int sizeFor(int widthDp, int heightDp) {
+        if (widthDp < SMALL_MAX_WIDTH_DP) {
+            return SIZE_SMALL;
+        }
+        if (heightDp >= LARGE_MIN_HEIGHT_DP && widthDp >= LARGE_MIN_WIDTH_DP) {
+            return SIZE_LARGE;
+        }
+        return SIZE_NORMAL;
+    }
+
+    private static int parseColor(String color, String fallback) {
+        color = color.trim();
+        int parsed = parseHex(color);
+        if (parsed != 0 || color.startsWith("#")) {
+            return parsed != 0 ? parsed : parseHex(fallback);
+        }
+        try {
+            // Color names like "red"
+            return Color.parseColor(color);
+        } catch (RuntimeException e) {
+            // Invalid color, use default
+            return parseHex(fallback);
+        }
+    }
+
+    // #RRGGBB or #AARRGGBB; 0 if it's neither
+    private static int parseHex(String color) {
+        if (!color.startsWith("#") || (color.length() != 7 && color.length() != 9)) {
+            return 0;
+        }
+        try {
+            long value = Long.parseLong(color.substring(1), 16);
+            return (int) (color.length() == 7 ? value | 0xFF000000L : value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    int layout() {
+        switch (size) {
+            case SIZE_SMALL:
+                return R.layout.widget_layout_small;
+            case SIZE_LARGE:
+                return R.layout.widget_layout_large;
+            default:
+                return R.layout.widget_layout;
+        }
+    }
+
+    boolean shows(int metric) {
+        // The small layout only has room for the hashrate
+        return size != SIZE_SMALL && (metrics & metric) != 0;
+    }
+
+    // Whether the layout has the view behind a WidgetViewState text and this widget shows it
+    boolean showsText(int field) {
+        switch (field) {
+            case WidgetViewState.TEXT_HASHRATE:
+            case WidgetViewState.TEXT_STALE:
+                return true;
+            case WidgetViewState.TEXT_SHARES:
+            case WidgetViewState.TEXT_ODDS:
+                return shows(METRIC_SHARES);
+            case WidgetViewState.TEXT_BEST:
+            case WidgetViewState.TEXT_BEST_DATE:
+                return shows(METRIC_BEST);
+            case WidgetViewState.TEXT_TOP_INFO:
+                return shows(METRIC_INFO);
+            default:
+                return false;
+        }
+    }
+
+    int sparklineHeightDp() {
+        return shows(METRIC_SPARKLINE) ? SPARKLINE_HEIGHT_DP[size] : 0;
+    }
+
+    // Layout and visibilities; when these change, the RemoteViews template is rebuilt
+    int templateKey() {
+        return size << 8 | (size == SIZE_SMALL ? 0 : metrics);
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.ckpoolwidget;
+
+import android.app.Activity;
+import android.app.AlertDialog;
+import android.appwidget.AppWidgetManager;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import java.util.List;
+
+/**
+ * Lets a widget instance show one address instead of the farm totals, the price in a
+ * currency of its own, only some of the metrics, and colors of its own. Shown when a
+ * widget is added (or reconfigured, where the launcher supports it); the address and
+ * currency are only asked when there is more than one answer, and backing out of a
+ * question keeps the remaining defaults.
+ */
+public class WidgetConfigureActivity extends Activity {
+
+    private static final String[] METRICS = {"Shares and block ETA", "Best share",
+            "Price and pool block", "Hashrate trend"};
+    private static final int[] METRIC_BITS = {WidgetConfig.METRIC_SHARES,
+            WidgetConfig.METRIC_BEST, WidgetConfig.METRIC_INFO, WidgetConfig.METRIC_SPARKLINE};
+    // Rate, shares and best colors; null for the app's
+    private static final String[] PALETTE_NAMES = {"Same as the app", "Classic", "White",
+            "Amber", "Blue"};
+    private static final String[] PALETTES = {null, "#00FF00,#00BFFF,#FFD700",
+            "#FFFFFF,#FFFFFF,#FFFFFF", "#FFB000,#FFC94D,#FFE299", "#4FC3F7,#81D4FA,#B3E5FC"};
+
+    private int appWidgetId;
+    private SharedPreferences prefs;
+    // Whether anything was picked, so the widget needs a redraw
+    private boolean changed;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        appWidgetId = getIntent().getIntExtra(AppWidgetManager.EXTRA_APPWIDGET_ID,
+                AppWidgetManager.INVALID_APPWIDGET_ID);
+
+        // Backing out keeps the farm totals rather than cancelling the widget
+        Intent result = new Intent();
+        result.putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, appWidgetId);
+        setResult(RESULT_OK, result);
+
+        prefs = getSharedPreferences(CKPoolWidget.PREFS_NAME, Context.MODE_PRIVATE);
+        if (appWidgetId == AppWidgetManager.INVALID_APPWIDGET_ID) {
+            finish();
+            return;
+        }
+        chooseAddress();
+    }
+
+    private void chooseAddress() {
+        String[] addresses = Addresses.parse(
+                prefs.getString(CKPoolWidget.PREF_BITCOIN_ADDRESS, ""));
+        if (addresses.length < 2) {
+            // Nothing to choose
+            chooseCurrency();
+            return;
+        }
+
+        String key = CKPoolWidget.PREF_WIDGET_ADDRESS + appWidgetId;
+        String current = prefs.getString(key, null);
+        String[] items = new String[addresses.length + 1];
+        items[0] = "All addresses (farm total)";
+        int checked = 0;
+        for (int i = 0; i < addresses.length; i++) {
+            items[i + 1] = Addresses.label(addresses[i]);
+            if (addresses[i].equals(current)) {
+                checked = i + 1;
+            }
+        }
+
+        new AlertDialog.Builder(this)
+                .setTitle("Widget shows")
+                .setSingleChoiceItems(items, checked, (dialog, which) -> {
+                    SharedPreferences.Editor editor = prefs.edit();
+                    if (which == 0) {
+                        editor.remove(key);
+                    } else {
+                        editor.putString(key, addresses[which - 1]);
+                    }
+                    editor.apply();
+                    changed = true;
+                    dialog.dismiss();
+                })
+                .setOnDismissListener(dialog -> {
+                    if (changed) {
+                        chooseCurrency();
+                    } else {
+                        finish();
+                    }
+                })
+                .show();
+    }
+
+    private void chooseCurrency() {
+        List<String> currencies = RateCache.get(this).currencies();
+        if (currencies.size() < 2) {
+            // Rates not fetched yet; the app's currency applies
+            chooseMetrics();
+            return;
+        }
+
+        String key = CKPoolWidget.PREF_WIDGET_CURRENCY + appWidgetId;
+        String current = prefs.getString(key, null);
+        String[] items = new String[currencies.size() + 1];
+        items[0] = "Same as the app ("
+                + prefs.getString(CKPoolWidget.PREF_CURRENCY, RateCache.DEFAULT_CURRENCY) + ")";
+        int checked = 0;
+        for (int i = 0; i < currencies.size(); i++) {
+            items[i + 1] = currencies.get(i);
+            if (currencies.get(i).equals(current)) {
+                checked = i + 1;
+            }
+        }
+
+        boolean[] picked = new boolean[1];
+        new AlertDialog.Builder(this)
+                .setTitle("Price currency")
+                .setSingleChoiceItems(items, checked, (dialog, which) -> {
+                    SharedPreferences.Editor editor = prefs.edit();
+                    if (which == 0) {
+                        editor.remove(key);
+                    } else {
+                        editor.putString(key, currencies.get(which - 1));
+                    }
+                    editor.apply();
+                    changed = true;
+                    picked[0] = true;
+                    dialog.dismiss();
+                })
+                .setOnDismissListener(dialog -> {
+                    if (picked[0]) {
+                        chooseMetrics();
+                    } else {
+                        finish();
+                    }
+                })
+                .show();
+    }
+
+    private void chooseMetrics() {
+        String key = WidgetConfig.PREF_WIDGET_METRICS + appWidgetId;
+        int current = prefs.getInt(key, WidgetConfig.ALL_METRICS);
+        boolean[] checked = new boolean[METRICS.length];
+        for (int i = 0; i < METRICS.length; i++) {
+            checked[i] = (current & METRIC_BITS[i]) != 0;
+        }
+
+        boolean[] picked = new boolean[1];
+        new AlertDialog.Builder(this)
+                .setTitle("Widget shows the hashrate and")
+                .setMultiChoiceItems(METRICS, checked, (dialog, which, isChecked) ->
+                        checked[which] = isChecked)
+                .setPositiveButton("Next", (dialog, which) -> {
+                    int metrics = 0;
+                    for (int i = 0; i < METRICS.length; i++) {
+                        if (checked[i]) {
+                            metrics |= METRIC_BITS[i];
+                        }
+                    }
+                    if (metrics == WidgetConfig.ALL_METRICS) {
+                        prefs.edit().remove(key).apply();
+                    } else {
+                        prefs.edit().putInt(key, metrics).apply();
+                    }
+                    changed = true;
+                    picked[0] = true;
+                })
+                .setOnDismissListener(dialog -> {
+                    if (picked[0]) {
+                        chooseColors();
+                    } else {
+                        finish();
+                    }
+                })
+                .show();
+    }
+
+    private void chooseColors() {
+        String key = WidgetConfig.PREF_WIDGET_COLORS + appWidgetId;
+        String current = prefs.getString(key, null);
+        int checked = 0;
+        for (int i = 1; i < PALETTES.length; i++) {
+            if (PALETTES[i].equals(current)) {
+                checked = i;
+            }
+        }
+
+        new AlertDialog.Builder(this)
+                .setTitle("Text colors")
+                .setSingleChoiceItems(PALETTE_NAMES, checked, (dialog, which) -> {
+                    if (which == 0) {
+                        prefs.edit().remove(key).apply();
+                    } else {
+                        prefs.edit().putString(key, PALETTES[which]).apply();
+                    }
+                    changed = true;
+                    dialog.dismiss();
+                })
+                .setOnDismissListener(dialog -> finish())
+                .show();
+    }
+
+    @Override
+    public void finish() {
+        if (changed) {
+            // Redraw this widget with its new values
+            changed = false;
+            Intent update = new Intent(this, CKPoolWidget.class);
+            update.setAction(AppWidgetManager.ACTION_APPWIDGET_UPDATE);
+            update.putExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS, new int[] {appWidgetId});
+            sendBroadcast(update);
+        }
+        super.finish();
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.ckpoolwidget;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers what was last pushed to each widget so a refresh only sends what changed.
+ *
+ * {@link #changes} diffs the new state against the last pushed one and returns a bit set of
+ * the changed parts: nothing to send, a partial update of those parts, or a full update
+ * for a widget this process hasn't pushed to yet (the launcher's copy is unknown then).
+ * {@link #pushed} records the new state once the push has gone out, so a push that
+ * fails is sent again next time.
+ * Counters record how many binder pushes were sent and how many were avoided.
+ */
+final class WidgetPushTracker {
+
+    static final int NONE = 0;
+    static final int COLORS = 1 << 16;
+    static final int SPARKLINE = 1 << 17;
+    static final int FULL = 1 << 30;
+
+    private static final WidgetPushTracker shared = new WidgetPushTracker();
+
+    private final Map<Integer, WidgetViewState> pushed = new HashMap<>();
+    private final AtomicLong fullPushes = new AtomicLong();
+    private final AtomicLong partialPushes = new AtomicLong();
+    private final AtomicLong skippedPushes = new AtomicLong();
+
+    static WidgetPushTracker shared() {
+        return shared;
+    }
+
+    static int textBit(int field) {
+        return 1 << field;
+    }
+
+    /**
+     * Returns what has to be sent to bring the widget to {@code next}. Nothing is recorded
+     * until {@link #pushed} confirms the push went out.
+     */
+    synchronized int changes(int appWidgetId, WidgetViewState next) {
+        WidgetViewState last = pushed.get(appWidgetId);
+        if (last == null) {
+            return FULL;
+        }
+
+        int changes = NONE;
+        for (int i = 0; i < WidgetViewState.TEXT_COUNT; i++) {
+            // A null text isn't set by this push, so the launcher keeps showing the last value
+            if (next.texts[i] != null && !next.texts[i].equals(last.texts[i])) {
+                changes |= textBit(i);
+            }
+        }
+        for (int i = 0; i < WidgetViewState.COLOR_COUNT; i++) {
+            if (next.colors[i] != last.colors[i]) {
+                changes |= COLORS;
+            }
+        }
+        if (next.sparkline != null && next.sparkline != last.sparkline) {
+            changes |= SPARKLINE;
+        }
+        if (changes == NONE) {
+            skippedPushes.incrementAndGet();
+        }
+        return changes;
+    }
+
+    /**
+     * Records that the {@code changes} from {@link #changes} were sent to the widget.
+     */
+    synchronized void pushed(int appWidgetId, WidgetViewState next, int changes) {
+        WidgetViewState last = pushed.get(appWidgetId);
+        if (changes == FULL || last == null) {
+            pushed.put(appWidgetId, next);
+            fullPushes.incrementAndGet();
+            return;
+        }
+        String[] texts = next.texts.clone();
+        for (int i = 0; i < WidgetViewState.TEXT_COUNT; i++) {
+            if (texts[i] == null) {
+                texts[i] = last.texts[i];
+            }
+        }
+        Object sparkline = next.sparkline != null ? next.sparkline : last.sparkline;
+        pushed.put(appWidgetId, new WidgetViewState(texts, next.colors, sparkline));
+        partialPushes.incrementAndGet();
+    }
+
+    synchronized boolean hasPushed(int appWidgetId) {
+        return pushed.containsKey(appWidgetId);
+    }
+
+    // Next push to this widget has to be a full one
+    synchronized void forget(int appWidgetId) {
+        pushed.remove(appWidgetId);
+    }
+
+    long fullPushes() {
+        return fullPushes.get();
+    }
+
+    long partialPushes() {
+        return partialPushes.get();
+    }
+
+    long skippedPushes() {
+        return skippedPushes.get();
+    }
+}
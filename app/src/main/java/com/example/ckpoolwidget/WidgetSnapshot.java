@@ -0,0 +1,124 @@
+package com.example.ckpoolwidget;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Display values produced by one refresh cycle. A snapshot is built once per refresh
+ * and applied to every widget instance. The top-level values are the farm totals; widgets
+ * bound to one address show {@link #forAddress} instead.
+ */
+final class WidgetSnapshot {
+
+    final boolean setupRequired;
+    // False when the ckpool call failed and the stats below come from the cache
+    final boolean live;
+    // When the user's stats were fetched (epoch millis), 0 if never
+    final long updatedAt;
+    final String hashrate;
+    final String shares;
+    final String best;
+    final String bestDate;
+    final String bitcoinPrice;
+    final String poolBlockInfo;
+    // Expected time to a block, e.g. "ETA 13.6k y"; empty until the difficulty is known
+    final String odds;
+    // Per-address snapshots, keyed by address; empty with a single address
+    private final Map<String, WidgetSnapshot> byAddress;
+
+    WidgetSnapshot(boolean setupRequired, boolean live, long updatedAt, String hashrate,
+                   String shares, String best, String bestDate, String bitcoinPrice,
+                   String poolBlockInfo) {
+        this(setupRequired, live, updatedAt, hashrate, shares, best, bestDate, bitcoinPrice,
+                poolBlockInfo, Collections.<String, WidgetSnapshot>emptyMap());
+    }
+
+    WidgetSnapshot(boolean setupRequired, boolean live, long updatedAt, String hashrate,
+                   String shares, String best, String bestDate, String bitcoinPrice,
+                   String poolBlockInfo, Map<String, WidgetSnapshot> byAddress) {
+        this(setupRequired, live, updatedAt, hashrate, shares, best, bestDate, bitcoinPrice,
+                poolBlockInfo, "", byAddress);
+    }
+
+    private WidgetSnapshot(boolean setupRequired, boolean live, long updatedAt,
+                           String hashrate, String shares, String best, String bestDate,
+                           String bitcoinPrice, String poolBlockInfo, String odds,
+                           Map<String, WidgetSnapshot> byAddress) {
+        this.setupRequired = setupRequired;
+        this.live = live;
+        this.updatedAt = updatedAt;
+        this.hashrate = hashrate;
+        this.shares = shares;
+        this.best = best;
+        this.bestDate = bestDate;
+        this.bitcoinPrice = bitcoinPrice;
+        this.poolBlockInfo = poolBlockInfo;
+        this.odds = odds;
+        this.byAddress = byAddress;
+    }
+
+    // No address configured yet - ask the user to open the app
+    static WidgetSnapshot setup(String bitcoinPrice, String poolBlockInfo) {
+        return new WidgetSnapshot(true, true, 0, "Open", "App", "Setup", "", bitcoinPrice, poolBlockInfo);
+    }
+
+    // The snapshot of one address, or the totals for null or an address no longer configured
+    WidgetSnapshot forAddress(String address) {
+        WidgetSnapshot snapshot = address != null ? byAddress.get(address) : null;
+        return snapshot != null ? snapshot : this;
+    }
+
+    /**
+     * Copy showing other hashrates: {@code total} for the totals unless null, and the given
+     * hashrate for each address in {@code byAddress} that has a snapshot.
+     */
+    WidgetSnapshot withHashrates(String total, Map<String, String> hashrates) {
+        Map<String, WidgetSnapshot> replaced = new HashMap<>(byAddress);
+        for (Map.Entry<String, String> entry : hashrates.entrySet()) {
+            WidgetSnapshot snapshot = byAddress.get(entry.getKey());
+            if (snapshot != null) {
+                replaced.put(entry.getKey(), snapshot.withHashrates(entry.getValue(),
+                        Collections.<String, String>emptyMap()));
+            }
+        }
+        return new WidgetSnapshot(setupRequired, live, updatedAt,
+                total != null ? total : hashrate, shares, best, bestDate, bitcoinPrice,
+                poolBlockInfo, odds, replaced);
+    }
+
+    // Copy with the price in another currency; the per-address snapshots keep theirs
+    WidgetSnapshot withBitcoinPrice(String price) {
+        return new WidgetSnapshot(setupRequired, live, updatedAt, hashrate, shares, best,
+                bestDate, price, poolBlockInfo, odds, byAddress);
+    }
+
+    /**
+     * Copy with the odds line: {@code total} for the totals, and the given odds for each
+     * address in {@code byAddress} that has a snapshot.
+     */
+    WidgetSnapshot withOdds(String total, Map<String, String> oddsByAddress) {
+        Map<String, WidgetSnapshot> replaced = new HashMap<>(byAddress);
+        for (Map.Entry<String, String> entry : oddsByAddress.entrySet()) {
+            WidgetSnapshot snapshot = byAddress.get(entry.getKey());
+            if (snapshot != null) {
+                replaced.put(entry.getKey(), snapshot.withOdds(entry.getValue(),
+                        Collections.<String, String>emptyMap()));
+            }
+        }
+        return new WidgetSnapshot(setupRequired, live, updatedAt, hashrate, shares, best,
+                bestDate, bitcoinPrice, poolBlockInfo, total, replaced);
+    }
+
+    // Shown next to cached values, e.g. "3h ago"; empty for fresh data
+    String staleLabel(long now) {
+        if (live || setupRequired || updatedAt <= 0) {
+            return "";
+        }
+        return StatsFormatter.formatAge((now - updatedAt) / 1000);
+    }
+
+    String topInfo() {
+        return StatsFormatter.topInfo(bitcoinPrice, poolBlockInfo);
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.ckpoolwidget;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Everything the widget persists between refreshes, saved as one snapshot by
+ * {@link WidgetStateStore}. Strings are null until a value has been fetched.
+ */
+final class WidgetState {
+
+    // Best share ever seen across all addresses, and the date it was beaten (empty if unknown)
+    long bestEver;
+    String bestDate = "";
+
+    // Last known good farm totals, shown when a fetch fails
+    String lastHashrate;
+    String lastShares;
+    String lastBtcPrice;
+    String lastPoolInfo;
+    // When lastHashrate and lastShares were fetched
+    long statsUpdatedAt;
+
+    // When the price and pool blocks were last fetched, for the per-endpoint TTLs
+    long priceFetchedAt;
+    long poolSyncedAt;
+
+    // Network difficulty for the block odds, 0 until fetched, and when it was
+    double networkDifficulty;
+    long difficultyFetchedAt;
+
+    // AlertDetector bookkeeping: what has been announced, and anomalies awaiting a second poll
+    long alertedBest;
+    int alertedPoolHeight;
+    // 24-hour average the current drop was measured against, 0 when not dropped
+    double dropBaseline;
+    boolean dropAlerted;
+    long dropAlertedAt;
+    // Newline-separated worker names
+    String offlineSuspected = "";
+    String offlineAlerted = "";
+    long offlineAlertedAt;
+    // An anomaly is waiting for confirmation; refresh again soon
+    boolean alertPending;
+
+    // RefreshScheduler bookkeeping
+    int refreshFailures;
+    int refreshUnchanged;
+    int refreshIdle;
+    double seenHashrate;
+    String seenBest = "";
+
+    // Time to first meaningful render of the last cold start, and from a refresh request
+    // to fresh data on screen; -1 until measured
+    long firstRenderMs = -1;
+    long freshRenderMs = -1;
+
+    // Per-address stats in the configured order
+    List<AddressStats> addresses = new ArrayList<>();
+
+    // Null if the address has never been fetched
+    AddressStats address(String address) {
+        for (AddressStats stats : addresses) {
+            if (stats.address.equals(address)) {
+                return stats;
+            }
+        }
+        return null;
+    }
+
+    WidgetState copy() {
+        WidgetState copy = new WidgetState();
+        copy.bestEver = bestEver;
+        copy.bestDate = bestDate;
+        copy.lastHashrate = lastHashrate;
+        copy.lastShares = lastShares;
+        copy.lastBtcPrice = lastBtcPrice;
+        copy.lastPoolInfo = lastPoolInfo;
+        copy.statsUpdatedAt = statsUpdatedAt;
+        copy.priceFetchedAt = priceFetchedAt;
+        copy.poolSyncedAt = poolSyncedAt;
+        copy.networkDifficulty = networkDifficulty;
+        copy.difficultyFetchedAt = difficultyFetchedAt;
+        copy.alertedBest = alertedBest;
+        copy.alertedPoolHeight = alertedPoolHeight;
+        copy.dropBaseline = dropBaseline;
+        copy.dropAlerted = dropAlerted;
+        copy.dropAlertedAt = dropAlertedAt;
+        copy.offlineSuspected = offlineSuspected;
+        copy.offlineAlerted = offlineAlerted;
+        copy.offlineAlertedAt = offlineAlertedAt;
+        copy.alertPending = alertPending;
+        copy.refreshFailures = refreshFailures;
+        copy.refreshUnchanged = refreshUnchanged;
+        copy.refreshIdle = refreshIdle;
+        copy.seenHashrate = seenHashrate;
+        copy.seenBest = seenBest;
+        copy.firstRenderMs = firstRenderMs;
+        copy.freshRenderMs = freshRenderMs;
+        for (AddressStats stats : addresses) {
+            copy.addresses.add(stats.copy());
+        }
+        return copy;
+    }
+}
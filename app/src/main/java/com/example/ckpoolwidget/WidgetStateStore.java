@@ -0,0 +1,323 @@
+package com.example.ckpoolwidget;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Single-file store for {@link WidgetState}.
+ *
+ * Reads share one in-memory snapshot, which is never changed once published.
+ * {@link #update} applies a mutation to a copy and publishes that atomically, so concurrent
+ * fetch tasks can't lose each other's writes and reads don't copy, and {@link #flush} saves
+ * the whole state at once: written to a temp file, synced, then renamed over the old one, so
+ * a crash leaves either the previous snapshot or the new one. A refresh cycle flushes
+ * once at the end instead of rewriting the preferences file for every value.
+ *
+ * Values that older versions kept in {@code CKPoolWidgetPrefs} are moved over on first open.
+ */
+final class WidgetStateStore {
+
+    interface Mutation {
+        void apply(WidgetState state);
+    }
+
+    static final String FILE_NAME = "widget_state.bin";
+
+    private static final int MAGIC = 0x57535453;  // "WSTS"
+    private static final int VERSION = 5;
+
+    // Preference keys of the values now kept here
+    private static final String LEGACY_BEST_EVER = "best_ever";
+    private static final String LEGACY_BEST_DATE = "best_date";
+    private static final String LEGACY_LAST_HASHRATE = "last_hashrate";
+    private static final String LEGACY_LAST_SHARES = "last_shares";
+    private static final String LEGACY_LAST_BTC_PRICE = "last_btc_price";
+    private static final String LEGACY_LAST_POOL_INFO = "last_pool_info";
+    private static final String LEGACY_PRICE_FETCHED_AT = "price_fetched_at";
+    private static final String LEGACY_POOL_SYNCED_AT = "pool_synced_at";
+    private static final String LEGACY_FAILURES = "refresh_failures";
+    private static final String LEGACY_UNCHANGED = "refresh_unchanged";
+    private static final String LEGACY_IDLE = "refresh_idle";
+    private static final String LEGACY_SEEN_HASHRATE = "refresh_seen_hashrate";
+    private static final String LEGACY_SEEN_BEST = "refresh_seen_best";
+    private static final String[] LEGACY_KEYS = {LEGACY_BEST_EVER, LEGACY_BEST_DATE,
+            LEGACY_LAST_HASHRATE, LEGACY_LAST_SHARES, LEGACY_LAST_BTC_PRICE,
+            LEGACY_LAST_POOL_INFO, LEGACY_PRICE_FETCHED_AT, LEGACY_POOL_SYNCED_AT,
+            LEGACY_FAILURES, LEGACY_UNCHANGED, LEGACY_IDLE, LEGACY_SEEN_HASHRATE,
+            LEGACY_SEEN_BEST};
+
+    private static WidgetStateStore instance;
+
+    private final File file;
+    private final File tempFile;
+    // Published snapshot; replaced by update(), never changed in place once visible
+    private WidgetState state = new WidgetState();
+    // Incremented by every save, so the file shows which snapshot it holds
+    private long version;
+    private boolean dirty;
+    private int writes;
+
+    private WidgetStateStore(File file) {
+        this.file = file;
+        this.tempFile = new File(file.getPath() + ".tmp");
+    }
+
+    static synchronized WidgetStateStore get(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            instance = open(new File(appContext.getFilesDir(), FILE_NAME),
+                    appContext.getSharedPreferences(CKPoolWidget.PREFS_NAME, Context.MODE_PRIVATE));
+        }
+        return instance;
+    }
+
+    static WidgetStateStore open(File file, SharedPreferences legacyPrefs) {
+        WidgetStateStore store = new WidgetStateStore(file);
+        try {
+            store.load();
+        } catch (IOException e) {
+            e.printStackTrace();
+            // Unreadable snapshot; start over from whatever the preferences still hold
+            store.state = new WidgetState();
+        }
+        if (legacyPrefs != null) {
+            store.migrate(legacyPrefs);
+        }
+        return store;
+    }
+
+    // Shared and read-only; changes go through update()
+    synchronized WidgetState current() {
+        return state;
+    }
+
+    synchronized void update(Mutation mutation) {
+        WidgetState next = state.copy();
+        mutation.apply(next);
+        state = next;
+        dirty = true;
+    }
+
+    /**
+     * Saves the state if it changed since the last save. Returns false if the write failed;
+     * the state stays dirty and is retried by the next flush.
+     */
+    synchronized boolean flush() {
+        if (!dirty) {
+            return true;
+        }
+        try {
+            write(state, version + 1);
+            version++;
+            dirty = false;
+            writes++;
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    synchronized long version() {
+        return version;
+    }
+
+    synchronized int writes() {
+        return writes;
+    }
+
+    private void load() throws IOException {
+        tempFile.delete();  // Left over from an interrupted save
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            int magic = in.readInt();
+            int fileVersion = in.readInt();
+            // Older versions are a prefix of the current layout
+            if (magic != MAGIC || fileVersion < 1 || fileVersion > VERSION) {
+                throw new IOException("Unknown widget state format");
+            }
+            WidgetState loaded = new WidgetState();
+            long loadedVersion = in.readLong();
+            loaded.bestEver = in.readLong();
+            loaded.bestDate = in.readUTF();
+            loaded.lastHashrate = readString(in);
+            loaded.lastShares = readString(in);
+            loaded.lastBtcPrice = readString(in);
+            loaded.lastPoolInfo = readString(in);
+            loaded.priceFetchedAt = in.readLong();
+            loaded.poolSyncedAt = in.readLong();
+            loaded.refreshFailures = in.readInt();
+            loaded.refreshUnchanged = in.readInt();
+            loaded.refreshIdle = in.readInt();
+            loaded.seenHashrate = in.readDouble();
+            loaded.seenBest = in.readUTF();
+            if (fileVersion >= 2) {
+                loaded.statsUpdatedAt = in.readLong();
+                loaded.firstRenderMs = in.readLong();
+                loaded.freshRenderMs = in.readLong();
+            }
+            if (fileVersion >= 3) {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    loaded.addresses.add(readAddress(in));
+                }
+            }
+            if (fileVersion >= 4) {
+                loaded.networkDifficulty = in.readDouble();
+                loaded.difficultyFetchedAt = in.readLong();
+            }
+            if (fileVersion >= 5) {
+                loaded.alertedBest = in.readLong();
+                loaded.alertedPoolHeight = in.readInt();
+                loaded.dropBaseline = in.readDouble();
+                loaded.dropAlerted = in.readBoolean();
+                loaded.dropAlertedAt = in.readLong();
+                loaded.offlineSuspected = in.readUTF();
+                loaded.offlineAlerted = in.readUTF();
+                loaded.offlineAlertedAt = in.readLong();
+                loaded.alertPending = in.readBoolean();
+            }
+            state = loaded;
+            version = loadedVersion;
+        }
+    }
+
+    private void write(WidgetState s, long newVersion) throws IOException {
+        try (FileOutputStream stream = new FileOutputStream(tempFile)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(newVersion);
+            out.writeLong(s.bestEver);
+            out.writeUTF(s.bestDate);
+            writeString(out, s.lastHashrate);
+            writeString(out, s.lastShares);
+            writeString(out, s.lastBtcPrice);
+            writeString(out, s.lastPoolInfo);
+            out.writeLong(s.priceFetchedAt);
+            out.writeLong(s.poolSyncedAt);
+            out.writeInt(s.refreshFailures);
+            out.writeInt(s.refreshUnchanged);
+            out.writeInt(s.refreshIdle);
+            out.writeDouble(s.seenHashrate);
+            out.writeUTF(s.seenBest);
+            out.writeLong(s.statsUpdatedAt);
+            out.writeLong(s.firstRenderMs);
+            out.writeLong(s.freshRenderMs);
+            out.writeInt(s.addresses.size());
+            for (AddressStats stats : s.addresses) {
+                writeAddress(out, stats);
+            }
+            out.writeDouble(s.networkDifficulty);
+            out.writeLong(s.difficultyFetchedAt);
+            out.writeLong(s.alertedBest);
+            out.writeInt(s.alertedPoolHeight);
+            out.writeDouble(s.dropBaseline);
+            out.writeBoolean(s.dropAlerted);
+            out.writeLong(s.dropAlertedAt);
+            out.writeUTF(s.offlineSuspected);
+            out.writeUTF(s.offlineAlerted);
+            out.writeLong(s.offlineAlertedAt);
+            out.writeBoolean(s.alertPending);
+            out.flush();
+            stream.getFD().sync();
+        }
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    private void migrate(SharedPreferences prefs) {
+        boolean found = false;
+        for (String key : LEGACY_KEYS) {
+            found |= prefs.contains(key);
+        }
+        if (!found) {
+            return;
+        }
+        if (!file.exists()) {
+            WidgetState s = state;
+            s.bestEver = prefs.getLong(LEGACY_BEST_EVER, 0);
+            s.bestDate = prefs.getString(LEGACY_BEST_DATE, "");
+            s.lastHashrate = prefs.getString(LEGACY_LAST_HASHRATE, null);
+            s.lastShares = prefs.getString(LEGACY_LAST_SHARES, null);
+            s.lastBtcPrice = prefs.getString(LEGACY_LAST_BTC_PRICE, null);
+            s.lastPoolInfo = prefs.getString(LEGACY_LAST_POOL_INFO, null);
+            s.priceFetchedAt = prefs.getLong(LEGACY_PRICE_FETCHED_AT, 0);
+            s.poolSyncedAt = prefs.getLong(LEGACY_POOL_SYNCED_AT, 0);
+            s.refreshFailures = prefs.getInt(LEGACY_FAILURES, 0);
+            s.refreshUnchanged = prefs.getInt(LEGACY_UNCHANGED, 0);
+            s.refreshIdle = prefs.getInt(LEGACY_IDLE, 0);
+            s.seenHashrate = Double.longBitsToDouble(prefs.getLong(LEGACY_SEEN_HASHRATE, 0));
+            s.seenBest = prefs.getString(LEGACY_SEEN_BEST, "");
+            dirty = true;
+            if (!flush()) {
+                // Keep the preferences until the values are safely on disk
+                return;
+            }
+        }
+        SharedPreferences.Editor editor = prefs.edit();
+        for (String key : LEGACY_KEYS) {
+            editor.remove(key);
+        }
+        editor.apply();
+    }
+
+    private static AddressStats readAddress(DataInputStream in) throws IOException {
+        AddressStats stats = new AddressStats(in.readUTF());
+        stats.hashrate = readString(in);
+        stats.shares = in.readLong();
+        stats.bestEver = in.readLong();
+        stats.bestDate = in.readUTF();
+        stats.updatedAt = in.readLong();
+        int workers = in.readInt();
+        if (workers > 0) {
+            stats.workers = new AddressStats.Worker[workers];
+            for (int i = 0; i < workers; i++) {
+                stats.workers[i] = new AddressStats.Worker(in.readUTF(), in.readUTF(),
+                        in.readLong(), in.readLong());
+            }
+        }
+        return stats;
+    }
+
+    private static void writeAddress(DataOutputStream out, AddressStats stats)
+            throws IOException {
+        out.writeUTF(stats.address);
+        writeString(out, stats.hashrate);
+        out.writeLong(stats.shares);
+        out.writeLong(stats.bestEver);
+        out.writeUTF(stats.bestDate);
+        out.writeLong(stats.updatedAt);
+        out.writeInt(stats.workers.length);
+        for (AddressStats.Worker worker : stats.workers) {
+            out.writeUTF(worker.name);
+            out.writeUTF(worker.hashrate);
+            out.writeLong(worker.shares);
+            out.writeLong(worker.bestEver);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+}
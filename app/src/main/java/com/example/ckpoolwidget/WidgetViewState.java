@@ -0,0 +1,49 @@
+package com.example.ckpoolwidget;
+
+import java.util.Arrays;
+
+/**
+ * Everything one widget instance displays: its text fields, the three stat colors and the
+ * sparkline bitmap. A null text leaves that view as it is.
+ */
+final class WidgetViewState {
+
+    static final int TEXT_HASHRATE = 0;
+    static final int TEXT_SHARES = 1;
+    static final int TEXT_BEST = 2;
+    static final int TEXT_BEST_DATE = 3;
+    static final int TEXT_TOP_INFO = 4;
+    static final int TEXT_STALE = 5;
+    static final int TEXT_ODDS = 6;
+    static final int TEXT_COUNT = 7;
+
+    static final int COLOR_RATE = 0;
+    static final int COLOR_SHARES = 1;
+    static final int COLOR_BEST = 2;
+    static final int COLOR_COUNT = 3;
+
+    final String[] texts;
+    final int[] colors;
+    // Compared by identity: the renderer hands out the same instance for unchanged data
+    final Object sparkline;
+
+    WidgetViewState(String[] texts, int[] colors, Object sparkline) {
+        this.texts = Arrays.copyOf(texts, TEXT_COUNT);
+        this.colors = Arrays.copyOf(colors, COLOR_COUNT);
+        this.sparkline = sparkline;
+    }
+
+    static WidgetViewState of(WidgetSnapshot snapshot, String staleLabel, int[] colors,
+                              Object sparkline) {
+        String[] texts = new String[TEXT_COUNT];
+        texts[TEXT_HASHRATE] = snapshot.hashrate;
+        texts[TEXT_SHARES] = snapshot.shares;
+        texts[TEXT_BEST] = snapshot.best;
+        // The setup prompt leaves the old date in place
+        texts[TEXT_BEST_DATE] = snapshot.setupRequired ? null : snapshot.bestDate;
+        texts[TEXT_TOP_INFO] = snapshot.topInfo();
+        texts[TEXT_STALE] = staleLabel;
+        texts[TEXT_ODDS] = snapshot.odds;
+        return new WidgetViewState(texts, colors, sparkline);
+    }
+}
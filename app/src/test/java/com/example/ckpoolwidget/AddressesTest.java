@@ -0,0 +1,44 @@
+package com.example.ckpoolwidget;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AddressesTest {
+
+    @Test
+    public void addressesAreSplitAndDeduplicated() {
+        assertArrayEquals(new String[] {"bc1qaaa", "1LegacyAddr", "bc1qbbb"},
+                Addresses.parse(" bc1qaaa\n1LegacyAddr, bc1qbbb\n\nBC1QAAA 1LegacyAddr "));
+        assertArrayEquals(new String[] {"1LegacyAddr", "1legacyaddr"},
+                Addresses.parse("1LegacyAddr 1legacyaddr"));
+        assertEquals(0, Addresses.parse("").length);
+        assertEquals(0, Addresses.parse(null).length);
+    }
+
+    @Test
+    public void singleSavedAddressReadsAsOne() {
+        String[] addresses = Addresses.parse("bc1qexampleaddress0000000000000000000000");
+
+        assertEquals(1, addresses.length);
+        assertEquals("bc1qexampleaddress0000000000000000000000", Addresses.join(addresses));
+        assertEquals("bc1qex…0000", Addresses.label(addresses[0]));
+    }
+
+    @Test
+    public void workersAreReadFromTheRecordedResponse() throws Exception {
+        String address = "bc1qexampleaddress0000000000000000000000";
+        AddressStats stats = AddressStats.parse(address,
+                new JSONObject(Benchmarks.response(Benchmarks.CKPOOL_USER)));
+
+        assertEquals("1.53T", stats.hashrate);
+        assertEquals(120310000, stats.shares);
+        assertEquals(68760000, stats.bestEver);
+        assertEquals(2, stats.workers.length);
+        assertEquals("bitaxe1", stats.workers[0].name);
+        assertEquals("1.02T", stats.workers[0].hashrate);
+        assertEquals("bitaxe2", stats.workers[1].name);
+        assertEquals(21450000, stats.workers[1].bestEver);
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.ckpoolwidget;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AlertDetectorTest {
+
+    private static final String ADDRESS = "bc1qexampleaddress0000";
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    @Test
+    public void firstValuesArePrimedSilently() {
+        WidgetState state = new WidgetState();
+        state.bestEver = 5000;
+
+        AlertDetector.Result result = detect(state, live("1.5T"), 1.5e12, 880000, 0);
+        assertTrue(result.raised.isEmpty());
+        assertEquals(5000, state.alertedBest);
+        assertEquals(880000, state.alertedPoolHeight);
+    }
+
+    @Test
+    public void newBestAndPoolBlockAreAnnouncedOnce() {
+        WidgetState state = new WidgetState();
+        state.bestEver = 5000;
+        detect(state, live("1.5T"), 1.5e12, 880000, 0);
+
+        state.bestEver = 9000;
+        AlertDetector.Result result = detect(state, live("1.5T"), 1.5e12, 880001, 1);
+        assertEquals(2, result.raised.size());
+        assertEquals(AlertDetector.NEW_BEST, result.raised.get(0).type);
+        assertEquals(AlertDetector.POOL_BLOCK, result.raised.get(1).type);
+        assertEquals("Block 880001", result.raised.get(1).text);
+
+        // The next cycle, or another widget's, has nothing new
+        assertTrue(detect(state, live("1.5T"), 1.5e12, 880001, 2).raised.isEmpty());
+    }
+
+    @Test
+    public void hashrateDropIsConfirmedByTheNextPoll() {
+        WidgetState state = new WidgetState();
+        detect(state, live("1.5T"), 1.5e12, -1, 0);
+
+        assertTrue(detect(state, live("500G"), 1.5e12, -1, HOUR).raised.isEmpty());
+        assertTrue(state.alertPending);
+
+        AlertDetector.Result result = detect(state, live("400G"), 1.4e12, -1, HOUR + 1);
+        assertEquals(1, result.raised.size());
+        assertEquals(AlertDetector.HASHRATE_DROP, result.raised.get(0).type);
+        assertFalse(state.alertPending);
+        assertTrue(detect(state, live("400G"), 1.3e12, -1, HOUR + 2).raised.isEmpty());
+
+        result = detect(state, live("1.3T"), 1.3e12, -1, HOUR + 3);
+        assertEquals(AlertDetector.HASHRATE_DROP, (int) result.cleared.get(0));
+        assertEquals(0, state.dropBaseline, 0);
+    }
+
+    @Test
+    public void oneLowPollIsOnlyADip() {
+        WidgetState state = new WidgetState();
+        detect(state, live("500G"), 1.5e12, -1, 0);
+        AlertDetector.Result result = detect(state, live("1.4T"), 1.5e12, -1, 1);
+        assertTrue(result.raised.isEmpty());
+        assertTrue(result.cleared.isEmpty());
+        assertFalse(state.alertPending);
+    }
+
+    @Test
+    public void cachedSnapshotsDontRaiseOrConfirmAnomalies() {
+        WidgetState state = new WidgetState();
+        detect(state, live("500G"), 1.5e12, -1, 0);
+        WidgetSnapshot cached = new WidgetSnapshot(false, false, 1, "0", "1.00 M", "5 k", "",
+                "$97k", "1d ago");
+        assertTrue(detect(state, cached, 1.5e12, -1, HOUR).raised.isEmpty());
+        assertFalse(state.alertPending);
+    }
+
+    @Test
+    public void offlineWorkersAreConfirmedThenClearedWhenBack() {
+        WidgetState state = new WidgetState();
+        AddressStats stats = new AddressStats(ADDRESS);
+        stats.workers = new AddressStats.Worker[]{
+                new AddressStats.Worker("bitaxe1", "500G", 10, 10),
+                new AddressStats.Worker("bitaxe2", "0", 10, 10)};
+        state.addresses.add(stats);
+
+        assertTrue(detect(state, live("500G"), 0, -1, HOUR).raised.isEmpty());
+        assertTrue(state.alertPending);
+
+        AlertDetector.Result result = detect(state, live("500G"), 0, -1, HOUR + 1);
+        assertEquals(1, result.raised.size());
+        assertEquals("Worker offline", result.raised.get(0).title);
+        assertEquals("bitaxe2", result.raised.get(0).text);
+        assertTrue(detect(state, live("500G"), 0, -1, HOUR + 2).raised.isEmpty());
+
+        stats.workers[1] = new AddressStats.Worker("bitaxe2", "490G", 11, 10);
+        result = detect(state, live("990G"), 0, -1, HOUR + 3);
+        assertEquals(AlertDetector.WORKERS_OFFLINE, (int) result.cleared.get(0));
+        assertEquals("", state.offlineAlerted);
+    }
+
+    @Test
+    public void repeatedAnomaliesAreRateLimited() {
+        WidgetState state = new WidgetState();
+        detect(state, live("500G"), 1.5e12, -1, HOUR);
+        assertEquals(1, detect(state, live("500G"), 1.5e12, -1, HOUR).raised.size());
+        detect(state, live("1.5T"), 1.5e12, -1, HOUR + 1);
+
+        // Flaps again within the hour: tracked, but not announced
+        detect(state, live("500G"), 1.5e12, -1, HOUR + 2);
+        assertTrue(detect(state, live("500G"), 1.5e12, -1, HOUR + 3).raised.isEmpty());
+        detect(state, live("1.5T"), 1.5e12, -1, HOUR + 4);
+
+        detect(state, live("500G"), 1.5e12, -1, 3 * HOUR);
+        assertEquals(1, detect(state, live("500G"), 1.5e12, -1, 3 * HOUR).raised.size());
+    }
+
+    private static AlertDetector.Result detect(WidgetState state, WidgetSnapshot snapshot,
+                                               double average, int poolHeight, long now) {
+        return AlertDetector.detect(state, snapshot, average, poolHeight, now);
+    }
+
+    private static WidgetSnapshot live(String hashrate) {
+        return new WidgetSnapshot(false, true, 1, hashrate, "1.00 M", "5 k", "", "$97k",
+                "1d ago");
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.ckpoolwidget;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AxeOsTest {
+
+    // Trimmed /api/system/info of a Bitaxe Gamma on AxeOS 2.x
+    static final String GAMMA_INFO = "{\"power\":17.2,\"voltage\":5112.5,\"hashRate\":1204.37,"
+            + "\"bestDiff\":\"4.29G\",\"temp\":58.25,\"vrTemp\":49,\"hostname\":\"bitaxe-gamma\","
+            + "\"ASICModel\":\"BM1370\",\"stratumURL\":\"solo.ckpool.org\",\"stratumPort\":3333,"
+            + "\"stratumUser\":\"bc1qfirst.gamma\",\"uptimeSeconds\":93784,"
+            + "\"version\":\"v2.4.2\"}";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StubHttpServer gamma;
+    private StubHttpServer supra;
+    private StubHttpServer router;
+    private ExecutorService executor;
+    private EndpointMetrics metrics;
+    private AxeOs axeOs;
+
+    @Before
+    public void setUp() throws Exception {
+        gamma = new StubHttpServer();
+        gamma.respond(AxeOs.INFO_PATH, GAMMA_INFO);
+        supra = new StubHttpServer();
+        // Newer firmware reports the best difficulty as a number
+        supra.respond(AxeOs.INFO_PATH, "{\"hashRate\":650.5,\"bestDiff\":1250000000,"
+                + "\"temp\":61,\"hostname\":\"bitaxe-supra\",\"ASICModel\":\"BM1368\","
+                + "\"stratumUser\":\"bc1qsecond.supra\",\"uptimeSeconds\":3600}");
+        // Something else on the network that happens to answer with JSON
+        router = new StubHttpServer();
+        router.respond(AxeOs.INFO_PATH, "{\"model\":\"router\",\"uptime\":12}");
+        executor = Executors.newCachedThreadPool();
+        metrics = EndpointMetrics.open(new File(folder.getRoot(), EndpointMetrics.FILE_NAME));
+        axeOs = new AxeOs(new HttpClient(), executor, metrics.endpoint(EndpointMetrics.AXEOS));
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        gamma.close();
+        supra.close();
+        router.close();
+    }
+
+    @Test
+    public void scanFindsOnlyAxeOsDevices() throws Exception {
+        String[] hosts = {closedHost(), gamma.host(), router.host(), supra.host()};
+
+        List<AxeDevice> found = axeOs.scan(hosts);
+
+        assertEquals(2, found.size());
+        AxeDevice device = found.get(0);
+        assertEquals(gamma.host(), device.host);
+        assertEquals("bitaxe-gamma", device.hostname);
+        assertEquals("BM1370", device.model);
+        assertEquals(1204.37e9, device.hashrate, 1);
+        assertEquals(58.25, device.temperature, 1e-9);
+        assertEquals("4.29G", device.bestDiff);
+        assertEquals(93784, device.uptimeSeconds);
+        assertTrue(device.minesTo("BC1QFIRST"));
+        assertFalse(device.minesTo("bc1qsecond"));
+        assertEquals("1.25 G", found.get(1).bestDiff);
+        // Probes aren't counted, or a scan would bury the polls in failures
+        assertEquals(0, metrics.successes(EndpointMetrics.AXEOS)
+                + metrics.failures(EndpointMetrics.AXEOS));
+    }
+
+    @Test
+    public void scanProbesInParallel() throws Exception {
+        List<AxeDevice> found;
+        long elapsedMs;
+        try (StubHttpServer slow = new StubHttpServer()) {
+            slow.handle(AxeOs.INFO_PATH, exchange -> {
+                sleep(100);
+                StubHttpServer.send(exchange, 200, GAMMA_INFO);
+            });
+            // The first request of a cold JVM alone can take most of a probe timeout
+            assertEquals(1, axeOs.scan(new String[] {slow.host()}).size());
+            String[] hosts = new String[64];
+            for (int i = 0; i < hosts.length; i++) {
+                hosts[i] = i % 2 == 0 ? slow.host() : closedHost();
+            }
+
+            long start = System.nanoTime();
+            found = axeOs.scan(hosts);
+            elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+
+        assertEquals(32, found.size());
+        // One at a time would take 3.2s
+        assertTrue("scan took " + elapsedMs + " ms", elapsedMs < 1500);
+    }
+
+    @Test
+    public void pollKeepsHostOrderAndMarksSilentDevices() throws Exception {
+        String[] hosts = {supra.host(), closedHost(), gamma.host()};
+
+        AxeDevice[] readings = axeOs.poll(hosts, System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(AxeOs.POLL_TIMEOUT_MS));
+
+        assertEquals("bitaxe-supra", readings[0].hostname);
+        assertNull(readings[1]);
+        assertEquals("bitaxe-gamma", readings[2].hostname);
+        assertEquals(2, metrics.successes(EndpointMetrics.AXEOS));
+        assertEquals(1, metrics.failures(EndpointMetrics.AXEOS));
+    }
+
+    @Test
+    public void subnetHostsSkipNetworkBroadcastAndSelf() {
+        String[] hosts = AxeOs.subnetHosts(new byte[] {(byte) 192, (byte) 168, 1, 23}, 24);
+
+        assertEquals(253, hosts.length);
+        assertEquals("192.168.1.1", hosts[0]);
+        assertEquals("192.168.1.22", hosts[21]);
+        assertEquals("192.168.1.24", hosts[22]);
+        assertEquals("192.168.1.254", hosts[252]);
+
+        // Larger networks are narrowed to the phone's /24
+        String[] wide = AxeOs.subnetHosts(new byte[] {10, 0, 7, (byte) 200}, 16);
+        assertEquals(253, wide.length);
+        assertEquals("10.0.7.1", wide[0]);
+
+        // .64 to .71
+        String[] small = AxeOs.subnetHosts(new byte[] {(byte) 192, (byte) 168, 1, 69}, 29);
+        assertArrayEquals(new String[] {"192.168.1.65", "192.168.1.66", "192.168.1.67",
+                "192.168.1.68", "192.168.1.70"}, small);
+    }
+
+    @Test
+    public void hostsAreParsedFromPastedUrls() {
+        assertArrayEquals(new String[] {"192.168.1.50", "bitaxe.local", "10.0.0.9:8080"},
+                AxeOs.parseHosts("http://192.168.1.50/\nBitaxe.local, 10.0.0.9:8080 "
+                        + "192.168.1.50"));
+        assertEquals(0, AxeOs.parseHosts("").length);
+    }
+
+    // A local port with nothing listening, so connecting fails straight away
+    private static String closedHost() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return "127.0.0.1:" + socket.getLocalPort();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.ckpoolwidget;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Shared pieces of the *Benchmark classes: allocation counters, percentiles and the
+ * recorded endpoint responses under {@code src/test/resources/responses}.
+ */
+final class Benchmarks {
+
+    static final String CKPOOL_USER = "ckpool_user.json";
+    static final String COINBASE_SPOT = "coinbase_spot.json";
+    static final String MEMPOOL_POOL_BLOCKS = "mempool_pool_blocks.json";
+
+    private Benchmarks() {
+    }
+
+    static String response(String name) throws IOException {
+        try (InputStream in = Benchmarks.class.getResourceAsStream("/responses/" + name)) {
+            if (in == null) {
+                throw new IOException("Missing recorded response " + name);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    // Bytes allocated so far by the calling thread, or 0 where the JVM can't tell
+    static long allocatedBytes() {
+        return allocatedBytes(new long[] {Thread.currentThread().getId()});
+    }
+
+    static long allocatedBytes(long[] threadIds) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return 0;
+        }
+        long total = 0;
+        for (long allocated : ((com.sun.management.ThreadMXBean) threads)
+                .getThreadAllocatedBytes(threadIds)) {
+            // -1 for threads that have already exited
+            total += Math.max(0, allocated);
+        }
+        return total;
+    }
+
+    // Nearest-rank percentile of the first count samples; sorts them in place
+    static long percentile(long[] samples, int count, double p) {
+        if (count == 0) {
+            return 0;
+        }
+        Arrays.sort(samples, 0, count);
+        int rank = (int) Math.ceil(p / 100 * count);
+        return samples[Math.max(0, Math.min(count, rank) - 1)];
+    }
+}
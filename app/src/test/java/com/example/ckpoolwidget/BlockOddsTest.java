@@ -0,0 +1,79 @@
+package com.example.ckpoolwidget;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BlockOddsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void oddsFollowFromHashrateAndDifficulty() {
+        // 1.2 TH/s against difficulty 1.2e14: one block per 2^32 * 100 seconds
+        BlockOdds odds = new BlockOdds(1.2e12, 1.2e14, 6_000_000_000L);
+        assertTrue(odds.isKnown());
+        assertEquals(4294967296.0 * 100, odds.expectedSeconds(), 1);
+        double perDay = 86400 / (4294967296.0 * 100);
+        assertEquals(perDay, odds.chance(BlockOdds.DAY_SECONDS), perDay * 1e-6);
+        assertEquals(1 - Math.exp(-perDay * 365), odds.chance(BlockOdds.YEAR_SECONDS), 1e-12);
+        assertEquals(5e-5, odds.bestRatio(), 1e-12);
+
+        // Mining for the expected time finds a block 63% of the time
+        BlockOdds farm = new BlockOdds(1e18, 1e14, 0);
+        assertEquals(1 - Math.exp(-1), farm.chance((long) farm.expectedSeconds()), 1e-3);
+
+        assertFalse(new BlockOdds(0, 1.2e14, 0).isKnown());
+        assertFalse(new BlockOdds(1e12, 0, 0).isKnown());
+        assertEquals(0, new BlockOdds(0, 1.2e14, 0).chance(BlockOdds.YEAR_SECONDS), 0);
+    }
+
+    @Test
+    public void windowWeightsSamplesByTheirInterval() throws Exception {
+        HashrateHistory history = HashrateHistory.open(folder.newFile(), 64);
+        HashrateWindow window = new HashrateWindow();
+        assertEquals(0, window.mean(history), 0);
+
+        history.append(100_000, 5e12, 0, 0);
+        // A single sample stands for itself
+        assertEquals(5e12, window.mean(history), 1e6);
+
+        // 1T for 10 minutes, then 4T for 30
+        history.append(100_600, 1e12, 0, 0);
+        history.append(102_400, 4e12, 0, 0);
+        assertEquals((1e12 * 600 + 4e12 * 1800) / 2400, window.mean(history), 1e6);
+
+        // A night without polls counts as one hour
+        history.append(140_000, 2e12, 0, 0);
+        assertEquals((1e12 * 600 + 4e12 * 1800 + 2e12 * 3600) / 6000,
+                window.mean(history), 1e6);
+
+        // A day later only the newest samples are left
+        history.append(240_000, 3e12, 0, 0);
+        assertEquals(3e12, window.mean(history), 1e6);
+    }
+
+    @Test
+    public void incrementalMeanMatchesAFreshOne() throws Exception {
+        File file = folder.newFile();
+        HashrateHistory history = HashrateHistory.open(file, 256);
+        HashrateWindow incremental = new HashrateWindow();
+        Random random = new Random(3);
+        long time = 1_760_000_000L;
+        for (int i = 0; i < 2000; i++) {
+            time += 60 + random.nextInt(7200);
+            history.append(time, random.nextDouble() * 1e13, i, 0);
+            if (random.nextInt(4) == 0) {
+                continue;
+            }
+            double expected = new HashrateWindow().mean(history);
+            assertEquals("poll " + i, expected, incremental.mean(history), expected * 1e-9);
+        }
+    }
+}
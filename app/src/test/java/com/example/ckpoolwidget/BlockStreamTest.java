@@ -0,0 +1,209 @@
+package com.example.ckpoolwidget;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BlockStreamTest {
+
+    private static final String SOLO_BLOCK = "{\"block\":{\"id\":\"00000000000000000001\","
+            + "\"height\":900002,\"timestamp\":1750000000,"
+            + "\"extras\":{\"pool\":{\"id\":49,\"name\":\"SoloCK\",\"slug\":\"solock\"}}}}";
+    private static final String OTHER_BLOCK = "{\"block\":{\"height\":900003,"
+            + "\"extras\":{\"pool\":{\"id\":111,\"name\":\"Foundry USA\",\"slug\":\"foundryusa\"}}}}";
+
+    private StubWebSocketServer server;
+    private BlockStream stream;
+    private final BlockingQueue<Integer> heights = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubWebSocketServer();
+        stream = new BlockStream(server.url("/api/v1/ws"), heights::add, new Random(1), 200);
+    }
+
+    @After
+    public void tearDown() {
+        stream.release();
+        server.close();
+    }
+
+    @Test
+    public void clientExchangesFramesAndAnswersPings() throws Exception {
+        try (WebSocketClient client = WebSocketClient.connect(server.url("/api/v1/ws?x=1"),
+                2000)) {
+            StubWebSocketServer.Connection connection = server.accept(2000);
+            assertEquals("GET /api/v1/ws?x=1 HTTP/1.1", connection.requestLine);
+
+            client.send(BlockStream.SUBSCRIBE);
+            assertEquals(BlockStream.SUBSCRIBE, connection.readText());
+
+            // A fragmented message with a ping between the fragments
+            connection.sendFrame(StubWebSocketServer.OP_TEXT, false, bytes("{\"a\":"));
+            connection.sendFrame(StubWebSocketServer.OP_PING, true, bytes("hi"));
+            connection.sendFrame(StubWebSocketServer.OP_CONTINUATION, true, bytes("1}"));
+            assertEquals("{\"a\":1}", client.receive());
+            StubWebSocketServer.Frame pong = connection.readFrame();
+            assertEquals(StubWebSocketServer.OP_PONG, pong.opcode);
+            assertEquals("hi", pong.text());
+
+            // Longer than the one-byte length form
+            String large = repeat('x', 70000);
+            connection.sendText(large);
+            assertEquals(large, client.receive());
+            client.send(large);
+            assertEquals(large, connection.readText());
+
+            connection.sendFrame(StubWebSocketServer.OP_CLOSE, true, new byte[] {0x03, (byte) 0xE8});
+            assertNull(client.receive());
+            assertEquals(StubWebSocketServer.OP_CLOSE, connection.readFrame().opcode);
+        }
+    }
+
+    @Test
+    public void onlyATimeoutBetweenFramesKeepsTheConnection() throws Exception {
+        try (WebSocketClient client = WebSocketClient.connect(server.url("/api/v1/ws"), 2000)) {
+            StubWebSocketServer.Connection connection = server.accept(2000);
+            client.setReadTimeout(100);
+
+            // Idle: nothing of the next frame has arrived
+            try {
+                client.receive();
+                fail("Received a message nobody sent");
+            } catch (SocketTimeoutException expected) {
+                // Still usable
+            }
+            connection.sendText("{}");
+            assertEquals("{}", client.receive());
+
+            // Header and half the payload, then a stall
+            connection.out.write(new byte[] {(byte) (0x80 | StubWebSocketServer.OP_TEXT), 4,
+                    '{', '}'});
+            connection.out.flush();
+            try {
+                client.receive();
+                fail("Received half a frame");
+            } catch (SocketTimeoutException e) {
+                fail("A timeout inside a frame was reported as idle");
+            } catch (IOException expected) {
+                // The framing is lost; the connection is closed
+            }
+        }
+    }
+
+    @Test
+    public void handshakeChecksTheAcceptKey() throws Exception {
+        server.acceptOverride = "bm90IHRoZSByaWdodCBrZXk=";
+        try {
+            WebSocketClient.connect(server.url("/api/v1/ws"), 2000).close();
+            fail("Connected without a valid Sec-WebSocket-Accept");
+        } catch (IOException expected) {
+            // Refused
+        }
+    }
+
+    @Test
+    public void acceptKeyMatchesRfcExample() {
+        // RFC 6455 section 1.3
+        assertEquals("s3pPLMBiTxaQ9kYGzzhZRbK+xOo=",
+                WebSocketClient.acceptKey("dGhlIHNhbXBsZSBub25jZQ=="));
+    }
+
+    @Test
+    public void onlySoloBlocksAreReported() throws Exception {
+        stream.acquire();
+        StubWebSocketServer.Connection connection = server.accept(2000);
+        assertEquals(BlockStream.SUBSCRIBE, connection.readText());
+
+        // The latest blocks arrive right after subscribing
+        connection.sendText("{\"blocks\":[{\"height\":899999,\"extras\":{\"pool\":"
+                + "{\"slug\":\"antpool\"}}},{\"height\":900001,\"extras\":{\"pool\":"
+                + "{\"slug\":\"solock\"}}}]}");
+        connection.sendText(OTHER_BLOCK);
+        connection.sendText("{\"conversions\":{\"USD\":97000}}");
+        connection.sendText("not json");
+        connection.sendText(SOLO_BLOCK);
+
+        assertEquals(Integer.valueOf(900001), heights.poll(2, TimeUnit.SECONDS));
+        assertEquals(Integer.valueOf(900002), heights.poll(2, TimeUnit.SECONDS));
+        assertNull(heights.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void reconnectsAndResubscribesAfterADrop() throws Exception {
+        stream.acquire();
+        StubWebSocketServer.Connection first = server.accept(2000);
+        assertEquals(BlockStream.SUBSCRIBE, first.readText());
+        first.drop();
+
+        // First retry waits 0.5-1s
+        StubWebSocketServer.Connection second = server.accept(3000);
+        assertNotNull(second);
+        assertEquals(BlockStream.SUBSCRIBE, second.readText());
+        second.sendText(SOLO_BLOCK);
+        assertEquals(Integer.valueOf(900002), heights.poll(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void quietConnectionsArePingedAndStopWhenReleased() throws Exception {
+        stream.acquire();
+        StubWebSocketServer.Connection connection = server.accept(2000);
+        assertEquals(BlockStream.SUBSCRIBE, connection.readText());
+
+        // The stub never answers, so after the ping the client gives up and reconnects
+        assertEquals(StubWebSocketServer.OP_PING, connection.readFrame().opcode);
+        assertNotNull(server.accept(3000));
+
+        stream.release();
+        long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (stream.isRunning() && System.nanoTime() < until) {
+            Thread.sleep(10);
+        }
+        assertFalse(stream.isRunning());
+    }
+
+    @Test
+    public void leaseKeepsTheStreamForItsDuration() throws Exception {
+        stream.extend(300);
+        assertTrue(stream.isRunning());
+        assertNotNull(server.accept(2000));
+
+        long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (stream.isRunning() && System.nanoTime() < until) {
+            Thread.sleep(10);
+        }
+        // Noticed at the next ping interval after the lease ran out
+        assertFalse(stream.isRunning());
+    }
+
+    @Test
+    public void backoffGrowsWithJitterUpToTheCap() {
+        assertEquals(500, BlockStream.backoffMillis(1, 0));
+        assertEquals(999, BlockStream.backoffMillis(1, 0.999));
+        assertEquals(4000, BlockStream.backoffMillis(4, 0));
+        assertEquals(BlockStream.MAX_BACKOFF_MS / 2, BlockStream.backoffMillis(30, 0));
+        assertTrue(BlockStream.backoffMillis(1000, 0.999) < BlockStream.MAX_BACKOFF_MS);
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder text = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            text.append(c);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.ckpoolwidget;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class EndpointMetricsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StubHttpServer server;
+    private HttpClient client;
+    private File file;
+    private EndpointMetrics metrics;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubHttpServer();
+        client = new HttpClient();
+        file = new File(folder.getRoot(), EndpointMetrics.FILE_NAME);
+        metrics = EndpointMetrics.open(file);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void callsAreRecordedPerEndpointWithTheirBytes() throws Exception {
+        server.respond("/price", "{\"data\":{\"amount\":\"97000\"}}");
+
+        client.get(server.url("/price"), deadline(), client::readText,
+                metrics.endpoint(EndpointMetrics.PRICE));
+        client.get(server.url("/price"), deadline(), client::readText,
+                metrics.endpoint(EndpointMetrics.PRICE));
+
+        assertEquals(2, metrics.successes(EndpointMetrics.PRICE));
+        assertEquals(2 * "{\"data\":{\"amount\":\"97000\"}}".length(),
+                metrics.bytes(EndpointMetrics.PRICE));
+        assertEquals(0, metrics.successes(EndpointMetrics.USERS));
+        assertEquals(2, metrics.bucket(EndpointMetrics.PRICE, 0)
+                + metrics.bucket(EndpointMetrics.PRICE, 1));
+    }
+
+    @Test
+    public void failuresAreSortedByCause() throws Exception {
+        server.handle("/busy", exchange -> StubHttpServer.send(exchange, 503, "busy"));
+        server.respond("/garbage", "<html>");
+        server.handle("/hung", exchange -> {
+            try {
+                Thread.sleep(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            StubHttpServer.send(exchange, 200, "{}");
+        });
+        EndpointMetrics.Endpoint users = metrics.endpoint(EndpointMetrics.USERS);
+
+        getAndFail(server.url("/busy"), deadline(), users);
+        getAndFail(server.url("/garbage"), deadline(), users);
+        getAndFail(server.url("/hung"),
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200), users);
+
+        assertEquals(1, metrics.failures(EndpointMetrics.USERS, EndpointMetrics.HTTP_STATUS));
+        assertEquals(1, metrics.failures(EndpointMetrics.USERS, EndpointMetrics.PARSE));
+        assertEquals(1, metrics.failures(EndpointMetrics.USERS, EndpointMetrics.TIMEOUT));
+        assertEquals(3, metrics.failures(EndpointMetrics.USERS));
+        assertEquals(0, metrics.successes(EndpointMetrics.USERS));
+    }
+
+    @Test
+    public void causeOfClassifiesExceptions() {
+        assertEquals(EndpointMetrics.DNS, EndpointMetrics.causeOf(
+                new UnknownHostException("solo.ckpool.org"), false, false));
+        assertEquals(EndpointMetrics.TIMEOUT, EndpointMetrics.causeOf(
+                new SocketTimeoutException(), true, false));
+        assertEquals(EndpointMetrics.TIMEOUT, EndpointMetrics.causeOf(
+                new IOException("Socket closed"), false, true));
+        assertEquals(EndpointMetrics.PARSE, EndpointMetrics.causeOf(
+                new JSONException("bad"), true, false));
+        assertEquals(EndpointMetrics.NETWORK, EndpointMetrics.causeOf(
+                new IOException("Connection reset"), false, false));
+    }
+
+    @Test
+    public void percentilesComeFromTheBucketBounds() {
+        EndpointMetrics.Endpoint blocks = metrics.endpoint(EndpointMetrics.POOL_BLOCKS);
+        assertEquals(-1, metrics.percentileMs(EndpointMetrics.POOL_BLOCKS, 50));
+        for (int i = 0; i < 98; i++) {
+            blocks.recordSuccess(TimeUnit.MILLISECONDS.toNanos(70), 0, false);
+        }
+        blocks.recordSuccess(TimeUnit.MILLISECONDS.toNanos(700), 0, false);
+        blocks.recordFailure(EndpointMetrics.TIMEOUT, TimeUnit.SECONDS.toNanos(20), 0);
+
+        assertEquals(100, metrics.percentileMs(EndpointMetrics.POOL_BLOCKS, 50));
+        assertEquals(1000, metrics.percentileMs(EndpointMetrics.POOL_BLOCKS, 99));
+        assertEquals(Long.MAX_VALUE, metrics.percentileMs(EndpointMetrics.POOL_BLOCKS, 100));
+    }
+
+    @Test
+    public void cacheHitsCountTtlSkipsAndNotModified() {
+        EndpointMetrics.Endpoint price = metrics.endpoint(EndpointMetrics.PRICE);
+        price.recordCacheHit();
+        price.recordSuccess(1, 0, true);
+        price.recordSuccess(1, 100, false);
+        price.recordFailure(EndpointMetrics.NETWORK, 1, 0);
+
+        assertEquals(0.5, metrics.cacheHitRatio(EndpointMetrics.PRICE), 1e-9);
+        assertEquals(0, metrics.cacheHitRatio(EndpointMetrics.USERS), 0);
+    }
+
+    @Test
+    public void countersSurviveReopen() {
+        metrics.endpoint(EndpointMetrics.USERS).recordSuccess(1, 1234, false);
+        metrics.endpoint(EndpointMetrics.PRICE).recordFailure(EndpointMetrics.DNS, 1, 0);
+        assertTrue(metrics.save());
+
+        EndpointMetrics loaded = EndpointMetrics.open(file);
+        assertEquals(1, loaded.successes(EndpointMetrics.USERS));
+        assertEquals(1234, loaded.bytes(EndpointMetrics.USERS));
+        assertEquals(1, loaded.failures(EndpointMetrics.PRICE, EndpointMetrics.DNS));
+        assertEquals(metrics.toCsv(), loaded.toCsv());
+    }
+
+    @Test
+    public void saveWritesOnlyAfterNewRecords() {
+        metrics.endpoint(EndpointMetrics.USERS).recordSuccess(1, 0, false);
+        assertTrue(metrics.save());
+        assertTrue(file.delete());
+
+        assertTrue(metrics.save());
+        assertFalse(file.exists());
+
+        metrics.endpoint(EndpointMetrics.USERS).recordCacheHit();
+        assertTrue(metrics.save());
+        assertTrue(file.exists());
+    }
+
+    @Test
+    public void csvHasAHeaderAndOneRowPerEndpoint() {
+        String[] lines = metrics.toCsv().split("\n");
+
+        assertEquals(1 + EndpointMetrics.ENDPOINT_COUNT, lines.length);
+        int columns = lines[0].split(",").length;
+        assertEquals(5 + EndpointMetrics.CAUSE_COUNT + EndpointMetrics.BUCKET_COUNT, columns);
+        assertEquals(columns, lines[1].split(",").length);
+    }
+
+    private void getAndFail(String url, long deadline, EndpointMetrics.Endpoint endpoint) {
+        try {
+            client.get(url, deadline, body -> new JSONObject(client.readText(body)), endpoint);
+            fail("expected " + url + " to fail");
+        } catch (Exception e) {
+            // Recorded by the client
+        }
+    }
+
+    private static long deadline() {
+        return System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.ckpoolwidget;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class HashrateHistoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void wrapsAroundWithoutGrowingTheFile() throws Exception {
+        File file = folder.newFile(HashrateHistory.FILE_NAME);
+        HashrateHistory history = HashrateHistory.open(file, 8);
+        long expectedSize = file.length();
+
+        for (int i = 0; i < 20; i++) {
+            history.append(1000 + i, i * 1e12, i, i);
+        }
+
+        assertEquals(8, history.size());
+        assertEquals(20, history.dataVersion());
+        assertEquals(expectedSize, file.length());
+
+        long[] timestamps = new long[8];
+        float[] hashrates = new float[8];
+        assertEquals(8, history.readWindow(timestamps, hashrates));
+        assertEquals(1012, timestamps[0]);
+        assertEquals(1019, timestamps[7]);
+        assertEquals(19e12, hashrates[7], 1e6);
+    }
+
+    @Test
+    public void readsWholeHistoryInChunks() throws Exception {
+        File file = folder.newFile(HashrateHistory.FILE_NAME);
+        HashrateHistory history = HashrateHistory.open(file, 8);
+        assertEquals(-1, history.newestTimestamp());
+        for (int i = 0; i < 11; i++) {
+            history.append(1000 + i, i * 1e12, i, 10 * i);
+        }
+
+        long[] timestamps = new long[3];
+        float[] hashrates = new float[3];
+        long[] shares = new long[3];
+        long[] bests = new long[3];
+        assertEquals(3, history.readSamples(0, timestamps, hashrates, shares, bests));
+        assertEquals(1003, timestamps[0]);
+        assertEquals(30, bests[0]);
+        assertEquals(2, history.readSamples(6, timestamps, hashrates, shares, bests));
+        assertEquals(1010, timestamps[1]);
+        assertEquals(10, shares[1]);
+        assertEquals(0, history.readSamples(8, timestamps, hashrates, shares, bests));
+        assertEquals(1010, history.newestTimestamp());
+    }
+
+    @Test
+    public void samplesSurviveReopen() throws Exception {
+        File file = folder.newFile(HashrateHistory.FILE_NAME);
+        HashrateHistory.open(file, 16).append(1760000000L, 1.53e12, 120, 68);
+        HashrateHistory.open(file, 16).append(1760000300L, 1.61e12, 121, 68);
+
+        HashrateHistory reopened = HashrateHistory.open(file, 16);
+        long[] timestamps = new long[4];
+        float[] hashrates = new float[4];
+        assertEquals(2, reopened.readWindow(timestamps, hashrates));
+        assertEquals(1760000000L, timestamps[0]);
+        assertEquals(1.61e12, hashrates[1], 1e6);
+    }
+
+    @Test
+    public void smallWindowReturnsNewestSamples() throws Exception {
+        File file = folder.newFile(HashrateHistory.FILE_NAME);
+        HashrateHistory history = HashrateHistory.open(file, HashrateHistory.DEFAULT_CAPACITY);
+        for (int i = 0; i < 3000; i++) {
+            history.append(i, i, 0, 0);
+        }
+
+        long[] timestamps = new long[3];
+        float[] hashrates = new float[3];
+        assertEquals(3, history.readWindow(timestamps, hashrates));
+        assertArrayEquals(new long[] {2997, 2998, 2999}, timestamps);
+        // A full week of 5-minute polls fits in under 50 KB
+        assertTrue(file.length() < 50 * 1024);
+    }
+
+    @Test
+    public void mergedHistorySurvivesReopenAndResetsTheMeanWindow() throws Exception {
+        File file = folder.newFile(HashrateHistory.FILE_NAME);
+        HashrateHistory history = HashrateHistory.open(file, 8);
+        for (int i = 0; i < 4; i++) {
+            history.append(2000 + i * 300L, 1e12, i, 10);
+        }
+        HashrateWindow window = new HashrateWindow();
+        window.mean(history);
+
+        // Older samples at a higher rate, as from a restore
+        long[] timestamps = {800, 1100, 1400, 1700, 2000};
+        float[] hashrates = {4e12f, 4e12f, 4e12f, 4e12f, 9e12f};
+        assertEquals(4, history.merge(timestamps, hashrates, new long[5], new long[5], 5));
+        assertEquals(0, history.merge(timestamps, hashrates, new long[5], new long[5], 5));
+
+        assertEquals(8, history.size());
+        assertEquals(new HashrateWindow().mean(history), window.mean(history), 1);
+        HashrateHistory reopened = HashrateHistory.open(file, 8);
+        long[] read = new long[8];
+        float[] rates = new float[8];
+        assertEquals(8, reopened.readWindow(read, rates));
+        assertArrayEquals(new long[] {800, 1100, 1400, 1700, 2000, 2300, 2600, 2900}, read);
+        // What the history had wins over the restored sample
+        assertEquals(1e12, rates[4], 1e6);
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void parsesCkpoolHashrates() {
+        assertEquals(1.53e12, Hashrate.parse("1.53T"), 1);
+        assertEquals(850e9, Hashrate.parse("850G"), 1);
+        assertEquals(12.5e3, Hashrate.parse("12.5K"), 1e-6);
+        assertEquals(42, Hashrate.parse("42"), 0);
+        assertEquals(0, Hashrate.parse("n/a"), 0);
+        assertEquals(0, Hashrate.parse(""), 0);
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.ckpoolwidget;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class HistoryArchiveTest {
+
+    private static final int LATEST = PoolBlocksFixture.LATEST_HEIGHT;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void csvHasOneRowPerSampleBestAndBlock() throws Exception {
+        HistoryArchive archive = new HistoryArchive(history(1000, 3), blocks(2));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        HistoryArchive.Counts counts = archive.exportCsv(out);
+        String[] lines = out.toString("UTF-8").split("\n");
+        assertEquals(HistoryArchive.CSV_HEADER, lines[0]);
+        assertEquals("sample,1000,1099511627776,0,100,,", lines[1]);
+        // Best rises every 2 samples
+        assertEquals("best,1600,,,200,,", lines[4]);
+        assertEquals("block," + PoolBlocksFixture.timestamp(1) + ",,,," + (LATEST - 1) + ","
+                + PoolBlocksFixture.hash(1), lines[lines.length - 2]);
+        assertEquals(3, counts.samples);
+        assertEquals(1, counts.bests);
+        assertEquals(2, counts.blocks);
+    }
+
+    @Test
+    public void bothFormatsRestoreIntoAFreshInstall() throws Exception {
+        HistoryArchive source = new HistoryArchive(history(1000, 700), blocks(300));
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        source.exportCsv(csv);
+        source.exportBinary(binary);
+        assertTrue(binary.size() < csv.size());
+
+        for (ByteArrayOutputStream export : Arrays.asList(csv, binary)) {
+            HashrateHistory history = emptyHistory();
+            PoolBlockIndex index = PoolBlockIndex.open(new File(folder.newFolder(),
+                    PoolBlockIndex.FILE_NAME));
+            WidgetStateStore stateStore = WidgetStateStore.open(new File(folder.newFolder(),
+                    WidgetStateStore.FILE_NAME), null);
+            HistoryArchive restored = new HistoryArchive(history, index);
+
+            HistoryArchive.Counts counts = restored.restore(
+                    new ByteArrayInputStream(export.toByteArray()), stateStore);
+            assertEquals(700, counts.samples);
+            assertEquals(300, counts.blocks);
+            assertEquals(1000 + 699 * 300, history.newestTimestamp());
+            assertEquals(LATEST, index.maxHeight());
+            assertEquals(PoolBlocksFixture.hash(0), index.latest().hash);
+            assertEquals(100 * 350, stateStore.current().bestEver);
+
+            // Again: everything is already there
+            counts = restored.restore(new ByteArrayInputStream(export.toByteArray()), stateStore);
+            assertEquals(0, counts.samples);
+            assertEquals(0, counts.blocks);
+            assertEquals(700, history.size());
+        }
+    }
+
+    @Test
+    public void restoreMergesOlderSamplesAfterAReinstall() throws Exception {
+        ByteArrayOutputStream export = new ByteArrayOutputStream();
+        new HistoryArchive(history(1000, 5), blocks(0)).exportBinary(export);
+        // The widget polled once before the import
+        HashrateHistory history = emptyHistory();
+        history.append(1000 + 10 * 300L, 0x1p41, 50, 900);
+        HistoryArchive restored = new HistoryArchive(history, blocks(0));
+
+        HistoryArchive.Counts counts = restored.restore(
+                new ByteArrayInputStream(export.toByteArray()), WidgetStateStore.open(
+                        new File(folder.newFolder(), WidgetStateStore.FILE_NAME), null));
+        assertEquals(5, counts.samples);
+        assertEquals(6, history.size());
+        long[] timestamps = new long[8];
+        float[] hashrates = new float[8];
+        int n = history.readSamples(0, timestamps, hashrates, new long[8], new long[8]);
+        assertEquals(6, n);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(1000 + i * 300L, timestamps[i]);
+        }
+        assertEquals(1000 + 10 * 300L, history.newestTimestamp());
+        assertEquals(0x1p41f, hashrates[5], 0f);
+    }
+
+    @Test
+    public void restoreMergesOlderBlocksUnderNewerOnes() throws Exception {
+        ByteArrayOutputStream export = new ByteArrayOutputStream();
+        new HistoryArchive(emptyHistory(), blocks(300)).exportBinary(export);
+        // The first sync after the reinstall only backfilled the newest 10 blocks
+        File file = new File(folder.newFolder(), PoolBlockIndex.FILE_NAME);
+        PoolBlockIndex index = PoolBlockIndex.open(file);
+        index.append(Arrays.asList(block(9), block(0)));
+        HistoryArchive restored = new HistoryArchive(emptyHistory(), index);
+
+        HistoryArchive.Counts counts = restored.restore(
+                new ByteArrayInputStream(export.toByteArray()), WidgetStateStore.open(
+                        new File(folder.newFolder(), WidgetStateStore.FILE_NAME), null));
+        assertEquals(298, counts.blocks);
+        for (PoolBlockIndex blocks : Arrays.asList(index, PoolBlockIndex.open(file))) {
+            assertEquals(300, blocks.size());
+            for (int i = 0; i < 300; i++) {
+                PoolBlock block = blocks.blockAt(i);
+                assertEquals(LATEST - 299 + i, block.height);
+                assertEquals(PoolBlocksFixture.hash(299 - i), block.hash);
+                assertEquals(PoolBlocksFixture.timestamp(299 - i), block.timestamp);
+            }
+        }
+        assertEquals(8 + 300 * PoolBlockIndex.RECORD_SIZE, file.length());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws Exception {
+        new HistoryArchive(emptyHistory(), blocks(0)).restore(new ByteArrayInputStream(
+                "date,price\n".getBytes(StandardCharsets.UTF_8)), WidgetStateStore.open(
+                new File(folder.newFolder(), WidgetStateStore.FILE_NAME), null));
+    }
+
+    private HashrateHistory emptyHistory() throws IOException {
+        return HashrateHistory.open(new File(folder.newFolder(), HashrateHistory.FILE_NAME),
+                HashrateHistory.DEFAULT_CAPACITY);
+    }
+
+    // One sample every 5 minutes at 2^40 H/s (exact as a float); the best share goes up
+    // every other sample
+    private HashrateHistory history(long start, int samples) throws IOException {
+        HashrateHistory history = emptyHistory();
+        for (int i = 0; i < samples; i++) {
+            history.append(start + i * 300L, 0x1p40, i, 100 * (i / 2 + 1));
+        }
+        return history;
+    }
+
+    private PoolBlockIndex blocks(int count) throws IOException {
+        PoolBlockIndex index = PoolBlockIndex.open(new File(folder.newFolder(),
+                PoolBlockIndex.FILE_NAME));
+        PoolBlock[] blocks = new PoolBlock[count];
+        for (int i = 0; i < count; i++) {
+            blocks[i] = block(i);
+        }
+        index.append(Arrays.asList(blocks));
+        return index;
+    }
+
+    private static PoolBlock block(int index) {
+        return new PoolBlock(LATEST - index, PoolBlocksFixture.hash(index),
+                PoolBlocksFixture.timestamp(index));
+    }
+}
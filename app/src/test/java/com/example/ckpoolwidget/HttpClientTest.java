@@ -0,0 +1,121 @@
+package com.example.ckpoolwidget;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class HttpClientTest {
+
+    private static final String ETAG = "\"v1\"";
+
+    private StubHttpServer server;
+    private HttpClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubHttpServer();
+        client = new HttpClient();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void connectionsAreReusedAcrossPolls() throws Exception {
+        server.respond("/price", "{\"data\":{\"amount\":\"97000\"}}");
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals("{\"data\":{\"amount\":\"97000\"}}",
+                    client.get(server.url("/price"), deadline(), client::readText));
+        }
+
+        assertEquals(10, server.requestCount("/price"));
+        assertEquals(1, server.connectionCount());
+    }
+
+    @Test
+    public void gzipBodiesAreDecodedAndCountedCompressed() throws Exception {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 500; i++) {
+            json.append(i > 0 ? "," : "").append("{\"height\":").append(900000 - i)
+                    .append(",\"timestamp\":1700000000}");
+        }
+        String body = json.append(']').toString();
+        byte[] compressed = gzip(body);
+        server.handle("/blocks", exchange -> {
+            assertEquals("gzip", exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, compressed.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(compressed);
+            }
+        });
+
+        assertEquals(body, client.get(server.url("/blocks"), deadline(), client::readText));
+        assertEquals(compressed.length, client.bytesReceived());
+        assertTrue(client.bytesReceived() < body.length() / 4);
+    }
+
+    @Test
+    public void notModifiedSkipsParsing() throws Exception {
+        server.handle("/users/", exchange -> {
+            exchange.getResponseHeaders().set("ETag", ETAG);
+            if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                StubHttpServer.send(exchange, 200, "{\"hashrate5m\":\"1.53T\"}");
+            }
+        });
+        AtomicInteger parses = new AtomicInteger();
+        HttpClient.BodyParser<String> parser = body -> {
+            parses.incrementAndGet();
+            return client.readText(body);
+        };
+
+        String first = client.get(server.url("/users/addr"), deadline(), parser);
+        String second = client.get(server.url("/users/addr"), deadline(), parser);
+
+        assertEquals(first, second);
+        assertEquals(1, parses.get());
+        assertEquals(1, client.notModifiedCount());
+        assertEquals(2, server.requestCount("/users/"));
+    }
+
+    @Test
+    public void errorStatusThrowsAndKeepsConnection() throws Exception {
+        server.handle("/flaky", exchange -> StubHttpServer.send(exchange, 503, "busy"));
+        server.respond("/price", "ok");
+
+        try {
+            client.get(server.url("/flaky"), deadline(), client::readText);
+            fail("expected HttpStatusException");
+        } catch (HttpClient.HttpStatusException e) {
+            assertEquals(503, e.status);
+        }
+        assertEquals("ok", client.get(server.url("/price"), deadline(), client::readText));
+        assertEquals(1, server.connectionCount());
+    }
+
+    private static long deadline() {
+        return System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    }
+
+    private static byte[] gzip(String body) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+}
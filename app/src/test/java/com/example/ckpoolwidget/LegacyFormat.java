@@ -0,0 +1,50 @@
+package com.example.ckpoolwidget;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+// The String.format based formatting StatsFormatter replaced, kept as the reference output
+final class LegacyFormat {
+
+    private LegacyFormat() {
+    }
+
+    static String formatNumber(double number) {
+        if (number >= 1_000_000_000_000.0) {
+            return String.format(Locale.US, "%.2f T", number / 1_000_000_000_000.0);
+        } else if (number >= 1_000_000_000.0) {
+            return String.format(Locale.US, "%.2f G", number / 1_000_000_000.0);
+        } else if (number >= 1_000_000.0) {
+            return String.format(Locale.US, "%.2f M", number / 1_000_000.0);
+        } else if (number >= 1_000.0) {
+            return String.format(Locale.US, "%.2f k", number / 1_000.0);
+        } else {
+            return String.format(Locale.US, "%.2f", number);
+        }
+    }
+
+    static String formatPrice(double price) {
+        return String.format(Locale.US, "$%.0fk", price / 1000);
+    }
+
+    static String formatAge(long seconds) {
+        long days = seconds / 86400;
+        long hours = (seconds % 86400) / 3600;
+        if (days > 0) {
+            return days + "d ago";
+        } else if (hours > 0) {
+            return hours + "h ago";
+        } else {
+            return "< 1h ago";
+        }
+    }
+
+    static String formatDate(long epochMillis) {
+        return new SimpleDateFormat("M/d/yy", Locale.getDefault()).format(new Date(epochMillis));
+    }
+
+    static String topInfo(String bitcoinPrice, String poolBlockInfo) {
+        return "        ₿ " + bitcoinPrice + " | Last pool block: " + poolBlockInfo;
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.ckpoolwidget;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LttbTest {
+
+    @Test
+    public void shortSeriesIsKeptWhole() {
+        long[] xs = {1, 2, 3, 4};
+        float[] ys = {5, 6, 7, 8};
+        int[] out = new int[10];
+
+        assertEquals(4, Lttb.downsample(xs, ys, 4, 10, out));
+        assertArrayEquals(new int[] {0, 1, 2, 3}, java.util.Arrays.copyOf(out, 4));
+    }
+
+    @Test
+    public void longSeriesIsReducedToThreshold() {
+        int n = 10000;
+        long[] xs = new long[n];
+        float[] ys = new float[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = 1_700_000_000L + i * 300L;
+            ys[i] = (float) Math.sin(i / 200.0);
+        }
+        int[] out = new int[300];
+
+        int written = Lttb.downsample(xs, ys, n, 300, out);
+
+        assertEquals(300, written);
+        assertEquals(0, out[0]);
+        assertEquals(n - 1, out[written - 1]);
+        for (int i = 1; i < written; i++) {
+            assertTrue("indices must ascend", out[i] > out[i - 1]);
+        }
+    }
+
+    @Test
+    public void spikeSurvivesDownsampling() {
+        int n = 5000;
+        long[] xs = new long[n];
+        float[] ys = new float[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = i;
+            ys[i] = 1f;
+        }
+        ys[2345] = 50f;
+        int[] out = new int[100];
+
+        int written = Lttb.downsample(xs, ys, n, 100, out);
+
+        boolean found = false;
+        for (int i = 0; i < written; i++) {
+            found |= out[i] == 2345;
+        }
+        assertTrue(found);
+    }
+}
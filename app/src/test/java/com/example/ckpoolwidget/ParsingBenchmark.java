@@ -0,0 +1,81 @@
+package com.example.ckpoolwidget;
+
+import org.json.JSONObject;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Parses the recorded ckpool, Coinbase and mempool.space responses the way the fetcher
+ * does, body stream to value.
+ * Run with {@code ./gradlew test -Dckpool.benchmark=true --tests '*Benchmark'}.
+ */
+public class ParsingBenchmark {
+
+    private static final int WARMUP_ROUNDS = 20_000;
+    private static final int MEASURED_ROUNDS = 100_000;
+
+    private final HttpClient httpClient = new HttpClient();
+
+    @Before
+    public void onlyWhenRequested() {
+        Assume.assumeTrue(Boolean.getBoolean("ckpool.benchmark"));
+    }
+
+    @Test
+    public void parseRecordedResponses() throws Exception {
+        run("ckpool user", Benchmarks.CKPOOL_USER, body -> {
+            JSONObject json = new JSONObject(httpClient.readText(body));
+            return json.optString("hashrate5m", "0").length() + json.optLong("shares", 0)
+                    + json.optLong("bestever", 0);
+        });
+        run("coinbase spot", Benchmarks.COINBASE_SPOT, body -> {
+            JSONObject json = new JSONObject(httpClient.readText(body));
+            return (long) Double.parseDouble(json.getJSONObject("data").getString("amount"));
+        });
+        run("mempool newest block", Benchmarks.MEMPOOL_POOL_BLOCKS, body -> {
+            long[] latest = new long[1];
+            PoolBlocksReader.read(body, (height, hash, timestamp) -> {
+                latest[0] = timestamp;
+                return false;
+            });
+            return latest[0];
+        });
+        run("mempool all blocks", Benchmarks.MEMPOOL_POOL_BLOCKS, body -> {
+            long[] count = new long[1];
+            PoolBlocksReader.read(body, (height, hash, timestamp) -> {
+                count[0]++;
+                return true;
+            });
+            return count[0];
+        });
+    }
+
+    private interface Parse {
+        long parse(InputStream body) throws Exception;
+    }
+
+    private static void run(String name, String response, Parse parse) throws Exception {
+        byte[] body = Benchmarks.response(response).getBytes(StandardCharsets.UTF_8);
+        long expected = parse.parse(new ByteArrayInputStream(body));
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            parse.parse(new ByteArrayInputStream(body));
+        }
+        long allocatedBefore = Benchmarks.allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            if (parse.parse(new ByteArrayInputStream(body)) != expected) {
+                throw new AssertionError(name + " parsed a different value");
+            }
+        }
+        long nsPerOp = (System.nanoTime() - start) / MEASURED_ROUNDS;
+        long bytesPerOp = (Benchmarks.allocatedBytes() - allocatedBefore) / MEASURED_ROUNDS;
+        System.out.println(String.format(Locale.US, "%-21s (%5d B): %8d ns/op %8d B/op",
+                name, body.length, nsPerOp, bytesPerOp));
+    }
+}
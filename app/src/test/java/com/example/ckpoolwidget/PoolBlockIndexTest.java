@@ -0,0 +1,154 @@
+package com.example.ckpoolwidget;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class PoolBlockIndexTest {
+
+    private static final int LATEST = PoolBlocksFixture.LATEST_HEIGHT;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private StubHttpServer server;
+    private ExecutorService networkExecutor;
+
+    @Before
+    public void setUp() throws Exception {
+        file = new File(folder.getRoot(), PoolBlockIndex.FILE_NAME);
+        server = new StubHttpServer();
+        networkExecutor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        networkExecutor.shutdownNow();
+        server.close();
+    }
+
+    @Test
+    public void failedWriteIsRetriedOnTheNextAppend() throws Exception {
+        PoolBlockIndex index = PoolBlockIndex.open(file);
+        index.append(Arrays.asList(block(2)));
+        // Can't be opened for writing
+        assertTrue(file.renameTo(new File(folder.getRoot(), "saved")));
+        assertTrue(file.mkdir());
+
+        try {
+            index.append(Arrays.asList(block(1)));
+            fail("Appended to a directory");
+        } catch (IOException expected) {
+            // Not on disk, so not in memory either
+        }
+        assertEquals(LATEST - 2, index.maxHeight());
+
+        assertTrue(file.delete());
+        assertTrue(new File(folder.getRoot(), "saved").renameTo(file));
+        assertEquals(1, index.append(Arrays.asList(block(1))));
+        assertEquals(LATEST - 1, PoolBlockIndex.open(file).maxHeight());
+    }
+
+    @Test
+    public void appendsSurviveReopen() throws Exception {
+        PoolBlockIndex index = PoolBlockIndex.open(file);
+        assertEquals(-1, index.maxHeight());
+
+        assertEquals(2, index.append(Arrays.asList(block(1), block(2))));
+        assertEquals(1, index.append(Arrays.asList(block(0), block(1), block(2))));
+        assertEquals(0, index.append(Arrays.asList(block(1))));
+
+        PoolBlockIndex reopened = PoolBlockIndex.open(file);
+        assertEquals(3, reopened.size());
+        assertEquals(LATEST, reopened.maxHeight());
+        assertEquals(PoolBlocksFixture.hash(0), reopened.latest().hash);
+        assertEquals(PoolBlocksFixture.timestamp(2), reopened.blockAt(0).timestamp);
+        assertEquals(8 + 3 * PoolBlockIndex.RECORD_SIZE, file.length());
+    }
+
+    @Test
+    public void tornRecordIsDroppedOnOpen() throws Exception {
+        PoolBlockIndex.open(file).append(Arrays.asList(block(1), block(0)));
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[] {0, 1, 2, 3, 4});
+        }
+
+        PoolBlockIndex reopened = PoolBlockIndex.open(file);
+        assertEquals(2, reopened.size());
+        reopened.append(Arrays.asList(block(0), new PoolBlock(LATEST + 1, null, 1)));
+        assertEquals(LATEST + 1, PoolBlockIndex.open(file).maxHeight());
+    }
+
+    @Test
+    public void statsComeFromLocalData() throws Exception {
+        PoolBlockIndex index = PoolBlockIndex.open(file);
+        index.append(Arrays.asList(block(0), block(1), block(2), block(3)));
+
+        long latest = PoolBlocksFixture.timestamp(0);
+        // Blocks are 11 days apart in the fixture
+        assertEquals(3, index.countSince(latest - 30 * 86400L));
+        assertEquals(11 * 86400L, index.averageIntervalSeconds());
+    }
+
+    @Test
+    public void syncOnlyReadsBlocksNewerThanTheIndex() throws Exception {
+        PoolBlockIndex index = PoolBlockIndex.open(file);
+        index.append(Arrays.asList(block(3)));
+        server.respond("/blocks", PoolBlocksFixture.response(10));
+
+        fetcher(index).fetch();
+
+        assertEquals(4, index.size());
+        assertEquals(LATEST, index.maxHeight());
+        assertEquals(1, server.requestCount("/blocks"));
+    }
+
+    @Test
+    public void syncPagesBackUntilItReachesTheIndex() throws Exception {
+        PoolBlockIndex index = PoolBlockIndex.open(file);
+        index.append(Arrays.asList(block(15)));
+        server.handle("/blocks", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            // /blocks is the newest page, /blocks/{height} the page below that height
+            int first = path.equals("/blocks") ? 0 : LATEST - Integer.parseInt(path.substring(8)) + 1;
+            StubHttpServer.send(exchange, 200, PoolBlocksFixture.response(first, 10));
+        });
+
+        fetcher(index).fetch();
+
+        assertEquals(16, index.size());
+        assertEquals(LATEST - 15, index.blockAt(0).height);
+        assertEquals(LATEST, index.maxHeight());
+        assertEquals(2, server.requestCount("/blocks"));
+    }
+
+    private SnapshotFetcher fetcher(PoolBlockIndex index) throws Exception {
+        server.respond("/price", "{\"data\":{\"amount\":\"97000\"}}");
+        return new SnapshotFetcher(new InMemoryPreferences(),
+                WidgetStateStore.open(new File(folder.newFolder(), WidgetStateStore.FILE_NAME), null),
+                index,
+                HashrateHistory.open(folder.newFile(), 16),
+                EndpointMetrics.open(new File(folder.newFolder(), EndpointMetrics.FILE_NAME)),
+                RateCache.open(new File(folder.newFolder(), RateCache.FILE_NAME)),
+                new HttpClient(),
+                networkExecutor, SnapshotFetcher.DEFAULT_DEADLINE_MS, server.url("/users/"),
+                server.url("/price"), server.url("/blocks"), server.url("/difficulty"));
+    }
+
+    private static PoolBlock block(int index) {
+        return new PoolBlock(LATEST - index, PoolBlocksFixture.hash(index),
+                PoolBlocksFixture.timestamp(index));
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.ckpoolwidget;
+
+import java.util.Locale;
+
+/**
+ * Builds responses shaped like mempool.space's /api/v1/mining/pool/{slug}/blocks, including
+ * the nested extras object that dominates the payload size.
+ */
+final class PoolBlocksFixture {
+
+    static final int LATEST_HEIGHT = 921000;
+    static final long LATEST_TIMESTAMP = 1760000000L;
+
+    private PoolBlocksFixture() {
+    }
+
+    static String response(int blocks) {
+        return response(0, blocks);
+    }
+
+    // Blocks first..first+blocks-1, counted back from the newest
+    static String response(int first, int blocks) {
+        StringBuilder json = new StringBuilder(blocks * 1400);
+        json.append('[');
+        for (int i = first; i < first + blocks; i++) {
+            if (i > first) {
+                json.append(',');
+            }
+            appendBlock(json, i);
+        }
+        return json.append(']').toString();
+    }
+
+    static long timestamp(int index) {
+        return LATEST_TIMESTAMP - index * 86400L * 11;
+    }
+
+    static String hash(int index) {
+        return String.format(Locale.US, "%064x", LATEST_HEIGHT - index);
+    }
+
+    private static void appendBlock(StringBuilder json, int index) {
+        int height = LATEST_HEIGHT - index;
+        long timestamp = timestamp(index);
+        json.append("{\"id\":\"").append(hash(index)).append('"')
+                .append(",\"height\":").append(height)
+                .append(",\"version\":536870912")
+                .append(",\"timestamp\":").append(timestamp)
+                .append(",\"bits\":386043996,\"nonce\":2850094635,\"difficulty\":1.4671e14")
+                .append(",\"merkle_root\":\"").append(hash(index + 7)).append('"')
+                .append(",\"tx_count\":3421,\"size\":1604211,\"weight\":3993042")
+                .append(",\"previousblockhash\":\"").append(hash(index + 1)).append('"')
+                .append(",\"mediantime\":").append(timestamp - 3000)
+                .append(",\"stale\":false")
+                .append(",\"extras\":{\"reward\":315216003,\"coinbaseRaw\":\"03a90e0e0400\\\"ff\"")
+                .append(",\"orphans\":[],\"medianFee\":3.02,\"feeRange\":[1,2.01,2.5,3,4.1,8,250.4]")
+                .append(",\"totalFees\":2716003,\"avgFee\":794,\"avgFeeRate\":2")
+                .append(",\"utxoSetChange\":4120,\"avgTxSize\":468.7")
+                .append(",\"pool\":{\"id\":49,\"name\":\"Solo CK\",\"slug\":\"solock\"}")
+                .append(",\"matchRate\":100,\"expectedFees\":2700000,\"expectedWeight\":3991000")
+                .append(",\"similarity\":0.99,\"header\":\"").append(hash(index + 3)).append('"')
+                .append("}}");
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.ckpoolwidget;
+
+import org.json.JSONArray;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Compares building a full JSONArray with the streaming reader for the newest pool block.
+ * Run with {@code ./gradlew test -Dckpool.benchmark=true --tests '*Benchmark'}.
+ */
+public class PoolBlocksReaderBenchmark {
+
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int MEASURED_ROUNDS = 500;
+
+    @Before
+    public void onlyWhenRequested() {
+        Assume.assumeTrue(Boolean.getBoolean("ckpool.benchmark"));
+    }
+
+    @Test
+    public void compareParsers() throws Exception {
+        for (int blocks : new int[] {10, 100, 1000}) {
+            byte[] response = PoolBlocksFixture.response(blocks).getBytes(StandardCharsets.UTF_8);
+            run("JSONArray", blocks, response, () -> {
+                JSONArray array = new JSONArray(new String(response, StandardCharsets.UTF_8));
+                return array.getJSONObject(0).getLong("timestamp");
+            });
+            run("PoolBlocksReader", blocks, response, () -> {
+                long[] latest = new long[1];
+                PoolBlocksReader.read(new ByteArrayInputStream(response),
+                        (height, hash, timestamp) -> {
+                            latest[0] = timestamp;
+                            return false;
+                        });
+                return latest[0];
+            });
+        }
+    }
+
+    private interface Parse {
+        long latestTimestamp() throws Exception;
+    }
+
+    private static void run(String name, int blocks, byte[] response, Parse parse) throws Exception {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            parse.latestTimestamp();
+        }
+        long allocatedBefore = Benchmarks.allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            if (parse.latestTimestamp() != PoolBlocksFixture.LATEST_TIMESTAMP) {
+                throw new AssertionError(name + " returned the wrong block");
+            }
+        }
+        long nsPerOp = (System.nanoTime() - start) / MEASURED_ROUNDS;
+        long bytesPerOp = (Benchmarks.allocatedBytes() - allocatedBefore) / MEASURED_ROUNDS;
+        System.out.println(String.format(Locale.US, "%-17s %5d blocks (%8d B): %10d ns/op %10d B/op",
+                name, blocks, response.length, nsPerOp, bytesPerOp));
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.ckpoolwidget;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PoolBlocksReaderTest {
+
+    @Test
+    public void readsTopLevelFieldsAndSkipsNestedValues() throws Exception {
+        List<PoolBlock> blocks = readAll(PoolBlocksFixture.response(3));
+
+        assertEquals(3, blocks.size());
+        assertEquals(PoolBlocksFixture.LATEST_HEIGHT, blocks.get(0).height);
+        assertEquals(PoolBlocksFixture.LATEST_TIMESTAMP, blocks.get(0).timestamp);
+        assertEquals(PoolBlocksFixture.hash(0), blocks.get(0).hash);
+        assertEquals(PoolBlocksFixture.LATEST_HEIGHT - 2, blocks.get(2).height);
+    }
+
+    @Test
+    public void stopsReadingAfterTheFirstBlock() throws Exception {
+        byte[] response = PoolBlocksFixture.response(5000).getBytes(StandardCharsets.UTF_8);
+        CountingStream in = new CountingStream(response);
+        int[] seen = new int[1];
+
+        PoolBlocksReader.read(in, (height, hash, timestamp) -> {
+            seen[0]++;
+            return false;
+        });
+
+        assertEquals(1, seen[0]);
+        assertTrue("read " + in.consumed + " of " + response.length, in.consumed < 16 * 1024);
+    }
+
+    @Test
+    public void handlesEmptyArraysAndEscapes() throws Exception {
+        assertTrue(readAll("  [ ]").isEmpty());
+        List<PoolBlock> blocks = readAll("[{\"extras\":{\"coinbaseRaw\":\"a\\\"}]{\",\"x\":[1,[2]]},"
+                + "\"id\":\"00ab\",\"timestamp\":1.7e9,\"height\":12,\"stale\":false}]");
+        assertEquals(1, blocks.size());
+        assertEquals(12, blocks.get(0).height);
+        assertEquals("00ab", blocks.get(0).hash);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedInput() throws Exception {
+        readAll("[{\"height\":1,");
+    }
+
+    private static List<PoolBlock> readAll(String json) throws IOException {
+        List<PoolBlock> blocks = new ArrayList<>();
+        PoolBlocksReader.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)),
+                (height, hash, timestamp) -> blocks.add(new PoolBlock(height, hash, timestamp)));
+        return blocks;
+    }
+
+    private static class CountingStream extends ByteArrayInputStream {
+        int consumed;
+
+        CountingStream(byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            int read = super.read(b, off, len);
+            consumed += Math.max(0, read);
+            return read;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.ckpoolwidget;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class RateCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void ratesSurviveReopening() throws Exception {
+        File file = new File(folder.getRoot(), RateCache.FILE_NAME);
+        RateCache rates = RateCache.open(file);
+        rates.put(prices("USD", 97123.45, "EUR", 89877.1, "ETH", 27.5, "time", 1.7e9), 1000);
+
+        RateCache reopened = RateCache.open(file);
+        // Crypto assets and other non-currencies in the feed are dropped
+        assertEquals(Arrays.asList("EUR", "USD"), reopened.currencies());
+        assertEquals(89877.1, reopened.price("EUR"), 0);
+        assertEquals("€90k", reopened.formatPrice("EUR"));
+        assertEquals("$97k", reopened.formatPrice("USD"));
+        assertNull(reopened.formatPrice("CHF"));
+        assertTrue(Double.isNaN(reopened.price("CHF")));
+    }
+
+    @Test
+    public void staleAndExcessRatesAreEvicted() {
+        RateCache rates = RateCache.open(new File(folder.getRoot(), RateCache.FILE_NAME));
+        rates.put(prices("USD", 97000, "CHF", 86000), 0);
+        // A later feed without CHF refreshes USD only
+        rates.put(prices("USD", 98000), RateCache.MAX_AGE_MS);
+        assertEquals(Arrays.asList("CHF", "USD"), rates.currencies());
+        rates.put(prices("USD", 99000), RateCache.MAX_AGE_MS + 1);
+        assertEquals(Arrays.asList("USD"), rates.currencies());
+
+        Map<String, Double> many = new HashMap<>();
+        for (java.util.Currency currency : java.util.Currency.getAvailableCurrencies()) {
+            many.put(currency.getCurrencyCode(), 1.0);
+        }
+        assertTrue(many.size() > RateCache.MAX_RATES);
+        rates.put(many, RateCache.MAX_AGE_MS + 2);
+        assertEquals(RateCache.MAX_RATES, rates.currencies().size());
+    }
+
+    @Test
+    public void corruptFileStartsEmpty() throws Exception {
+        File file = new File(folder.getRoot(), RateCache.FILE_NAME);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[] {1, 2, 3});
+        }
+        RateCache rates = RateCache.open(file);
+        assertTrue(rates.currencies().isEmpty());
+        rates.put(prices("USD", 97000), 0);
+        assertEquals(97000, RateCache.open(file).price("USD"), 0);
+    }
+
+    private static Map<String, Double> prices(Object... codesAndPrices) {
+        Map<String, Double> prices = new HashMap<>();
+        for (int i = 0; i < codesAndPrices.length; i += 2) {
+            prices.put((String) codesAndPrices[i], ((Number) codesAndPrices[i + 1]).doubleValue());
+        }
+        return prices;
+    }
+}
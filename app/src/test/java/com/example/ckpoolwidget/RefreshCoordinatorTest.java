@@ -0,0 +1,578 @@
+package com.example.ckpoolwidget;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RefreshCoordinatorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StubHttpServer server;
+    private InMemoryPreferences prefs;
+    private WidgetStateStore stateStore;
+    private PoolBlockIndex blockIndex;
+    private HashrateHistory history;
+    private EndpointMetrics metrics;
+    private RateCache rates;
+    private ExecutorService executor;
+    private ExecutorService networkExecutor;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubHttpServer();
+        server.respond("/users/", "{\"hashrate5m\":\"1.53T\",\"shares\":120310000,\"bestever\":68760000}");
+        server.respond("/price", "{\"data\":{\"amount\":\"97123.45\"}}");
+        server.respond("/blocks", "[{\"height\":900000,\"timestamp\":1700000000}]");
+        server.respond("/difficulty", "{\"currentHashrate\":8.5e20,\"currentDifficulty\":1.2e14}");
+        blockIndex = PoolBlockIndex.open(folder.newFile(PoolBlockIndex.FILE_NAME));
+        history = HashrateHistory.open(folder.newFile(HashrateHistory.FILE_NAME), 64);
+        metrics = EndpointMetrics.open(new File(folder.getRoot(), EndpointMetrics.FILE_NAME));
+        rates = RateCache.open(new File(folder.getRoot(), RateCache.FILE_NAME));
+        prefs = new InMemoryPreferences();
+        prefs.edit().putString(CKPoolWidget.PREF_BITCOIN_ADDRESS, "bc1qtest").apply();
+        stateStore = WidgetStateStore.open(new File(folder.getRoot(),
+                WidgetStateStore.FILE_NAME), null);
+        executor = Executors.newSingleThreadExecutor();
+        networkExecutor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        networkExecutor.shutdownNow();
+        server.close();
+    }
+
+    @Test
+    public void requestCountStaysFlatAsWidgetsGrow() throws Exception {
+        for (int widgets : new int[] {1, 4, 16, 64}) {
+            // Fresh state each round so the price, block and difficulty TTLs don't skip calls
+            stateStore.update(state -> {
+                state.priceFetchedAt = 0;
+                state.poolSyncedAt = 0;
+                state.difficultyFetchedAt = 0;
+            });
+            int before = server.totalRequests();
+            RecordingSink sink = new RecordingSink(1);
+            newCoordinator(sink).requestRefresh(ids(widgets));
+
+            assertTrue(sink.await());
+            assertEquals(4, server.totalRequests() - before);
+            assertEquals(widgets, sink.appliedIds.size());
+        }
+    }
+
+    @Test
+    public void concurrentRequestsJoinTheFetchInFlight() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        server.handle("/slow-users/", exchange -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            StubHttpServer.send(exchange, 200, "{\"hashrate5m\":\"2T\",\"shares\":1,\"bestever\":2}");
+        });
+        RecordingSink sink = new RecordingSink(1);
+        RefreshCoordinator coordinator = new RefreshCoordinator(executor,
+                fetcher(server.url("/slow-users/"), server.url("/price"),
+                        server.url("/blocks")),
+                sink);
+
+        coordinator.requestRefresh(new int[] {1});
+        for (int i = 0; i < 50; i++) {
+            coordinator.requestRefresh(new int[] {1, 2, 3});
+        }
+        assertTrue(coordinator.isRefreshing());
+        release.countDown();
+
+        assertTrue(sink.await());
+        assertEquals(1, sink.cycles);
+        assertEquals(1, server.requestCount("/slow-users/"));
+        assertEquals(1, server.requestCount("/price"));
+        assertEquals(1, server.requestCount("/blocks"));
+        assertEquals(new HashSet<>(Arrays.asList(1, 2, 3)), sink.appliedIds);
+    }
+
+    @Test
+    public void failedFetchStillAppliesCachedValues() throws Exception {
+        stateStore.update(state -> {
+            state.lastHashrate = "900G";
+            state.lastShares = "1.00 M";
+        });
+        RecordingSink sink = new RecordingSink(1);
+        RefreshCoordinator coordinator = new RefreshCoordinator(executor,
+                fetcher(server.url("/missing/"), server.url("/price"),
+                        server.url("/blocks")),
+                sink);
+
+        coordinator.requestRefresh(new int[] {7});
+
+        assertTrue(sink.await());
+        assertEquals("900G", sink.last.hashrate);
+        assertEquals("1.00 M", sink.last.shares);
+        assertEquals("$97k", sink.last.bitcoinPrice);
+    }
+
+    @Test
+    public void endpointsAreFetchedInParallel() throws Exception {
+        server.handle("/slow-price", exchange -> {
+            sleep(400);
+            StubHttpServer.send(exchange, 200, "{\"data\":{\"amount\":\"50000\"}}");
+        });
+        server.handle("/slow-blocks", exchange -> {
+            sleep(400);
+            StubHttpServer.send(exchange, 200, "[]");
+        });
+        server.handle("/slow-users2/", exchange -> {
+            sleep(400);
+            StubHttpServer.send(exchange, 200, "{\"hashrate5m\":\"1T\"}");
+        });
+        SnapshotFetcher fetcher = fetcher(server.url("/slow-users2/"), server.url("/slow-price"),
+                server.url("/slow-blocks"));
+
+        long start = System.nanoTime();
+        WidgetSnapshot snapshot = fetcher.fetch();
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals("1T", snapshot.hashrate);
+        assertEquals(1, history.size());
+        assertEquals("$50k", snapshot.bitcoinPrice);
+        // Set by the slowest endpoint, not the sum of all three
+        assertTrue("took " + elapsedMs + "ms", elapsedMs < 1000);
+    }
+
+    @Test
+    public void callsMissingTheDeadlineFallBackToCache() throws Exception {
+        stateStore.update(state -> state.lastPoolInfo = "2d ago");
+        server.handle("/hung-blocks", exchange -> {
+            sleep(5000);
+            StubHttpServer.send(exchange, 200, "[]");
+        });
+        SnapshotFetcher fetcher = new SnapshotFetcher(prefs, stateStore, blockIndex, history,
+                metrics, rates, new HttpClient(), networkExecutor, 500, server.url("/users/"),
+                server.url("/price"), server.url("/hung-blocks"), server.url("/difficulty"));
+
+        long start = System.nanoTime();
+        WidgetSnapshot snapshot = fetcher.fetch();
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals("2d ago", snapshot.poolBlockInfo);
+        assertEquals("1.53T", snapshot.hashrate);
+        assertTrue("took " + elapsedMs + "ms", elapsedMs < 1500);
+    }
+
+    @Test
+    public void completionRunsForEveryJoinedRequest() throws Exception {
+        RecordingSink sink = new RecordingSink(1);
+        RefreshCoordinator coordinator = newCoordinator(sink);
+        CountDownLatch finished = new CountDownLatch(3);
+
+        coordinator.requestRefresh(new int[] {1}, finished::countDown);
+        coordinator.requestRefresh(new int[] {2}, finished::countDown);
+        coordinator.requestRefresh(new int[] {3}, finished::countDown);
+
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        assertTrue(sink.await());
+    }
+
+    @Test
+    public void priceAndBlocksWithinTheirTtlAreNotRefetched() throws Exception {
+        SnapshotFetcher fetcher = fetcher(server.url("/users/"), server.url("/price"),
+                server.url("/blocks"));
+
+        fetcher.fetch();
+        WidgetSnapshot second = fetcher.fetch();
+
+        assertEquals(2, server.requestCount("/users/"));
+        assertEquals(1, server.requestCount("/price"));
+        assertEquals(1, server.requestCount("/blocks"));
+        assertEquals("$97k", second.bitcoinPrice);
+        assertTrue(second.poolBlockInfo.endsWith("d ago"));
+        assertEquals(1, metrics.ttlHits(EndpointMetrics.PRICE));
+        assertEquals(1, metrics.ttlHits(EndpointMetrics.POOL_BLOCKS));
+        assertEquals(2, metrics.successes(EndpointMetrics.USERS));
+    }
+
+    @Test
+    public void expiredTtlsRefetch() throws Exception {
+        SnapshotFetcher fetcher = fetcher(server.url("/users/"), server.url("/price"),
+                server.url("/blocks"));
+
+        fetcher.fetch();
+        long expired = System.currentTimeMillis() - SnapshotFetcher.POOL_BLOCKS_TTL_MS;
+        stateStore.update(state -> {
+            state.priceFetchedAt = expired;
+            state.poolSyncedAt = expired;
+        });
+        fetcher.fetch();
+
+        assertEquals(2, server.requestCount("/price"));
+        assertEquals(2, server.requestCount("/blocks"));
+    }
+
+    @Test
+    public void failedUserCallIsNotLive() throws Exception {
+        assertTrue(fetcher(server.url("/users/"), server.url("/price"),
+                server.url("/blocks")).fetch().live);
+        assertFalse(fetcher(server.url("/missing/"), server.url("/price"),
+                server.url("/blocks")).fetch().live);
+    }
+
+    @Test
+    public void cachedSnapshotNeedsNoNetwork() throws Exception {
+        SnapshotFetcher fetcher = fetcher(server.url("/users/"), server.url("/price"),
+                server.url("/blocks"));
+        fetcher.fetch();
+        int requests = server.totalRequests();
+
+        WidgetSnapshot cached = fetcher.cachedSnapshot();
+
+        assertEquals(requests, server.totalRequests());
+        assertFalse(cached.live);
+        assertEquals("1.53T", cached.hashrate);
+        assertEquals("$97k", cached.bitcoinPrice);
+        assertEquals("< 1h ago", cached.staleLabel(cached.updatedAt + 1000));
+        assertEquals("3h ago", cached.staleLabel(cached.updatedAt + 3 * 3600 * 1000));
+    }
+
+    @Test
+    public void restartedProcessDrawsTheLastValuesFromDisk() throws Exception {
+        RecordingSink sink = new RecordingSink(1);
+        newCoordinator(sink).requestRefresh(ids(3));
+        assertTrue(sink.await());
+        // What the widget's sink does after every cycle
+        stateStore.flush();
+        metrics.save();
+
+        // A new process opens everything from the same files
+        stateStore = WidgetStateStore.open(new File(folder.getRoot(),
+                WidgetStateStore.FILE_NAME), null);
+        blockIndex = PoolBlockIndex.open(new File(folder.getRoot(), PoolBlockIndex.FILE_NAME));
+        history = HashrateHistory.open(new File(folder.getRoot(), HashrateHistory.FILE_NAME), 64);
+        metrics = EndpointMetrics.open(new File(folder.getRoot(), EndpointMetrics.FILE_NAME));
+        rates = RateCache.open(new File(folder.getRoot(), RateCache.FILE_NAME));
+        int requests = server.totalRequests();
+
+        WidgetSnapshot cached = fetcher(server.url("/users/"), server.url("/price"),
+                server.url("/blocks")).cachedSnapshot();
+
+        assertEquals(requests, server.totalRequests());
+        assertFalse(cached.live);
+        assertEquals(sink.last.hashrate, cached.hashrate);
+        assertEquals(sink.last.shares, cached.shares);
+        assertEquals(sink.last.bitcoinPrice, cached.bitcoinPrice);
+        assertEquals(1, history.size());
+        assertEquals(900000, blockIndex.maxHeight());
+    }
+
+    @Test
+    public void cachedSnapshotAsksForSetupWithoutAnAddress() {
+        prefs.edit().remove(CKPoolWidget.PREF_BITCOIN_ADDRESS).apply();
+
+        WidgetSnapshot cached = fetcher(server.url("/users/"), server.url("/price"),
+                server.url("/blocks")).cachedSnapshot();
+
+        assertTrue(cached.setupRequired);
+        assertEquals("", cached.staleLabel(System.currentTimeMillis()));
+    }
+
+    @Test
+    public void addressesAreSummedAndKeptPerAddress() throws Exception {
+        server.handle("/farm/", exchange -> {
+            boolean second = exchange.getRequestURI().getPath().endsWith("bc1qsecond");
+            StubHttpServer.send(exchange, 200, second
+                    ? "{\"hashrate5m\":\"1.02T\",\"shares\":1000,\"bestever\":5000,"
+                    + "\"worker\":[{\"workername\":\"bc1qsecond.bitaxe1\",\"hashrate5m\":\"1.02T\"}]}"
+                    : "{\"hashrate5m\":\"1.53T\",\"shares\":2000,\"bestever\":9000}");
+        });
+        prefs.edit().putString(CKPoolWidget.PREF_BITCOIN_ADDRESS, "bc1qfirst\nbc1qsecond").apply();
+
+        WidgetSnapshot snapshot = fetcher(server.url("/farm/"), server.url("/price"),
+                server.url("/blocks")).fetch();
+
+        assertTrue(snapshot.live);
+        assertEquals("2.55T", snapshot.hashrate);
+        assertEquals("3.00 k", snapshot.shares);
+        assertEquals("9.00 k", snapshot.best);
+        assertEquals("1.53T", snapshot.forAddress("bc1qfirst").hashrate);
+        assertEquals("5.00 k", snapshot.forAddress("bc1qsecond").best);
+        assertSame(snapshot, snapshot.forAddress(null));
+        assertSame(snapshot, snapshot.forAddress("bc1qremoved"));
+        assertEquals("bitaxe1", stateStore.current().address("bc1qsecond").workers[0].name);
+        float[] hashrates = new float[history.capacity()];
+        int samples = history.readWindow(new long[hashrates.length], hashrates);
+        assertEquals(2.55e12, hashrates[samples - 1], 1e9);
+    }
+
+    @Test
+    public void lanMinersReplaceThePoolHashrate() throws Exception {
+        server.handle("/farm/", exchange -> StubHttpServer.send(exchange, 200,
+                "{\"hashrate5m\":\"1.53T\",\"shares\":2000,\"bestever\":9000}"));
+        prefs.edit().putString(CKPoolWidget.PREF_BITCOIN_ADDRESS, "bc1qfirst\nbc1qsecond").apply();
+        try (StubHttpServer gamma = new StubHttpServer();
+             StubHttpServer other = new StubHttpServer()) {
+            gamma.respond(AxeOs.INFO_PATH, AxeOsTest.GAMMA_INFO);
+            // Mining elsewhere, so not part of either address
+            other.respond(AxeOs.INFO_PATH, "{\"hashRate\":500,\"hostname\":\"other\","
+                    + "\"stratumUser\":\"bc1qsomeoneelse.x\"}");
+            prefs.edit().putString(CKPoolWidget.PREF_AXE_DEVICES,
+                    gamma.host() + "\n" + other.host()).apply();
+
+            WidgetSnapshot snapshot = fetcher(server.url("/farm/"), server.url("/price"),
+                    server.url("/blocks")).fetch();
+
+            assertEquals("1.20T", snapshot.forAddress("bc1qfirst").hashrate);
+            // bc1qsecond has no miner on the LAN, so the totals stay with the pool
+            assertEquals("1.53T", snapshot.forAddress("bc1qsecond").hashrate);
+            assertEquals("3.06T", snapshot.hashrate);
+            float[] hashrates = new float[history.capacity()];
+            int samples = history.readWindow(new long[hashrates.length], hashrates);
+            assertEquals(3.06e12, hashrates[samples - 1], 1e9);
+
+            other.close();
+            prefs.edit().putString(CKPoolWidget.PREF_BITCOIN_ADDRESS, "bc1qfirst").apply();
+            prefs.edit().putString(CKPoolWidget.PREF_AXE_DEVICES, gamma.host()).apply();
+            assertEquals("1.20T", fetcher(server.url("/farm/"), server.url("/price"),
+                    server.url("/blocks")).fetch().hashrate);
+        }
+    }
+
+    @Test
+    public void addressFetchesAreBoundedAndDeduplicated() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        server.handle("/many/", exchange -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            sleep(50);
+            inFlight.decrementAndGet();
+            StubHttpServer.send(exchange, 200, "{\"hashrate5m\":\"100G\",\"shares\":1}");
+        });
+        StringBuilder addresses = new StringBuilder();
+        for (int i = 0; i < 12; i++) {
+            // Every address twice
+            addresses.append("bc1qminer").append(i % 6).append('\n');
+        }
+        prefs.edit().putString(CKPoolWidget.PREF_BITCOIN_ADDRESS, addresses.toString()).apply();
+
+        WidgetSnapshot snapshot = fetcher(server.url("/many/"), server.url("/price"),
+                server.url("/blocks")).fetch();
+
+        assertEquals("600.00G", snapshot.hashrate);
+        assertEquals(6, server.requestCount("/many/"));
+        assertTrue("max " + maxInFlight.get(),
+                maxInFlight.get() <= SnapshotFetcher.MAX_PARALLEL_ADDRESSES);
+    }
+
+    @Test
+    public void failingMirrorFailsOverToTheNext() throws Exception {
+        server.handle("/down/", exchange -> StubHttpServer.send(exchange, 502, "Bad Gateway"));
+        SnapshotFetcher fetcher = new SnapshotFetcher(prefs, stateStore, blockIndex, history,
+                metrics, rates, new HttpClient(), networkExecutor,
+                SnapshotFetcher.DEFAULT_DEADLINE_MS,
+                new SourceSelector<>(Arrays.<PoolDataSource>asList(
+                        new CkpoolSource("down", server.url("/down/")),
+                        new CkpoolSource("up", server.url("/users/")))),
+                new SourceSelector<>(Arrays.asList(
+                        PriceSources.coinbase(server.url("/down/price")),
+                        PriceSources.coinbase(server.url("/price")))),
+                server.url("/blocks"), server.url("/difficulty"));
+
+        WidgetSnapshot snapshot = fetcher.fetch();
+        assertTrue(snapshot.live);
+        assertEquals("1.53T", snapshot.hashrate);
+        assertEquals("$97k", snapshot.bitcoinPrice);
+        assertEquals(2, server.requestCount("/down/"));
+
+        // The next refresh goes straight to the sources that answered
+        stateStore.update(state -> state.priceFetchedAt = 0);
+        assertTrue(fetcher.fetch().live);
+        assertEquals(2, server.requestCount("/down/"));
+        assertTrue(fetcher.sourceSummary().startsWith("up: "));
+    }
+
+    @Test
+    public void onePriceRequestFillsTheRateCache() throws Exception {
+        server.respond("/rates", "{\"data\":{\"currency\":\"BTC\",\"rates\":{"
+                + "\"USD\":\"97123.45\",\"EUR\":\"89877.1\",\"ETH\":\"27.5\"}}}");
+        SnapshotFetcher fetcher = fetcher(server.url("/users/"), server.url("/rates"),
+                server.url("/blocks"));
+
+        // The snapshot keeps dollars; widgets format their own currency from the cache
+        assertEquals("$97k", fetcher.fetch().bitcoinPrice);
+        assertEquals(Arrays.asList("EUR", "USD"), rates.currencies());
+        assertEquals("€90k", rates.formatPrice("EUR"));
+
+        // Within the price TTL no widget or currency causes another request
+        fetcher.fetch();
+        assertEquals(1, server.requestCount("/rates"));
+    }
+
+    @Test
+    public void oddsComeFromTheHistoryAndACachedDifficulty() throws Exception {
+        SnapshotFetcher fetcher = fetcher(server.url("/users/"), server.url("/price"),
+                server.url("/blocks"));
+        WidgetSnapshot snapshot = fetcher.fetch();
+
+        // 1.53 TH/s against difficulty 1.2e14: 2^32 * 1.2e14 / 1.53e12 seconds
+        BlockOdds odds = fetcher.odds();
+        assertEquals(1.53e12, odds.hashrate, 1e6);
+        assertEquals(1.2e14, odds.difficulty, 0);
+        assertEquals(68760000.0 / 1.2e14, odds.bestRatio(), 1e-12);
+        assertEquals("ETA " + StatsFormatter.formatExpected(odds.expectedSeconds()),
+                snapshot.odds);
+        assertEquals(snapshot.odds, fetcher.cachedSnapshot().odds);
+
+        // Every refresh within the TTL, price and pool blocks included, reuses it
+        stateStore.update(state -> {
+            state.priceFetchedAt = 0;
+            state.poolSyncedAt = 0;
+        });
+        fetcher.fetch();
+        assertEquals(1, server.requestCount("/difficulty"));
+    }
+
+    @Test
+    public void selfHostedCkpoolReplacesThePublicPool() throws Exception {
+        server.respond("/own/", "{\"hashrate5m\":\"42T\",\"shares\":7,\"bestever\":9}");
+        SnapshotFetcher fetcher = fetcher(server.url("/users/"), server.url("/price"),
+                server.url("/blocks"));
+        prefs.edit().putString(CKPoolWidget.PREF_CKPOOL_URL, server.url("/own")).apply();
+
+        assertEquals("42T", fetcher.fetch().hashrate);
+        assertEquals(1, server.requestCount("/own/"));
+        assertEquals(0, server.requestCount("/users/"));
+
+        prefs.edit().putString(CKPoolWidget.PREF_CKPOOL_URL, "").apply();
+        assertEquals("1.53T", fetcher.fetch().hashrate);
+        assertEquals(1, server.requestCount("/users/"));
+    }
+
+    @Test
+    public void failedAddressKeepsItsCachedStats() throws Exception {
+        AtomicBoolean secondDown = new AtomicBoolean();
+        server.handle("/partial/", exchange -> {
+            if (secondDown.get() && exchange.getRequestURI().getPath().endsWith("bc1qsecond")) {
+                StubHttpServer.send(exchange, 500, "down");
+            } else {
+                StubHttpServer.send(exchange, 200, "{\"hashrate5m\":\"1T\",\"shares\":1}");
+            }
+        });
+        prefs.edit().putString(CKPoolWidget.PREF_BITCOIN_ADDRESS, "bc1qfirst bc1qsecond").apply();
+        SnapshotFetcher fetcher = fetcher(server.url("/partial/"), server.url("/price"),
+                server.url("/blocks"));
+        fetcher.fetch();
+        int samples = history.size();
+
+        secondDown.set(true);
+        WidgetSnapshot snapshot = fetcher.fetch();
+
+        // Totals are only as fresh as the last poll where every address answered
+        assertFalse(snapshot.live);
+        assertEquals("2.00T", snapshot.hashrate);
+        assertEquals(samples, history.size());
+        assertTrue(snapshot.forAddress("bc1qfirst").live);
+        assertFalse(snapshot.forAddress("bc1qsecond").live);
+        assertEquals("1T", snapshot.forAddress("bc1qsecond").hashrate);
+        assertFalse(fetcher.cachedSnapshot().forAddress("bc1qfirst").live);
+    }
+
+    @Test
+    public void notModifiedStatsAreNotSharedWithTheState() throws Exception {
+        server.handle("/etag/", exchange -> {
+            exchange.getResponseHeaders().set("ETag", "\"v1\"");
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                StubHttpServer.send(exchange, 200, "{\"hashrate5m\":\"1T\",\"bestever\":5}");
+            }
+        });
+        SnapshotFetcher fetcher = fetcher(server.url("/etag/"), server.url("/price"),
+                server.url("/blocks"));
+        fetcher.fetch();
+        AddressStats[] first = new AddressStats[1];
+        stateStore.update(state -> first[0] = state.address("bc1qtest"));
+        long updatedAt = first[0].updatedAt;
+        sleep(5);
+
+        fetcher.fetch();
+        AddressStats[] second = new AddressStats[1];
+        stateStore.update(state -> second[0] = state.address("bc1qtest"));
+
+        assertNotSame(first[0], second[0]);
+        assertEquals(updatedAt, first[0].updatedAt);
+        assertTrue(second[0].updatedAt > updatedAt);
+        assertEquals(5, second[0].bestEver);
+    }
+
+    private SnapshotFetcher fetcher(String usersUrl, String priceUrl, String blocksUrl) {
+        return new SnapshotFetcher(prefs, stateStore, blockIndex, history, metrics, rates,
+                new HttpClient(), networkExecutor, SnapshotFetcher.DEFAULT_DEADLINE_MS, usersUrl,
+                priceUrl, blocksUrl, server.url("/difficulty"));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private RefreshCoordinator newCoordinator(RefreshCoordinator.Sink sink) {
+        return new RefreshCoordinator(executor,
+                fetcher(server.url("/users/"), server.url("/price"),
+                        server.url("/blocks")),
+                sink);
+    }
+
+    private static int[] ids(int count) {
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = i + 1;
+        }
+        return ids;
+    }
+
+    private static class RecordingSink implements RefreshCoordinator.Sink {
+        final Set<Integer> appliedIds = new HashSet<>();
+        final CountDownLatch done;
+        volatile WidgetSnapshot last;
+        volatile int cycles;
+
+        RecordingSink(int expectedCycles) {
+            done = new CountDownLatch(expectedCycles);
+        }
+
+        @Override
+        public synchronized void apply(WidgetSnapshot snapshot, int[] appWidgetIds) {
+            for (int appWidgetId : appWidgetIds) {
+                appliedIds.add(appWidgetId);
+            }
+            last = snapshot;
+            cycles++;
+            done.countDown();
+        }
+
+        boolean await() throws InterruptedException {
+            return done.await(10, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.ckpoolwidget;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs full fetch cycles (ckpool, price and pool blocks in parallel, parsed and cached)
+ * against a local server that serves the recorded responses with injected latency,
+ * errors and slow bodies. Reports p50/p99 cycle latency, bytes read and allocations.
+ * Run with {@code ./gradlew test -Dckpool.benchmark=true --tests '*Benchmark'}.
+ */
+public class RefreshCycleBenchmark {
+
+    private static final int WARMUP_CYCLES = 50;
+    private static final int MEASURED_CYCLES = 200;
+    private static final long DEADLINE_MS = 2000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StubHttpServer server;
+    private ExecutorService networkExecutor;
+    private final AtomicInteger networkThreads = new AtomicInteger();
+    private final long[] networkThreadIds = new long[64];
+
+    private String user;
+    private String price;
+    private String blocks;
+
+    @Before
+    public void setUp() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("ckpool.benchmark"));
+        user = Benchmarks.response(Benchmarks.CKPOOL_USER);
+        price = Benchmarks.response(Benchmarks.COINBASE_SPOT);
+        blocks = Benchmarks.response(Benchmarks.MEMPOOL_POOL_BLOCKS);
+        server = new StubHttpServer();
+        // Named threads so their allocations can be added to the cycle's
+        ThreadFactory threads = runnable -> {
+            Thread thread = new Thread(runnable, "benchmark-network");
+            int n = networkThreads.getAndIncrement();
+            if (n < networkThreadIds.length) {
+                networkThreadIds[n] = thread.getId();
+            }
+            return thread;
+        };
+        networkExecutor = Executors.newCachedThreadPool(threads);
+    }
+
+    @After
+    public void tearDown() {
+        if (server != null) {
+            networkExecutor.shutdownNow();
+            server.close();
+        }
+    }
+
+    @Test
+    public void refreshCycles() throws Exception {
+        scenario("baseline",
+                StubHttpServer.faulty(user, 0, 0, 0, 1),
+                StubHttpServer.faulty(price, 0, 0, 0, 2),
+                StubHttpServer.faulty(blocks, 0, 0, 0, 3));
+        scenario("latency 20-60ms",
+                StubHttpServer.faulty(user, 20, 40, 0, 1),
+                StubHttpServer.faulty(price, 20, 40, 0, 2),
+                StubHttpServer.faulty(blocks, 20, 40, 0, 3));
+        scenario("10% errors",
+                StubHttpServer.faulty(user, 5, 10, 0.1, 1),
+                StubHttpServer.faulty(price, 5, 10, 0.1, 2),
+                StubHttpServer.faulty(blocks, 5, 10, 0.1, 3));
+        scenario("slow blocks body",
+                StubHttpServer.faulty(user, 5, 10, 0, 1),
+                StubHttpServer.faulty(price, 5, 10, 0, 2),
+                StubHttpServer.slowBody(blocks, 1024, 5));
+    }
+
+    private void scenario(String name, StubHttpServer.Handler users,
+                          StubHttpServer.Handler spot, StubHttpServer.Handler poolBlocks)
+            throws Exception {
+        String prefix = "/" + name.replaceAll("[^a-z0-9]", "") + "/";
+        server.handle(prefix + "users/", users);
+        server.handle(prefix + "price", spot);
+        server.handle(prefix + "blocks", poolBlocks);
+        // Fetched once; within its TTL for every cycle after that
+        server.respond(prefix + "difficulty", "{\"currentDifficulty\":1.2e14}");
+
+        File dir = folder.newFolder();
+        InMemoryPreferences prefs = new InMemoryPreferences();
+        prefs.edit().putString(CKPoolWidget.PREF_BITCOIN_ADDRESS, "bc1qtest").apply();
+        WidgetStateStore stateStore = WidgetStateStore.open(
+                new File(dir, WidgetStateStore.FILE_NAME), null);
+        HttpClient httpClient = new HttpClient();
+        SnapshotFetcher fetcher = new SnapshotFetcher(prefs, stateStore,
+                PoolBlockIndex.open(new File(dir, PoolBlockIndex.FILE_NAME)),
+                HashrateHistory.open(new File(dir, HashrateHistory.FILE_NAME), 1024),
+                EndpointMetrics.open(new File(dir, EndpointMetrics.FILE_NAME)),
+                RateCache.open(new File(dir, RateCache.FILE_NAME)), httpClient, networkExecutor, DEADLINE_MS, server.url(prefix + "users/"),
+                server.url(prefix + "price"), server.url(prefix + "blocks"),
+                server.url(prefix + "difficulty"));
+
+        for (int i = 0; i < WARMUP_CYCLES; i++) {
+            cycle(fetcher, stateStore);
+        }
+        long[] latencies = new long[MEASURED_CYCLES];
+        int notLive = 0;
+        long[] threadIds = threadIds();
+        long allocatedBefore = Benchmarks.allocatedBytes(threadIds);
+        long bytesBefore = httpClient.bytesReceived();
+        for (int i = 0; i < MEASURED_CYCLES; i++) {
+            long start = System.nanoTime();
+            if (!cycle(fetcher, stateStore).live) {
+                notLive++;
+            }
+            latencies[i] = System.nanoTime() - start;
+        }
+        long bytesPerCycle = (httpClient.bytesReceived() - bytesBefore) / MEASURED_CYCLES;
+        // Threads started during the measured cycles aren't counted
+        long allocatedPerCycle = (Benchmarks.allocatedBytes(threadIds) - allocatedBefore)
+                / MEASURED_CYCLES;
+        System.out.println(String.format(Locale.US,
+                "%-17s p50 %6.2f ms  p99 %7.2f ms  %6d B read/cycle  %8d B alloc/cycle"
+                        + "  %3d/%d from cache",
+                name, Benchmarks.percentile(latencies, MEASURED_CYCLES, 50) / 1e6,
+                Benchmarks.percentile(latencies, MEASURED_CYCLES, 99) / 1e6,
+                bytesPerCycle, allocatedPerCycle, notLive, MEASURED_CYCLES));
+    }
+
+    private static WidgetSnapshot cycle(SnapshotFetcher fetcher, WidgetStateStore stateStore) {
+        // Every cycle calls all three endpoints instead of skipping them within their TTLs
+        stateStore.update(state -> {
+            state.priceFetchedAt = 0;
+            state.poolSyncedAt = 0;
+        });
+        return fetcher.fetch();
+    }
+
+    private long[] threadIds() {
+        int n = Math.min(networkThreads.get(), networkThreadIds.length);
+        long[] ids = new long[n + 1];
+        System.arraycopy(networkThreadIds, 0, ids, 0, n);
+        ids[n] = Thread.currentThread().getId();
+        return ids;
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.ckpoolwidget;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RefreshPolicyTest {
+
+    private static final long MINUTE = 60 * 1000L;
+
+    @Test
+    public void pollsFastWhileStatsAreMoving() {
+        assertEquals(5 * MINUTE, RefreshPolicy.nextDelayMillis(0, 0, 0));
+    }
+
+    @Test
+    public void slowsDownWhileStatsStayPut() {
+        assertEquals(15 * MINUTE, RefreshPolicy.nextDelayMillis(0, 1, 0));
+        assertEquals(15 * MINUTE, RefreshPolicy.nextDelayMillis(0, 4, 0));
+        assertEquals(30 * MINUTE, RefreshPolicy.nextDelayMillis(0, 5, 0));
+        assertEquals(60 * MINUTE, RefreshPolicy.nextDelayMillis(0, 9, 0));
+        assertEquals(60 * MINUTE, RefreshPolicy.nextDelayMillis(0, 1000, 0));
+    }
+
+    @Test
+    public void backsOffExponentiallyOnFailures() {
+        assertEquals(10 * MINUTE, RefreshPolicy.nextDelayMillis(1, 0, 0));
+        assertEquals(20 * MINUTE, RefreshPolicy.nextDelayMillis(2, 0, 0));
+        assertEquals(40 * MINUTE, RefreshPolicy.nextDelayMillis(3, 0, 0));
+        assertEquals(RefreshPolicy.MAX_INTERVAL_MS, RefreshPolicy.nextDelayMillis(50, 0, 0));
+    }
+
+    @Test
+    public void backsOffWhileDeviceIsIdle() {
+        assertEquals(60 * MINUTE, RefreshPolicy.nextDelayMillis(0, 0, 1));
+        assertEquals(120 * MINUTE, RefreshPolicy.nextDelayMillis(0, 0, 2));
+        assertEquals(RefreshPolicy.MAX_INTERVAL_MS, RefreshPolicy.nextDelayMillis(0, 0, 10));
+    }
+
+    @Test
+    public void suspectedAnomaliesAreCheckedSoon() {
+        assertEquals(2 * MINUTE, RefreshPolicy.nextDelayMillis(0, 9, 0, true));
+        assertEquals(2 * MINUTE, RefreshPolicy.nextDelayMillis(0, 0, 3, true));
+        // A failing ckpool can't confirm anything
+        assertEquals(10 * MINUTE, RefreshPolicy.nextDelayMillis(1, 0, 0, true));
+    }
+
+    @Test
+    public void smallHashrateJitterIsNotAChange() {
+        assertFalse(RefreshPolicy.hashrateChanged(1.50e12, 1.55e12));
+        assertTrue(RefreshPolicy.hashrateChanged(1.50e12, 1.20e12));
+        assertTrue(RefreshPolicy.hashrateChanged(0, 1e12));
+        assertFalse(RefreshPolicy.hashrateChanged(0, 0));
+    }
+
+    @Test
+    public void schedulerTracksChangesAndFailures() {
+        WidgetState state = new WidgetState();
+
+        assertEquals(5 * MINUTE, RefreshScheduler.update(state, live("1.50T", "68.76 M"), false));
+        assertEquals(15 * MINUTE, RefreshScheduler.update(state, live("1.52T", "68.76 M"), false));
+        assertEquals(5 * MINUTE, RefreshScheduler.update(state, live("1.52T", "70.00 M"), false));
+        assertEquals(10 * MINUTE, RefreshScheduler.update(state, cached(), false));
+        assertEquals(20 * MINUTE, RefreshScheduler.update(state, cached(), false));
+        assertEquals(15 * MINUTE, RefreshScheduler.update(state, live("1.52T", "70.00 M"), false));
+        assertEquals(60 * MINUTE, RefreshScheduler.update(state, live("1.52T", "70.00 M"), true));
+    }
+
+    private static WidgetSnapshot live(String hashrate, String best) {
+        return new WidgetSnapshot(false, true, 1, hashrate, "1.00 M", best, "", "$97k", "1d ago");
+    }
+
+    private static WidgetSnapshot cached() {
+        return new WidgetSnapshot(false, false, 1, "1.52T", "1.00 M", "70.00 M", "", "$97k", "1d ago");
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.ckpoolwidget;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RenderTimerTest {
+
+    @Test
+    public void firstFrameIsMeasuredFromProcessStartOnce() {
+        RenderTimer timer = new RenderTimer(1000);
+
+        assertArrayEquals(new long[] {250, -1}, timer.framePushed(false, 1250));
+        assertArrayEquals(new long[] {-1, -1}, timer.framePushed(false, 1300));
+    }
+
+    @Test
+    public void freshFrameIsMeasuredFromTheOldestRequest() {
+        RenderTimer timer = new RenderTimer(0);
+        timer.framePushed(false, 10);
+
+        timer.requested(100);
+        timer.requested(150);
+        assertArrayEquals(new long[] {-1, -1}, timer.framePushed(false, 200));
+        assertArrayEquals(new long[] {-1, 2900}, timer.framePushed(true, 3000));
+        // Nothing waiting any more
+        assertArrayEquals(new long[] {-1, -1}, timer.framePushed(true, 4000));
+    }
+}
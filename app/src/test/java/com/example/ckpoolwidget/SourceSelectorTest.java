@@ -0,0 +1,167 @@
+package com.example.ckpoolwidget;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SourceSelectorTest {
+
+    private static final class Named implements SourceSelector.Source {
+        private final String name;
+
+        Named(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+    }
+
+    private final Named primary = new Named("primary");
+    private final Named mirror = new Named("mirror");
+    private final Named backup = new Named("backup");
+    private final SourceSelector<Named> selector =
+            new SourceSelector<>(Arrays.asList(primary, mirror, backup));
+
+    @Test
+    public void untriedSourcesKeepTheConfiguredOrder() {
+        assertArrayEquals(new int[] {0, 1, 2}, selector.ranked());
+        assertTrue(selector.summary().startsWith("primary: not used yet"));
+    }
+
+    @Test
+    public void fastestHealthySourceGoesFirst() {
+        selector.recordSuccess(0, TimeUnit.MILLISECONDS.toNanos(900));
+        selector.recordSuccess(1, TimeUnit.MILLISECONDS.toNanos(120));
+
+        // Tried sources before untried ones
+        assertArrayEquals(new int[] {1, 0, 2}, selector.ranked());
+        assertEquals(120, selector.latencyMs(1), 1e-6);
+
+        // The average moves towards new samples
+        selector.recordSuccess(1, TimeUnit.MILLISECONDS.toNanos(2000));
+        selector.recordSuccess(1, TimeUnit.MILLISECONDS.toNanos(2000));
+        selector.recordSuccess(1, TimeUnit.MILLISECONDS.toNanos(2000));
+        assertArrayEquals(new int[] {0, 1, 2}, selector.ranked());
+    }
+
+    @Test
+    public void failingSourcesMoveToTheBack() {
+        selector.recordSuccess(0, TimeUnit.MILLISECONDS.toNanos(100));
+        selector.recordFailure(0);
+        // One failure in a good record doesn't make it unhealthy
+        assertEquals(0, selector.ranked()[0]);
+
+        selector.recordFailure(0);
+        selector.recordFailure(0);
+        assertTrue(selector.errorRate(0) >= SourceSelector.UNHEALTHY_ERROR_RATE);
+        assertArrayEquals(new int[] {1, 2, 0}, selector.ranked());
+        assertTrue(selector.summary().endsWith("primary: 100 ms, 66% errors"));
+    }
+
+    @Test
+    public void failsOverWithinTheDeadline() throws Exception {
+        List<String> calls = new ArrayList<>();
+        List<Long> budgetsMs = new ArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(15);
+
+        String result = selector.fetch(deadline, (source, attemptDeadline) -> {
+            calls.add(source.name());
+            budgetsMs.add(TimeUnit.NANOSECONDS.toMillis(attemptDeadline - System.nanoTime()));
+            if (source == primary) {
+                throw new SocketTimeoutException("hung");
+            }
+            if (source == mirror) {
+                throw new HttpClient.HttpStatusException("mirror", 503);
+            }
+            return "from " + source.name();
+        });
+
+        assertEquals("from backup", result);
+        assertEquals(Arrays.asList("primary", "mirror", "backup"), calls);
+        // A third of the deadline each, not all of it for the first
+        assertTrue(budgetsMs.toString(), budgetsMs.get(0) <= 5000 && budgetsMs.get(0) > 4000);
+        assertArrayEquals(new int[] {2, 0, 1}, selector.ranked());
+    }
+
+    @Test
+    public void everyAttemptGetsAMinimumShare() throws Exception {
+        List<Long> budgetsMs = new ArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(4);
+        try {
+            selector.fetch(deadline, (source, attemptDeadline) -> {
+                budgetsMs.add(TimeUnit.NANOSECONDS.toMillis(attemptDeadline - System.nanoTime()));
+                throw new IOException("down");
+            });
+            fail();
+        } catch (IOException expected) {
+            assertEquals("down", expected.getMessage());
+        }
+        assertTrue(budgetsMs.get(0) > SourceSelector.MIN_ATTEMPT_MS - 100);
+        // The last attempts only get what's left
+        assertTrue(budgetsMs.get(budgetsMs.size() - 1) <= 4000);
+    }
+
+    @Test
+    public void clientErrorsAreNotRetriedElsewhere() throws Exception {
+        List<String> calls = new ArrayList<>();
+        try {
+            selector.fetch(System.nanoTime() + TimeUnit.SECONDS.toNanos(15),
+                    (source, attemptDeadline) -> {
+                        calls.add(source.name());
+                        throw new HttpClient.HttpStatusException(source.name(), 404);
+                    });
+            fail();
+        } catch (HttpClient.HttpStatusException expected) {
+            assertEquals(404, expected.status);
+        }
+        assertEquals(Arrays.asList("primary"), calls);
+        assertEquals(0, selector.errorRate(0), 0);
+    }
+
+    @Test
+    public void priceFeedsParseTheirResponses() throws Exception {
+        assertEquals(97123.45, PriceSources.coinbase("").parsePrices(
+                new JSONObject("{\"data\":{\"amount\":\"97123.45\",\"currency\":\"USD\"}}"))
+                .get("USD"), 1e-9);
+        assertEquals(97120.1, PriceSources.kraken("").parsePrices(new JSONObject(
+                "{\"error\":[],\"result\":{\"XXBTZUSD\":{\"a\":[\"97120.2\",\"1\",\"1.0\"],"
+                        + "\"c\":[\"97120.10000\",\"0.00120000\"]}}}")).get("USD"), 1e-9);
+        assertEquals(97118, PriceSources.mempool("").parsePrices(new JSONObject(
+                "{\"time\":1750000000,\"USD\":97118,\"EUR\":89877}")).get("USD"), 1e-9);
+        double recorded = PriceSources.coinbase("").parsePrices(
+                new JSONObject(Benchmarks.response(Benchmarks.COINBASE_SPOT))).get("USD");
+        assertTrue(recorded > 0);
+    }
+
+    @Test
+    public void batchedFeedsReturnEveryCurrency() throws Exception {
+        Map<String, Double> coinbase = PriceSources.coinbase("").parsePrices(new JSONObject(
+                "{\"data\":{\"currency\":\"BTC\",\"rates\":{\"USD\":\"97123.45\","
+                        + "\"EUR\":\"89877.1\",\"JPY\":\"15234000\"}}}"));
+        assertEquals(3, coinbase.size());
+        assertEquals(15234000, coinbase.get("JPY"), 0);
+        Map<String, Double> mempool = PriceSources.mempool("").parsePrices(new JSONObject(
+                "{\"time\":1750000000,\"USD\":97118,\"EUR\":89877}"));
+        assertEquals(2, mempool.size());
+        assertEquals(89877, mempool.get("EUR"), 0);
+        try {
+            PriceSources.mempool("").parsePrices(new JSONObject("{\"EUR\":89877}"));
+            fail();
+        } catch (JSONException expected) {
+            // No dollar price to fall back on
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.ckpoolwidget;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Locale;
+
+/**
+ * Compares StatsFormatter with the String.format based code it replaced.
+ * Run with {@code ./gradlew test -Dckpool.benchmark=true --tests '*Benchmark'}.
+ */
+public class StatsFormatterBenchmark {
+
+    private static final int WARMUP_ROUNDS = 200_000;
+    private static final int MEASURED_ROUNDS = 1_000_000;
+
+    private static final double[] NUMBERS = {120_310_000, 68_760_000, 1.53e12, 987.6, 4_200};
+
+    @Before
+    public void onlyWhenRequested() {
+        Assume.assumeTrue(Boolean.getBoolean("ckpool.benchmark"));
+    }
+
+    @Test
+    public void compareFormatters() {
+        run("String.format number", i -> LegacyFormat.formatNumber(NUMBERS[i % NUMBERS.length]));
+        run("StatsFormatter number", i -> StatsFormatter.formatNumber(NUMBERS[i % NUMBERS.length]));
+        run("String.format price", i -> LegacyFormat.formatPrice(97123.45 + i % 100));
+        run("StatsFormatter price", i -> StatsFormatter.formatPrice(97123.45 + i % 100));
+        run("concat age", i -> LegacyFormat.formatAge(i % 1_000_000));
+        run("StatsFormatter age", i -> StatsFormatter.formatAge(i % 1_000_000));
+        run("new SimpleDateFormat", i -> LegacyFormat.formatDate(1_760_000_000_000L));
+        run("StatsFormatter date", i -> StatsFormatter.formatDate(1_760_000_000_000L));
+        run("concat top info", i -> LegacyFormat.topInfo("$97k", "3d ago"));
+        run("StatsFormatter top info", i -> StatsFormatter.topInfo("$97k", "3d ago"));
+    }
+
+    private interface Format {
+        String format(int i);
+    }
+
+    private static void run(String name, Format format) {
+        int sink = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            sink += format.format(i).length();
+        }
+        long allocatedBefore = Benchmarks.allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            sink += format.format(i).length();
+        }
+        long nsPerOp = (System.nanoTime() - start) / MEASURED_ROUNDS;
+        long bytesPerOp = (Benchmarks.allocatedBytes() - allocatedBefore) / MEASURED_ROUNDS;
+        System.out.println(String.format(Locale.US, "%-24s %6d ns/op %6d B/op (%d)",
+                name, nsPerOp, bytesPerOp, sink % 10));
+    }
+}
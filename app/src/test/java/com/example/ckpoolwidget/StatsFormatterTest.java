@@ -0,0 +1,83 @@
+package com.example.ckpoolwidget;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class StatsFormatterTest {
+
+    @Test
+    public void numbersMatchStringFormat() {
+        double[] values = {0, 0.004, 0.005, 0.015, 1, 999.994, 999.995, 999.999, 1000,
+                1234.5, 120_310_000, 68_760_000, 999_995_000, 1e12, 1.005e12, 9.99999e14,
+                1e18, 3.4e21, Double.MAX_VALUE, Double.POSITIVE_INFINITY, Double.NaN, -5};
+        for (double value : values) {
+            assertEquals("value " + value, LegacyFormat.formatNumber(value),
+                    StatsFormatter.formatNumber(value));
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            double value = Math.pow(10, random.nextDouble() * 20);
+            assertEquals("value " + value, LegacyFormat.formatNumber(value),
+                    StatsFormatter.formatNumber(value));
+            long shares = random.nextLong() >>> (random.nextInt(63) + 1);
+            assertEquals("shares " + shares, LegacyFormat.formatNumber(shares),
+                    StatsFormatter.formatNumber(shares));
+        }
+    }
+
+    @Test
+    public void pricesMatchStringFormat() {
+        double[] values = {0, 499, 500, 1500, 2500, 97123.45, 97500, 99999.99, 1e9};
+        for (double value : values) {
+            assertEquals(LegacyFormat.formatPrice(value), StatsFormatter.formatPrice(value));
+        }
+        Random random = new Random(7);
+        for (int i = 0; i < 100_000; i++) {
+            double value = random.nextDouble() * 250_000;
+            assertEquals("price " + value, LegacyFormat.formatPrice(value),
+                    StatsFormatter.formatPrice(value));
+        }
+    }
+
+    @Test
+    public void otherCurrenciesScaleToTheirMagnitude() {
+        assertEquals(StatsFormatter.formatPrice(97123.45),
+                StatsFormatter.formatPrice(97123.45, "USD"));
+        assertEquals("€90k", StatsFormatter.formatPrice(89877.1, "EUR"));
+        assertEquals("CHF 86k", StatsFormatter.formatPrice(86000, "CHF"));
+        assertEquals("¥15.23M", StatsFormatter.formatPrice(15_234_000, "JPY"));
+        assertEquals("₫2.51B", StatsFormatter.formatPrice(2_510_000_000.0, "VND"));
+    }
+
+    @Test
+    public void expectedTimesUseTheLargestSensibleUnit() {
+        assertEquals("36h", StatsFormatter.formatExpected(36 * 3600));
+        assertEquals("45d", StatsFormatter.formatExpected(45 * 86400));
+        assertEquals("12.3y", StatsFormatter.formatExpected(12.3 * BlockOdds.YEAR_SECONDS));
+        assertEquals("13.6k y", StatsFormatter.formatExpected(13_600.0 * BlockOdds.YEAR_SECONDS));
+        assertEquals("2.5M y", StatsFormatter.formatExpected(2.5e6 * BlockOdds.YEAR_SECONDS));
+        assertEquals("?", StatsFormatter.formatExpected(Double.POSITIVE_INFINITY));
+    }
+
+    @Test
+    public void agesDatesAndTopInfoMatch() {
+        for (long seconds : new long[] {0, 59, 3599, 3600, 86399, 86400, 950400, -10}) {
+            assertEquals(LegacyFormat.formatAge(seconds), StatsFormatter.formatAge(seconds));
+        }
+        for (long millis : new long[] {0, 1735776000000L, 1760000000000L}) {
+            assertEquals(LegacyFormat.formatDate(millis), StatsFormatter.formatDate(millis));
+        }
+        assertEquals(LegacyFormat.topInfo("$97k", "3d ago"), StatsFormatter.topInfo("$97k", "3d ago"));
+    }
+
+    @Test
+    public void hashratesUseCkpoolSuffixes() {
+        assertEquals("2.55T", StatsFormatter.formatHashrate(1.53e12 + 1.02e12));
+        assertEquals("512.00G", StatsFormatter.formatHashrate(512e9));
+        assertEquals("1.00P", StatsFormatter.formatHashrate(1e15));
+        assertEquals("0.00", StatsFormatter.formatHashrate(0));
+    }
+}
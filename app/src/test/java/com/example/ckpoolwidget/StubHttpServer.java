@@ -0,0 +1,141 @@
+package com.example.ckpoolwidget;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local HTTP server that serves canned bodies by path and counts requests. The static
+ * handlers inject latency, errors and slowly trickling bodies for load tests.
+ */
+class StubHttpServer implements AutoCloseable {
+
+    interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    static {
+        // Headers and body go out as separate writes; without this, delayed ACKs add ~40ms
+        // to every request and swamp what the load tests measure
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+    private final Map<String, AtomicInteger> counts = new ConcurrentHashMap<>();
+    private final AtomicInteger totalRequests = new AtomicInteger();
+    private final Set<InetSocketAddress> connections = ConcurrentHashMap.newKeySet();
+
+    StubHttpServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    // "127.0.0.1:port", for clients that take a host rather than a URL
+    String host() {
+        return "127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    void respond(String path, String body) {
+        handle(path, exchange -> send(exchange, 200, body));
+    }
+
+    void handle(String path, Handler handler) {
+        counts.put(path, new AtomicInteger());
+        server.createContext(path, exchange -> {
+            totalRequests.incrementAndGet();
+            // Each client socket has its own remote port
+            connections.add(exchange.getRemoteAddress());
+            counts.get(path).incrementAndGet();
+            try {
+                handler.handle(exchange);
+            } finally {
+                exchange.close();
+            }
+        });
+    }
+
+    int requestCount(String path) {
+        return counts.get(path).get();
+    }
+
+    int totalRequests() {
+        return totalRequests.get();
+    }
+
+    int connectionCount() {
+        return connections.size();
+    }
+
+    static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // Waits latencyMillis (plus up to jitterMillis) and fails errorRate of requests with a 500
+    static Handler faulty(String body, long latencyMillis, long jitterMillis, double errorRate,
+                          long seed) {
+        Random random = new Random(seed);
+        return exchange -> {
+            long delay;
+            boolean fail;
+            synchronized (random) {
+                delay = latencyMillis + (jitterMillis > 0 ? (long) (random.nextDouble() * jitterMillis) : 0);
+                fail = random.nextDouble() < errorRate;
+            }
+            sleep(delay);
+            if (fail) {
+                send(exchange, 500, "{\"error\":\"injected\"}");
+            } else {
+                send(exchange, 200, body);
+            }
+        };
+    }
+
+    // Sends the body in chunkBytes pieces with a pause before each one
+    static Handler slowBody(String body, int chunkBytes, long pauseMillis) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        return exchange -> {
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int offset = 0; offset < bytes.length; offset += chunkBytes) {
+                    sleep(pauseMillis);
+                    out.write(bytes, offset, Math.min(chunkBytes, bytes.length - offset));
+                    out.flush();
+                }
+            }
+        };
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.ckpoolwidget;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local WebSocket server for tests: completes the upgrade for every connection and hands
+ * it to the test, which drives the frames from there.
+ */
+class StubWebSocketServer implements AutoCloseable {
+
+    static final int OP_CONTINUATION = 0x0;
+    static final int OP_TEXT = 0x1;
+    static final int OP_CLOSE = 0x8;
+    static final int OP_PING = 0x9;
+    static final int OP_PONG = 0xA;
+
+    private final ServerSocket server;
+    private final BlockingQueue<Connection> accepted = new LinkedBlockingQueue<>();
+    private final Thread acceptor;
+    // Sent instead of the correct Sec-WebSocket-Accept when set
+    volatile String acceptOverride;
+
+    StubWebSocketServer() throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        acceptor = new Thread(() -> {
+            while (!server.isClosed()) {
+                try {
+                    Socket socket = server.accept();
+                    Connection connection = new Connection(socket);
+                    connection.upgrade();
+                    accepted.add(connection);
+                } catch (IOException e) {
+                    // Closed, or a client that gave up mid-handshake
+                }
+            }
+        }, "stub-websocket");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    String url(String path) {
+        return "ws://127.0.0.1:" + server.getLocalPort() + path;
+    }
+
+    // Next upgraded connection, or null if none arrives in time
+    Connection accept(long timeoutMillis) throws InterruptedException {
+        return accepted.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() {
+        try {
+            server.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    final class Connection {
+        final Socket socket;
+        final DataInputStream in;
+        final OutputStream out;
+        String requestLine;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            socket.setSoTimeout(5000);
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = socket.getOutputStream();
+        }
+
+        private void upgrade() throws IOException {
+            StringBuilder header = new StringBuilder();
+            while (header.indexOf("\r\n\r\n") < 0) {
+                int b = in.read();
+                if (b < 0) {
+                    throw new IOException("Closed during handshake");
+                }
+                header.append((char) b);
+            }
+            String[] lines = header.toString().split("\r\n");
+            requestLine = lines[0];
+            String key = null;
+            for (String line : lines) {
+                if (line.toLowerCase().startsWith("sec-websocket-key:")) {
+                    key = line.substring(line.indexOf(':') + 1).trim();
+                }
+            }
+            String accept = acceptOverride != null ? acceptOverride : acceptKey(key);
+            out.write(("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\n"
+                    + "Connection: Upgrade\r\nSec-WebSocket-Accept: " + accept + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+        }
+
+        void sendText(String text) throws IOException {
+            sendFrame(OP_TEXT, true, text.getBytes(StandardCharsets.UTF_8));
+        }
+
+        // Server frames are never masked
+        void sendFrame(int opcode, boolean fin, byte[] payload) throws IOException {
+            ByteArrayOutputStream frame = new ByteArrayOutputStream();
+            frame.write((fin ? 0x80 : 0) | opcode);
+            if (payload.length < 126) {
+                frame.write(payload.length);
+            } else if (payload.length <= 0xFFFF) {
+                frame.write(126);
+                frame.write(payload.length >>> 8);
+                frame.write(payload.length & 0xFF);
+            } else {
+                frame.write(127);
+                for (int shift = 56; shift >= 0; shift -= 8) {
+                    frame.write((int) ((long) payload.length >>> shift) & 0xFF);
+                }
+            }
+            frame.write(payload);
+            out.write(frame.toByteArray());
+            out.flush();
+        }
+
+        // Next client frame, unmasked; fails if the client didn't mask it
+        Frame readFrame() throws IOException {
+            int b0 = in.readUnsignedByte();
+            int b1 = in.readUnsignedByte();
+            if ((b1 & 0x80) == 0) {
+                throw new IOException("Unmasked client frame");
+            }
+            long length = b1 & 0x7F;
+            if (length == 126) {
+                length = in.readUnsignedShort();
+            } else if (length == 127) {
+                length = in.readLong();
+            }
+            byte[] mask = new byte[4];
+            in.readFully(mask);
+            byte[] payload = new byte[(int) length];
+            in.readFully(payload);
+            for (int i = 0; i < payload.length; i++) {
+                payload[i] ^= mask[i & 3];
+            }
+            return new Frame(b0 & 0x0F, payload);
+        }
+
+        String readText() throws IOException {
+            Frame frame = readFrame();
+            if (frame.opcode != OP_TEXT) {
+                throw new IOException("Expected a text frame, got opcode " + frame.opcode);
+            }
+            return frame.text();
+        }
+
+        // Drops the TCP connection without a close frame
+        void drop() throws IOException {
+            socket.close();
+        }
+    }
+
+    static final class Frame {
+        final int opcode;
+        final byte[] payload;
+
+        Frame(int opcode, byte[] payload) {
+            this.opcode = opcode;
+            this.payload = payload;
+        }
+
+        String text() {
+            return new String(payload, StandardCharsets.UTF_8);
+        }
+    }
+
+    static String acceptKey(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            return Base64.getEncoder().encodeToString(sha1.digest(
+                    (key + "258EAFA5-E914-47DA-95CA-C5AB0DC85B11")
+                            .getBytes(StandardCharsets.US_ASCII)));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.ckpoolwidget;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class WidgetConfigTest {
+
+    private static final int ID = 7;
+
+    @Test
+    public void sizeBucketFollowsTheWidgetsDimensions() {
+        assertEquals(WidgetConfig.SIZE_SMALL, WidgetConfig.sizeFor(110, 40));
+        assertEquals(WidgetConfig.SIZE_SMALL, WidgetConfig.sizeFor(110, 200));
+        assertEquals(WidgetConfig.SIZE_NORMAL, WidgetConfig.sizeFor(250, 40));
+        assertEquals(WidgetConfig.SIZE_NORMAL, WidgetConfig.sizeFor(200, 180));
+        assertEquals(WidgetConfig.SIZE_LARGE, WidgetConfig.sizeFor(300, 120));
+    }
+
+    @Test
+    public void instanceSettingsOverrideTheAppsAndBadColorsFallBack() {
+        InMemoryPreferences prefs = new InMemoryPreferences();
+        prefs.edit().putString("rate_color", "#123456")
+                .putString("shares_color", "not a color")
+                .putString(CKPoolWidget.PREF_CURRENCY, "EUR").apply();
+
+        WidgetConfig config = WidgetConfig.read(prefs, ID, 0, 0);
+        assertEquals(0xFF123456, config.colors[WidgetViewState.COLOR_RATE]);
+        assertEquals(0xFF00BFFF, config.colors[WidgetViewState.COLOR_SHARES]);
+        assertEquals(0x80123456, config.dimmedColors[WidgetViewState.COLOR_RATE]);
+        assertEquals("EUR", config.currency);
+        assertNull(config.address);
+        assertEquals(WidgetConfig.SIZE_NORMAL, config.size);
+
+        prefs.edit().putString(WidgetConfig.PREF_WIDGET_COLORS + ID, "#FFFFFF,#FFFFFF,#FFFFFF")
+                .putString(CKPoolWidget.PREF_WIDGET_CURRENCY + ID, "GBP")
+                .putString(CKPoolWidget.PREF_WIDGET_ADDRESS + ID, "bc1qtest").apply();
+        config = WidgetConfig.read(prefs, ID, 0, 0);
+        assertEquals(0xFFFFFFFF, config.colors[WidgetViewState.COLOR_RATE]);
+        assertEquals("GBP", config.currency);
+        assertEquals("bc1qtest", config.address);
+        // Another widget keeps the app's
+        assertEquals(0xFF123456, WidgetConfig.read(prefs, ID + 1, 0, 0)
+                .colors[WidgetViewState.COLOR_RATE]);
+    }
+
+    @Test
+    public void hiddenMetricsAndSmallLayoutsSkipTheirViews() {
+        InMemoryPreferences prefs = new InMemoryPreferences();
+        prefs.edit().putInt(WidgetConfig.PREF_WIDGET_METRICS + ID,
+                WidgetConfig.METRIC_BEST | WidgetConfig.METRIC_SPARKLINE).apply();
+
+        WidgetConfig config = WidgetConfig.read(prefs, ID, 300, 40);
+        assertTrue(config.showsText(WidgetViewState.TEXT_HASHRATE));
+        assertTrue(config.showsText(WidgetViewState.TEXT_BEST_DATE));
+        assertFalse(config.showsText(WidgetViewState.TEXT_SHARES));
+        assertFalse(config.showsText(WidgetViewState.TEXT_ODDS));
+        assertFalse(config.showsText(WidgetViewState.TEXT_TOP_INFO));
+        assertEquals(20, config.sparklineHeightDp());
+
+        WidgetConfig large = WidgetConfig.read(prefs, ID, 300, 150);
+        assertEquals(48, large.sparklineHeightDp());
+        assertNotEquals(config.templateKey(), large.templateKey());
+
+        WidgetConfig small = WidgetConfig.read(prefs, ID, 100, 150);
+        assertTrue(small.showsText(WidgetViewState.TEXT_STALE));
+        assertFalse(small.showsText(WidgetViewState.TEXT_BEST));
+        assertEquals(0, small.sparklineHeightDp());
+        // Metrics don't matter to the small layout
+        assertEquals(small.templateKey(), WidgetConfig.read(new InMemoryPreferences(), ID, 100,
+                150).templateKey());
+    }
+}
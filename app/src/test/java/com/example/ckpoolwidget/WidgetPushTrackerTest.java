@@ -0,0 +1,103 @@
+package com.example.ckpoolwidget;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class WidgetPushTrackerTest {
+
+    private static final int[] COLORS = {0xFF00FF00, 0xFF00BFFF, 0xFFFFD700};
+
+    @Test
+    public void firstPushToAWidgetIsFull() {
+        WidgetPushTracker tracker = new WidgetPushTracker();
+
+        assertEquals(WidgetPushTracker.FULL, push(tracker, 1, state("1.5T", "1d ago", COLORS, "a")));
+        assertEquals(WidgetPushTracker.FULL, push(tracker, 2, state("1.5T", "1d ago", COLORS, "a")));
+        assertEquals(2, tracker.fullPushes());
+    }
+
+    @Test
+    public void unchangedStateIsSkipped() {
+        WidgetPushTracker tracker = new WidgetPushTracker();
+        push(tracker, 1, state("1.5T", "1d ago", COLORS, "a"));
+
+        assertEquals(WidgetPushTracker.NONE, push(tracker, 1, state("1.5T", "1d ago", COLORS, "a")));
+        assertEquals(WidgetPushTracker.NONE, push(tracker, 1, state("1.5T", "1d ago", COLORS, "a")));
+        assertEquals(2, tracker.skippedPushes());
+        assertEquals(0, tracker.partialPushes());
+    }
+
+    @Test
+    public void onlyChangedPartsAreReported() {
+        WidgetPushTracker tracker = new WidgetPushTracker();
+        Object sparkline = "a";
+        push(tracker, 1, state("1.5T", "1d ago", COLORS, sparkline));
+
+        int changes = push(tracker, 1, state("1.6T", "1d ago", COLORS, sparkline));
+
+        assertEquals(WidgetPushTracker.textBit(WidgetViewState.TEXT_HASHRATE), changes);
+        assertEquals(1, tracker.partialPushes());
+
+        changes = push(tracker, 1, state("1.6T", "2d ago", new int[] {1, 2, 3}, "b"));
+        assertEquals(WidgetPushTracker.textBit(WidgetViewState.TEXT_TOP_INFO)
+                | WidgetPushTracker.COLORS | WidgetPushTracker.SPARKLINE, changes);
+    }
+
+    @Test
+    public void missingValuesKeepWhatWasPushed() {
+        WidgetPushTracker tracker = new WidgetPushTracker();
+        push(tracker, 1, state("1.5T", "1d ago", COLORS, "a"));
+        String[] texts = texts("1.5T", "1d ago");
+        texts[WidgetViewState.TEXT_BEST_DATE] = null;
+
+        assertEquals(WidgetPushTracker.NONE,
+                push(tracker, 1, new WidgetViewState(texts, COLORS, null)));
+    }
+
+    @Test
+    public void forgottenWidgetGetsAFullPushAgain() {
+        WidgetPushTracker tracker = new WidgetPushTracker();
+        push(tracker, 1, state("1.5T", "1d ago", COLORS, "a"));
+        tracker.forget(1);
+
+        assertEquals(WidgetPushTracker.FULL, push(tracker, 1, state("1.5T", "1d ago", COLORS, "a")));
+    }
+
+    @Test
+    public void failedPushIsSentAgain() {
+        WidgetPushTracker tracker = new WidgetPushTracker();
+        push(tracker, 1, state("1.5T", "1d ago", COLORS, "a"));
+
+        // The launcher didn't take it, so pushed() was never called
+        int changes = tracker.changes(1, state("1.6T", "1d ago", COLORS, "a"));
+        assertEquals(WidgetPushTracker.textBit(WidgetViewState.TEXT_HASHRATE), changes);
+
+        assertEquals(changes, tracker.changes(1, state("1.6T", "1d ago", COLORS, "a")));
+        assertEquals(0, tracker.partialPushes());
+    }
+
+    // Diffs and, when there's something to send, records it as sent
+    private static int push(WidgetPushTracker tracker, int appWidgetId, WidgetViewState next) {
+        int changes = tracker.changes(appWidgetId, next);
+        if (changes != WidgetPushTracker.NONE) {
+            tracker.pushed(appWidgetId, next, changes);
+        }
+        return changes;
+    }
+
+    private static WidgetViewState state(String hashrate, String topInfo, int[] colors,
+                                         Object sparkline) {
+        return new WidgetViewState(texts(hashrate, topInfo), colors, sparkline);
+    }
+
+    private static String[] texts(String hashrate, String topInfo) {
+        String[] texts = new String[WidgetViewState.TEXT_COUNT];
+        texts[WidgetViewState.TEXT_HASHRATE] = hashrate;
+        texts[WidgetViewState.TEXT_SHARES] = "120.31 M";
+        texts[WidgetViewState.TEXT_BEST] = "68.76 M";
+        texts[WidgetViewState.TEXT_BEST_DATE] = "1/2/25";
+        texts[WidgetViewState.TEXT_TOP_INFO] = topInfo;
+        return texts;
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.ckpoolwidget;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import static org.junit.Assert.*;
+
+public class WidgetStateStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void flushedStateSurvivesReopen() throws Exception {
+        File file = new File(folder.getRoot(), WidgetStateStore.FILE_NAME);
+        WidgetStateStore store = WidgetStateStore.open(file, null);
+        store.update(state -> {
+            state.bestEver = 68760000;
+            state.bestDate = "1/2/25";
+            state.lastHashrate = "1.53T";
+            state.lastBtcPrice = "$97k";
+            state.priceFetchedAt = 1234;
+            state.refreshUnchanged = 3;
+            state.seenHashrate = 1.53e12;
+            state.networkDifficulty = 1.2e14;
+            state.difficultyFetchedAt = 5678;
+            state.alertedPoolHeight = 880000;
+            state.offlineAlerted = "bitaxe1\nbitaxe2";
+            state.alertPending = true;
+        });
+        assertTrue(store.flush());
+
+        WidgetState loaded = WidgetStateStore.open(file, null).current();
+        assertEquals(68760000, loaded.bestEver);
+        assertEquals("1/2/25", loaded.bestDate);
+        assertEquals("1.53T", loaded.lastHashrate);
+        assertNull(loaded.lastShares);
+        assertEquals("$97k", loaded.lastBtcPrice);
+        assertEquals(1234, loaded.priceFetchedAt);
+        assertEquals(3, loaded.refreshUnchanged);
+        assertEquals(1.53e12, loaded.seenHashrate, 0);
+        assertEquals(1.2e14, loaded.networkDifficulty, 0);
+        assertEquals(5678, loaded.difficultyFetchedAt);
+        assertEquals(880000, loaded.alertedPoolHeight);
+        assertEquals("bitaxe1\nbitaxe2", loaded.offlineAlerted);
+        assertTrue(loaded.alertPending);
+        assertEquals(1, WidgetStateStore.open(file, null).version());
+    }
+
+    @Test
+    public void addressesAndWorkersSurviveReopen() {
+        File file = new File(folder.getRoot(), WidgetStateStore.FILE_NAME);
+        WidgetStateStore store = WidgetStateStore.open(file, null);
+        store.update(state -> {
+            AddressStats stats = new AddressStats("bc1qfarm");
+            stats.hashrate = "1.53T";
+            stats.shares = 120;
+            stats.bestEver = 68760000;
+            stats.bestDate = "1/2/25";
+            stats.updatedAt = 1234;
+            stats.workers = new AddressStats.Worker[] {
+                    new AddressStats.Worker("bitaxe1", "1.02T", 80, 68760000)};
+            state.addresses.add(stats);
+            state.addresses.add(new AddressStats("bc1qnew"));
+        });
+        assertTrue(store.flush());
+
+        WidgetState loaded = WidgetStateStore.open(file, null).current();
+        assertEquals(2, loaded.addresses.size());
+        AddressStats farm = loaded.address("bc1qfarm");
+        assertEquals("1.53T", farm.hashrate);
+        assertEquals(68760000, farm.bestEver);
+        assertEquals("1/2/25", farm.bestDate);
+        assertEquals(1234, farm.updatedAt);
+        assertEquals("bitaxe1", farm.workers[0].name);
+        assertEquals(80, farm.workers[0].shares);
+        assertNull(loaded.address("bc1qnew").hashrate);
+        assertEquals(0, loaded.address("bc1qnew").workers.length);
+    }
+
+    @Test
+    public void manyUpdatesCostOneWrite() {
+        WidgetStateStore store = WidgetStateStore.open(
+                new File(folder.getRoot(), WidgetStateStore.FILE_NAME), null);
+        for (int i = 0; i < 10; i++) {
+            long value = i;
+            store.update(state -> state.poolSyncedAt = value);
+        }
+        store.flush();
+        store.flush();
+
+        assertEquals(1, store.writes());
+        assertEquals(1, store.version());
+    }
+
+    @Test
+    public void updatesPublishANewSnapshot() {
+        WidgetStateStore store = WidgetStateStore.open(
+                new File(folder.getRoot(), WidgetStateStore.FILE_NAME), null);
+        store.update(state -> state.addresses.add(new AddressStats("bc1qtest")));
+        WidgetState before = store.current();
+        // Reads share the snapshot instead of copying it
+        assertSame(before, store.current());
+
+        store.update(state -> {
+            state.bestEver = 99;
+            state.address("bc1qtest").shares = 7;
+        });
+
+        assertEquals(0, before.bestEver);
+        assertEquals(0, before.address("bc1qtest").shares);
+        assertEquals(99, store.current().bestEver);
+        assertEquals(7, store.current().address("bc1qtest").shares);
+    }
+
+    @Test
+    public void leftoverTempFileIsIgnored() throws Exception {
+        File file = new File(folder.getRoot(), WidgetStateStore.FILE_NAME);
+        WidgetStateStore store = WidgetStateStore.open(file, null);
+        store.update(state -> state.lastShares = "1.00 M");
+        store.flush();
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(new byte[] {1, 2, 3});
+        }
+
+        assertEquals("1.00 M", WidgetStateStore.open(file, null).current().lastShares);
+        assertFalse(temp.exists());
+    }
+
+    @Test
+    public void legacyPreferencesAreMigratedOnce() {
+        InMemoryPreferences prefs = new InMemoryPreferences();
+        prefs.edit().putString(CKPoolWidget.PREF_BITCOIN_ADDRESS, "bc1qtest")
+                .putLong("best_ever", 5000)
+                .putString("best_date", "3/4/25")
+                .putString("last_hashrate", "900G")
+                .putString("last_pool_info", "2d ago")
+                .apply();
+        File file = new File(folder.getRoot(), WidgetStateStore.FILE_NAME);
+
+        WidgetState migrated = WidgetStateStore.open(file, prefs).current();
+
+        assertEquals(5000, migrated.bestEver);
+        assertEquals("3/4/25", migrated.bestDate);
+        assertEquals("900G", migrated.lastHashrate);
+        assertEquals("2d ago", migrated.lastPoolInfo);
+        assertTrue(file.exists());
+        assertFalse(prefs.contains("best_ever"));
+        assertFalse(prefs.contains("last_hashrate"));
+        // Settings stay in the preferences
+        assertEquals("bc1qtest", prefs.getString(CKPoolWidget.PREF_BITCOIN_ADDRESS, ""));
+        assertEquals(5000, WidgetStateStore.open(file, prefs).current().bestEver);
+    }
+}